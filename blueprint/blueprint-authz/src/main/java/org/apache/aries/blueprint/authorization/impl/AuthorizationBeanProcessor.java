@@ -29,6 +29,7 @@ public class AuthorizationBeanProcessor implements BeanProcessor {
     private static final Logger LOGGER = LoggerFactory.getLogger(AuthorizationInterceptor.class);
     public static final String AUTH_PROCESSOR_BEAN_NAME = "org_apache_aries_authz_annotations";
     private ComponentDefinitionRegistry cdr;
+    private final PrincipalNamesCache principalNamesCache = new PrincipalNamesCache();
 
     public AuthorizationBeanProcessor() {
     }
@@ -55,7 +56,7 @@ public class AuthorizationBeanProcessor implements BeanProcessor {
         Class<?> c = bean.getClass();
         if (new SecurityAnotationParser().isSecured(c)) {
             LOGGER.debug("Adding annotation based authorization interceptor for bean {} with class {}", beanName, c);
-            cdr.registerInterceptorWithComponent(beanData, new AuthorizationInterceptor(bean.getClass()));
+            cdr.registerInterceptorWithComponent(beanData, new AuthorizationInterceptor(c, principalNamesCache));
         }
         return bean;
     }
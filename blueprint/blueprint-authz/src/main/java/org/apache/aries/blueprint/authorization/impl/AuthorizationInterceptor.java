@@ -25,7 +25,10 @@ import java.security.AccessControlException;
 import java.security.AccessController;
 import java.security.Principal;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.security.PermitAll;
@@ -39,10 +42,18 @@ import org.slf4j.LoggerFactory;
 
 public class AuthorizationInterceptor implements Interceptor {
     private static final Logger LOGGER = LoggerFactory.getLogger(AuthorizationInterceptor.class);
-    private Class<?> beanClass;
+    private final Class<?> beanClass;
+    private final Map<Method, MethodAuthorization> authorizations;
+    private final PrincipalNamesCache principalNamesCache;
 
     public AuthorizationInterceptor(Class<?> beanClass) {
+        this(beanClass, new PrincipalNamesCache());
+    }
+
+    AuthorizationInterceptor(Class<?> beanClass, PrincipalNamesCache principalNamesCache) {
         this.beanClass = beanClass;
+        this.principalNamesCache = principalNamesCache;
+        this.authorizations = resolveAuthorizations(beanClass);
     }
 
     public int getRank() {
@@ -57,39 +68,114 @@ public class AuthorizationInterceptor implements Interceptor {
     }
 
     public Object preCall(ComponentMetadata cm, Method m, Object... parameters) throws Throwable {
-        Annotation ann = new SecurityAnotationParser().getEffectiveAnnotation(beanClass, m);
-        if (ann instanceof PermitAll) {
+        MethodAuthorization authorization = authorizations.get(m);
+        if (authorization == null) {
+            // Not a public method of the bean class or one of its interfaces, resolve it on the fly
+            authorization = resolveAuthorization(new SecurityAnotationParser(), beanClass, m);
+        }
+        if (authorization.isPermitAll()) {
             return null;
         }
-        String[] rolesAr = new String[] {}; // Also applies for @DenyAll
-        if (ann instanceof RolesAllowed) {
-            rolesAr = ((RolesAllowed) ann).value();
-        } 
-        Set<String> roles = new HashSet<String>(Arrays.asList(rolesAr));
+        Set<String> roles = authorization.getRoles();
         AccessControlContext acc = AccessController.getContext();
         Subject subject = Subject.getSubject(acc);
         if (subject == null) {
             throw new AccessControlException("Method call " + m.getDeclaringClass() + "." + m.getName() + " denied. No JAAS login present");
         }
-        Set<Principal> principals = subject.getPrincipals();
+        Set<String> principalNames = principalNamesCache.getPrincipalNames(subject);
 
-        for (Principal principal : principals) {
-            if (roles.contains(principal.getName())) {
-                LOGGER.debug("Granting access to Method: {} for {}.", m, principal);
+        for (String role : roles) {
+            if (principalNames.contains(role)) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Granting access to Method: {} for {}.", m, getPrincipal(subject, role));
+                }
                 return null;
             }
         }
         String msg = String.format("Method call %s.%s denied. Roles allowed are %s. Your principals are %s.",
-                                   m.getDeclaringClass(), m.getName(), roles, getNames(principals));
+                                   m.getDeclaringClass(), m.getName(), roles, getNames(principalNames));
         throw new AccessControlException(msg);
     }
 
-    private String getNames(Set<Principal> principals) {
+    private static Principal getPrincipal(Subject subject, String name) {
+        for (Principal principal : subject.getPrincipals()) {
+            if (name.equals(principal.getName())) {
+                return principal;
+            }
+        }
+        return null;
+    }
+
+    private String getNames(Set<String> principalNames) {
         StringBuilder sb = new StringBuilder();
-        for (Principal principal : principals) {
-            sb.append(principal.getName() + " ");
+        for (String name : principalNames) {
+            sb.append(name + " ");
         }
         return sb.toString();
     }
 
+    /**
+     * Resolve the effective authorization of every public method of the bean class and of the
+     * interfaces it implements, as calls may be dispatched through either of them.
+     */
+    private static Map<Method, MethodAuthorization> resolveAuthorizations(Class<?> beanClass) {
+        SecurityAnotationParser parser = new SecurityAnotationParser();
+        Map<Method, MethodAuthorization> authorizations = new HashMap<Method, MethodAuthorization>();
+        for (Method m : beanClass.getMethods()) {
+            authorizations.put(m, resolveAuthorization(parser, beanClass, m));
+        }
+        for (Class<?> itf : getInterfaces(beanClass)) {
+            for (Method m : itf.getMethods()) {
+                if (!authorizations.containsKey(m)) {
+                    authorizations.put(m, resolveAuthorization(parser, beanClass, m));
+                }
+            }
+        }
+        return Collections.unmodifiableMap(authorizations);
+    }
+
+    private static MethodAuthorization resolveAuthorization(SecurityAnotationParser parser, Class<?> beanClass, Method m) {
+        Annotation ann = parser.getEffectiveAnnotation(beanClass, m);
+        if (ann instanceof PermitAll) {
+            return MethodAuthorization.PERMIT_ALL;
+        }
+        String[] rolesAr = new String[] {}; // Also applies for @DenyAll
+        if (ann instanceof RolesAllowed) {
+            rolesAr = ((RolesAllowed) ann).value();
+        }
+        return new MethodAuthorization(new HashSet<String>(Arrays.asList(rolesAr)));
+    }
+
+    private static Set<Class<?>> getInterfaces(Class<?> clazz) {
+        Set<Class<?>> interfaces = new HashSet<Class<?>>();
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for (Class<?> itf : c.getInterfaces()) {
+                interfaces.add(itf);
+            }
+        }
+        return interfaces;
+    }
+
+    /**
+     * Effective authorization of a method: either everybody is allowed or only the given roles.
+     * An empty role set denies all calls.
+     */
+    static final class MethodAuthorization {
+        static final MethodAuthorization PERMIT_ALL = new MethodAuthorization(null);
+
+        private final Set<String> roles;
+
+        MethodAuthorization(Set<String> roles) {
+            this.roles = roles != null ? Collections.unmodifiableSet(roles) : null;
+        }
+
+        boolean isPermitAll() {
+            return roles == null;
+        }
+
+        Set<String> getRoles() {
+            return roles;
+        }
+    }
+
 }
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.authorization.impl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.security.auth.Subject;
+
+/**
+ * Caches the principal names of JAAS subjects.
+ *
+ * Subjects are keyed by identity, so distinct subjects never share an entry, and only weakly
+ * referenced so they can still be garbage collected.  The principals of a subject which is not read
+ * only may change at any time, so its entry is only used while the subject still holds the very
+ * principals the names were computed from.
+ */
+class PrincipalNamesCache {
+
+    private final ConcurrentMap<SubjectKey, Entry> entries = new ConcurrentHashMap<SubjectKey, Entry>();
+    private final ReferenceQueue<Subject> queue = new ReferenceQueue<Subject>();
+
+    Set<String> getPrincipalNames(Subject subject) {
+        Entry entry = entries.get(new SubjectKey(subject, null));
+        if (entry != null && (entry.readOnly || entry.matches(subject))) {
+            return entry.names;
+        }
+        expungeStaleEntries();
+        entry = new Entry(subject);
+        entries.put(new SubjectKey(subject, queue), entry);
+        return entry.names;
+    }
+
+    int size() {
+        expungeStaleEntries();
+        return entries.size();
+    }
+
+    private void expungeStaleEntries() {
+        Reference<? extends Subject> key;
+        while ((key = queue.poll()) != null) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Weak reference to a subject which is equal to another one only if both refer to the same subject.
+     */
+    private static final class SubjectKey extends WeakReference<Subject> {
+        private final int hash;
+
+        SubjectKey(Subject subject, ReferenceQueue<Subject> queue) {
+            super(subject, queue);
+            this.hash = System.identityHashCode(subject);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof SubjectKey)) {
+                return false;
+            }
+            Subject subject = get();
+            return subject != null && subject == ((SubjectKey) obj).get();
+        }
+    }
+
+    private static final class Entry {
+        final boolean readOnly;
+        final Principal[] principals;
+        final Set<String> names;
+
+        Entry(Subject subject) {
+            // read first, the principals can not change once the subject is read only
+            readOnly = subject.isReadOnly();
+            Set<Principal> set = subject.getPrincipals();
+            principals = set.toArray(new Principal[set.size()]);
+            Set<String> names = new HashSet<String>();
+            for (Principal principal : principals) {
+                names.add(principal.getName());
+            }
+            this.names = Collections.unmodifiableSet(names);
+        }
+
+        /**
+         * @return whether the subject holds the same principals as when the names were computed
+         */
+        boolean matches(Subject subject) {
+            int i = 0;
+            for (Principal principal : subject.getPrincipals()) {
+                if (i == principals.length || principals[i++] != principal) {
+                    return false;
+                }
+            }
+            return i == principals.length;
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.authorization.impl;
+
+import java.security.AccessControlException;
+import java.security.Principal;
+import java.security.PrivilegedExceptionAction;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.security.auth.Subject;
+
+import org.apache.aries.blueprint.authorization.impl.test.SecuredClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AuthorizationInterceptorTest {
+
+    private PrincipalNamesCache cache = new PrincipalNamesCache();
+    private AuthorizationInterceptor interceptor = new AuthorizationInterceptor(SecuredClass.class, cache);
+
+    @Test
+    public void testRolesAllowed() throws Exception {
+        Subject user = subject(true, "user");
+        Assert.assertTrue(call(user, "user"));
+        Assert.assertFalse(call(user, "admin"));
+        Assert.assertTrue(call(subject(true, "admin"), "admin"));
+    }
+
+    @Test
+    public void testPermitAndDenyAll() throws Exception {
+        Assert.assertTrue(call(subject(true), "anon"));
+        Assert.assertFalse(call(subject(true, "admin", "user"), "closed"));
+    }
+
+    @Test(expected = AccessControlException.class)
+    public void testNoSubject() throws Throwable {
+        interceptor.preCall(null, SecuredClass.class.getMethod("user"));
+    }
+
+    @Test
+    public void testPrincipalChangesAreSeen() throws Exception {
+        Subject mutable = subject(false, "guest");
+        Assert.assertFalse(call(mutable, "user"));
+        NamedPrincipal user = new NamedPrincipal("user");
+        mutable.getPrincipals().add(user);
+        Assert.assertTrue(call(mutable, "user"));
+        mutable.getPrincipals().remove(user);
+        Assert.assertFalse(call(mutable, "user"));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testSubjectsAreCachedByIdentity() throws Exception {
+        Subject readOnly = subject(true, "user");
+        Assert.assertTrue(call(readOnly, "user"));
+        Assert.assertTrue(call(readOnly, "user"));
+        Assert.assertEquals(1, cache.size());
+        // an equal subject still gets its own entry
+        Assert.assertTrue(call(subject(true, "user"), "user"));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    private boolean call(Subject subject, final String methodName) throws Exception {
+        try {
+            Subject.doAs(subject, new PrivilegedExceptionAction<Object>() {
+                public Object run() throws Exception {
+                    try {
+                        return interceptor.preCall(null, SecuredClass.class.getMethod(methodName));
+                    } catch (Exception e) {
+                        throw e;
+                    } catch (Throwable t) {
+                        throw new IllegalStateException(t);
+                    }
+                }
+            });
+            return true;
+        } catch (AccessControlException e) {
+            return false;
+        }
+    }
+
+    private static Subject subject(boolean readOnly, String... names) {
+        Set<Principal> principals = new HashSet<Principal>();
+        for (String name : names) {
+            principals.add(new NamedPrincipal(name));
+        }
+        Set<Object> credentials = Collections.emptySet();
+        Subject subject = new Subject(false, principals, credentials, credentials);
+        if (readOnly) {
+            subject.setReadOnly();
+        }
+        return subject;
+    }
+
+    private static final class NamedPrincipal implements Principal {
+        private final String name;
+
+        NamedPrincipal(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+}
@@ -17,6 +17,7 @@
 package org.apache.aries.blueprint.container;
 
 import java.io.ByteArrayInputStream;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
@@ -35,10 +36,14 @@ import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
@@ -88,8 +93,113 @@ public class AggregateConverter implements Converter {
         }
     }
 
+    /**
+     * The built-in conversion selected for a given source class and target type.
+     */
+    private static enum Strategy {
+        NUMBER, STRING, ARRAY, MAP, DICTIONARY, COLLECTION, NONE
+    }
+
+    /**
+     * Cached outcome of the type checks performed by {@link #convert(Object, ReifiedType)}
+     * for a given source class and target type.  Both decisions only depend on the class
+     * of the value, so they can be reused for every value of the same class.
+     */
+    private static class ConversionPlan {
+
+        public final boolean assignable;
+        public final Strategy strategy;
+
+        public ConversionPlan(boolean assignable, Strategy strategy) {
+            this.assignable = assignable;
+            this.strategy = strategy;
+        }
+    }
+
+    /**
+     * Identifies a plan by value rather than by the identity of the target type, as a new
+     * <code>ReifiedType</code> is usually created for each conversion.  The key holds the source
+     * class followed by the raw class, bound type and number of type arguments of each node of the
+     * target type.  Classes are weakly referenced so that the cache does not keep class loaders
+     * alive: keys with a reclaimed class never match and are purged when the cache is full.
+     */
+    private static class PlanKey {
+
+        private final Object[] parts;
+        private final int hash;
+
+        public PlanKey(Class<?> sourceClass, ReifiedType type) {
+            List<Object> parts = new ArrayList<Object>();
+            parts.add(new WeakReference<Class<?>>(sourceClass));
+            addType(parts, type);
+            int hash = 0;
+            for (Object part : parts) {
+                hash = 31 * hash + (part instanceof WeakReference ? System.identityHashCode(((WeakReference<?>) part).get())
+                                                                  : part != null ? part.hashCode() : 0);
+            }
+            this.parts = parts.toArray();
+            this.hash = hash;
+        }
+
+        private static void addType(List<Object> parts, ReifiedType type) {
+            parts.add(new WeakReference<Class<?>>(type.getRawClass()));
+            parts.add(GenericType.boundType(type));
+            parts.add(type.size());
+            for (int i = 0; i < type.size(); i++) {
+                addType(parts, type.getActualTypeArgument(i));
+            }
+        }
+
+        public boolean isStale() {
+            for (Object part : parts) {
+                if (part instanceof WeakReference && ((WeakReference<?>) part).get() == null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof PlanKey)) {
+                return false;
+            }
+            PlanKey other = (PlanKey) o;
+            if (hash != other.hash || parts.length != other.parts.length) {
+                return false;
+            }
+            for (int i = 0; i < parts.length; i++) {
+                Object part = parts[i];
+                Object otherPart = other.parts[i];
+                if (part instanceof WeakReference) {
+                    Object clazz = ((WeakReference<?>) part).get();
+                    if (clazz == null || !(otherPart instanceof WeakReference) || clazz != ((WeakReference<?>) otherPart).get()) {
+                        return false;
+                    }
+                } else if (part == null ? otherPart != null : !part.equals(otherPart)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final int MAX_PLANS = 512;
+
+    /**
+     * A null value is assignable to any type, as was the case before plans were cached.
+     */
+    private static final ConversionPlan NULL_PLAN = new ConversionPlan(true, Strategy.NONE);
+
     private ExtendedBlueprintContainer blueprintContainer;
-    private List<Converter> converters = new ArrayList<Converter>();
+    private final List<Converter> converters = new CopyOnWriteArrayList<Converter>();
+    private final ConcurrentMap<PlanKey, ConversionPlan> plans = new ConcurrentHashMap<PlanKey, ConversionPlan>();
 
     public AggregateConverter(ExtendedBlueprintContainer blueprintContainer) {
         this.blueprintContainer = blueprintContainer;
@@ -109,7 +219,7 @@ public class AggregateConverter implements Converter {
         } else if (fromValue instanceof UnwrapperedBeanHolder) {
             fromValue = ((UnwrapperedBeanHolder) fromValue).unwrapperedBean;
         }
-        if (isAssignable(fromValue, toType)) {
+        if (getPlan(fromValue, toType).assignable) {
             return true;
         }
         
@@ -148,12 +258,12 @@ public class AggregateConverter implements Converter {
             return ((Convertible) fromValue).convert(type);
         } else if (fromValue instanceof UnwrapperedBeanHolder) {
             UnwrapperedBeanHolder holder = (UnwrapperedBeanHolder) fromValue;
-            if (isAssignable(holder.unwrapperedBean, type)) {
+            if (getPlan(holder.unwrapperedBean, type).assignable) {
                 return BeanRecipe.wrap(holder, type.getRawClass());
             } else {
                 fromValue = BeanRecipe.wrap(holder, Object.class);
             }
-        } else if (isAssignable(fromValue, type)) {
+        } else if (getPlan(fromValue, type).assignable) {
             // If the object is an instance of the type, just return it
             return fromValue;
         }
@@ -161,7 +271,9 @@ public class AggregateConverter implements Converter {
         final Object finalFromValue = fromValue;
         ConversionResult result = null;
         AccessControlContext acc = blueprintContainer.getAccessControlContext();
-        if (acc == null) {
+        if (converters.isEmpty()) {
+            // No custom converters, skip the privileged call
+        } else if (acc == null) {
             result = convertWithConverters(fromValue, type);
         } else {
             result = AccessController.doPrivileged(new PrivilegedExceptionAction<ConversionResult>() {
@@ -171,25 +283,84 @@ public class AggregateConverter implements Converter {
             }, acc);
         }
         if (result == null) {
-            if (fromValue instanceof Number && Number.class.isAssignableFrom(unwrap(toClass(type)))) {
-                return convertToNumber((Number) fromValue, toClass(type));
-            } else if (fromValue instanceof String) {
-                return convertFromString((String) fromValue, toClass(type), blueprintContainer);
-            } else if (toClass(type).isArray() && (fromValue instanceof Collection || fromValue.getClass().isArray())) {
-                return convertToArray(fromValue, type);
-            } else if (Map.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Map || fromValue instanceof Dictionary)) {
-                return convertToMap(fromValue, type);
-            } else if (Dictionary.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Map || fromValue instanceof Dictionary)) {
-                return convertToDictionary(fromValue, type);
-            } else if (Collection.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Collection || fromValue.getClass().isArray())) {
-                return convertToCollection(fromValue, type);
-            } else {
-                throw new Exception("Unable to convert value " + fromValue + " to type " + type);
+            switch (getPlan(fromValue, type).strategy) {
+                case NUMBER:
+                    return convertToNumber((Number) fromValue, toClass(type));
+                case STRING:
+                    return convertFromString((String) fromValue, toClass(type), blueprintContainer);
+                case ARRAY:
+                    return convertToArray(fromValue, type);
+                case MAP:
+                    return convertToMap(fromValue, type);
+                case DICTIONARY:
+                    return convertToDictionary(fromValue, type);
+                case COLLECTION:
+                    return convertToCollection(fromValue, type);
+                default:
+                    throw new Exception("Unable to convert value " + fromValue + " to type " + type);
             }
         }
         return result.value;
     }
 
+    /**
+     * Retrieve the conversion plan for the given value and target type, computing it
+     * on first use for the class of the value.
+     */
+    private ConversionPlan getPlan(Object fromValue, ReifiedType type) {
+        if (fromValue == null) {
+            return NULL_PLAN;
+        } else if (fromValue instanceof Class) {
+            // The assignability of a Class depends on the class it represents
+            return createPlan(fromValue, type);
+        }
+        PlanKey key = new PlanKey(fromValue.getClass(), type);
+        ConversionPlan plan = plans.get(key);
+        if (plan == null) {
+            plan = createPlan(fromValue, type);
+            if (plans.size() >= MAX_PLANS) {
+                purgeStalePlans();
+            }
+            if (plans.size() < MAX_PLANS) {
+                plans.put(key, plan);
+            }
+        }
+        return plan;
+    }
+
+    private void purgeStalePlans() {
+        for (Iterator<PlanKey> iterator = plans.keySet().iterator(); iterator.hasNext();) {
+            if (iterator.next().isStale()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private ConversionPlan createPlan(Object fromValue, ReifiedType type) {
+        boolean assignable = isAssignable(fromValue, type);
+        Strategy strategy;
+        if (fromValue instanceof Number && Number.class.isAssignableFrom(unwrap(toClass(type)))) {
+            strategy = Strategy.NUMBER;
+        } else if (fromValue instanceof String) {
+            strategy = Strategy.STRING;
+        } else if (toClass(type).isArray() && (fromValue instanceof Collection || fromValue.getClass().isArray())) {
+            strategy = Strategy.ARRAY;
+        } else if (Map.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Map || fromValue instanceof Dictionary)) {
+            strategy = Strategy.MAP;
+        } else if (Dictionary.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Map || fromValue instanceof Dictionary)) {
+            strategy = Strategy.DICTIONARY;
+        } else if (Collection.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Collection || fromValue.getClass().isArray())) {
+            strategy = Strategy.COLLECTION;
+        } else {
+            strategy = Strategy.NONE;
+        }
+        return new ConversionPlan(assignable, strategy);
+    }
+
+    int getPlanCount() {
+        return plans.size();
+    }
+
     private Converter selectMatchingConverter(Object source, ReifiedType type) {
         for (Converter converter : converters) {
             if (converter.canConvert(source, type)) {
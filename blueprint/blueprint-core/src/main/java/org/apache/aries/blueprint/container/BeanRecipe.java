@@ -22,12 +22,13 @@ import java.lang.reflect.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -118,6 +119,8 @@ public class BeanRecipe extends AbstractRecipe {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BeanRecipe.class);
 
+    private static final int MAX_RESOLUTIONS = 16;
+
     private final ExtendedBlueprintContainer blueprintContainer;
     private final LinkedHashMap<String,Object> properties = new LinkedHashMap<String,Object>();
     private final Object type;
@@ -135,6 +138,8 @@ public class BeanRecipe extends AbstractRecipe {
     private final boolean allowRawConversion;
     private final boolean allowNonStandardSetters;
     private BeanMetadata interceptorLookupKey;
+    // Constructors and factory methods resolved so far, keyed by the types of the arguments
+    private final ConcurrentMap<List<Object>, Resolution> resolutions = new ConcurrentHashMap<List<Object>, Resolution>();
     
 
     public BeanRecipe(String name, ExtendedBlueprintContainer blueprintContainer, Object type, boolean allowFieldInjection, boolean allowRawConversion, boolean allowNonStandardSetters) {
@@ -287,20 +292,25 @@ public class BeanRecipe extends AbstractRecipe {
     
     private Object getInstanceFromFactory(List<Object> args, List<ReifiedType> argTypes) {
         Object factoryObj = getFactoryObj();
-        
-        // Map of matching methods
-        Map<Method, List<Object>> matches = findMatchingMethods(factoryObj.getClass(), factoryMethod, true, args, argTypes);
-        if (matches.size() == 1) {
-            try {
-                Map.Entry<Method, List<Object>> match = matches.entrySet().iterator().next();
-                return invoke(match.getKey(), factoryObj, match.getValue().toArray());
-            } catch (Throwable e) {
-                throw wrapAsCompDefEx(e);
+        List<TypeInference.TypedObject> targs = getTypedObjects(args, argTypes);
+        List<Object> key = getResolutionKey(factoryObj.getClass(), targs);
+        Resolution resolution = resolutions.get(key);
+        Object[] values = resolution != null ? resolution.convert(targs) : null;
+        if (values == null) {
+            // Map of matching methods
+            List<TypeInference.Match<Method>> matches = findMatchingMethods(factoryObj.getClass(), factoryMethod, true, targs);
+            if (matches.size() == 0) {
+                throw new ComponentDefinitionException("Unable to find a matching factory method " + factoryMethod + " on class " + factoryObj.getClass().getName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName());
+            } else if (matches.size() > 1) {
+                throw new ComponentDefinitionException("Multiple matching factory methods " + factoryMethod + " found on class " + factoryObj.getClass().getName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName() + ": " + getMembers(matches));
             }
-        } else if (matches.size() == 0) {
-            throw new ComponentDefinitionException("Unable to find a matching factory method " + factoryMethod + " on class " + factoryObj.getClass().getName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName());
-        } else {
-            throw new ComponentDefinitionException("Multiple matching factory methods " + factoryMethod + " found on class " + factoryObj.getClass().getName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName() + ": " + matches.keySet());
+            resolution = cacheResolution(key, matches.get(0), TypeInference.countMethods(factoryObj.getClass(), factoryMethod, true, targs.size()));
+            values = getValues(matches.get(0));
+        }
+        try {
+            return invoke((Method) resolution.member, factoryObj, values);
+        } catch (Throwable e) {
+            throw wrapAsCompDefEx(e);
         }
     }
 
@@ -322,19 +332,25 @@ public class BeanRecipe extends AbstractRecipe {
     }
     
     private Object getInstanceFromStaticFactory(List<Object> args, List<ReifiedType> argTypes) {
-        // Map of matching methods
-        Map<Method, List<Object>> matches = findMatchingMethods(getType(), factoryMethod, false, args, argTypes);
-        if (matches.size() == 1) {
-            try {
-                Map.Entry<Method, List<Object>> match = matches.entrySet().iterator().next();
-                return invoke(match.getKey(), null, match.getValue().toArray());
-            } catch (Throwable e) {
-                throw wrapAsCompDefEx(e);
+        List<TypeInference.TypedObject> targs = getTypedObjects(args, argTypes);
+        List<Object> key = getResolutionKey(null, targs);
+        Resolution resolution = resolutions.get(key);
+        Object[] values = resolution != null ? resolution.convert(targs) : null;
+        if (values == null) {
+            // Map of matching methods
+            List<TypeInference.Match<Method>> matches = findMatchingMethods(getType(), factoryMethod, false, targs);
+            if (matches.size() == 0) {
+                throw new ComponentDefinitionException("Unable to find a matching factory method " + factoryMethod + " on class " + getTypeName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName());
+            } else if (matches.size() > 1) {
+                throw new ComponentDefinitionException("Multiple matching factory methods " + factoryMethod + " found on class " + getTypeName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName() + ": " + getMembers(matches));
             }
-        } else if (matches.size() == 0) {
-            throw new ComponentDefinitionException("Unable to find a matching factory method " + factoryMethod + " on class " + getTypeName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName());
-        } else {
-            throw new ComponentDefinitionException("Multiple matching factory methods " + factoryMethod + " found on class " + getTypeName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName() + ": " + matches.keySet());
+            resolution = cacheResolution(key, matches.get(0), TypeInference.countMethods(getType(), factoryMethod, false, targs.size()));
+            values = getValues(matches.get(0));
+        }
+        try {
+            return invoke((Method) resolution.member, null, values);
+        } catch (Throwable e) {
+            throw wrapAsCompDefEx(e);
         }
     }
 
@@ -342,19 +358,25 @@ public class BeanRecipe extends AbstractRecipe {
         if (getType() == null) {
             throw new ComponentDefinitionException("No factoryMethod nor class is defined for this bean");
         }
-        // Map of matching constructors
-        Map<Constructor<?>, List<Object>> matches = findMatchingConstructors(getType(), args, argTypes);
-        if (matches.size() == 1) {
-            try {
-                Map.Entry<Constructor<?>, List<Object>> match = matches.entrySet().iterator().next();
-                return newInstance(match.getKey(), match.getValue().toArray());
-            } catch (Throwable e) {
-                throw wrapAsCompDefEx(e);
+        List<TypeInference.TypedObject> targs = getTypedObjects(args, argTypes);
+        List<Object> key = getResolutionKey(null, targs);
+        Resolution resolution = resolutions.get(key);
+        Object[] values = resolution != null ? resolution.convert(targs) : null;
+        if (values == null) {
+            // Map of matching constructors
+            List<TypeInference.Match<Constructor<?>>> matches = findMatchingConstructors(getType(), targs);
+            if (matches.size() == 0) {
+                throw new ComponentDefinitionException("Unable to find a matching constructor on class " + getTypeName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName());
+            } else if (matches.size() > 1) {
+                throw new ComponentDefinitionException("Multiple matching constructors found on class " + getTypeName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName() + ": " + getMembers(matches));
             }
-        } else if (matches.size() == 0) {
-            throw new ComponentDefinitionException("Unable to find a matching constructor on class " + getTypeName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName());
-        } else {
-            throw new ComponentDefinitionException("Multiple matching constructors found on class " + getTypeName() + " for arguments " + argsToString(args) + " when instanciating bean " + getName() + ": " + matches.keySet());
+            resolution = cacheResolution(key, matches.get(0), TypeInference.countConstructors(getType(), targs.size()));
+            values = getValues(matches.get(0));
+        }
+        try {
+            return newInstance((Constructor) resolution.member, values);
+        } catch (Throwable e) {
+            throw wrapAsCompDefEx(e);
         }
     }
 
@@ -367,32 +389,12 @@ public class BeanRecipe extends AbstractRecipe {
         return type == null ? null : type.getName();
     }
 
-    private Map<Constructor<?>, List<Object>> findMatchingConstructors(Class type, List<Object> args, List<ReifiedType> types) {
-        List<TypeInference.TypedObject> targs = getTypedObjects(args, types);
+    private List<TypeInference.Match<Constructor<?>>> findMatchingConstructors(Class type, List<TypeInference.TypedObject> targs) {
         TypeInference.Converter cnv = new TIConverter();
-        List<TypeInference.Match<Constructor<?>>> m = TypeInference.findMatchingConstructors(type, targs, cnv, reorderArguments);
-        if (!m.isEmpty()) {
-            int score = m.iterator().next().getScore();
-            final Iterator<TypeInference.Match<Constructor<?>>> each = m.iterator();
-            while (each.hasNext()) {
-                if (each.next().getScore() > score) {
-                    each.remove();
-                }
-            }
-        }
-        Map<Constructor<?>, List<Object>> map = new HashMap<Constructor<?>, List<Object>>();
-        for (TypeInference.Match<Constructor<?>> match : m) {
-            List<Object> nargs = new ArrayList<Object>();
-            for (TypeInference.TypedObject to : match.getArgs()) {
-                nargs.add(to.getValue());
-            }
-            map.put(match.getMember(), nargs);
-        }
-        return map;
+        return getBestMatches(TypeInference.findMatchingConstructors(type, targs, cnv, reorderArguments));
     }
 
-    private Map<Method, List<Object>> findMatchingMethods(Class type, String name, boolean instance, List<Object> args, List<ReifiedType> types) {
-        List<TypeInference.TypedObject> targs = getTypedObjects(args, types);
+    private List<TypeInference.Match<Method>> findMatchingMethods(Class type, String name, boolean instance, List<TypeInference.TypedObject> targs) {
         TypeInference.Converter cnv = new TIConverter();
         List<TypeInference.Match<Method>> m;
         if (instance) {
@@ -400,24 +402,74 @@ public class BeanRecipe extends AbstractRecipe {
         } else {
             m = TypeInference.findMatchingStatics(type, name, targs, cnv, reorderArguments);
         }
+        return getBestMatches(m);
+    }
+
+    private static <E> List<TypeInference.Match<E>> getBestMatches(List<TypeInference.Match<E>> m) {
         if (!m.isEmpty()) {
             int score = m.iterator().next().getScore();
-            final Iterator<TypeInference.Match<Method>> each = m.iterator();
+            final Iterator<TypeInference.Match<E>> each = m.iterator();
             while (each.hasNext()) {
                 if (each.next().getScore() > score) {
                     each.remove();
                 }
             }
         }
-        Map<Method, List<Object>> map = new HashMap<Method, List<Object>>();
-        for (TypeInference.Match<Method> match : m) {
-            List<Object> nargs = new ArrayList<Object>();
-            for (TypeInference.TypedObject to : match.getArgs()) {
-                nargs.add(to.getValue());
-            }
-            map.put(match.getMember(), nargs);
+        return m;
+    }
+
+    private static <E> List<E> getMembers(List<TypeInference.Match<E>> matches) {
+        List<E> members = new ArrayList<E>();
+        for (TypeInference.Match<E> match : matches) {
+            members.add(match.getMember());
+        }
+        return members;
+    }
+
+    private static Object[] getValues(TypeInference.Match<?> match) {
+        List<TypeInference.TypedObject> converted = match.getArgs();
+        Object[] values = new Object[converted.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = converted.get(i).getValue();
+        }
+        return values;
+    }
+
+    /**
+     * The resolution of the constructor or factory method only depends on the types of the
+     * arguments (and the class of the factory object for instance factories).
+     */
+    private static List<Object> getResolutionKey(Class<?> factoryClass, List<TypeInference.TypedObject> targs) {
+        List<Object> key = new ArrayList<Object>(targs.size() + 1);
+        key.add(factoryClass);
+        for (TypeInference.TypedObject targ : targs) {
+            key.add(targ.getType());
+        }
+        return key;
+    }
+
+    /**
+     * Whether a member matches may depend on the values of the arguments and not only on their types, for
+     * example when a string can be converted to several parameter types.  A resolution is only cached when
+     * the member is the only candidate and the arguments are not reordered: the type inference would then
+     * select the same member for any arguments that convert, so a cache hit can not hide an ambiguity.
+     */
+    private Resolution cacheResolution(List<Object> key, TypeInference.Match<?> match, int candidates) {
+        List<TypeInference.TypedObject> converted = match.getArgs();
+        int[] indexes = new int[converted.size()];
+        Type[] types = new Type[converted.size()];
+        boolean reordered = false;
+        for (int i = 0; i < indexes.length; i++) {
+            TypeInference.TypedObject arg = converted.get(i);
+            indexes[i] = ((IndexedTypedObject) arg).index;
+            types[i] = arg.getType();
+            reordered |= indexes[i] != i;
+        }
+        Resolution resolution = new Resolution(match.getMember(), indexes, types);
+        if (candidates == 1 && !reordered && resolutions.size() < MAX_RESOLUTIONS) {
+            resolutions.put(key, resolution);
         }
-        return map;
+        return resolution;
     }
 
     protected Object convert(Object obj, Type from, Type to) throws Exception {
@@ -446,7 +498,53 @@ public class BeanRecipe extends AbstractRecipe {
     private class TIConverter implements TypeInference.Converter {
         public TypeInference.TypedObject convert(TypeInference.TypedObject from, Type to) throws Exception {
             Object arg = BeanRecipe.this.convert(from.getValue(), from.getType(), to);
-            return new TypeInference.TypedObject(to, arg);
+            // Keep track of the position of the original argument, as arguments may be reordered
+            return new IndexedTypedObject(to, arg, ((IndexedTypedObject) from).index);
+        }
+    }
+
+    private static class IndexedTypedObject extends TypeInference.TypedObject {
+        final int index;
+
+        IndexedTypedObject(Type type, Object value, int index) {
+            super(type, value);
+            this.index = index;
+        }
+    }
+
+    /**
+     * A constructor or factory method selected for a given list of argument types, along with
+     * the position and target type of each argument, so that subsequent instantiations do not
+     * need to go through type inference again.
+     */
+    private class Resolution {
+        final Object member;
+        final int[] indexes;
+        final Type[] types;
+
+        Resolution(Object member, int[] indexes, Type[] types) {
+            this.member = member;
+            this.indexes = indexes;
+            this.types = types;
+        }
+
+        /**
+         * Convert the arguments to the parameter types of the member.
+         *
+         * @return the converted arguments or <code>null</code> if they can not be converted,
+         *         in which case the member needs to be resolved again
+         */
+        Object[] convert(List<TypeInference.TypedObject> targs) {
+            Object[] values = new Object[indexes.length];
+            for (int i = 0; i < values.length; i++) {
+                TypeInference.TypedObject from = targs.get(indexes[i]);
+                try {
+                    values[i] = BeanRecipe.this.convert(from.getValue(), from.getType(), types[i]);
+                } catch (Exception e) {
+                    return null;
+                }
+            }
+            return values;
         }
     }
 
@@ -483,7 +581,7 @@ public class BeanRecipe extends AbstractRecipe {
                 t = null;
             }
 
-            targs.add(new TypeInference.TypedObject(t, o));
+            targs.add(new IndexedTypedObject(t, o, i));
         }
         return targs;
     }
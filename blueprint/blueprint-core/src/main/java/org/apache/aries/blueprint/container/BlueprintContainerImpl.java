@@ -18,6 +18,7 @@
  */
 package org.apache.aries.blueprint.container;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
 import java.security.AccessControlContext;
@@ -37,7 +38,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -141,6 +146,9 @@ public class BlueprintContainerImpl
     private final ComponentDefinitionRegistryImpl componentDefinitionRegistry;
     private final AggregateConverter converter;
     private final ExecutorService executors;
+    private final ExecutorService instantiationExecutor;
+    private final ExecutorService parserExecutor;
+    private final MetadataCache metadataCache;
     private final ScheduledExecutorService timer;
     private final Collection<URI> additionalNamespaces;
     private Set<URI> namespaces;
@@ -148,6 +156,9 @@ public class BlueprintContainerImpl
     private NamespaceHandlerSet handlerSet;
     private final AtomicBoolean destroyed = new AtomicBoolean(false);
     private Parser parser;
+    private volatile FutureTask<Parser> parsing;
+    private MetadataCache.Key cacheKey;
+    private MetadataCache.Entry cachedMetadata;
     private BlueprintRepository repository;
     private ServiceRegistration registration;
     private final List<Processor> processors;
@@ -156,6 +167,7 @@ public class BlueprintContainerImpl
     private long timeout;
     private boolean waitForDependencies = true;
     private String xmlValidation;
+    private boolean parallelInstantiation;
     private ScheduledFuture timeoutFuture;
     private final AtomicBoolean scheduled = new AtomicBoolean();
     private List<ServiceRecipe> services;
@@ -166,6 +178,20 @@ public class BlueprintContainerImpl
     public BlueprintContainerImpl(Bundle bundle, BundleContext bundleContext, Bundle extenderBundle, BlueprintListener eventDispatcher,
                                   NamespaceHandlerRegistry handlers, ExecutorService executor, ScheduledExecutorService timer,
                                   List<URL> pathList, ProxyManager proxyManager, Collection<URI> namespaces) {
+        this(bundle, bundleContext, extenderBundle, eventDispatcher, handlers, executor, timer, pathList, proxyManager, namespaces, null, null);
+    }
+
+    public BlueprintContainerImpl(Bundle bundle, BundleContext bundleContext, Bundle extenderBundle, BlueprintListener eventDispatcher,
+                                  NamespaceHandlerRegistry handlers, ExecutorService executor, ScheduledExecutorService timer,
+                                  List<URL> pathList, ProxyManager proxyManager, Collection<URI> namespaces,
+                                  ExecutorService parserExecutor) {
+        this(bundle, bundleContext, extenderBundle, eventDispatcher, handlers, executor, timer, pathList, proxyManager, namespaces, parserExecutor, null);
+    }
+
+    public BlueprintContainerImpl(Bundle bundle, BundleContext bundleContext, Bundle extenderBundle, BlueprintListener eventDispatcher,
+                                  NamespaceHandlerRegistry handlers, ExecutorService executor, ScheduledExecutorService timer,
+                                  List<URL> pathList, ProxyManager proxyManager, Collection<URI> namespaces,
+                                  ExecutorService parserExecutor, MetadataCache metadataCache) {
         this.bundle = bundle;
         this.bundleContext = bundleContext;
         this.extenderBundle = extenderBundle;
@@ -175,6 +201,9 @@ public class BlueprintContainerImpl
         this.converter = new AggregateConverter(this);
         this.componentDefinitionRegistry = new ComponentDefinitionRegistryImpl();
         this.executors = executor != null ? new ExecutorServiceWrapper(executor) : null;
+        this.instantiationExecutor = executor;
+        this.parserExecutor = parserExecutor;
+        this.metadataCache = metadataCache;
         this.timer = timer;
         this.timeout = getDefaultTimeout();
         this.processors = new ArrayList<Processor>();
@@ -253,6 +282,76 @@ public class BlueprintContainerImpl
         }
         // enabled if null or "true"; structure-only if "structure"; disabled otherwise
         LOGGER.debug("Xml-validation directive: {}", xmlValidation);
+
+        String parallel = paths.get(0).getDirective(BlueprintConstants.PARALLEL_INSTANTIATION);
+        if (parallel != null) {
+            LOGGER.debug("Parallel-instantiation directive: {}", parallel);
+        }
+        parallelInstantiation = Boolean.parseBoolean(parallel);
+    }
+
+    /**
+     * Start parsing the blueprint xml files on the parser executor, ahead of the container
+     * being run on the extender threads, so that a batch of bundles is parsed concurrently.
+     */
+    public void startParsing() {
+        if (parserExecutor != null) {
+            FutureTask<Parser> task = createParsingTask();
+            parsing = task;
+            try {
+                parserExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // The task will be run by the container itself
+            }
+        }
+    }
+
+    private FutureTask<Parser> createParsingTask() {
+        return new FutureTask<Parser>(new Callable<Parser>() {
+            public Parser call() throws Exception {
+                if (loadCachedMetadata()) {
+                    return null;
+                }
+                Parser parser = new Parser();
+                parser.parse(pathList, parserExecutor);
+                return parser;
+            }
+        });
+    }
+
+    private boolean loadCachedMetadata() {
+        cacheKey = null;
+        cachedMetadata = null;
+        if (metadataCache != null) {
+            try {
+                cacheKey = metadataCache.createKey(bundle, pathList);
+                cachedMetadata = metadataCache.load(cacheKey);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to compute metadata cache key for blueprint bundle " + getBundle().getSymbolicName() + "/" + getBundle().getVersion(), e);
+            }
+        }
+        return cachedMetadata != null;
+    }
+
+    private Parser parse() throws Exception {
+        FutureTask<Parser> task = parsing;
+        parsing = null;
+        if (task == null) {
+            task = createParsingTask();
+        }
+        // No-op if the task has already been picked up by the parser executor
+        task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
     }
 
     public void schedule() {
@@ -323,9 +422,13 @@ public class BlueprintContainerImpl
                     case Unknown:
                         readDirectives();
                         eventDispatcher.blueprintEvent(new BlueprintEvent(BlueprintEvent.CREATING, getBundle(), getExtenderBundle()));
-                        parser = new Parser();
-                        parser.parse(pathList);
-                        namespaces = parser.getNamespaces();
+                        parser = parse();
+                        if (parser != null) {
+                            namespaces = parser.getNamespaces();
+                        } else {
+                            LOGGER.debug("Using cached metadata for blueprint bundle {}/{}", getBundle().getSymbolicName(), getBundle().getVersion());
+                            namespaces = new HashSet<URI>(cachedMetadata.getNamespaces());
+                        }
                         if (additionalNamespaces != null) {
                             namespaces.addAll(additionalNamespaces);
                         }
@@ -349,6 +452,26 @@ public class BlueprintContainerImpl
                             return;
                         }
                         resetComponentDefinitionRegistry();
+                        Map<String, String> handlerVersions = null;
+                        if (metadataCache != null && cacheKey != null) {
+                            handlerVersions = MetadataCache.getHandlerVersions(handlerSet);
+                            if (cachedMetadata != null) {
+                                if (cachedMetadata.getHandlerVersions().equals(handlerVersions)) {
+                                    try {
+                                        cachedMetadata.populate(componentDefinitionRegistry);
+                                        state = State.Populated;
+                                        break;
+                                    } catch (IOException e) {
+                                        LOGGER.warn("Unable to use cached metadata for blueprint bundle " + getBundle().getSymbolicName() + "/" + getBundle().getVersion(), e);
+                                    }
+                                }
+                                cachedMetadata = null;
+                            }
+                        }
+                        if (parser == null) {
+                            parser = new Parser();
+                            parser.parse(pathList, parserExecutor);
+                        }
                         if (xmlValidation == null || "true".equals(xmlValidation)) {
                             for (URI ns : handlerSet.getNamespaces()) {
                                 NamespaceHandler handler = handlerSet.getNamespaceHandler(ns);
@@ -362,13 +485,16 @@ public class BlueprintContainerImpl
                         }
                         try {
                             if (xmlValidation == null || "true".equals(xmlValidation)) {
-                                parser.validate(handlerSet.getSchema(parser.getSchemaLocations()));
+                                parser.validate(handlerSet.getSchema(parser.getSchemaLocations()), null, parserExecutor);
                             } else if ("structure".equals(xmlValidation)) {
-                                parser.validate(handlerSet.getSchema(parser.getSchemaLocations()), new ValidationHandler());
+                                parser.validate(handlerSet.getSchema(parser.getSchemaLocations()), new ValidationHandler(), parserExecutor);
                             } else if ("psvi".equals(xmlValidation)) {
-                                parser.validatePsvi(handlerSet.getSchema(parser.getSchemaLocations()));
+                                parser.validatePsvi(handlerSet.getSchema(parser.getSchemaLocations()), parserExecutor);
                             }
                             parser.populate(handlerSet, componentDefinitionRegistry);
+                            if (handlerVersions != null) {
+                                metadataCache.store(cacheKey, handlerSet.getNamespaces(), handlerVersions, componentDefinitionRegistry);
+                            }
                             state = State.Populated;
                         } catch (MissingNamespaceException e) {
                             // If we found a missing namespace when parsing the schema,
@@ -734,7 +860,11 @@ public class BlueprintContainerImpl
         }
         LOGGER.debug("Instantiating components: {}", components);
         try {
-            repository.createAll(components);
+            if (parallelInstantiation && instantiationExecutor != null) {
+                repository.createAll(components, instantiationExecutor);
+            } else {
+                repository.createAll(components);
+            }
         } catch (ComponentDefinitionException e) {
             throw e;
         } catch (Throwable t) {
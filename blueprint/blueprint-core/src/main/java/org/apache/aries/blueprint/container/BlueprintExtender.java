@@ -79,10 +79,13 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
     private static final String QUIESCE_PARTICIPANT_CLASS = "org.apache.aries.quiesce.participant.QuiesceParticipant";
     private static final String EXTENDER_THREADS_PROPERTY = "org.apache.aries.blueprint.extender.threads";
     private static final int DEFAULT_NUMBER_OF_THREADS = 3;
+    private static final String PARSER_THREADS_PROPERTY = "org.apache.aries.blueprint.parser.threads";
     private static final Logger LOGGER = LoggerFactory.getLogger(BlueprintExtender.class);
 
     private BundleContext context;
     private ScheduledExecutorService executors;
+    private ExecutorService parserExecutor;
+    private MetadataCache metadataCache;
     private final ConcurrentMap<Bundle, BlueprintContainerImpl> containers = new ConcurrentHashMap<Bundle, BlueprintContainerImpl>();
     private final ConcurrentMap<Bundle, FutureTask> destroying = new ConcurrentHashMap<Bundle, FutureTask>();
     private BlueprintEventDispatcher eventDispatcher;
@@ -118,6 +121,37 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
                 return Executors.newScheduledThreadPool(extenderThreads, new BlueprintThreadFactory(name));
             }
         });
+        int defaultParserThreads = Runtime.getRuntime().availableProcessors();
+        int parserThreads = defaultParserThreads;
+        try {
+            parserThreads = Integer.getInteger(PARSER_THREADS_PROPERTY, defaultParserThreads);
+            if (parserThreads != defaultParserThreads) {
+                LOGGER.debug(PARSER_THREADS_PROPERTY + " is set to " + parserThreads + ".");
+            }
+        }
+        catch (Exception e) {
+            LOGGER.error(PARSER_THREADS_PROPERTY + " is not a number. Using default value " + defaultParserThreads + ".");
+        }
+        // Parsing and validation of blueprint xml files is done on a dedicated pool,
+        // a value of 0 keeps parsing on the extender threads
+        if (parserThreads > 0) {
+            parserExecutor = Executors.newFixedThreadPool(parserThreads, new BlueprintThreadFactory("Blueprint Parser"));
+        }
+        // Parsed metadata can optionally be persisted in the extender data area to speed up restarts
+        if (Boolean.parseBoolean(ctx.getProperty(MetadataCache.METADATA_CACHE_PROPERTY))) {
+            File metadataCacheDir = ctx.getDataFile("metadata");
+            if (metadataCacheDir != null) {
+                metadataCache = new MetadataCache(metadataCacheDir);
+                // Drop the entries of bundles uninstalled while the extender was not running
+                Set<Long> installed = new HashSet<Long>();
+                for (Bundle b : ctx.getBundles()) {
+                    installed.add(b.getBundleId());
+                }
+                metadataCache.purge(installed);
+            } else {
+                LOGGER.warn(MetadataCache.METADATA_CACHE_PROPERTY + " is set but the framework has no file system support, metadata will not be cached.");
+            }
+        }
         eventDispatcher = new BlueprintEventDispatcher(ctx);
 
         // Ideally we'd want to only track STARTING and ACTIVE bundle, but this is not supported
@@ -210,6 +244,9 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
         this.eventDispatcher.destroy();
         this.handlers.destroy();
         executors.shutdown();
+        if (parserExecutor != null) {
+            parserExecutor.shutdown();
+        }
         LOGGER.debug("Blueprint extender stopped");
     }
 
@@ -227,6 +264,9 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
                 destroyContainer(bundle);
             }
         }
+        if (event.getType() == BundleEvent.UNINSTALLED && metadataCache != null) {
+            metadataCache.remove(bundle.getBundleId());
+        }
     }
 
     /*
@@ -323,7 +363,8 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
             BlueprintContainerImpl blueprintContainer = new BlueprintContainerImpl(bundle, bundleContext,
                                                                 context.getBundle(), eventDispatcher,
                                                                 handlers, getExecutorService(bundle),
-                                                                executors, paths, pm, namespaces);
+                                                                executors, paths, pm, namespaces, parserExecutor,
+                                                                metadataCache);
             synchronized (containers) {
                 if (containers.putIfAbsent(bundle, blueprintContainer) != null) {
                     return false;
@@ -335,6 +376,7 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
                 blueprintContainer.run();
             } else {
                 LOGGER.debug("Scheduling creation of blueprint bundle {}/{} asynchronously", bundle.getSymbolicName(), bundle.getVersion());
+                blueprintContainer.startParsing();
                 blueprintContainer.schedule();
             }
             return true;
@@ -29,11 +29,15 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.aries.blueprint.reflect.MetadataUtil;
 import org.apache.aries.blueprint.services.ExtendedBlueprintContainer;
@@ -56,6 +60,11 @@ import org.osgi.service.blueprint.reflect.ComponentMetadata;
  */
 public class BlueprintRepository implements Repository, ExecutionContext {
 
+    /**
+     * Marker for prototype components which are only created when explicitly requested
+     */
+    private static final Object NOT_CREATED = new Object();
+
     /**
      * The blueprint container
      */
@@ -194,6 +203,145 @@ public class BlueprintRepository implements Repository, ExecutionContext {
         }
     }
 
+    /**
+     * Create the given components, instantiating independent groups of components concurrently
+     * using the given executor.  Components which are connected through any kind of dependency
+     * are created by the same thread in dependency order, so that circular references are resolved
+     * the usual way and no thread ever waits for a component being created by another one.
+     * The calling thread takes part in the creation and returns once all components are created.
+     */
+    public void createAll(Collection<String> names, Executor executor) throws ComponentDefinitionException {
+        ExecutionContext oldContext = ExecutionContext.Holder.setContext(this);
+        try {
+            DependencyGraph graph = new DependencyGraph(this);
+            final LinkedHashMap<String, Recipe> sorted = graph.getSortedRecipes(names);
+            Collection<List<String>> groups = getIndependentGroups(sorted);
+            if (groups.size() <= 1) {
+                for (Map.Entry<String, Recipe> entry : sorted.entrySet()) {
+                    createComponent(entry.getKey(), entry.getValue(), names);
+                }
+                return;
+            }
+            final Collection<String> requested = names;
+            List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>();
+            for (final List<String> group : groups) {
+                FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        ExecutionContext oldContext = ExecutionContext.Holder.setContext(BlueprintRepository.this);
+                        try {
+                            for (String name : group) {
+                                createComponent(name, sorted.get(name), requested);
+                            }
+                            return null;
+                        } finally {
+                            ExecutionContext.Holder.setContext(oldContext);
+                        }
+                    }
+                });
+                tasks.add(task);
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // The task will be run by the calling thread
+                }
+            }
+            // Run the groups that have not been picked up by the executor yet
+            for (FutureTask<Void> task : tasks) {
+                task.run();
+            }
+            Throwable failure = null;
+            for (FutureTask<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ComponentDefinitionException("Interrupted while creating components", e);
+                }
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new ComponentDefinitionException("Unable to instantiate components", failure);
+            }
+        } finally {
+            ExecutionContext.Holder.setContext(oldContext);
+        }
+    }
+
+    /**
+     * Split the sorted recipes into groups which do not share any dependency, keeping the
+     * dependency order within each group.  Recipes without dependencies of their own can not
+     * be part of a cycle and are safely shared between groups.
+     */
+    private Collection<List<String>> getIndependentGroups(LinkedHashMap<String, Recipe> sorted) {
+        Map<String, String> parents = new HashMap<String, String>();
+        for (Map.Entry<String, Recipe> entry : sorted.entrySet()) {
+            String name = entry.getKey();
+            parents.put(name, name);
+            Set<Recipe> visited = new HashSet<Recipe>();
+            LinkedList<Recipe> toVisit = new LinkedList<Recipe>(entry.getValue().getDependencies());
+            while (!toVisit.isEmpty()) {
+                Recipe recipe = toVisit.removeFirst();
+                if (recipe == null || !visited.add(recipe)) {
+                    continue;
+                }
+                List<Recipe> dependencies = recipe.getDependencies();
+                String dependency = recipe.getName();
+                if (dependency != null && getRecipe(dependency) == recipe) {
+                    if (dependencies.isEmpty()) {
+                        continue;
+                    }
+                    union(parents, name, dependency);
+                    if (sorted.containsKey(dependency)) {
+                        // its own dependencies are visited separately
+                        continue;
+                    }
+                }
+                toVisit.addAll(dependencies);
+            }
+        }
+        Map<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+        for (String name : sorted.keySet()) {
+            String root = find(parents, name);
+            List<String> group = groups.get(root);
+            if (group == null) {
+                group = new ArrayList<String>();
+                groups.put(root, group);
+            }
+            group.add(name);
+        }
+        return groups.values();
+    }
+
+    private static String find(Map<String, String> parents, String name) {
+        String parent = parents.get(name);
+        if (parent == null) {
+            parents.put(name, name);
+            return name;
+        }
+        while (!parent.equals(name)) {
+            String grandParent = parents.get(parent);
+            parents.put(name, grandParent);
+            name = parent;
+            parent = grandParent;
+        }
+        return name;
+    }
+
+    private static void union(Map<String, String> parents, String name1, String name2) {
+        String root1 = find(parents, name1);
+        String root2 = find(parents, name2);
+        if (!root1.equals(root2)) {
+            parents.put(root2, root1);
+        }
+    }
+
     public <T> List<T> getAllRecipes(Class<T> clazz, String... names) {
         List<T> recipes = new ArrayList<T>();
         for (Recipe r : getAllRecipes(names)) {
@@ -351,17 +499,23 @@ public class BlueprintRepository implements Repository, ExecutionContext {
         HashMap<String, Object> objects = new LinkedHashMap<String, Object>();
         for (Map.Entry<String, Recipe> entry : graph.getSortedRecipes(names).entrySet()) {
             String name = entry.getKey();
-            ComponentMetadata component = blueprintContainer.getComponentDefinitionRegistry().getComponentDefinition(name);
-            boolean prototype = (component instanceof BeanMetadata)
-                    && MetadataUtil.isPrototypeScope((BeanMetadata) component);
-            if (!prototype || names.contains(name)) {
-                objects.put(
-                        name,
-                        entry.getValue().create());
+            Object object = createComponent(name, entry.getValue(), names);
+            if (object != NOT_CREATED) {
+                objects.put(name, object);
             }
         }
         return objects;
     }
+
+    private Object createComponent(String name, Recipe recipe, Collection<String> names) {
+        ComponentMetadata component = blueprintContainer.getComponentDefinitionRegistry().getComponentDefinition(name);
+        boolean prototype = (component instanceof BeanMetadata)
+                && MetadataUtil.isPrototypeScope((BeanMetadata) component);
+        if (!prototype || names.contains(name)) {
+            return recipe.create();
+        }
+        return NOT_CREATED;
+    }
         
     public void validate() {
         for (Recipe recipe : getAllRecipes()) {
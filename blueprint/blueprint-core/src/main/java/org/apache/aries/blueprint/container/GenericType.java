@@ -26,6 +26,7 @@ import java.lang.reflect.WildcardType;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -212,6 +213,13 @@ public class GenericType extends ReifiedType {
         }
     }
 
+    public int hashCode() {
+        int result = getRawClass().hashCode();
+        result = 31 * result + (boundType != null ? boundType.hashCode() : 0);
+        result = 31 * result + Arrays.hashCode(parameters);
+        return result;
+    }
+
     static ReifiedType bound(ReifiedType type) {
         if (type instanceof GenericType
                 && ((GenericType) type).boundType != BoundType.Exact) {
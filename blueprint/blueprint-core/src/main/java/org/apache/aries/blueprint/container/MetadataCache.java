@@ -0,0 +1,824 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.container;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.aries.blueprint.ComponentDefinitionRegistry;
+import org.apache.aries.blueprint.NamespaceHandler;
+import org.apache.aries.blueprint.PassThroughMetadata;
+import org.apache.aries.blueprint.parser.NamespaceHandlerSet;
+import org.apache.aries.blueprint.reflect.BeanArgumentImpl;
+import org.apache.aries.blueprint.reflect.BeanMetadataImpl;
+import org.apache.aries.blueprint.reflect.BeanPropertyImpl;
+import org.apache.aries.blueprint.reflect.CollectionMetadataImpl;
+import org.apache.aries.blueprint.reflect.ComponentMetadataImpl;
+import org.apache.aries.blueprint.reflect.IdRefMetadataImpl;
+import org.apache.aries.blueprint.reflect.MapEntryImpl;
+import org.apache.aries.blueprint.reflect.MapMetadataImpl;
+import org.apache.aries.blueprint.reflect.PropsMetadataImpl;
+import org.apache.aries.blueprint.reflect.RefMetadataImpl;
+import org.apache.aries.blueprint.reflect.ReferenceListMetadataImpl;
+import org.apache.aries.blueprint.reflect.ReferenceListenerImpl;
+import org.apache.aries.blueprint.reflect.ReferenceMetadataImpl;
+import org.apache.aries.blueprint.reflect.RegistrationListenerImpl;
+import org.apache.aries.blueprint.reflect.ServiceMetadataImpl;
+import org.apache.aries.blueprint.reflect.ServiceReferenceMetadataImpl;
+import org.apache.aries.blueprint.reflect.ValueMetadataImpl;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.service.blueprint.reflect.BeanArgument;
+import org.osgi.service.blueprint.reflect.BeanProperty;
+import org.osgi.service.blueprint.reflect.ComponentMetadata;
+import org.osgi.service.blueprint.reflect.MapEntry;
+import org.osgi.service.blueprint.reflect.Metadata;
+import org.osgi.service.blueprint.reflect.NonNullMetadata;
+import org.osgi.service.blueprint.reflect.NullMetadata;
+import org.osgi.service.blueprint.reflect.ReferenceListener;
+import org.osgi.service.blueprint.reflect.RegistrationListener;
+import org.osgi.service.blueprint.reflect.Target;
+import org.osgi.service.blueprint.reflect.ValueMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of the metadata parsed from the blueprint xml files of a bundle.
+ *
+ * Entries are stored in one file per bundle and are keyed by a digest of the bundle id, its last
+ * modification time and the location, last modification time and length of its blueprint xml files,
+ * so that the xml files are not read when the cached metadata can be used.  Entries are deleted when
+ * they are found to be stale, when the bundle is uninstalled and, for bundles uninstalled while the
+ * extender was not running, when the extender starts.  The versions of the namespace
+ * handlers used when populating the registry are stored along with the metadata and must match
+ * the current ones for the entry to be used.
+ *
+ * Only the standard metadata created by the parser can be stored: bundles using custom metadata,
+ * pass through metadata or interceptors are not cached and are always parsed.
+ */
+public class MetadataCache {
+
+    public static final String METADATA_CACHE_PROPERTY = "org.apache.aries.blueprint.metadata.cache";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataCache.class);
+
+    private static final int MAGIC = 0x42504d43;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Set<String> BUILTIN_COMPONENTS = new HashSet<String>(Arrays.asList(
+            "blueprintContainer", "blueprintBundle", "blueprintBundleContext", "blueprintConverter"));
+
+    private static final int OP_END = 0;
+    private static final int OP_COMPONENT = 1;
+    private static final int OP_CONVERTER_COMPONENT = 2;
+    private static final int OP_CONVERTER = 3;
+
+    private static final int NULL_REF = 0;
+    private static final int NULL_METADATA = 1;
+    private static final int VALUE = 2;
+    private static final int REF = 3;
+    private static final int IDREF = 4;
+    private static final int COLLECTION = 5;
+    private static final int MAP = 6;
+    private static final int PROPS = 7;
+    private static final int BEAN = 8;
+    private static final int REFERENCE = 9;
+    private static final int REFERENCE_LIST = 10;
+    private static final int SERVICE = 11;
+
+    private static final String SUFFIX = ".metadata";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File directory;
+
+    public MetadataCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Compute the key identifying the current content of the given blueprint xml files.
+     */
+    public Key createKey(Bundle bundle, List<URL> pathList) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 is not available: " + e.getMessage());
+        }
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(header);
+        dos.writeInt(FORMAT_VERSION);
+        dos.writeLong(bundle.getBundleId());
+        dos.writeLong(bundle.getLastModified());
+        dos.writeUTF(getBundleVersion(MetadataCache.class));
+        dos.writeInt(pathList.size());
+        for (URL url : pathList) {
+            // Only the connection headers are needed, the content is read by the parser on a miss
+            URLConnection connection = url.openConnection();
+            dos.writeUTF(url.toExternalForm());
+            dos.writeLong(connection.getLastModified());
+            dos.writeInt(connection.getContentLength());
+        }
+        dos.flush();
+        digest.update(header.toByteArray());
+        return new Key(bundle.getBundleId(), digest.digest());
+    }
+
+    /**
+     * Load the cached metadata for the given key.
+     *
+     * @return the cached entry or <code>null</code> if none is available
+     */
+    public Entry load(Key key) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        boolean stale = false;
+        try {
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION
+                        || !Arrays.equals(key.digest, readBytes(dis))) {
+                    LOGGER.debug("Discarding stale cached metadata for bundle {}", key.bundleId);
+                    stale = true;
+                    return null;
+                }
+                int nbNamespaces = dis.readInt();
+                Set<URI> namespaces = new LinkedHashSet<URI>();
+                for (int i = 0; i < nbNamespaces; i++) {
+                    namespaces.add(URI.create(dis.readUTF()));
+                }
+                int nbHandlers = dis.readInt();
+                Map<String, String> handlerVersions = new TreeMap<String, String>();
+                for (int i = 0; i < nbHandlers; i++) {
+                    handlerVersions.put(dis.readUTF(), dis.readUTF());
+                }
+                byte[] components = readBytes(dis);
+                return new Entry(namespaces, handlerVersions, components);
+            } finally {
+                dis.close();
+                if (stale) {
+                    file.delete();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read cached metadata for bundle " + key.bundleId, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Delete the cached metadata of the given bundle.
+     */
+    public void remove(long bundleId) {
+        new File(directory, bundleId + SUFFIX).delete();
+    }
+
+    /**
+     * Delete the cached metadata of the bundles that are not installed anymore, along with any
+     * temporary file left over by an interrupted store.
+     *
+     * @param installed the ids of the installed bundles
+     */
+    public void purge(Set<Long> installed) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            boolean delete = true;
+            if (name.endsWith(SUFFIX)) {
+                try {
+                    delete = !installed.contains(Long.valueOf(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not a cache entry
+                }
+            }
+            if (delete) {
+                LOGGER.debug("Deleting obsolete cached metadata {}", file);
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Store the content of the given registry, if it only contains metadata supported by the cache.
+     *
+     * @return <code>true</code> if the metadata has been stored
+     */
+    public boolean store(Key key, Set<URI> namespaces, Map<String, String> handlerVersions, ComponentDefinitionRegistry registry) {
+        File file = getFile(key);
+        byte[] components;
+        try {
+            components = writeRegistry(registry);
+        } catch (UncacheableMetadataException e) {
+            LOGGER.debug("Metadata for bundle {} can not be cached: {}", key.bundleId, e.getMessage());
+            file.delete();
+            return false;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to cache metadata for bundle " + key.bundleId, e);
+            file.delete();
+            return false;
+        }
+        File tmp = new File(directory, file.getName() + TMP_SUFFIX);
+        try {
+            directory.mkdirs();
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                dos.writeInt(MAGIC);
+                dos.writeInt(FORMAT_VERSION);
+                writeBytes(dos, key.digest);
+                dos.writeInt(namespaces.size());
+                for (URI ns : namespaces) {
+                    dos.writeUTF(ns.toString());
+                }
+                dos.writeInt(handlerVersions.size());
+                for (Map.Entry<String, String> entry : handlerVersions.entrySet()) {
+                    dos.writeUTF(entry.getKey());
+                    dos.writeUTF(entry.getValue());
+                }
+                writeBytes(dos, components);
+            } finally {
+                dos.close();
+            }
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to cache metadata for bundle " + key.bundleId, e);
+            tmp.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Compute a description of the namespace handlers used by a blueprint bundle so that
+     * cached metadata is discarded when any of those handlers is updated.
+     */
+    public static Map<String, String> getHandlerVersions(NamespaceHandlerSet handlerSet) {
+        Map<String, String> versions = new TreeMap<String, String>();
+        for (URI ns : handlerSet.getNamespaces()) {
+            NamespaceHandler handler = handlerSet.getNamespaceHandler(ns);
+            versions.put(ns.toString(), handler != null ? handler.getClass().getName() + "@" + getBundleVersion(handler.getClass()) : "");
+        }
+        return versions;
+    }
+
+    private static String getBundleVersion(Class<?> clazz) {
+        Bundle bundle = null;
+        try {
+            bundle = FrameworkUtil.getBundle(clazz);
+        } catch (Throwable t) {
+            // Not running inside an OSGi framework
+        }
+        if (bundle == null) {
+            return "";
+        }
+        return bundle.getSymbolicName() + "/" + bundle.getVersion() + "/" + bundle.getLastModified();
+    }
+
+    private File getFile(Key key) {
+        return new File(directory, key.bundleId + SUFFIX);
+    }
+
+    private static byte[] readBytes(DataInputStream dis) throws IOException {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream dos, byte[] bytes) throws IOException {
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    //
+    // Serialization of the registry content
+    //
+
+    static byte[] writeRegistry(ComponentDefinitionRegistry registry) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        List<Target> converters = registry.getTypeConverters();
+        // Components and type converters are written in a single sequence, which preserves the order
+        // of both the components and the converters when registered again
+        int nextConverter = 0;
+        for (String name : registry.getComponentDefinitionNames()) {
+            ComponentMetadata component = registry.getComponentDefinition(name);
+            if (component instanceof PassThroughMetadata && BUILTIN_COMPONENTS.contains(name)) {
+                continue;
+            }
+            if (!registry.getInterceptors(component).isEmpty()) {
+                throw new UncacheableMetadataException("component " + name + " has interceptors");
+            }
+            int index = indexOf(converters, component);
+            if (index >= 0) {
+                if (index < nextConverter) {
+                    throw new UncacheableMetadataException("type converters are not registered in order");
+                }
+                for (; nextConverter < index; nextConverter++) {
+                    writeConverter(out, converters.get(nextConverter));
+                }
+                nextConverter++;
+                out.writeByte(OP_CONVERTER_COMPONENT);
+            } else {
+                out.writeByte(OP_COMPONENT);
+            }
+            writeMetadata(out, component);
+        }
+        for (; nextConverter < converters.size(); nextConverter++) {
+            writeConverter(out, converters.get(nextConverter));
+        }
+        out.writeByte(OP_END);
+        out.flush();
+        return baos.toByteArray();
+    }
+
+    static void readRegistry(byte[] data, ComponentDefinitionRegistry registry) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        // Read everything first so that the registry is left untouched if the data is corrupted
+        List<Integer> ops = new ArrayList<Integer>();
+        List<Metadata> metadatas = new ArrayList<Metadata>();
+        for (int op = in.readByte(); op != OP_END; op = in.readByte()) {
+            ops.add(op);
+            metadatas.add(readMetadata(in));
+        }
+        for (int i = 0; i < ops.size(); i++) {
+            if (ops.get(i) == OP_COMPONENT) {
+                registry.registerComponentDefinition((ComponentMetadata) metadatas.get(i));
+            } else {
+                registry.registerTypeConverter((Target) metadatas.get(i));
+            }
+        }
+    }
+
+    private static int indexOf(List<Target> converters, ComponentMetadata component) {
+        for (int i = 0; i < converters.size(); i++) {
+            if (converters.get(i) == component) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void writeConverter(DataOutputStream out, Target converter) throws IOException {
+        if (converter instanceof ComponentMetadata) {
+            throw new UncacheableMetadataException("type converter " + ((ComponentMetadata) converter).getId() + " is not a registered component");
+        }
+        out.writeByte(OP_CONVERTER);
+        writeMetadata(out, converter);
+    }
+
+    private static void writeMetadata(DataOutputStream out, Metadata metadata) throws IOException {
+        if (metadata == null) {
+            out.writeByte(NULL_REF);
+        } else if (metadata instanceof NullMetadata) {
+            out.writeByte(NULL_METADATA);
+        } else if (metadata.getClass() == ValueMetadataImpl.class) {
+            ValueMetadataImpl value = (ValueMetadataImpl) metadata;
+            if (value.getValue() != null) {
+                throw new UncacheableMetadataException("value metadata holds an object");
+            }
+            out.writeByte(VALUE);
+            writeString(out, value.getStringValue());
+            writeString(out, value.getType());
+        } else if (metadata.getClass() == RefMetadataImpl.class) {
+            out.writeByte(REF);
+            writeString(out, ((RefMetadataImpl) metadata).getComponentId());
+        } else if (metadata.getClass() == IdRefMetadataImpl.class) {
+            out.writeByte(IDREF);
+            writeString(out, ((IdRefMetadataImpl) metadata).getComponentId());
+        } else if (metadata.getClass() == CollectionMetadataImpl.class) {
+            CollectionMetadataImpl collection = (CollectionMetadataImpl) metadata;
+            out.writeByte(COLLECTION);
+            writeCollectionClass(out, collection.getCollectionClass());
+            writeString(out, collection.getValueType());
+            out.writeInt(collection.getValues().size());
+            for (Metadata value : collection.getValues()) {
+                writeMetadata(out, value);
+            }
+        } else if (metadata.getClass() == MapMetadataImpl.class) {
+            MapMetadataImpl map = (MapMetadataImpl) metadata;
+            out.writeByte(MAP);
+            writeString(out, map.getKeyType());
+            writeString(out, map.getValueType());
+            writeEntries(out, map.getEntries());
+        } else if (metadata.getClass() == PropsMetadataImpl.class) {
+            out.writeByte(PROPS);
+            writeEntries(out, ((PropsMetadataImpl) metadata).getEntries());
+        } else if (metadata.getClass() == BeanMetadataImpl.class) {
+            out.writeByte(BEAN);
+            writeBean(out, (BeanMetadataImpl) metadata);
+        } else if (metadata.getClass() == ReferenceMetadataImpl.class) {
+            ReferenceMetadataImpl reference = (ReferenceMetadataImpl) metadata;
+            if (reference.getProxyChildBeanClasses() != null && !reference.getProxyChildBeanClasses().isEmpty()) {
+                throw new UncacheableMetadataException("reference " + reference.getId() + " uses proxy child bean classes");
+            }
+            out.writeByte(REFERENCE);
+            writeServiceReference(out, reference);
+            out.writeLong(reference.getTimeout());
+            writeString(out, reference.getDefaultBean());
+            writeStrings(out, reference.getExtraInterfaces());
+            out.writeInt(reference.getDamping());
+            out.writeInt(reference.getLifecycle());
+        } else if (metadata.getClass() == ReferenceListMetadataImpl.class) {
+            ReferenceListMetadataImpl referenceList = (ReferenceListMetadataImpl) metadata;
+            out.writeByte(REFERENCE_LIST);
+            writeServiceReference(out, referenceList);
+            out.writeInt(referenceList.getMemberType());
+        } else if (metadata.getClass() == ServiceMetadataImpl.class) {
+            out.writeByte(SERVICE);
+            writeService(out, (ServiceMetadataImpl) metadata);
+        } else {
+            throw new UncacheableMetadataException("unsupported metadata " + metadata.getClass().getName());
+        }
+    }
+
+    private static Metadata readMetadata(DataInputStream in) throws IOException {
+        int type = in.readByte();
+        switch (type) {
+            case NULL_REF:
+                return null;
+            case NULL_METADATA:
+                return NullMetadata.NULL;
+            case VALUE:
+                return new ValueMetadataImpl(readString(in), readString(in));
+            case REF:
+                return new RefMetadataImpl(readString(in));
+            case IDREF:
+                return new IdRefMetadataImpl(readString(in));
+            case COLLECTION: {
+                Class collectionClass = readCollectionClass(in);
+                String valueType = readString(in);
+                int size = in.readInt();
+                List<Metadata> values = new ArrayList<Metadata>(size);
+                for (int i = 0; i < size; i++) {
+                    values.add(readMetadata(in));
+                }
+                return new CollectionMetadataImpl(collectionClass, valueType, values);
+            }
+            case MAP: {
+                String keyType = readString(in);
+                String valueType = readString(in);
+                return new MapMetadataImpl(keyType, valueType, readEntries(in));
+            }
+            case PROPS:
+                return new PropsMetadataImpl(readEntries(in));
+            case BEAN:
+                return readBean(in);
+            case REFERENCE: {
+                ReferenceMetadataImpl reference = new ReferenceMetadataImpl();
+                readServiceReference(in, reference);
+                reference.setTimeout(in.readLong());
+                reference.setDefaultBean(readString(in));
+                reference.setExtraInterfaces(readStrings(in));
+                reference.setDamping(in.readInt());
+                reference.setLifecycle(in.readInt());
+                return reference;
+            }
+            case REFERENCE_LIST: {
+                ReferenceListMetadataImpl referenceList = new ReferenceListMetadataImpl();
+                readServiceReference(in, referenceList);
+                referenceList.setMemberType(in.readInt());
+                return referenceList;
+            }
+            case SERVICE:
+                return readService(in);
+            default:
+                throw new IOException("Unknown metadata type " + type);
+        }
+    }
+
+    private static void writeComponent(DataOutputStream out, ComponentMetadataImpl component) throws IOException {
+        writeString(out, component.getId());
+        out.writeInt(component.getActivation());
+        writeStrings(out, component.getDependsOn());
+    }
+
+    private static void readComponent(DataInputStream in, ComponentMetadataImpl component) throws IOException {
+        component.setId(readString(in));
+        component.setActivation(in.readInt());
+        component.setDependsOn(readStrings(in));
+    }
+
+    private static void writeBean(DataOutputStream out, BeanMetadataImpl bean) throws IOException {
+        if (bean.getRuntimeClass() != null) {
+            throw new UncacheableMetadataException("bean " + bean.getId() + " uses a runtime class");
+        }
+        writeComponent(out, bean);
+        writeString(out, bean.getClassName());
+        writeString(out, bean.getInitMethod());
+        writeString(out, bean.getDestroyMethod());
+        out.writeInt(bean.getArguments().size());
+        for (BeanArgument argument : bean.getArguments()) {
+            if (argument.getClass() != BeanArgumentImpl.class) {
+                throw new UncacheableMetadataException("unsupported argument " + argument.getClass().getName());
+            }
+            writeMetadata(out, argument.getValue());
+            writeString(out, argument.getValueType());
+            out.writeInt(argument.getIndex());
+        }
+        out.writeInt(bean.getProperties().size());
+        for (BeanProperty property : bean.getProperties()) {
+            if (property.getClass() != BeanPropertyImpl.class) {
+                throw new UncacheableMetadataException("unsupported property " + property.getClass().getName());
+            }
+            writeString(out, property.getName());
+            writeMetadata(out, property.getValue());
+        }
+        writeString(out, bean.getFactoryMethod());
+        writeMetadata(out, bean.getFactoryComponent());
+        writeString(out, bean.getScope());
+        out.writeBoolean(bean.isProcessor());
+        out.writeBoolean(bean.getFieldInjection());
+        out.writeBoolean(bean.getRawConversion());
+        out.writeBoolean(bean.getNonStandardSetters());
+    }
+
+    private static BeanMetadataImpl readBean(DataInputStream in) throws IOException {
+        BeanMetadataImpl bean = new BeanMetadataImpl();
+        readComponent(in, bean);
+        bean.setClassName(readString(in));
+        bean.setInitMethod(readString(in));
+        bean.setDestroyMethod(readString(in));
+        int nbArguments = in.readInt();
+        for (int i = 0; i < nbArguments; i++) {
+            Metadata value = readMetadata(in);
+            String valueType = readString(in);
+            bean.addArgument(new BeanArgumentImpl(value, valueType, in.readInt()));
+        }
+        int nbProperties = in.readInt();
+        for (int i = 0; i < nbProperties; i++) {
+            String name = readString(in);
+            bean.addProperty(new BeanPropertyImpl(name, readMetadata(in)));
+        }
+        bean.setFactoryMethod(readString(in));
+        bean.setFactoryComponent((Target) readMetadata(in));
+        bean.setScope(readString(in));
+        bean.setProcessor(in.readBoolean());
+        bean.setFieldInjection(in.readBoolean());
+        bean.setRawConversion(in.readBoolean());
+        bean.setNonStandardSetters(in.readBoolean());
+        return bean;
+    }
+
+    private static void writeServiceReference(DataOutputStream out, ServiceReferenceMetadataImpl reference) throws IOException {
+        if (reference.getRuntimeInterface() != null || reference.getBundleContext() != null) {
+            throw new UncacheableMetadataException("reference " + reference.getId() + " uses a runtime interface or bundle context");
+        }
+        writeComponent(out, reference);
+        out.writeInt(reference.getAvailability());
+        writeString(out, reference.getInterface());
+        writeString(out, reference.getComponentName());
+        writeString(out, reference.getFilter());
+        out.writeInt(reference.getReferenceListeners().size());
+        for (ReferenceListener listener : reference.getReferenceListeners()) {
+            if (listener.getClass() != ReferenceListenerImpl.class) {
+                throw new UncacheableMetadataException("unsupported reference listener " + listener.getClass().getName());
+            }
+            writeMetadata(out, listener.getListenerComponent());
+            writeString(out, listener.getBindMethod());
+            writeString(out, listener.getUnbindMethod());
+        }
+        out.writeInt(reference.getProxyMethod());
+        writeMetadata(out, reference.getExtendedFilter());
+    }
+
+    private static void readServiceReference(DataInputStream in, ServiceReferenceMetadataImpl reference) throws IOException {
+        readComponent(in, reference);
+        reference.setAvailability(in.readInt());
+        reference.setInterface(readString(in));
+        reference.setComponentName(readString(in));
+        reference.setFilter(readString(in));
+        int nbListeners = in.readInt();
+        for (int i = 0; i < nbListeners; i++) {
+            Target listenerComponent = (Target) readMetadata(in);
+            String bindMethod = readString(in);
+            reference.addServiceListener(new ReferenceListenerImpl(listenerComponent, bindMethod, readString(in)));
+        }
+        reference.setProxyMethod(in.readInt());
+        reference.setExtendedFilter((ValueMetadata) readMetadata(in));
+    }
+
+    private static void writeService(DataOutputStream out, ServiceMetadataImpl service) throws IOException {
+        writeComponent(out, service);
+        writeMetadata(out, service.getServiceComponent());
+        writeStrings(out, service.getInterfaces());
+        out.writeInt(service.getAutoExport());
+        writeEntries(out, service.getServiceProperties());
+        out.writeInt(service.getRanking());
+        out.writeInt(service.getRegistrationListeners().size());
+        for (RegistrationListener listener : service.getRegistrationListeners()) {
+            if (listener.getClass() != RegistrationListenerImpl.class) {
+                throw new UncacheableMetadataException("unsupported registration listener " + listener.getClass().getName());
+            }
+            writeMetadata(out, listener.getListenerComponent());
+            writeString(out, listener.getRegistrationMethod());
+            writeString(out, listener.getUnregistrationMethod());
+        }
+    }
+
+    private static ServiceMetadataImpl readService(DataInputStream in) throws IOException {
+        ServiceMetadataImpl service = new ServiceMetadataImpl();
+        readComponent(in, service);
+        service.setServiceComponent((Target) readMetadata(in));
+        service.setInterfaceNames(readStrings(in));
+        service.setAutoExport(in.readInt());
+        service.setServiceProperties(readEntries(in));
+        service.setRanking(in.readInt());
+        int nbListeners = in.readInt();
+        for (int i = 0; i < nbListeners; i++) {
+            Target listenerComponent = (Target) readMetadata(in);
+            String registrationMethod = readString(in);
+            service.addRegistrationListener(new RegistrationListenerImpl(listenerComponent, registrationMethod, readString(in)));
+        }
+        return service;
+    }
+
+    private static void writeEntries(DataOutputStream out, List<MapEntry> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (MapEntry entry : entries) {
+            if (entry.getClass() != MapEntryImpl.class) {
+                throw new UncacheableMetadataException("unsupported map entry " + entry.getClass().getName());
+            }
+            writeMetadata(out, entry.getKey());
+            writeMetadata(out, entry.getValue());
+        }
+    }
+
+    private static List<MapEntry> readEntries(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<MapEntry> entries = new ArrayList<MapEntry>(size);
+        for (int i = 0; i < size; i++) {
+            NonNullMetadata key = (NonNullMetadata) readMetadata(in);
+            entries.add(new MapEntryImpl(key, readMetadata(in)));
+        }
+        return entries;
+    }
+
+    private static void writeCollectionClass(DataOutputStream out, Class collectionClass) throws IOException {
+        if (collectionClass == null) {
+            out.writeByte(0);
+        } else if (collectionClass == List.class) {
+            out.writeByte(1);
+        } else if (collectionClass == Set.class) {
+            out.writeByte(2);
+        } else if (collectionClass == Object[].class) {
+            out.writeByte(3);
+        } else {
+            throw new UncacheableMetadataException("unsupported collection class " + collectionClass.getName());
+        }
+    }
+
+    private static Class readCollectionClass(DataInputStream in) throws IOException {
+        int type = in.readByte();
+        switch (type) {
+            case 0:
+                return null;
+            case 1:
+                return List.class;
+            case 2:
+                return Set.class;
+            case 3:
+                return Object[].class;
+            default:
+                throw new IOException("Unknown collection class " + type);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        if (strings == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                writeString(out, s);
+            }
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> strings = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            // Do not use writeUTF which is limited to 64k
+            writeBytes(out, s.getBytes("UTF-8"));
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Identifies the content of the blueprint xml files of a bundle.
+     */
+    public static final class Key {
+        private final long bundleId;
+        private final byte[] digest;
+
+        Key(long bundleId, byte[] digest) {
+            this.bundleId = bundleId;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * Metadata loaded from the cache.
+     */
+    public static final class Entry {
+        private final Set<URI> namespaces;
+        private final Map<String, String> handlerVersions;
+        private final byte[] components;
+
+        Entry(Set<URI> namespaces, Map<String, String> handlerVersions, byte[] components) {
+            this.namespaces = Collections.unmodifiableSet(namespaces);
+            this.handlerVersions = Collections.unmodifiableMap(handlerVersions);
+            this.components = components;
+        }
+
+        public Set<URI> getNamespaces() {
+            return namespaces;
+        }
+
+        public Map<String, String> getHandlerVersions() {
+            return handlerVersions;
+        }
+
+        /**
+         * Register new instances of the cached metadata in the given registry.
+         */
+        public void populate(ComponentDefinitionRegistry registry) throws IOException {
+            readRegistry(components, registry);
+        }
+    }
+
+    private static final class UncacheableMetadataException extends IOException {
+        UncacheableMetadataException(String message) {
+            super(message);
+        }
+    }
+
+}
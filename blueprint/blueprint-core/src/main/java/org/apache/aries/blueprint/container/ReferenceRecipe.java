@@ -64,6 +64,8 @@ public class ReferenceRecipe extends AbstractServiceReferenceRecipe {
     private final Object monitor = new Object();
     private volatile ServiceReference trackedServiceReference;
     private volatile Object trackedService;
+    /** Snapshot of the bound reference and service, read without locking on the dispatch path */
+    private volatile BoundService boundService;
     private Object defaultBean;
 
     private final Collection<Class<?>> proxyChildBeanClasses;
@@ -190,6 +192,9 @@ public class ReferenceRecipe extends AbstractServiceReferenceRecipe {
         LOGGER.debug("Binding reference {} to {}", getName(), ref);
         synchronized (monitor) {
             ServiceReference oldReference = trackedServiceReference;
+            if (ref != oldReference) {
+                boundService = null;
+            }
             trackedServiceReference = ref;
             voidProxiedChildren();
             bind(trackedServiceReference, proxy);
@@ -211,6 +216,7 @@ public class ReferenceRecipe extends AbstractServiceReferenceRecipe {
         LOGGER.debug("Unbinding reference {}", getName());
         synchronized (monitor) {
             if (trackedServiceReference != null) {
+                boundService = null;
                 unbind(trackedServiceReference, proxy);
                 ServiceReference oldReference = trackedServiceReference;
                 trackedServiceReference = null;
@@ -229,6 +235,19 @@ public class ReferenceRecipe extends AbstractServiceReferenceRecipe {
     }
 
     private Object getService() throws InterruptedException {
+        // Fast path: the service is already bound, no need to go through the monitor
+        BoundService bound = boundService;
+        if (bound != null) {
+            return bound.service;
+        }
+        return lookupService();
+    }
+
+    /**
+     * Looks the service up under the monitor, waiting for it if needed.
+     * Package private so that the dispatch benchmark can compare against it.
+     */
+    Object lookupService() throws InterruptedException {
         synchronized (monitor) {
             if (isStarted() && trackedServiceReference == null && metadata.getTimeout() > 0
                     && metadata.getAvailability() == ServiceReferenceMetadata.AVAILABILITY_MANDATORY) {
@@ -286,6 +305,9 @@ public class ReferenceRecipe extends AbstractServiceReferenceRecipe {
                 }
 
                 result = trackedService;
+                if (boundService == null) {
+                    boundService = new BoundService(trackedServiceReference, trackedService);
+                }
             }
             return result;
         }
@@ -299,6 +321,10 @@ public class ReferenceRecipe extends AbstractServiceReferenceRecipe {
     }
 
     private ServiceReference getServiceReference() throws InterruptedException {
+        BoundService bound = boundService;
+        if (bound != null) {
+            return bound.reference;
+        }
         synchronized (monitor) {
             if (!optional) {
                 getService();
@@ -335,6 +361,23 @@ public class ReferenceRecipe extends AbstractServiceReferenceRecipe {
         return proxyChildBeanClasses;
     }
 
+    /**
+     * Immutable pair of a bound service reference and the service object obtained for it.
+     * It is published only once the service has been retrieved and cleared whenever the
+     * reference is rebound or unbound.
+     */
+    private static final class BoundService {
+
+        private final ServiceReference reference;
+        private final Object service;
+
+        BoundService(ServiceReference reference, Object service) {
+            this.reference = reference;
+            this.service = service;
+        }
+
+    }
+
     public class ServiceDispatcher implements Callable<Object> {
 
         public Object call() throws Exception {
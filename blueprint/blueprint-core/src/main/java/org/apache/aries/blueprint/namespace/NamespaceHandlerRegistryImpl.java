@@ -25,18 +25,26 @@ import static org.apache.aries.blueprint.parser.Parser.BLUEPRINT_NAMESPACE;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Reader;
-import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
@@ -50,6 +58,7 @@ import javax.xml.validation.SchemaFactory;
 
 import org.apache.aries.blueprint.NamespaceHandler;
 import org.apache.aries.blueprint.ParserContext;
+import org.apache.aries.blueprint.container.BlueprintThreadFactory;
 import org.apache.aries.blueprint.container.NamespaceHandlerRegistry;
 import org.apache.aries.blueprint.parser.NamespaceHandlerSet;
 import org.osgi.framework.Bundle;
@@ -80,6 +89,11 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
     
     public static final String NAMESPACE = "osgi.service.blueprint.namespace";
 
+    public static final String SCHEMA_CACHE_SIZE_PROPERTY = "org.apache.aries.blueprint.schema.cache.size";
+    public static final String SCHEMA_CACHE_SOFT_PROPERTY = "org.apache.aries.blueprint.schema.cache.soft";
+    public static final String SCHEMA_PRECOMPILE_PROPERTY = "org.apache.aries.blueprint.schema.precompile";
+    public static final int DEFAULT_SCHEMA_CACHE_SIZE = 32;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(NamespaceHandlerRegistryImpl.class);
 
     // The bundle context is thread safe
@@ -92,24 +106,67 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
     private final ConcurrentHashMap<URI, CopyOnWriteArraySet<NamespaceHandler>> handlers =
                         new ConcurrentHashMap<URI, CopyOnWriteArraySet<NamespaceHandler>>();
 
-    // Access to the LRU schemas map is synchronized on itself
-    private final LRUMap<Map<URI, NamespaceHandler>, Reference<Schema>> schemas =
-                        new LRUMap<Map<URI, NamespaceHandler>, Reference<Schema>>(10);
+    // Access to the LRU schemas map is synchronized on itself, schemas are compiled outside of the lock.
+    // Schemas are keyed by namespace set, each entry remembers the handlers it was compiled from since
+    // the schema of a namespace depends on the handler chosen for it.
+    private final Map<Set<URI>, CachedSchema> schemas;
+
+    // Whether cached schemas can be reclaimed by the garbage collector before being evicted
+    private final boolean softSchemas;
+
+    // Schemas being compiled, so that concurrent requests for the same handlers share a single compilation
+    private final ConcurrentMap<Map<URI, NamespaceHandler>, FutureTask<Schema>> compiling =
+                        new ConcurrentHashMap<Map<URI, NamespaceHandler>, FutureTask<Schema>>();
 
-    // Access to this factory is synchronized on itself
-    private final SchemaFactory schemaFactory =
-                        SchemaFactory.newInstance(W3C_XML_SCHEMA_NS_URI);
+    // Schema factories are not thread safe, idle ones are kept in this queue
+    private final Queue<SchemaFactory> schemaFactories =
+                        new ConcurrentLinkedQueue<SchemaFactory>();
+
+    // Executor used to compile schemas in the background when handlers are registered, may be null
+    private final ExecutorService precompiler;
+    private final AtomicBoolean precompilePending = new AtomicBoolean();
 
     // Access to this variable is must be synchronized on itself
     private final ArrayList<NamespaceHandlerSetImpl> sets =
                         new ArrayList<NamespaceHandlerSetImpl>();
 
     public NamespaceHandlerRegistryImpl(BundleContext bundleContext) {
+        this(bundleContext,
+             getIntProperty(bundleContext, SCHEMA_CACHE_SIZE_PROPERTY, DEFAULT_SCHEMA_CACHE_SIZE),
+             !"false".equalsIgnoreCase(bundleContext.getProperty(SCHEMA_CACHE_SOFT_PROPERTY)),
+             Boolean.parseBoolean(bundleContext.getProperty(SCHEMA_PRECOMPILE_PROPERTY)));
+    }
+
+    /**
+     * @param schemaCacheSize the maximum number of compiled schemas to keep
+     * @param softSchemas whether cached schemas are softly referenced and can be reclaimed under memory pressure
+     * @param precompile whether to compile a schema for all the registered handlers in the background
+     */
+    public NamespaceHandlerRegistryImpl(BundleContext bundleContext, final int schemaCacheSize, boolean softSchemas, boolean precompile) {
         this.bundleContext = bundleContext;
+        this.schemas = new LinkedHashMap<Set<URI>, CachedSchema>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Set<URI>, CachedSchema> eldest) {
+                return size() > schemaCacheSize;
+            }
+        };
+        this.softSchemas = softSchemas;
+        this.precompiler = precompile ? Executors.newSingleThreadExecutor(new BlueprintThreadFactory("Blueprint Schema Compiler")) : null;
         tracker = new ServiceTracker(bundleContext, NamespaceHandler.class.getName(), this);
         tracker.open();
     }
 
+    private static int getIntProperty(BundleContext bundleContext, String name, int defaultValue) {
+        String value = bundleContext.getProperty(name);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.error(name + " is not a number. Using default value " + defaultValue + ".");
+            }
+        }
+        return defaultValue;
+    }
+
     public Object addingService(ServiceReference reference) {
         LOGGER.debug("Adding NamespaceHandler " + reference.toString());
         NamespaceHandler handler = (NamespaceHandler) bundleContext.getService(reference);
@@ -171,6 +228,7 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
                 }
             }
         }
+        schedulePrecompile();
     }
 
     public void unregisterHandler(NamespaceHandler handler, Map properties) {
@@ -189,6 +247,7 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
             }
         }
         removeSchemasFor(handler);
+        schedulePrecompile();
     }
 
     private static List<URI> getNamespaces(Map properties) {
@@ -251,62 +310,164 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
 
     public void destroy() {
         tracker.close();
+        if (precompiler != null) {
+            precompiler.shutdownNow();
+        }
+    }
+
+    /**
+     * Compile a schema for all the registered handlers in the background, so that bundles using any
+     * combination of those handlers find a schema in the cache.  Bursts of registrations only trigger
+     * a single compilation.
+     */
+    private void schedulePrecompile() {
+        if (precompiler != null && precompilePending.compareAndSet(false, true)) {
+            try {
+                precompiler.execute(new Runnable() {
+                    public void run() {
+                        precompilePending.set(false);
+                        precompile();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The registry is being destroyed
+                precompilePending.set(false);
+            }
+        }
+    }
+
+    private void precompile() {
+        Set<URI> namespaces = new HashSet<URI>();
+        for (Map.Entry<URI, CopyOnWriteArraySet<NamespaceHandler>> entry : handlers.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                namespaces.add(entry.getKey());
+            }
+        }
+        if (namespaces.isEmpty()) {
+            return;
+        }
+        try {
+            NamespaceHandlerSetImpl set = new NamespaceHandlerSetImpl(namespaces, bundleContext.getBundle());
+            if (set.isComplete()) {
+                set.getSchema();
+                LOGGER.debug("Precompiled schema for namespaces {}", namespaces);
+            }
+        } catch (Throwable t) {
+            LOGGER.debug("Unable to precompile schema for namespaces " + namespaces, t);
+        }
+    }
+
+    private Schema getSchema(Map<URI, NamespaceHandler> handlers, NamespaceHandlerSetImpl set, final Map<String, String> locations) throws IOException, SAXException {
+        // Find a schema that can handle all the requested namespaces
+        // If it contains additional namespaces, it should not be a problem since
+        // they won't be used at all
+        Schema schema = getExistingSchema(handlers);
+        if (schema != null) {
+            return schema;
+        }
+        final Map<URI, NamespaceHandler> key = handlers;
+        final NamespaceHandlerSetImpl owner = set;
+        FutureTask<Schema> task = new FutureTask<Schema>(new Callable<Schema>() {
+            public Schema call() throws Exception {
+                Schema schema = owner.createSchema(locations);
+                cacheSchema(key, schema);
+                return schema;
+            }
+        });
+        FutureTask<Schema> existing = compiling.putIfAbsent(key, task);
+        if (existing != null) {
+            task = existing;
+        } else {
+            try {
+                task.run();
+            } finally {
+                compiling.remove(key, task);
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for schema compilation");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
     }
 
     private Schema getExistingSchema(Map<URI, NamespaceHandler> handlers) {
         synchronized (schemas) {
-            for (Map<URI, NamespaceHandler> key : schemas.keySet()) {
-                boolean found = true;
-                for (URI uri : handlers.keySet()) {
-                    if (!handlers.get(uri).equals(key.get(uri))) {
-                        found = false;
-                        break;
-                    }
+            CachedSchema exact = schemas.get(handlers.keySet());
+            if (exact != null && exact.handlers.equals(handlers) && exact.get() != null) {
+                return exact.get();
+            }
+            for (Iterator<Map.Entry<Set<URI>, CachedSchema>> iterator = schemas.entrySet().iterator(); iterator.hasNext();) {
+                Map.Entry<Set<URI>, CachedSchema> entry = iterator.next();
+                Schema schema = entry.getValue().get();
+                if (schema == null) {
+                    // Reclaimed by the garbage collector
+                    iterator.remove();
+                    continue;
                 }
-                if (found) {
-                    return schemas.get(key).get();
+                if (entry.getValue().includes(handlers)) {
+                    // Mark the entry as recently used
+                    schemas.get(entry.getKey());
+                    return schema;
                 }
             }
             return null;
         }
     }
 
+    int getCachedSchemaCount() {
+        synchronized (schemas) {
+            return schemas.size();
+        }
+    }
+
     private void removeSchemasFor(NamespaceHandler handler) {
         synchronized (schemas) {
-            List<Map<URI, NamespaceHandler>> keys = new ArrayList<Map<URI, NamespaceHandler>>();
-            for (Map<URI, NamespaceHandler> key : schemas.keySet()) {
-                if (key.values().contains(handler)) {
-                    keys.add(key);
+            for (Iterator<CachedSchema> iterator = schemas.values().iterator(); iterator.hasNext();) {
+                if (iterator.next().handlers.values().contains(handler)) {
+                    iterator.remove();
                 }
             }
-            for (Map<URI, NamespaceHandler> key : keys) {
-                schemas.remove(key);
-            }
         }
     }
 
     private void cacheSchema(Map<URI, NamespaceHandler> handlers, Schema schema) {
         synchronized (schemas) {
+            CachedSchema cached = new CachedSchema(handlers, schema, softSchemas);
             // Remove schemas that are fully included
-            for (Iterator<Map<URI, NamespaceHandler>> iterator = schemas.keySet().iterator(); iterator.hasNext();) {
-                Map<URI, NamespaceHandler> key = iterator.next();
-                boolean found = true;
-                for (URI uri : key.keySet()) {
-                    if (!key.get(uri).equals(handlers.get(uri))) {
-                        found = false;
-                        break;
-                    }
-                }
-                if (found) {
+            for (Iterator<CachedSchema> iterator = schemas.values().iterator(); iterator.hasNext();) {
+                if (cached.includes(iterator.next().handlers)) {
                     iterator.remove();
-                    break;
                 }
             }
-            // Add our new schema
-            schemas.put(handlers, new SoftReference<Schema>(schema));
+            // Add our new schema, replacing any schema compiled for the same namespaces with other handlers
+            schemas.put(new HashSet<URI>(handlers.keySet()), cached);
         }
     }
 
+    private SchemaFactory acquireSchemaFactory() {
+        SchemaFactory factory = schemaFactories.poll();
+        return factory != null ? factory : SchemaFactory.newInstance(W3C_XML_SCHEMA_NS_URI);
+    }
+
+    private void releaseSchemaFactory(SchemaFactory factory) {
+        factory.setResourceResolver(null);
+        schemaFactories.offer(factory);
+    }
+
     private static void closeQuietly(Closeable closeable) {
         try {
             if (closeable != null) {
@@ -450,16 +611,8 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
             if (schemaMap != null && !schemaMap.isEmpty()) {
                 return createSchema(locations);
             }
-            // Find a schema that can handle all the requested namespaces
-            // If it contains additional namespaces, it should not be a problem since
-            // they won't be used at all
-            Schema schema = getExistingSchema(handlers);
-            if (schema == null) {
-                // Create schema
-                schema = createSchema(locations);
-                cacheSchema(handlers, schema);
-            }
-            return schema;
+            // Use a snapshot of the handlers as the cache key
+            return NamespaceHandlerRegistryImpl.this.getSchema(new HashMap<URI, NamespaceHandler>(handlers), this, locations);
         }
 
         private class Loader implements LSResourceResolver, Closeable {
@@ -646,9 +799,12 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
                         loader.use(url, loader.getId(W3C_XML_SCHEMA_NS_URI, ns.toString(), null, null), ns.toString());
                     }
                 }
-                synchronized (schemaFactory) {
+                SchemaFactory schemaFactory = acquireSchemaFactory();
+                try {
                     schemaFactory.setResourceResolver(loader);
                     return schemaFactory.newSchema(loader.getSources());
+                } finally {
+                    releaseSchemaFactory(schemaFactory);
                 }
             } finally {
                 loader.close();
@@ -812,82 +968,35 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
         }
     }
 
-    public static class LRUMap<K, V> extends AbstractMap<K, V> {
-
-        private final int bound;
-        private final LinkedList<Entry<K, V>> entries = new LinkedList<Entry<K, V>>();
-
-        private static class LRUEntry<K, V> implements Entry<K, V> {
-            private final K key;
-            private final V value;
-
-            private LRUEntry(K key, V value) {
-                this.key = key;
-                this.value = value;
-            }
-
-            public K getKey() {
-                return key;
-            }
-
-            public V getValue() {
-                return value;
-            }
-
-            public V setValue(V value) {
-                throw new UnsupportedOperationException();
-            }
-        }
+    /**
+     * Holds a cached schema, either strongly until it is evicted or softly so that it can be
+     * reclaimed by the garbage collector, along with the handlers it was compiled from.
+     */
+    private static class CachedSchema {
+        private final Map<URI, NamespaceHandler> handlers;
+        private final Schema schema;
+        private final SoftReference<Schema> reference;
 
-        private LRUMap(int bound) {
-            this.bound = bound;
+        CachedSchema(Map<URI, NamespaceHandler> handlers, Schema schema, boolean soft) {
+            this.handlers = handlers;
+            this.schema = soft ? null : schema;
+            this.reference = soft ? new SoftReference<Schema>(schema) : null;
         }
 
-        public V get(Object key) {
-            if (key == null) {
-                throw new NullPointerException();
-            }
-            for (Entry<K, V> e : entries) {
-                if (e.getKey().equals(key)) {
-                    entries.remove(e);
-                    entries.addFirst(e);
-                    return e.getValue();
-                }
-            }
-            return null;
+        Schema get() {
+            return reference != null ? reference.get() : schema;
         }
 
-        public V put(K key, V value) {
-            if (key == null) {
-                throw new NullPointerException();
-            }
-            V old = null;
-            for (Entry<K, V> e : entries) {
-                if (e.getKey().equals(key)) {
-                    entries.remove(e);
-                    old = e.getValue();
-                    break;
-                }
-            }
-            if (value != null) {
-                entries.addFirst(new LRUEntry<K, V>(key, value));
-                while (entries.size() > bound) {
-                    entries.removeLast();
+        /**
+         * Whether this schema was compiled with the same handlers for all the given namespaces.
+         */
+        boolean includes(Map<URI, NamespaceHandler> handlers) {
+            for (Map.Entry<URI, NamespaceHandler> entry : handlers.entrySet()) {
+                if (!entry.getValue().equals(this.handlers.get(entry.getKey()))) {
+                    return false;
                 }
             }
-            return old;
-        }
-
-        public Set<Entry<K, V>> entrySet() {
-            return new AbstractSet<Entry<K, V>>() {
-                public Iterator<Entry<K, V>> iterator() {
-                    return entries.iterator();
-                }
-
-                public int size() {
-                    return entries.size();
-                }
-            };
+            return true;
         }
     }
 
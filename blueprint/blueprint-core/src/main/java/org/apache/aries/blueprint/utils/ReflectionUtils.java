@@ -40,7 +40,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.aries.blueprint.container.GenericType;
 import org.apache.aries.blueprint.di.ExecutionContext;
@@ -55,8 +55,8 @@ import org.osgi.service.blueprint.container.ComponentDefinitionException;
  */
 public class ReflectionUtils {
 
-    private static Map<Class<?>, WeakReference<Method[]>> publicMethods = Collections.synchronizedMap(new WeakHashMap<Class<?>, WeakReference<Method[]>>());
-    private static Map<Class<?>, PropertyDescriptor[][]> beanInfos = Collections.synchronizedMap(new WeakHashMap<Class<?>, PropertyDescriptor[][]>());
+    private static WeakClassMap<WeakReference<Method[]>> publicMethods = new WeakClassMap<WeakReference<Method[]>>();
+    private static WeakClassMap<AtomicReferenceArray<PropertyDescriptor[]>> beanInfos = new WeakClassMap<AtomicReferenceArray<PropertyDescriptor[]>>();
 
     public static boolean hasDefaultConstructor(Class type) {
         if (!Modifier.isPublic(type.getModifiers())) {
@@ -205,15 +205,15 @@ public class ReflectionUtils {
     }
 
     public static PropertyDescriptor[] getPropertyDescriptors(Class clazz, boolean allowFieldInjection, boolean allowNonStandardSetters) {
-        PropertyDescriptor[][] properties = beanInfos.get(clazz);
+        AtomicReferenceArray<PropertyDescriptor[]> properties = beanInfos.get(clazz);
         int index = (allowFieldInjection ? 0 : 2) + (allowNonStandardSetters ? 0 : 1);
         
         if (properties == null) {
-            properties = new PropertyDescriptor[4][];
-            beanInfos.put(clazz, properties);
+            properties = beanInfos.putIfAbsent(clazz, new AtomicReferenceArray<PropertyDescriptor[]>(4));
         }
         
-        if (properties[index] == null) {
+        PropertyDescriptor[] descriptors = properties.get(index);
+        if (descriptors == null) {
             Set<String> propertyNames = new HashSet<String>();
             Map<String, Method> getters = new HashMap<String, Method>();
             Map<String, List<Method>> setters = new HashMap<String, List<Method>>();
@@ -314,9 +314,10 @@ public class ReflectionUtils {
                 if (!!!illegalProperties.contains(prop.getName())) result.add(prop);
             }
             
-            properties[index] = result.toArray(new PropertyDescriptor[result.size()]); 
+            descriptors = result.toArray(new PropertyDescriptor[result.size()]);
+            properties.set(index, descriptors);
         }
-        return properties[index];
+        return descriptors;
     }
 
     private static String decapitalize(String name) {
@@ -472,7 +473,7 @@ public class ReflectionUtils {
     
     private static class FieldPropertyDescriptor extends PropertyDescriptor {
         // instead of holding on to the java.lang.reflect.Field objects we retrieve it every time. The reason is that PropertyDescriptors are 
-        // used as values in a WeakHashMap with the class corresponding to the field as the key
+        // used as values in a WeakClassMap with the class corresponding to the field as the key
         private final String fieldName;
         private final WeakReference<Class<?>> declaringClass;
         
@@ -626,7 +627,7 @@ public class ReflectionUtils {
     
     private static class MethodPropertyDescriptor extends PropertyDescriptor {
         // instead of holding on to the java.lang.reflect.Method objects we retrieve it every time. The reason is that PropertyDescriptors are 
-        // used as values in a WeakHashMap with the class corresponding to the methods as the key
+        // used as values in a WeakClassMap with the class corresponding to the methods as the key
         private final MethodDescriptor getter;
         private final Collection<MethodDescriptor> setters;
 
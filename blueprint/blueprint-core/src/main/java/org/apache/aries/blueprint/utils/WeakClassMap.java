@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.utils;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A concurrent map keyed by classes which does not prevent the classes, and thus
+ * their class loaders, from being garbage collected.
+ *
+ * Lookups do not lock.  Entries whose class has been collected are purged on
+ * subsequent updates.  As with a WeakHashMap, values must not hold strong
+ * references to their key class.
+ */
+final class WeakClassMap<V> {
+
+    private final ConcurrentMap<Object, V> map = new ConcurrentHashMap<Object, V>();
+    private final ReferenceQueue<Class<?>> queue = new ReferenceQueue<Class<?>>();
+
+    public V get(Class<?> clazz) {
+        return map.get(new LookupKey(clazz));
+    }
+
+    public void put(Class<?> clazz, V value) {
+        expunge();
+        map.put(new WeakKey(clazz, queue), value);
+    }
+
+    /**
+     * Associates the value with the class unless a value is already present.
+     *
+     * @return the value associated with the class after this call
+     */
+    public V putIfAbsent(Class<?> clazz, V value) {
+        expunge();
+        V existing = map.putIfAbsent(new WeakKey(clazz, queue), value);
+        return existing != null ? existing : value;
+    }
+
+    public int size() {
+        expunge();
+        return map.size();
+    }
+
+    private void expunge() {
+        Reference<? extends Class<?>> ref;
+        while ((ref = queue.poll()) != null) {
+            map.remove(ref);
+        }
+    }
+
+    private static final class WeakKey extends WeakReference<Class<?>> {
+
+        private final int hash;
+
+        WeakKey(Class<?> clazz, ReferenceQueue<Class<?>> queue) {
+            super(clazz, queue);
+            this.hash = System.identityHashCode(clazz);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            Class<?> clazz = get();
+            if (o instanceof WeakKey) {
+                return clazz != null && clazz == ((WeakKey) o).get();
+            } else if (o instanceof LookupKey) {
+                return clazz != null && clazz == ((LookupKey) o).clazz;
+            }
+            return false;
+        }
+    }
+
+    private static final class LookupKey {
+
+        private final Class<?> clazz;
+
+        LookupKey(Class<?> clazz) {
+            this.clazz = clazz;
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(clazz);
+        }
+
+        public boolean equals(Object o) {
+            if (o instanceof WeakKey) {
+                return o.equals(this);
+            } else if (o instanceof LookupKey) {
+                return clazz == ((LookupKey) o).clazz;
+            }
+            return false;
+        }
+    }
+
+}
@@ -135,6 +135,20 @@ public class TypeInference {
         return findMatching(executables, args, converter, reorder);
     }
 
+    /**
+     * Count the public constructors of the given class that take the given number of parameters.
+     */
+    public static int countConstructors(Type clazz, int size) {
+        return findConstructors(clazz, size).size();
+    }
+
+    /**
+     * Count the public methods of the given class with the given name that take the given number of parameters.
+     */
+    public static int countMethods(Type clazz, String name, boolean instance, int size) {
+        return findMethods(clazz, name, instance, size).size();
+    }
+
     private static List<Method> applyStaticHidingRules(Collection<Method> methods) {
         List<Method> result = new ArrayList<Method>(methods.size());
         for (Method m : methods) {
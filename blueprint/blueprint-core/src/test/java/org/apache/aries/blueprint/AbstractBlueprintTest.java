@@ -37,7 +37,11 @@ import org.xml.sax.SAXException;
 public abstract class AbstractBlueprintTest extends TestCase {
 
     protected ComponentDefinitionRegistryImpl parse(String name) throws Exception {
-        NamespaceHandlerSet handlers = new NamespaceHandlerSet() {
+        return parse(name, getHandlers());
+    }
+
+    protected NamespaceHandlerSet getHandlers() {
+        return new NamespaceHandlerSet() {
             public Set<URI> getNamespaces() {
                 return null;
             }
@@ -71,7 +75,6 @@ public abstract class AbstractBlueprintTest extends TestCase {
             public void destroy() {
             }
         };
-        return parse(name, handlers);
     }
 
     protected ComponentDefinitionRegistryImpl parse(String name, NamespaceHandlerSet handlers) throws Exception {
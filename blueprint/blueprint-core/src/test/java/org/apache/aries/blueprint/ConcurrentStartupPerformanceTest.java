@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.aries.blueprint.di.Repository;
+import org.apache.aries.blueprint.parser.ComponentDefinitionRegistryImpl;
+import org.apache.aries.blueprint.pojos.PojoA;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ConcurrentStartupPerformanceTest {
+
+    private static final List<String> COMPONENTS = Arrays.asList(
+            "pojoA", "pojoB", "pojoC", "compound", "FITestBean", "ambiguousViaInt");
+    private static final int CONTAINER_COUNT = 200;
+    private static final int THREAD_COUNT = 8;
+    private static final int TRIAL_COUNT = 3;
+
+    /**
+     * Compares starting many containers serially and on a pool.
+     */
+    @Test
+    @Ignore
+    public void testConcurrentStartup() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            for (int trial = 0; trial < TRIAL_COUNT; trial++) {
+                List<Callable<Object>> serial = createStartups();
+                long start = System.currentTimeMillis();
+                for (Callable<Object> callable : serial) {
+                    assertTrue(callable.call() instanceof PojoA);
+                }
+                long serialTime = System.currentTimeMillis() - start;
+
+                List<Callable<Object>> concurrent = createStartups();
+                start = System.currentTimeMillis();
+                for (Future<Object> future : executor.invokeAll(concurrent)) {
+                    assertTrue(future.get() instanceof PojoA);
+                }
+                long concurrentTime = System.currentTimeMillis() - start;
+
+                System.err.println("Trial " + trial + ": starting " + CONTAINER_COUNT + " containers took "
+                        + serialTime + " ms serially, " + concurrentTime + " ms with " + THREAD_COUNT + " threads");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Callable<Object>> createStartups() throws Exception {
+        AbstractBlueprintTest parser = new AbstractBlueprintTest() {};
+        List<Callable<Object>> callables = new ArrayList<Callable<Object>>();
+        for (int i = 0; i < CONTAINER_COUNT; i++) {
+            final ComponentDefinitionRegistryImpl registry = parser.parse("/test-wiring.xml");
+            callables.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    Repository repository = new TestBlueprintContainer(registry).getRepository();
+                    for (String name : COMPONENTS) {
+                        assertNotNull(repository.create(name));
+                    }
+                    return repository.create("pojoA");
+                }
+            });
+        }
+        return callables;
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.aries.blueprint.di.Repository;
+import org.apache.aries.blueprint.parser.ComponentDefinitionRegistryImpl;
+import org.apache.aries.blueprint.pojos.PojoA;
+
+/**
+ * Starts many containers at once to exercise the shared reflection caches.
+ */
+public class ConcurrentStartupTest extends AbstractBlueprintTest {
+
+    private static final List<String> COMPONENTS = Arrays.asList(
+            "pojoA", "pojoB", "pojoC", "compound", "FITestBean", "ambiguousViaInt");
+    private static final int CONTAINER_COUNT = 32;
+    private static final int THREAD_COUNT = 8;
+
+    private ExecutorService executor;
+
+    protected void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testConcurrentStartup() throws Exception {
+        for (Future<Object> future : executor.invokeAll(createStartups())) {
+            assertTrue(future.get() instanceof PojoA);
+        }
+    }
+
+    private List<Callable<Object>> createStartups() throws Exception {
+        List<Callable<Object>> callables = new ArrayList<Callable<Object>>();
+        for (int i = 0; i < CONTAINER_COUNT; i++) {
+            final ComponentDefinitionRegistryImpl registry = parse("/test-wiring.xml");
+            callables.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    Repository repository = new TestBlueprintContainer(registry).getRepository();
+                    for (String name : COMPONENTS) {
+                        assertNotNull(repository.create(name));
+                    }
+                    return repository.create("pojoA");
+                }
+            });
+        }
+        return callables;
+    }
+
+}
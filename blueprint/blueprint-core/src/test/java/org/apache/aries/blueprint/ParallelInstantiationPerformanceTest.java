@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.aries.blueprint.container.BlueprintRepository;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ParallelInstantiationPerformanceTest {
+
+    private static final List<String> EAGER = Arrays.asList("slow1", "slow2", "slow3", "slow4", "a", "b");
+    private static final int TRIAL_COUNT = 3;
+
+    /**
+     * Compares creating independent components with slow initializers serially and on a pool.
+     */
+    @Test
+    @Ignore
+    public void testParallelInstantiation() throws Exception {
+        AbstractBlueprintTest parser = new AbstractBlueprintTest() {};
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int trial = 0; trial < TRIAL_COUNT; trial++) {
+                BlueprintRepository serial = (BlueprintRepository) new TestBlueprintContainer(parser.parse("/test-parallel.xml")).getRepository();
+                long start = System.currentTimeMillis();
+                serial.createAll(EAGER);
+                long serialTime = System.currentTimeMillis() - start;
+
+                BlueprintRepository parallel = (BlueprintRepository) new TestBlueprintContainer(parser.parse("/test-parallel.xml")).getRepository();
+                start = System.currentTimeMillis();
+                parallel.createAll(EAGER, executor);
+                long parallelTime = System.currentTimeMillis() - start;
+
+                System.err.println("Trial " + trial + ": creating " + EAGER.size() + " components took "
+                        + serialTime + " ms serially, " + parallelTime + " ms in parallel");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.aries.blueprint.container.BlueprintRepository;
+import org.apache.aries.blueprint.parser.ComponentDefinitionRegistryImpl;
+import org.apache.aries.blueprint.pojos.PojoCircular;
+import org.apache.aries.blueprint.pojos.SlowInit;
+import org.osgi.service.blueprint.container.ComponentDefinitionException;
+
+public class ParallelInstantiationTest extends AbstractBlueprintTest {
+
+    private static final List<String> EAGER = Arrays.asList("slow1", "slow2", "slow3", "slow4", "a", "b");
+
+    private ExecutorService executor;
+
+    protected void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testIndependentComponentsAreCreatedConcurrently() throws Exception {
+        final AtomicInteger submitted = new AtomicInteger();
+        BlueprintRepository parallel = createRepository();
+        parallel.createAll(EAGER, new Executor() {
+            public void execute(Runnable command) {
+                submitted.incrementAndGet();
+                executor.execute(command);
+            }
+        });
+        // slow1 and slow4, slow2, slow3, and the a and b cycle
+        assertEquals(4, submitted.get());
+        assertWiring(parallel);
+        // Dependent components are created by the same thread
+        SlowInit slow1 = (SlowInit) parallel.create("slow1");
+        SlowInit slow4 = (SlowInit) parallel.create("slow4");
+        assertEquals(slow1.getInitThread(), slow4.getInitThread());
+    }
+
+    public void testCallerRunsRejectedGroups() throws Exception {
+        BlueprintRepository repository = createRepository();
+        repository.createAll(EAGER, new Executor() {
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+        assertWiring(repository);
+        assertEquals(Thread.currentThread().getName(), ((SlowInit) repository.create("slow2")).getInitThread());
+    }
+
+    public void testFailureIsReported() throws Exception {
+        BlueprintRepository repository = createRepository();
+        try {
+            repository.createAll(Arrays.asList("slow1", "slow2", "failing"), executor);
+            fail("Expected ComponentDefinitionException");
+        } catch (ComponentDefinitionException e) {
+            // expected
+        }
+    }
+
+    private BlueprintRepository createRepository() throws Exception {
+        ComponentDefinitionRegistryImpl registry = parse("/test-parallel.xml");
+        return (BlueprintRepository) new TestBlueprintContainer(registry).getRepository();
+    }
+
+    private static void assertWiring(BlueprintRepository repository) {
+        PojoCircular a = (PojoCircular) repository.create("a");
+        PojoCircular b = (PojoCircular) repository.create("b");
+        assertSame(b, a.getCircular());
+        assertSame(a, b.getCircular());
+        assertSame(repository.create("slow1"), ((SlowInit) repository.create("slow4")).getDependency());
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.apache.aries.blueprint.parser.Parser;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ParallelParserPerformanceTest {
+
+    private static final String[] RESOURCES = {
+            "/test-constructor.xml",
+            "/test-bean-classes.xml",
+            "/test-overload.xml",
+            "/test-vararg.xml",
+            "/test-depends-on.xml"
+    };
+    private static final int BUNDLE_COUNT = 80;
+    private static final int TRIAL_COUNT = 3;
+
+    /**
+     * Compares parsing and validating the xml files of many bundles serially and on a pool.
+     */
+    @Test
+    @Ignore
+    public void testParallelParsePerformance() throws Exception {
+        Schema schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(getClass().getResource("/org/osgi/service/blueprint/blueprint.xsd"));
+        List<URL> urls = new ArrayList<URL>();
+        for (int i = 0; i < BUNDLE_COUNT; i++) {
+            for (String resource : RESOURCES) {
+                urls.add(getClass().getResource(resource));
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < TRIAL_COUNT; i++) {
+                long start = System.currentTimeMillis();
+                Parser serial = new Parser();
+                serial.parse(urls);
+                serial.validate(schema);
+                long serialTime = System.currentTimeMillis() - start;
+
+                start = System.currentTimeMillis();
+                Parser parallel = new Parser();
+                parallel.parse(urls, executor);
+                parallel.validate(schema, null, executor);
+                long parallelTime = System.currentTimeMillis() - start;
+
+                System.err.println("Trial " + i + ": parsing and validating " + urls.size() + " files took "
+                        + serialTime + " ms serially, " + parallelTime + " ms in parallel");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
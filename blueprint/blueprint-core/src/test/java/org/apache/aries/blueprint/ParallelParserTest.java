@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.apache.aries.blueprint.parser.ComponentDefinitionRegistryImpl;
+import org.apache.aries.blueprint.parser.Parser;
+import org.osgi.service.blueprint.container.ComponentDefinitionException;
+
+public class ParallelParserTest extends AbstractBlueprintTest {
+
+    private static final String[] RESOURCES = {
+            "/test-constructor.xml",
+            "/test-bean-classes.xml",
+            "/test-overload.xml",
+            "/test-vararg.xml",
+            "/test-depends-on.xml"
+    };
+
+    private ExecutorService executor;
+    private Schema schema;
+
+    protected void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        schema = schemaFactory.newSchema(getClass().getResource("/org/osgi/service/blueprint/blueprint.xsd"));
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testParallelParseKeepsDocumentOrder() throws Exception {
+        List<URL> urls = getUrls(1);
+
+        Parser serial = new Parser();
+        serial.parse(urls);
+        serial.validate(schema);
+        ComponentDefinitionRegistryImpl serialRegistry = new ComponentDefinitionRegistryImpl();
+        serial.populate(getHandlers(), serialRegistry);
+
+        Parser parallel = new Parser();
+        parallel.parse(urls, executor);
+        parallel.validate(schema, null, executor);
+        ComponentDefinitionRegistryImpl parallelRegistry = new ComponentDefinitionRegistryImpl();
+        parallel.populate(getHandlers(), parallelRegistry);
+
+        assertEquals(new ArrayList<String>(serialRegistry.getComponentDefinitionNames()),
+                     new ArrayList<String>(parallelRegistry.getComponentDefinitionNames()));
+    }
+
+    public void testParallelValidationFailure() throws Exception {
+        List<URL> urls = getUrls(1);
+        urls.add(getClass().getResource("/test-custom-nodes.xml"));
+        Parser parser = new Parser();
+        parser.parse(urls, executor);
+        try {
+            parser.validate(schema, null, executor);
+            fail("Expected ComponentDefinitionException");
+        } catch (ComponentDefinitionException e) {
+            // expected
+        }
+    }
+
+    private List<URL> getUrls(int copies) {
+        List<URL> urls = new ArrayList<URL>();
+        for (int i = 0; i < copies; i++) {
+            for (String resource : RESOURCES) {
+                urls.add(getClass().getResource(resource));
+            }
+        }
+        return urls;
+    }
+
+}
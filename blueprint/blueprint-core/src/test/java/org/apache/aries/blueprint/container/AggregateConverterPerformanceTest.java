@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.container;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.aries.blueprint.TestBlueprintContainer;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.osgi.service.blueprint.container.ReifiedType;
+
+public class AggregateConverterPerformanceTest {
+
+    private static final int ITERATIONS = 2000;
+    private static final int TRIAL_COUNT = 3;
+
+    /**
+     * Compares conversions with a cold and a warm conversion plan cache.
+     */
+    @Test
+    @Ignore
+    public void testConversionPerformance() throws Exception {
+        AggregateConverter service = new AggregateConverter(new TestBlueprintContainer(null));
+        List<String> strings = new ArrayList<String>();
+        Map<String, String> map = new HashMap<String, String>();
+        for (int i = 0; i < 100; i++) {
+            strings.add(Integer.toString(i));
+            map.put("key" + i, Integer.toString(i));
+        }
+        ReifiedType listOfIntegers = new GenericType(List.class, new GenericType(Integer.class));
+        ReifiedType mapOfLongs = new GenericType(Map.class, new GenericType(String.class), new GenericType(Long.class));
+        for (int trial = 0; trial < TRIAL_COUNT; trial++) {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < ITERATIONS; i++) {
+                AggregateConverter cold = new AggregateConverter(new TestBlueprintContainer(null));
+                cold.convert("123", int.class);
+                cold.convert(strings, listOfIntegers);
+                cold.convert(map, mapOfLongs);
+            }
+            long coldTime = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            for (int i = 0; i < ITERATIONS; i++) {
+                service.convert("123", int.class);
+                service.convert(strings, listOfIntegers);
+                service.convert(map, mapOfLongs);
+            }
+            long warmTime = System.currentTimeMillis() - start;
+
+            System.err.println("Trial " + trial + ": " + ITERATIONS + " string, list and map conversions took "
+                    + coldTime + " ms with a cold plan cache, " + warmTime + " ms with a warm one");
+        }
+    }
+
+}
@@ -34,6 +34,7 @@ import java.util.Properties;
 
 import junit.framework.TestCase;
 import org.apache.aries.blueprint.TestBlueprintContainer;
+import org.apache.aries.blueprint.container.BeanRecipe.UnwrapperedBeanHolder;
 import org.apache.aries.blueprint.pojos.PojoGenerics2.MyClass;
 import org.apache.aries.blueprint.pojos.PojoGenerics2.MyObject;
 import org.apache.aries.blueprint.pojos.PojoGenerics2.Tata;
@@ -272,7 +273,46 @@ public class AggregateConverterTest extends TestCase {
         obj = service.convert(org, GenericType.parse("java.util.Dictionary<java.lang.String,java.lang.Integer>", getClass().getClassLoader()));
         assertSame(org, obj);;
     }
-    
+
+    public void testConvertNull() throws Exception {
+        assertNull(service.convert(null, String.class));
+        assertTrue(service.canConvert(null, new ReifiedType(String.class)));
+
+        // A bean holder may hold a null bean, which is assignable to any type
+        TestBlueprintContainer container = new TestBlueprintContainer(null);
+        BeanRecipe recipe = new BeanRecipe("bean", container, null, false, false, false);
+        UnwrapperedBeanHolder holder = new UnwrapperedBeanHolder(null, recipe);
+        assertTrue(service.canConvert(holder, new ReifiedType(String.class)));
+        assertNull(service.convert(holder, new ReifiedType(String.class)));
+    }
+
+    public void testConversionPlansAreCached() throws Exception {
+        ReifiedType listOfIntegers = new GenericType(List.class, new GenericType(Integer.class));
+        assertEquals(Arrays.asList(1, 2), service.convert(Arrays.asList("1", "2"), listOfIntegers));
+        int count = service.getPlanCount();
+        assertEquals(Arrays.asList(3, 4, 5), service.convert(Arrays.asList("3", "4", "5"), listOfIntegers));
+        assertEquals(count, service.getPlanCount());
+
+        // Class values are checked against the class they represent
+        assertEquals(String.class, service.convert(String.class, Class.class));
+        assertTrue(service.canConvert(String.class, new GenericType(Class.class, new GenericType(String.class))));
+        assertEquals(count, service.getPlanCount());
+    }
+
+    public void testConversionPlansAreKeyedByValue() throws Exception {
+        assertEquals(1, service.convert("1", new ReifiedType(Integer.class)));
+        assertEquals(1, service.convert("1", new GenericType(Integer.class)));
+        int count = service.getPlanCount();
+        // New but equal target types reuse the same plans
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, service.convert(Integer.toString(i), new ReifiedType(Integer.class)));
+            assertEquals(i, service.convert(Integer.toString(i), Integer.class));
+            assertEquals(Arrays.asList(i), service.convert(Arrays.asList(Integer.toString(i)),
+                    new GenericType(List.class, new GenericType(Integer.class))));
+        }
+        assertEquals(count + 1, service.getPlanCount());
+    }
+
     private interface Region {} 
     
     private interface EuRegion extends Region {}
@@ -28,6 +28,7 @@ import java.util.Set;
 import org.apache.aries.blueprint.di.ExecutionContext;
 import org.apache.aries.blueprint.di.PassThroughRecipe;
 import org.apache.aries.blueprint.utils.generics.TypeInference;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.osgi.service.blueprint.container.ComponentDefinitionException;
 
@@ -144,6 +145,29 @@ public class BeanRecipeTest {
         }
     }
 
+    static public class Overloaded {
+        final String kind;
+        public Overloaded(String s) {
+            kind = "string";
+        }
+        public Overloaded(Integer i) {
+            kind = "integer";
+        }
+        public Overloaded(String s, Integer i) {
+            kind = s + i;
+        }
+    }
+
+    static public class Numeric {
+        final String kind;
+        public Numeric(Integer i) {
+            kind = "integer";
+        }
+        public Numeric(Long l) {
+            kind = "long";
+        }
+    }
+
     @Test
     public void parameterWithGenerics() throws Exception {
         BlueprintContainerImpl container = new BlueprintContainerImpl(null, null, null, null, null, null, null, null, null, null);
@@ -343,4 +367,90 @@ public class BeanRecipeTest {
 			throw new RuntimeException(e);
 		}
 	}
+
+    @Test
+    public void constructorResolutionIsCachedPerArgumentTypes() throws Exception {
+        BlueprintContainerImpl container = new BlueprintContainerImpl(null, null, null, null, null, null, null, null, null, null);
+        ExecutionContext.Holder.setContext(new BlueprintRepository(container));
+        BeanRecipe recipe = new BeanRecipe("p", container, Overloaded.class, false, false, false);
+        recipe.setArgTypes(Arrays.asList((String) null));
+
+        recipe.setArguments(Arrays.<Object>asList("a"));
+        assertEquals("string", createOverloaded(recipe).kind);
+        assertEquals("string", createOverloaded(recipe).kind);
+        recipe.setArguments(Arrays.<Object>asList(1));
+        assertEquals("integer", createOverloaded(recipe).kind);
+        recipe.setArguments(Arrays.<Object>asList("b"));
+        assertEquals("string", createOverloaded(recipe).kind);
+
+        // Reordered arguments
+        recipe = new BeanRecipe("q", container, Overloaded.class, false, false, false);
+        recipe.setReorderArguments(true);
+        recipe.setArgTypes(Arrays.asList((String) null, (String) null));
+        recipe.setArguments(Arrays.<Object>asList(1, "a"));
+        assertEquals("a1", createOverloaded(recipe).kind);
+        recipe.setArguments(Arrays.<Object>asList(2, "b"));
+        assertEquals("b2", createOverloaded(recipe).kind);
+    }
+
+    @Test
+    public void cachedResolutionDoesNotHideAmbiguities() throws Exception {
+        BlueprintContainerImpl container = new BlueprintContainerImpl(null, null, null, null, null, null, null, null, null, null);
+        ExecutionContext.Holder.setContext(new BlueprintRepository(container));
+        BeanRecipe recipe = new BeanRecipe("n", container, Numeric.class, false, false, false);
+        recipe.setArgTypes(Arrays.asList((String) null));
+
+        // Only fits in a long
+        recipe.setArguments(Arrays.<Object>asList("99999999999"));
+        assertEquals("long", ((Numeric) unwrap(recipe.create())).kind);
+        // Same argument types, but both constructors match
+        recipe.setArguments(Arrays.<Object>asList("1"));
+        try {
+            recipe.create();
+            fail("Expected an ambiguity");
+        } catch (ComponentDefinitionException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Multiple matching constructors"));
+        }
+    }
+
+    @Test
+    @Ignore
+    public void prototypeInstantiationPerformance() throws Exception {
+        BlueprintContainerImpl container = new BlueprintContainerImpl(null, null, null, null, null, null, null, null, null, null);
+        ExecutionContext.Holder.setContext(new BlueprintRepository(container));
+        int count = 20000;
+        for (int trial = 0; trial < 3; trial++) {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                createOverloadedWithConversion(new BeanRecipe("p", container, Overloaded.class, false, false, false));
+            }
+            long uncached = System.currentTimeMillis() - start;
+
+            BeanRecipe recipe = new BeanRecipe("p", container, Overloaded.class, false, false, false);
+            start = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                createOverloadedWithConversion(recipe);
+            }
+            long cached = System.currentTimeMillis() - start;
+            System.err.println("Trial " + trial + ": " + count + " instantiations took " + uncached
+                    + " ms with a new resolution each time, " + cached + " ms with a cached resolution");
+        }
+    }
+
+    private static void createOverloadedWithConversion(BeanRecipe recipe) {
+        recipe.setArgTypes(Arrays.asList((String) null, (String) null));
+        recipe.setArguments(Arrays.<Object>asList("a", "1"));
+        assertEquals("a1", createOverloaded(recipe).kind);
+    }
+
+    private static Overloaded createOverloaded(BeanRecipe recipe) {
+        return (Overloaded) unwrap(recipe.create());
+    }
+
+    private static Object unwrap(Object o) {
+        if (o instanceof BeanRecipe.UnwrapperedBeanHolder) {
+            o = ((BeanRecipe.UnwrapperedBeanHolder) o).unwrapperedBean;
+        }
+        return o;
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.container;
+
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.apache.aries.blueprint.AbstractBlueprintTest;
+import org.apache.aries.blueprint.parser.ComponentDefinitionRegistryImpl;
+import org.apache.aries.blueprint.parser.NamespaceHandlerSet;
+import org.apache.aries.blueprint.parser.Parser;
+import org.easymock.EasyMock;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+
+public class MetadataCachePerformanceTest {
+
+    private static final String[] RESOURCES = {
+            "/test-constructor.xml",
+            "/test-bean-classes.xml",
+            "/test-overload.xml",
+            "/test-vararg.xml",
+            "/test-depends-on.xml"
+    };
+    private static final int BUNDLE_COUNT = 40;
+    private static final int TRIAL_COUNT = 3;
+
+    /**
+     * Compares loading the metadata of many bundles by parsing their xml files and from the cache.
+     */
+    @Test
+    @Ignore
+    public void testStartupTime() throws Exception {
+        File directory = File.createTempFile("metadata", "");
+        directory.delete();
+        MetadataCache cache = new MetadataCache(directory);
+        Map<String, String> handlerVersions = new TreeMap<String, String>();
+        handlerVersions.put("http://www.osgi.org/xmlns/blueprint/v1.0.0", "");
+        Schema schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(getClass().getResource("/org/osgi/service/blueprint/blueprint.xsd"));
+        List<URL> urls = new ArrayList<URL>();
+        for (String resource : RESOURCES) {
+            urls.add(getClass().getResource(resource));
+        }
+        try {
+            for (int i = 0; i < BUNDLE_COUNT; i++) {
+                cache.store(cache.createKey(createBundle(i), urls), Collections.<URI>emptySet(), handlerVersions,
+                            parseAndPopulate(urls, schema));
+            }
+            for (int trial = 0; trial < TRIAL_COUNT; trial++) {
+                long start = System.currentTimeMillis();
+                for (int i = 0; i < BUNDLE_COUNT; i++) {
+                    parseAndPopulate(urls, schema);
+                }
+                long parseTime = System.currentTimeMillis() - start;
+
+                start = System.currentTimeMillis();
+                for (int i = 0; i < BUNDLE_COUNT; i++) {
+                    MetadataCache.Entry entry = cache.load(cache.createKey(createBundle(i), urls));
+                    assertNotNull(entry);
+                    entry.populate(new ComponentDefinitionRegistryImpl());
+                }
+                long cacheTime = System.currentTimeMillis() - start;
+
+                System.err.println("Trial " + trial + ": loading " + BUNDLE_COUNT + " bundles took "
+                        + parseTime + " ms when parsing, " + cacheTime + " ms from the metadata cache");
+            }
+        } finally {
+            cache.purge(Collections.<Long>emptySet());
+            directory.delete();
+        }
+    }
+
+    private static ComponentDefinitionRegistryImpl parseAndPopulate(List<URL> urls, Schema schema) throws Exception {
+        Parser parser = new Parser();
+        parser.parse(urls);
+        parser.validate(schema);
+        ComponentDefinitionRegistryImpl registry = new ComponentDefinitionRegistryImpl();
+        parser.populate(new Handlers().getHandlers(), registry);
+        return registry;
+    }
+
+    private static Bundle createBundle(long id) {
+        Bundle bundle = EasyMock.createMock(Bundle.class);
+        EasyMock.expect(bundle.getBundleId()).andReturn(id).anyTimes();
+        EasyMock.expect(bundle.getLastModified()).andReturn(1000L).anyTimes();
+        EasyMock.replay(bundle);
+        return bundle;
+    }
+
+    private static class Handlers extends AbstractBlueprintTest {
+        public NamespaceHandlerSet getHandlers() {
+            return super.getHandlers();
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.container;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.aries.blueprint.AbstractBlueprintTest;
+import org.apache.aries.blueprint.parser.ComponentDefinitionRegistryImpl;
+import org.apache.aries.blueprint.parser.Parser;
+import org.apache.aries.blueprint.reflect.PassThroughMetadataImpl;
+import org.easymock.EasyMock;
+import org.osgi.framework.Bundle;
+
+public class MetadataCacheTest extends AbstractBlueprintTest {
+
+    private static final String[] RESOURCES = {
+            "/test-wiring.xml",
+            "/test-references.xml",
+            "/test-constructor.xml",
+            "/test-depends-on.xml"
+    };
+
+    private File directory;
+    private MetadataCache cache;
+    private Map<String, String> handlerVersions;
+
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("metadata", "");
+        directory.delete();
+        cache = new MetadataCache(directory);
+        handlerVersions = new TreeMap<String, String>();
+        handlerVersions.put("http://www.osgi.org/xmlns/blueprint/v1.0.0", "");
+    }
+
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testCachedMetadataMatchesParsedMetadata() throws Exception {
+        for (int i = 0; i < RESOURCES.length; i++) {
+            List<URL> urls = Collections.singletonList(getClass().getResource(RESOURCES[i]));
+            Bundle bundle = createBundle(i, 1000L);
+            ComponentDefinitionRegistryImpl parsed = parseAndPopulate(urls);
+
+            MetadataCache.Key key = cache.createKey(bundle, urls);
+            assertNull(cache.load(key));
+            assertTrue(RESOURCES[i], cache.store(key, Collections.singleton(URI.create("http://www.osgi.org/xmlns/blueprint/v1.0.0")), handlerVersions, parsed));
+
+            MetadataCache.Entry entry = cache.load(cache.createKey(bundle, urls));
+            assertNotNull(entry);
+            assertEquals(handlerVersions, entry.getHandlerVersions());
+            ComponentDefinitionRegistryImpl cached = new ComponentDefinitionRegistryImpl();
+            entry.populate(cached);
+            assertEquals(new ArrayList<String>(parsed.getComponentDefinitionNames()),
+                         new ArrayList<String>(cached.getComponentDefinitionNames()));
+            assertTrue(RESOURCES[i], Arrays.equals(MetadataCache.writeRegistry(parsed), MetadataCache.writeRegistry(cached)));
+
+            // Each population creates new metadata instances
+            ComponentDefinitionRegistryImpl cachedAgain = new ComponentDefinitionRegistryImpl();
+            entry.populate(cachedAgain);
+            String name = cached.getComponentDefinitionNames().iterator().next();
+            assertNotSame(cached.getComponentDefinition(name), cachedAgain.getComponentDefinition(name));
+        }
+    }
+
+    public void testInvalidation() throws Exception {
+        File xml = new File(directory.getParentFile(), "metadata-cache-test-" + System.nanoTime() + ".xml");
+        try {
+            copy(getClass().getResource("/test-constructor.xml"), xml);
+            List<URL> urls = Collections.singletonList(xml.toURI().toURL());
+            ComponentDefinitionRegistryImpl registry = parseAndPopulate(urls);
+            store(createBundle(1, 1000L), urls, registry);
+            assertNotNull(cache.load(cache.createKey(createBundle(1, 1000L), urls)));
+
+            // Bundle updated
+            assertNull(cache.load(cache.createKey(createBundle(1, 2000L), urls)));
+            store(createBundle(1, 1000L), urls, registry);
+            // Bundle reinstalled with a different id
+            assertNull(cache.load(cache.createKey(createBundle(2, 1000L), urls)));
+            // Content changed without the bundle being updated, i.e. overridden xml files
+            OutputStream os = new FileOutputStream(xml, true);
+            os.write("<!-- changed -->".getBytes("UTF-8"));
+            os.close();
+            assertNull(cache.load(cache.createKey(createBundle(1, 1000L), urls)));
+            store(createBundle(1, 1000L), urls, registry);
+            // Content replaced with one of the same length
+            assertTrue(xml.setLastModified(xml.lastModified() - 10000L));
+            assertNull(cache.load(cache.createKey(createBundle(1, 1000L), urls)));
+        } finally {
+            xml.delete();
+        }
+    }
+
+    public void testUncacheableMetadata() throws Exception {
+        List<URL> urls = Collections.singletonList(getClass().getResource("/test-constructor.xml"));
+        ComponentDefinitionRegistryImpl registry = parseAndPopulate(urls);
+        registry.registerComponentDefinition(new PassThroughMetadataImpl("myObject", new Object()));
+        MetadataCache.Key key = cache.createKey(createBundle(1, 1000L), urls);
+        assertFalse(cache.store(key, Collections.<URI>emptySet(), handlerVersions, registry));
+        assertNull(cache.load(key));
+    }
+
+    public void testObsoleteEntriesAreDeleted() throws Exception {
+        List<URL> urls = Collections.singletonList(getClass().getResource("/test-constructor.xml"));
+        ComponentDefinitionRegistryImpl registry = parseAndPopulate(urls);
+        for (int i = 1; i <= 3; i++) {
+            store(createBundle(i, 1000L), urls, registry);
+        }
+        assertTrue(new File(directory, "1.metadata.tmp").createNewFile());
+        assertEquals(4, directory.list().length);
+
+        // Stale entries are deleted when loaded
+        assertNull(cache.load(cache.createKey(createBundle(1, 2000L), urls)));
+        assertFalse(new File(directory, "1.metadata").exists());
+
+        // Entries of uninstalled bundles
+        cache.remove(2);
+        assertFalse(new File(directory, "2.metadata").exists());
+
+        // Entries of bundles uninstalled while the extender was not running and temporary files
+        store(createBundle(4, 1000L), urls, registry);
+        cache.purge(Collections.singleton(Long.valueOf(4)));
+        assertEquals(Collections.singletonList("4.metadata"), Arrays.asList(directory.list()));
+        assertNotNull(cache.load(cache.createKey(createBundle(4, 1000L), urls)));
+    }
+
+    private ComponentDefinitionRegistryImpl parseAndPopulate(List<URL> urls) throws Exception {
+        Parser parser = new Parser();
+        parser.parse(urls);
+        ComponentDefinitionRegistryImpl registry = new ComponentDefinitionRegistryImpl();
+        parser.populate(getHandlers(), registry);
+        return registry;
+    }
+
+    private void store(Bundle bundle, List<URL> urls, ComponentDefinitionRegistryImpl registry) throws Exception {
+        assertTrue(cache.store(cache.createKey(bundle, urls), Collections.<URI>emptySet(), handlerVersions, registry));
+    }
+
+    private Bundle createBundle(long id, long lastModified) {
+        Bundle bundle = EasyMock.createMock(Bundle.class);
+        EasyMock.expect(bundle.getBundleId()).andReturn(id).anyTimes();
+        EasyMock.expect(bundle.getLastModified()).andReturn(lastModified).anyTimes();
+        EasyMock.replay(bundle);
+        return bundle;
+    }
+
+    private static void copy(URL url, File file) throws Exception {
+        InputStream is = url.openStream();
+        OutputStream os = new FileOutputStream(file);
+        try {
+            byte[] buffer = new byte[4096];
+            int nb;
+            while ((nb = is.read(buffer)) > 0) {
+                os.write(buffer, 0, nb);
+            }
+        } finally {
+            is.close();
+            os.close();
+        }
+    }
+
+}
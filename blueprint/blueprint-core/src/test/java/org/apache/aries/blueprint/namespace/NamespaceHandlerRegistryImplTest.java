@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.namespace;
+
+import static org.apache.aries.blueprint.ext.impl.ExtNamespaceHandler.BLUEPRINT_EXT_NAMESPACE_V1_0;
+import static org.apache.aries.blueprint.ext.impl.ExtNamespaceHandler.BLUEPRINT_EXT_NAMESPACE_V1_1;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.validation.Schema;
+
+import org.apache.aries.blueprint.ext.impl.ExtNamespaceHandler;
+import org.apache.aries.blueprint.parser.NamespaceHandlerSet;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+
+public class NamespaceHandlerRegistryImplTest {
+
+    private static final int THREAD_COUNT = 8;
+
+    private NamespaceHandlerRegistryImpl registry;
+    private ExtNamespaceHandler firstHandler;
+
+    @After
+    public void tearDown() {
+        if (registry != null) {
+            registry.destroy();
+        }
+    }
+
+    @Test
+    public void testSchemaIsSharedBetweenBundles() throws Exception {
+        registry = createRegistry(10, false);
+        Schema s1 = getSchema(BLUEPRINT_EXT_NAMESPACE_V1_0);
+        Schema s2 = getSchema(BLUEPRINT_EXT_NAMESPACE_V1_0);
+        Assert.assertSame(s1, s2);
+        Assert.assertEquals(1, registry.getCachedSchemaCount());
+    }
+
+    @Test
+    public void testConcurrentRequestsShareCompilation() throws Exception {
+        registry = createRegistry(10, false);
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            List<Callable<Schema>> callables = new ArrayList<Callable<Schema>>();
+            for (int i = 0; i < THREAD_COUNT * 4; i++) {
+                final String ns = i % 2 == 0 ? BLUEPRINT_EXT_NAMESPACE_V1_0 : BLUEPRINT_EXT_NAMESPACE_V1_1;
+                callables.add(new Callable<Schema>() {
+                    public Schema call() throws Exception {
+                        return getSchema(ns);
+                    }
+                });
+            }
+            List<Future<Schema>> futures = executor.invokeAll(callables);
+            for (int i = 2; i < futures.size(); i++) {
+                Assert.assertSame(futures.get(i % 2).get(), futures.get(i).get());
+            }
+            Assert.assertEquals(2, registry.getCachedSchemaCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCacheSizeIsBounded() throws Exception {
+        registry = createRegistry(1, false);
+        Schema s1 = getSchema(BLUEPRINT_EXT_NAMESPACE_V1_0);
+        getSchema(BLUEPRINT_EXT_NAMESPACE_V1_1);
+        Assert.assertEquals(1, registry.getCachedSchemaCount());
+        Assert.assertNotSame(s1, getSchema(BLUEPRINT_EXT_NAMESPACE_V1_0));
+    }
+
+    @Test
+    public void testSchemaIsRecompiledWhenHandlerChanges() throws Exception {
+        registry = createRegistry(10, false);
+        Schema s1 = getSchema(BLUEPRINT_EXT_NAMESPACE_V1_0);
+        // Replace the handler of the cached namespaces
+        Map<String, Object> props = createProperties();
+        registry.registerHandler(new ExtNamespaceHandler(), props);
+        registry.unregisterHandler(firstHandler, props);
+        Schema s2 = getSchema(BLUEPRINT_EXT_NAMESPACE_V1_0);
+        Assert.assertNotSame(s1, s2);
+        Assert.assertSame(s2, getSchema(BLUEPRINT_EXT_NAMESPACE_V1_0));
+        Assert.assertEquals(1, registry.getCachedSchemaCount());
+    }
+
+    @Test
+    public void testPrecompiledSchema() throws Exception {
+        registry = createRegistry(10, true);
+        for (int i = 0; i < 100 && registry.getCachedSchemaCount() == 0; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(1, registry.getCachedSchemaCount());
+        Schema s1 = getSchema(BLUEPRINT_EXT_NAMESPACE_V1_0);
+        Schema s2 = getSchema(BLUEPRINT_EXT_NAMESPACE_V1_1);
+        Assert.assertSame(s1, s2);
+        Assert.assertEquals(1, registry.getCachedSchemaCount());
+    }
+
+    private Schema getSchema(String namespace) throws Exception {
+        NamespaceHandlerSet set = registry.getNamespaceHandlers(Collections.singleton(URI.create(namespace)), createBundle());
+        try {
+            return set.getSchema();
+        } finally {
+            set.destroy();
+        }
+    }
+
+    private NamespaceHandlerRegistryImpl createRegistry(int size, boolean precompile) {
+        BundleContext ctx = EasyMock.createNiceMock(BundleContext.class);
+        EasyMock.expect(ctx.getBundle()).andReturn(createBundle()).anyTimes();
+        EasyMock.replay(ctx);
+        NamespaceHandlerRegistryImpl registry = new NamespaceHandlerRegistryImpl(ctx, size, true, precompile);
+        firstHandler = new ExtNamespaceHandler();
+        registry.registerHandler(firstHandler, createProperties());
+        return registry;
+    }
+
+    private static Map<String, Object> createProperties() {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(NamespaceHandlerRegistryImpl.NAMESPACE, new String[] { BLUEPRINT_EXT_NAMESPACE_V1_0, BLUEPRINT_EXT_NAMESPACE_V1_1 });
+        return props;
+    }
+
+    private static Bundle createBundle() {
+        Bundle bundle = EasyMock.createNiceMock(Bundle.class);
+        try {
+            EasyMock.expect((Class) bundle.loadClass(EasyMock.<String>anyObject())).andAnswer(new IAnswer<Class>() {
+                public Class answer() throws Throwable {
+                    return Class.forName((String) EasyMock.getCurrentArguments()[0]);
+                }
+            }).anyTimes();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+        EasyMock.replay(bundle);
+        return bundle;
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.utils;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.apache.aries.blueprint.pojos.PojoA;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WeakClassMapTest {
+
+    @Test
+    public void testPutIfAbsentKeepsFirstValue() {
+        WeakClassMap<String> map = new WeakClassMap<String>();
+        Assert.assertNull(map.get(String.class));
+        Assert.assertEquals("first", map.putIfAbsent(String.class, "first"));
+        Assert.assertEquals("first", map.putIfAbsent(String.class, "second"));
+        Assert.assertEquals("first", map.get(String.class));
+        map.put(String.class, "third");
+        Assert.assertEquals("third", map.get(String.class));
+        Assert.assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testClassLoaderCanBeCollected() throws Exception {
+        WeakClassMap<Object> map = new WeakClassMap<Object>();
+        URL location = PojoA.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[] { location }, null);
+        Class<?> clazz = loader.loadClass(PojoA.class.getName());
+        Assert.assertNotSame(PojoA.class, clazz);
+        map.put(clazz, ReflectionUtils.getPublicMethods(clazz).length);
+        map.put(PojoA.class, "pojo");
+        Assert.assertEquals(2, map.size());
+
+        loader = null;
+        clazz = null;
+        for (int i = 0; i < 50 && map.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals("pojo", map.get(PojoA.class));
+    }
+
+}
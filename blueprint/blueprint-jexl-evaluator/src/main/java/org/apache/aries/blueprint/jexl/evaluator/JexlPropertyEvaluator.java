@@ -17,6 +17,7 @@
 package org.apache.aries.blueprint.jexl.evaluator;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.aries.blueprint.ext.evaluator.PropertyEvaluatorExt;
 import org.apache.commons.jexl2.Expression;
@@ -25,15 +26,37 @@ import org.apache.commons.jexl2.MapContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class JexlPropertyEvaluator implements PropertyEvaluatorExt {
+public class JexlPropertyEvaluator implements PropertyEvaluatorExt, JexlPropertyEvaluatorMBean {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JexlPropertyEvaluator.class);
 
+    public static final int DEFAULT_CACHE_SIZE = 512;
+
+    private final JexlEngine engine = new JexlEngine();
+    private final Map<String, Expression> expressions;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong compileTime = new AtomicLong();
+    private volatile int cacheSize;
+
+    public JexlPropertyEvaluator() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public JexlPropertyEvaluator(int cacheSize) {
+        this.cacheSize = cacheSize;
+        this.expressions = new LinkedHashMap<String, Expression>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Expression> eldest) {
+                return size() > JexlPropertyEvaluator.this.cacheSize;
+            }
+        };
+    }
+
     public Object evaluate(String expression, Map<String, Object> properties) {
         try {
-            JexlEngine engine = new JexlEngine();
             MapContext context = new MapContext(properties);
-            Expression exp = engine.createExpression(expression);
+            Expression exp = getExpression(expression);
             return exp.evaluate(context);
         } catch (Exception e) {
             LOGGER.info("Could not evaluate expression: {}", expression);
@@ -42,4 +65,69 @@ public class JexlPropertyEvaluator implements PropertyEvaluatorExt {
         }
     }
 
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets the maximum number of compiled expressions kept, evicting the least recently
+     * used ones if there are more.
+     */
+    public void setCacheSize(int cacheSize) {
+        synchronized (expressions) {
+            this.cacheSize = cacheSize;
+            Iterator<String> it = expressions.keySet().iterator();
+            while (expressions.size() > cacheSize && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    public int getCachedExpressions() {
+        synchronized (expressions) {
+            return expressions.size();
+        }
+    }
+
+    /**
+     * Number of evaluations which reused an already compiled expression.
+     */
+    public long getCacheHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of evaluations which required the expression to be compiled.
+     */
+    public long getCacheMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Total time spent compiling expressions, in nanoseconds.
+     */
+    public long getCompileTime() {
+        return compileTime.get();
+    }
+
+    private Expression getExpression(String expression) {
+        Expression exp;
+        synchronized (expressions) {
+            exp = expressions.get(expression);
+        }
+        if (exp != null) {
+            hits.incrementAndGet();
+            return exp;
+        }
+        misses.incrementAndGet();
+        long start = System.nanoTime();
+        exp = engine.createExpression(expression);
+        compileTime.addAndGet(System.nanoTime() - start);
+        synchronized (expressions) {
+            expressions.put(expression, exp);
+        }
+        return exp;
+    }
+
 }
@@ -0,0 +1,93 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.aries.blueprint.jexl.evaluator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class JexlPropertyEvaluatorTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        JexlPropertyEvaluator evaluator = new JexlPropertyEvaluator();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("a", 1);
+        properties.put("b", 2);
+
+        assertEquals(3, evaluator.evaluate("a + b", properties));
+        assertEquals(0, evaluator.getCacheHits());
+        assertEquals(1, evaluator.getCacheMisses());
+
+        properties.put("a", 5);
+        assertEquals(7, evaluator.evaluate("a + b", properties));
+        assertEquals(1, evaluator.getCacheHits());
+        assertEquals(1, evaluator.getCacheMisses());
+
+        assertEquals(10, evaluator.evaluate("a * b", properties));
+        assertEquals(1, evaluator.getCacheHits());
+        assertEquals(2, evaluator.getCacheMisses());
+        assertEquals(2, evaluator.getCachedExpressions());
+        assertTrue(evaluator.getCompileTime() > 0);
+    }
+
+    @Test
+    public void testEviction() {
+        JexlPropertyEvaluator evaluator = new JexlPropertyEvaluator(2);
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("a", 1);
+
+        evaluator.evaluate("a + 1", properties);
+        evaluator.evaluate("a + 2", properties);
+        // Makes "a + 2" the least recently used expression.
+        evaluator.evaluate("a + 1", properties);
+        evaluator.evaluate("a + 3", properties);
+        assertEquals(2, evaluator.getCachedExpressions());
+        assertEquals(1, evaluator.getCacheHits());
+        assertEquals(3, evaluator.getCacheMisses());
+
+        evaluator.evaluate("a + 1", properties);
+        assertEquals(2, evaluator.getCacheHits());
+        evaluator.evaluate("a + 2", properties);
+        assertEquals(4, evaluator.getCacheMisses());
+    }
+
+    @Test
+    public void testSetCacheSize() {
+        JexlPropertyEvaluator evaluator = new JexlPropertyEvaluator();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("a", 1);
+        for (int i = 0; i < 10; i++) {
+            evaluator.evaluate("a + " + i, properties);
+        }
+        assertEquals(10, evaluator.getCachedExpressions());
+
+        evaluator.setCacheSize(4);
+        assertEquals(4, evaluator.getCacheSize());
+        assertEquals(4, evaluator.getCachedExpressions());
+        // The most recently used expressions are kept.
+        evaluator.evaluate("a + 9", properties);
+        assertEquals(1, evaluator.getCacheHits());
+        evaluator.evaluate("a + 0", properties);
+        assertEquals(11, evaluator.getCacheMisses());
+    }
+
+}
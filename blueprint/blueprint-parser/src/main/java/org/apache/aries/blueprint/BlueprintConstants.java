@@ -38,6 +38,8 @@ public interface BlueprintConstants  {
 
     String XML_VALIDATION = "blueprint.aries.xml-validation";
 
+    String PARALLEL_INSTANTIATION = "blueprint.aries.parallel-instantiation";
+
     String USE_SYSTEM_CONTEXT_PROPERTY = "org.apache.aries.blueprint.use.system.context";
 
     String IGNORE_UNKNOWN_NAMESPACE_HANDLERS_PROPERTY = "org.apache.aries.blueprint.parser.service.ignore.unknown.namespace.handlers";
@@ -39,6 +39,12 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.aries.blueprint.ComponentDefinitionRegistry;
 import org.apache.aries.blueprint.NamespaceHandler;
@@ -237,11 +243,8 @@ public class Parser {
     }
 
     public void parse(String location, InputStream inputStream) throws Exception {
-        InputSource inputSource = new InputSource(inputStream);
-        inputSource.setSystemId(location);
-        DocumentBuilder builder = getDocumentBuilderFactory().newDocumentBuilder();
-        Document doc = builder.parse(inputSource);
-        documents.add(doc);
+        DocumentBuilder builder = newDocumentBuilder();
+        documents.add(doParse(builder, location, inputStream));
     }
 
     /**
@@ -252,16 +255,56 @@ public class Parser {
     public void parse(List<URL> urls) throws Exception {
         // Create document builder factory
         // Load documents
+        DocumentBuilder builder = newDocumentBuilder();
         for (URL url : urls) {
-            InputStream inputStream = url.openStream();
-            try {
-                parse (url.toString(), inputStream);
-            } finally {
-                inputStream.close();
-            }
+            documents.add(doParse(builder, url));
+        }
+    }
+
+    /**
+     * Parse blueprint xml referred to by a list of URLs, splitting the documents among
+     * several workers run on the given executor, each one using its own document builder.
+     * The calling thread takes part in the work, so the executor can be bounded and shared
+     * without risking a deadlock.
+     * @param urls URLs to blueprint xml to parse
+     * @param executor executor used to parse the documents concurrently, may be <code>null</code>
+     * @throws Exception on parse error
+     */
+    public void parse(List<URL> urls, Executor executor) throws Exception {
+        List<Callable<List<Document>>> tasks = new ArrayList<Callable<List<Document>>>();
+        for (final List<URL> chunk : split(urls, executor)) {
+            tasks.add(new Callable<List<Document>>() {
+                public List<Document> call() throws Exception {
+                    DocumentBuilder builder = newDocumentBuilder();
+                    List<Document> docs = new ArrayList<Document>(chunk.size());
+                    for (URL url : chunk) {
+                        docs.add(doParse(builder, url));
+                    }
+                    return docs;
+                }
+            });
+        }
+        for (List<Document> docs : invokeAll(tasks, executor)) {
+            documents.addAll(docs);
         }
     }
 
+    private static Document doParse(DocumentBuilder builder, URL url) throws Exception {
+        InputStream inputStream = url.openStream();
+        try {
+            return doParse(builder, url.toString(), inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static Document doParse(DocumentBuilder builder, String location, InputStream inputStream) throws Exception {
+        InputSource inputSource = new InputSource(inputStream);
+        inputSource.setSystemId(location);
+        builder.reset();
+        return builder.parse(inputSource);
+    }
+
     public Set<URI> getNamespaces() {
         if (this.namespaces == null) {
             Set<URI> namespaces = new LinkedHashSet<URI>();
@@ -338,20 +381,45 @@ public class Parser {
     }
 
     public void validate(Schema schema, ErrorHandler errorHandler) {
+        validate(schema, errorHandler, null);
+    }
+
+    /**
+     * Validate the parsed documents against the given schema.  When an executor is given,
+     * the documents are split among several workers, each one using its own validator.
+     */
+    public void validate(final Schema schema, final ErrorHandler errorHandler, Executor executor) {
         try {
-            Validator validator = schema.newValidator();
-            if (errorHandler != null) {
-                validator.setErrorHandler(errorHandler);
-            }
-            for (Document doc : this.documents) {
-                validator.validate(new DOMSource(doc));
+            List<Callable<List<Document>>> tasks = new ArrayList<Callable<List<Document>>>();
+            for (final List<Document> docs : split(documents, executor)) {
+                tasks.add(new Callable<List<Document>>() {
+                    public List<Document> call() throws Exception {
+                        Validator validator = schema.newValidator();
+                        if (errorHandler != null) {
+                            validator.setErrorHandler(errorHandler);
+                        }
+                        for (Document doc : docs) {
+                            validator.validate(new DOMSource(doc));
+                        }
+                        return docs;
+                    }
+                });
             }
+            invokeAll(tasks, executor);
         } catch (Exception e) {
             throw new ComponentDefinitionException("Unable to validate xml", e);
         }
     }
 
     public void validatePsvi(Schema schema) {
+        validatePsvi(schema, null);
+    }
+
+    /**
+     * Re-parse the documents with a schema aware parser.  When an executor is given,
+     * the documents are split among several workers, each one using its own document builder.
+     */
+    public void validatePsvi(Schema schema, Executor executor) {
         try {
             // In order to support validation with the built-in xml parser
             // from the JDK, we can't use Validator.validate(source, result)
@@ -359,19 +427,29 @@ public class Parser {
             //   https://issues.apache.org/jira/browse/XERCESJ-1212
             // This was fixed in xerces 2.9.0 years ago but still is not
             // included in my JDK.
-            List<String> locations = new ArrayList<String>();
-            for (Document doc : documents) {
-                locations.add(doc.getDocumentURI());
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setSchema(schema);
+            List<Callable<List<Document>>> tasks = new ArrayList<Callable<List<Document>>>();
+            for (final List<Document> docs : split(documents, executor)) {
+                tasks.add(new Callable<List<Document>>() {
+                    public List<Document> call() throws Exception {
+                        DocumentBuilder builder;
+                        synchronized (factory) {
+                            builder = factory.newDocumentBuilder();
+                        }
+                        List<Document> validated = new ArrayList<Document>(docs.size());
+                        for (Document doc : docs) {
+                            builder.reset();
+                            validated.add(builder.parse(new InputSource(doc.getDocumentURI())));
+                        }
+                        return validated;
+                    }
+                });
             }
             List<Document> validated = new ArrayList<Document>();
-            for (String location : locations) {
-                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                factory.setNamespaceAware(true);
-                factory.setSchema(schema);
-                DocumentBuilder builder = factory.newDocumentBuilder();
-                InputSource inputSource = new InputSource(location);
-                Document doc = builder.parse(inputSource);
-                validated.add(doc);
+            for (List<Document> docs : invokeAll(tasks, executor)) {
+                validated.addAll(docs);
             }
             this.documents.clear();
             this.documents.addAll(validated);
@@ -380,6 +458,72 @@ public class Parser {
         }
     }
 
+    /**
+     * Split the items in contiguous chunks, one per worker.
+     */
+    private static <T> List<List<T>> split(List<T> items, Executor executor) {
+        int workers = executor != null ? Math.min(items.size(), getWorkers(executor)) : 1;
+        List<List<T>> chunks = new ArrayList<List<T>>();
+        if (workers <= 1) {
+            chunks.add(new ArrayList<T>(items));
+            return chunks;
+        }
+        int size = (items.size() + workers - 1) / workers;
+        for (int i = 0; i < items.size(); i += size) {
+            chunks.add(new ArrayList<T>(items.subList(i, Math.min(i + size, items.size()))));
+        }
+        return chunks;
+    }
+
+    /**
+     * The threads of the executor plus the calling thread, which takes part in the work.
+     */
+    private static int getWorkers(Executor executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getMaximumPoolSize() + 1;
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Run the tasks on the executor and return their results in order.  Tasks which have
+     * not been picked up by the executor yet are run by the calling thread.
+     */
+    private static <T> List<T> invokeAll(List<Callable<T>> callables, Executor executor) throws Exception {
+        List<FutureTask<T>> tasks = new ArrayList<FutureTask<T>>(callables.size());
+        for (Callable<T> callable : callables) {
+            tasks.add(new FutureTask<T>(callable));
+        }
+        if (executor != null && tasks.size() > 1) {
+            for (FutureTask<T> task : tasks.subList(1, tasks.size())) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // The task will be run by the calling thread
+                }
+            }
+        }
+        for (FutureTask<T> task : tasks) {
+            // No-op if the task is already running or done
+            task.run();
+        }
+        List<T> results = new ArrayList<T>(tasks.size());
+        for (FutureTask<T> task : tasks) {
+            try {
+                results.add(task.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
     private void loadComponents(Document doc) {
         defaultTimeout = TIMEOUT_DEFAULT;
         defaultAvailability = AVAILABILITY_DEFAULT;
@@ -1458,7 +1602,15 @@ public class Parser {
         return value.toString();
     }
 
-    private static DocumentBuilderFactory getDocumentBuilderFactory() {
+    private static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilderFactory factory = getDocumentBuilderFactory();
+        // Document builder factories are not thread safe
+        synchronized (factory) {
+            return factory.newDocumentBuilder();
+        }
+    }
+
+    private static synchronized DocumentBuilderFactory getDocumentBuilderFactory() {
         if (documentBuilderFactory == null) {
             DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
             dbf.setNamespaceAware(true);
@@ -117,7 +117,7 @@ public abstract class AbstractProxyManager implements ProxyManager
   protected abstract InvocationHandler getInvocationHandler(Object proxy);
   protected abstract boolean isProxyClass(Class<?> clazz);
 
-  protected synchronized ClassLoader getClassLoader(final Bundle clientBundle, Collection<Class<?>> classes) 
+  protected ClassLoader getClassLoader(final Bundle clientBundle, Collection<Class<?>> classes) 
   {
     if (clientBundle != null && clientBundle.getState() == Bundle.UNINSTALLED) {
       throw new IllegalStateException(format("The bundle %s at version %s with id %d has been uninstalled.", 
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.proxy.impl.common;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A concurrent map with weakly referenced keys compared by identity, such as class
+ * loaders or bundle wirings, which does not prevent the keys from being garbage
+ * collected.
+ * <p>
+ * Lookups do not lock.  Entries whose key has been collected are purged on subsequent
+ * updates.  As with a WeakHashMap, values must not hold strong references to their key.
+ */
+public final class WeakIdentityMap<K, V> {
+
+  private final ConcurrentMap<Object, V> map = new ConcurrentHashMap<Object, V>();
+  private final ReferenceQueue<K> queue = new ReferenceQueue<K>();
+
+  public V get(K key) {
+    return map.get(new LookupKey(key));
+  }
+
+  /**
+   * Associates the value with the key unless a value is already present.
+   *
+   * @return the value associated with the key after this call
+   */
+  public V putIfAbsent(K key, V value) {
+    expunge();
+    V existing = map.putIfAbsent(new WeakKey<K>(key, queue), value);
+    return existing != null ? existing : value;
+  }
+
+  /**
+   * Removes the entry of the key if it is associated with the value.
+   */
+  public boolean remove(K key, V value) {
+    expunge();
+    return map.remove(new LookupKey(key), value);
+  }
+
+  public int size() {
+    expunge();
+    return map.size();
+  }
+
+  private void expunge() {
+    Reference<? extends K> ref;
+    while ((ref = queue.poll()) != null) {
+      map.remove(ref);
+    }
+  }
+
+  private static final class WeakKey<K> extends WeakReference<K> {
+
+    private final int hash;
+
+    WeakKey(K key, ReferenceQueue<K> queue) {
+      super(key, queue);
+      this.hash = System.identityHashCode(key);
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      }
+      Object key = get();
+      if (o instanceof WeakKey) {
+        return key != null && key == ((WeakKey<?>) o).get();
+      } else if (o instanceof LookupKey) {
+        return key != null && key == ((LookupKey) o).key;
+      }
+      return false;
+    }
+  }
+
+  private static final class LookupKey {
+
+    private final Object key;
+
+    LookupKey(Object key) {
+      this.key = key;
+    }
+
+    public int hashCode() {
+      return System.identityHashCode(key);
+    }
+
+    public boolean equals(Object o) {
+      if (o instanceof WeakKey) {
+        return o.equals(this);
+      } else if (o instanceof LookupKey) {
+        return key == ((LookupKey) o).key;
+      }
+      return false;
+    }
+  }
+
+}
@@ -30,13 +30,16 @@ import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.apache.aries.proxy.FinalModifierException;
 import org.apache.aries.proxy.UnableToProxyException;
+import org.apache.aries.proxy.impl.common.WeakIdentityMap;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
@@ -55,18 +58,11 @@ public class ProxySubclassGenerator
   // It is a weak map (so when a ClassLoader is garbage collected we remove
   // the map of
   // Class names to sub-Class names)
-  private static final Map<ClassLoader, ConcurrentMap<String, String>> proxyClassesByClassLoader;
+  private static final WeakIdentityMap<ClassLoader, ProxyClasses> proxyClassesByClassLoader =
+      new WeakIdentityMap<ClassLoader, ProxyClasses>();
   
   private static final ClassLoader defaultClassLoader = new ClassLoader() {};
 
-  static {
-    // Ensure that this is a synchronized map as we may use it from multiple
-    // threads concurrently
-    //
-    proxyClassesByClassLoader = Collections
-        .synchronizedMap(new WeakHashMap<ClassLoader, ConcurrentMap<String, String>>());
-  }
-
   private static final char FINAL_MODIFIER = '!';
   private static final char UNABLE_TO_PROXY = '#';
 
@@ -75,7 +71,7 @@ public class ProxySubclassGenerator
     return getProxySubclass(aClass, aClass.getClassLoader());
   }
 
-  public static Class<?> getProxySubclass(Class<?> aClass, ClassLoader loader) throws UnableToProxyException
+  public static Class<?> getProxySubclass(final Class<?> aClass, ClassLoader loader) throws UnableToProxyException
   {
     LOGGER.debug(Constants.LOG_ENTRY, "getProxySubclass", new Object[] { aClass });
 
@@ -83,68 +79,54 @@ public class ProxySubclassGenerator
     // this is for subclassing java.* or javax.* packages, so that one will do
     if (loader == null) loader = defaultClassLoader;
 
-    ConcurrentMap<String, String> proxyMap;
-    synchronized (loader) {
-      proxyMap = proxyClassesByClassLoader.get(loader);
-      if (proxyMap == null) {
-        proxyMap = new ConcurrentHashMap<String, String>();
-        proxyClassesByClassLoader.put(loader, proxyMap);
-      }
-    }
+    final ProxyClasses proxies = getProxyClasses(loader);
 
     // check the map to see if we have already generated a subclass for this
     // class
     // if we have return the mapped class object
-    // if we haven't generate the subclass and return it
-    Class<?> classToReturn = null;
-    synchronized (aClass) {
-      String key = aClass.getName();
-      String className = proxyMap.get(key);
-      if (className != null) {
-
-        LOGGER.debug("Found proxy subclass with key {} and name {}.", key, className);
-
-        if (className.charAt(0) == FINAL_MODIFIER) {
-          String[] exceptionParts = className.substring(1).split(":");
-          if (exceptionParts.length == 1) {
-            throw new FinalModifierException(aClass);
-          } else {
-            throw new FinalModifierException(aClass, exceptionParts[1]);
-          }
-        } else if (className.charAt(0) == UNABLE_TO_PROXY) {
-          throw new UnableToProxyException(aClass);
+    // if we haven't generate the subclass and return it, the other threads
+    // asking for the same subclass wait for it to be generated
+    String key = aClass.getName();
+    // the subclass defined by this thread, the loader may not be able to load it
+    final Class<?>[] generated = new Class<?>[1];
+    FutureTask<String> task = proxies.classNames.get(key);
+    if (task == null) {
+      final ClassLoader definingLoader = loader;
+      FutureTask<String> newTask = new FutureTask<String>(new Callable<String>() {
+        public String call() throws UnableToProxyException {
+          return generateSubclass(aClass, definingLoader, proxies, generated);
         }
+      });
+      task = proxies.classNames.putIfAbsent(key, newTask);
+      if (task == null) {
+        LOGGER.debug("Need to generate subclass. Using key {}.", key);
+        task = newTask;
+        task.run();
+      }
+    }
 
-        try {
-          classToReturn = loader.loadClass(className);
-        } catch (ClassNotFoundException cnfe) {
-          LOGGER.debug(Constants.LOG_EXCEPTION, cnfe);
-          throw new UnableToLoadProxyException(className, cnfe);
-        }
-      } else {
+    String className = getClassName(aClass, key, task, proxies);
 
-        LOGGER.debug("Need to generate subclass. Using key {}.", key);
-        try {
-          scanForFinalModifiers(aClass);
-
-          classToReturn = generateAndLoadSubclass(aClass, loader);
-
-          if (classToReturn != null) {
-            proxyMap.put(key, classToReturn.getName());
-          } else {
-            proxyMap.put(key, UNABLE_TO_PROXY + aClass.getName());
-            throw new UnableToProxyException(aClass);
-          }
-        } catch (FinalModifierException e) {
-          if (e.isFinalClass()) {
-            proxyMap.put(key, FINAL_MODIFIER + e.getClassName());
-            throw e;
-          } else {
-            proxyMap.put(key, FINAL_MODIFIER + e.getClassName() + ':' + e.getFinalMethods());
-            throw e;
-          }
-        }
+    LOGGER.debug("Found proxy subclass with key {} and name {}.", key, className);
+
+    if (className.charAt(0) == FINAL_MODIFIER) {
+      String[] exceptionParts = className.substring(1).split(":");
+      if (exceptionParts.length == 1) {
+        throw new FinalModifierException(aClass);
+      } else {
+        throw new FinalModifierException(aClass, exceptionParts[1]);
+      }
+    } else if (className.charAt(0) == UNABLE_TO_PROXY) {
+      throw new UnableToProxyException(aClass);
+    }
 
+    Class<?> classToReturn = generated[0];
+    if (classToReturn == null) {
+      try {
+        classToReturn = loader.loadClass(className);
+      } catch (ClassNotFoundException cnfe) {
+        LOGGER.debug(Constants.LOG_EXCEPTION, cnfe);
+        throw new UnableToLoadProxyException(className, cnfe);
       }
     }
 
@@ -153,6 +135,65 @@ public class ProxySubclassGenerator
     return classToReturn;
   }
 
+  private static ProxyClasses getProxyClasses(ClassLoader loader)
+  {
+    ProxyClasses proxies = proxyClassesByClassLoader.get(loader);
+    if (proxies == null) {
+      proxies = proxyClassesByClassLoader.putIfAbsent(loader, new ProxyClasses());
+    }
+    return proxies;
+  }
+
+  /**
+   * Generate the subclass, or find why it cannot be generated
+   * @param generated receives the subclass when it is generated
+   * @return the name of the subclass, or the reason it cannot be generated
+   */
+  private static String generateSubclass(Class<?> aClass, ClassLoader loader, ProxyClasses proxies,
+      Class<?>[] generated) throws UnableToProxyException
+  {
+    try {
+      scanForFinalModifiers(aClass);
+
+      generated[0] = generateAndLoadSubclass(aClass, loader);
+
+      if (generated[0] == null) {
+        return UNABLE_TO_PROXY + aClass.getName();
+      }
+      proxies.generatedNames.add(generated[0].getName());
+      return generated[0].getName();
+    } catch (FinalModifierException e) {
+      if (e.isFinalClass()) {
+        return FINAL_MODIFIER + e.getClassName();
+      } else {
+        return FINAL_MODIFIER + e.getClassName() + ':' + e.getFinalMethods();
+      }
+    }
+  }
+
+  private static String getClassName(Class<?> aClass, String key, FutureTask<String> task, ProxyClasses proxies)
+      throws UnableToProxyException
+  {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UnableToProxyException(aClass, e);
+    } catch (ExecutionException e) {
+      // unexpected failures are not cached, the next call tries again
+      proxies.classNames.remove(key, task);
+      Throwable cause = e.getCause();
+      if (cause instanceof UnableToProxyException) {
+        throw (UnableToProxyException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new UnableToProxyException(aClass, cause);
+    }
+  }
+
   public static Object newProxySubclassInstance(Class<?> classToProxy, InvocationHandler ih)
       throws UnableToProxyException
   {
@@ -314,9 +355,9 @@ public class ProxySubclassGenerator
     // We will always have a proxy map for the class loader of any proxy
     // class, so if
     // this is null we know to return false
-    Map<String, String> proxies = proxyClassesByClassLoader.get(aClass.getClassLoader());
+    ProxyClasses proxies = proxyClassesByClassLoader.get(aClass.getClassLoader());
 
-    boolean isProxySubclass = (proxies != null && proxies.containsValue(aClass.getName()));
+    boolean isProxySubclass = (proxies != null && proxies.generatedNames.contains(aClass.getName()));
 
     LOGGER.debug(Constants.LOG_EXIT, "isProxySubclass", isProxySubclass);
 
@@ -387,4 +428,14 @@ public class ProxySubclassGenerator
     return ih;
   }
 
+  /**
+   * The subclasses generated in a class loader
+   */
+  private static final class ProxyClasses
+  {
+    /** The generation of the subclass of each class, by class name */
+    final ConcurrentMap<String, FutureTask<String>> classNames = new ConcurrentHashMap<String, FutureTask<String>>();
+    /** The names of the generated subclasses */
+    final Set<String> generatedNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  }
 }
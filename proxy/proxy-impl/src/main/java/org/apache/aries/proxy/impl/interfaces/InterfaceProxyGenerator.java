@@ -24,15 +24,15 @@ import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 
 import org.apache.aries.proxy.FinalModifierException;
 import org.apache.aries.proxy.InvocationListener;
 import org.apache.aries.proxy.UnableToProxyException;
+import org.apache.aries.proxy.impl.common.WeakIdentityMap;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Opcodes;
 import org.osgi.framework.Bundle;
@@ -52,8 +52,11 @@ public final class InterfaceProxyGenerator extends ClassVisitor implements Opcod
     
   }
 
-  private static final Map<BundleWiring, WeakReference<ProxyClassLoader>> cache =
-            new WeakHashMap<BundleWiring, WeakReference<ProxyClassLoader>>(128);
+  private static final WeakIdentityMap<Object, WeakReference<ProxyClassLoader>> cache =
+            new WeakIdentityMap<Object, WeakReference<ProxyClassLoader>>();
+
+  /** The cache key of the proxies created without a client bundle wiring */
+  private static final Object NO_WIRING = new Object();
   
   /**
    * Generate a new proxy instance implementing the supplied interfaces and using the supplied
@@ -72,27 +75,10 @@ public final class InterfaceProxyGenerator extends ClassVisitor implements Opcod
     if(superclass != null && (superclass.getModifiers() & Modifier.FINAL) != 0)
       throw new FinalModifierException(superclass);
     
-    ProxyClassLoader pcl = null;
-    
     SortedSet<Class<?>> interfaces = createSet(ifaces);
     
-    synchronized (cache) {
-      BundleWiring wiring = client == null ? null : (BundleWiring)client.adapt(BundleWiring.class);
-      WeakReference<ProxyClassLoader> ref = cache.get(wiring);
-      
-      if(ref != null)
-        pcl = ref.get();
-      
-      if (pcl != null && pcl.isInvalid(interfaces)) {
-          pcl = null;
-          cache.remove(wiring);
-      }
-      
-      if(pcl == null) {
-        pcl = new ProxyClassLoader(client);
-        cache.put(wiring, new WeakReference<ProxyClassLoader>(pcl));
-      }
-    }
+    BundleWiring wiring = client == null ? null : (BundleWiring)client.adapt(BundleWiring.class);
+    ProxyClassLoader pcl = getProxyClassLoader(client, wiring != null ? wiring : NO_WIRING, interfaces);
 
     Class<?> c = pcl.createProxyClass(superclass, interfaces);
 
@@ -105,6 +91,25 @@ public final class InterfaceProxyGenerator extends ClassVisitor implements Opcod
     }
   }
 
+  private static ProxyClassLoader getProxyClassLoader(Bundle client, Object key, Set<Class<?>> interfaces) {
+    for (;;) {
+      WeakReference<ProxyClassLoader> ref = cache.get(key);
+      ProxyClassLoader pcl = ref != null ? ref.get() : null;
+      
+      if (pcl != null && !!!pcl.isInvalid(interfaces))
+        return pcl;
+      
+      if (ref != null)
+        cache.remove(key, ref);
+      
+      pcl = new ProxyClassLoader(client);
+      WeakReference<ProxyClassLoader> newRef = new WeakReference<ProxyClassLoader>(pcl);
+      if (cache.putIfAbsent(key, newRef) == newRef)
+        return pcl;
+      // another thread created a class loader at the same time, use it
+    }
+  }
+
   /**
    * Get the set of interfaces we need to process. This will return a HashSet 
    * that includes includes the supplied collection and any super-interfaces of 
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.proxy.impl.weaving;
+
+/**
+ * Matches class names against a set of glob patterns, where <code>*</code> matches
+ * any sequence of characters and every other character matches itself.
+ * <p>
+ * The patterns are compiled into a trie of their literal prefixes, so a class name is
+ * read at most once whatever the number of patterns.  Patterns ending with their only
+ * <code>*</code>, such as <code>javax.*</code>, are fully matched by the trie; the rest
+ * of the other patterns is only matched for the class names starting with their prefix.
+ */
+final class ClassNameMatcher {
+
+    private final Node root = new Node();
+
+    /**
+     * @param globs comma separated list of glob patterns, blank entries are ignored
+     */
+    ClassNameMatcher(String globs) {
+        for (String glob : globs.split(",")) {
+            glob = glob.trim();
+            if (glob.length() != 0) {
+                add(glob);
+            }
+        }
+    }
+
+    private void add(String glob) {
+        int star = glob.indexOf('*');
+        int prefixLength = star < 0 ? glob.length() : star;
+        Node node = root;
+        for (int i = 0; i < prefixLength; i++) {
+            node = node.getOrCreateChild(glob.charAt(i));
+        }
+        if (star < 0) {
+            node.exact = true;
+        } else if (star == glob.length() - 1) {
+            node.any = true;
+        } else {
+            String[] suffixes = new String[node.suffixes.length + 1];
+            System.arraycopy(node.suffixes, 0, suffixes, 0, node.suffixes.length);
+            suffixes[node.suffixes.length] = glob.substring(star);
+            node.suffixes = suffixes;
+        }
+    }
+
+    boolean matches(String className) {
+        Node node = root;
+        int length = className.length();
+        for (int i = 0; ; i++) {
+            if (node.any) {
+                return true;
+            }
+            String[] suffixes = node.suffixes;
+            for (int j = 0; j < suffixes.length; j++) {
+                if (globMatches(suffixes[j], className, i)) {
+                    return true;
+                }
+            }
+            if (i == length) {
+                return node.exact;
+            }
+            node = node.getChild(className.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Match the end of the string from the given offset against a glob, backtracking
+     * only to the last <code>*</code> seen.
+     */
+    static boolean globMatches(String glob, String str, int offset) {
+        int g = 0;
+        int s = offset;
+        int starGlob = -1;
+        int starStr = -1;
+        while (s < str.length()) {
+            if (g < glob.length() && glob.charAt(g) == '*') {
+                starGlob = g++;
+                starStr = s;
+            } else if (g < glob.length() && glob.charAt(g) == str.charAt(s)) {
+                g++;
+                s++;
+            } else if (starGlob >= 0) {
+                g = starGlob + 1;
+                s = ++starStr;
+            } else {
+                return false;
+            }
+        }
+        while (g < glob.length() && glob.charAt(g) == '*') {
+            g++;
+        }
+        return g == glob.length();
+    }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final String[] NO_SUFFIXES = new String[0];
+
+        // class names use few distinct characters at each position, so the children
+        // are kept in small arrays rather than in a map of boxed characters
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        boolean exact;
+        boolean any;
+        String[] suffixes = NO_SUFFIXES;
+
+        Node getChild(char c) {
+            char[] k = keys;
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node getOrCreateChild(char c) {
+            Node child = getChild(c);
+            if (child == null) {
+                int n = keys.length;
+                char[] newKeys = new char[n + 1];
+                Node[] newChildren = new Node[n + 1];
+                System.arraycopy(keys, 0, newKeys, 0, n);
+                System.arraycopy(children, 0, newChildren, 0, n);
+                child = new Node();
+                newKeys[n] = c;
+                newChildren[n] = child;
+                keys = newKeys;
+                children = newChildren;
+            }
+            return child;
+        }
+    }
+}
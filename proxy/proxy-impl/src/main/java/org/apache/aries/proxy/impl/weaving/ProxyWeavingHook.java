@@ -20,13 +20,17 @@ package org.apache.aries.proxy.impl.weaving;
 
 import static java.lang.String.format;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.aries.proxy.UnableToProxyException;
+import org.apache.aries.proxy.impl.common.WeakIdentityMap;
 import org.apache.aries.proxy.weaving.WovenProxy;
 import org.apache.aries.proxy.weavinghook.ProxyWeavingController;
 import org.apache.aries.proxy.weavinghook.WeavingHelper;
@@ -49,6 +53,17 @@ public final class ProxyWeavingHook implements WeavingHook, WeavingHelper {
   public static final String WEAVING_ENABLED_CLASSES_DEFAULT = "*";
   public static final String WEAVING_DISABLED_CLASSES_DEFAULT = "org.objectweb.asm.*,org.slf4j.*,org.apache.log4j.*,javax.*,ch.qos.logback.*";
 
+  /**
+   * The manifest header added by the {@link StaticProxyWeaver} to bundles whose classes
+   * were woven at build time. The classes of these bundles are not woven again.
+   */
+  public static final String STATICALLY_WOVEN_HEADER = "Aries-Proxy-Woven";
+  /**
+   * The manifest header listing the classes the {@link StaticProxyWeaver} could not
+   * load, and so did not weave. These classes are woven at runtime.
+   */
+  public static final String STATICALLY_SKIPPED_HEADER = "Aries-Proxy-Woven-Skipped";
+
   private static final Logger LOGGER = LoggerFactory.getLogger(ProxyWeavingHook.class);
   /** An import of the WovenProxy package */
   private static final String IMPORT_A = "org.apache.aries.proxy.weaving";
@@ -59,8 +74,10 @@ public final class ProxyWeavingHook implements WeavingHook, WeavingHelper {
    */
   private static final String IMPORT_B = "org.apache.aries.proxy";
 
-  private final List<Pattern> enabled;
-  private final List<Pattern> disabled;
+  private final ClassNameMatcher enabled;
+  private final ClassNameMatcher disabled;
+  /** The weaving state of each bundle wiring */
+  private final WeakIdentityMap<BundleWiring, WiringState> wirings = new WeakIdentityMap<BundleWiring, WiringState>();
   @SuppressWarnings("rawtypes")
   private final ServiceTracker controllers;
 
@@ -69,8 +86,9 @@ public final class ProxyWeavingHook implements WeavingHook, WeavingHelper {
 })
 public ProxyWeavingHook(BundleContext context) {
     String enabledProp = context != null ? context.getProperty(WEAVING_ENABLED_CLASSES) : null;
-    enabled = parseMatchers(enabledProp, WEAVING_ENABLED_CLASSES_DEFAULT);
-    disabled = parseMatchers(context != null ? context.getProperty(WEAVING_DISABLED_CLASSES) : null, WEAVING_DISABLED_CLASSES_DEFAULT);
+    enabled = new ClassNameMatcher(enabledProp != null ? enabledProp : WEAVING_ENABLED_CLASSES_DEFAULT);
+    String disabledProp = context != null ? context.getProperty(WEAVING_DISABLED_CLASSES) : null;
+    disabled = new ClassNameMatcher(disabledProp != null ? disabledProp : WEAVING_DISABLED_CLASSES_DEFAULT);
     controllers = new ServiceTracker(context, ProxyWeavingController.class.getName(), null);
     controllers.open();
     
@@ -102,6 +120,10 @@ public ProxyWeavingHook(BundleContext context) {
         return;
     }
 
+    if (bw != null && getWiringState(bw).isStaticallyWoven(wovenClass.getClassName())) {
+        return;
+    }
+
     if (shouldWeave(wovenClass)) {
       byte[] bytes = null;
       
@@ -131,36 +153,12 @@ public ProxyWeavingHook(BundleContext context) {
   }
 
 
-    private List<Pattern> parseMatchers(String matchers, String def) {
-        String[] strings = (matchers != null ? matchers : def).split(",");
-        List<Pattern> patterns = new ArrayList<Pattern>();
-        for (String str : strings) {
-            str = str.trim();
-            if (str.length() != 0) {
-                str = str.replaceAll("\\.", "\\\\.");
-                str = str.replaceAll("\\*", ".*");
-                Pattern p = Pattern.compile(str);
-                patterns.add(p);
-            }
-        }
-        return patterns;
-    }
-
     boolean isEnabled(String className) {
-        return matches(enabled, className);
+        return enabled.matches(className);
     }
 
     boolean isDisabled(String className) {
-        return matches(disabled, className);
-    }
-
-    private boolean matches(List<Pattern> patterns, String className) {
-        for (Pattern p : patterns) {
-            if (p.matcher(className).matches()) {
-                return true;
-            }
-        }
-        return false;
+        return disabled.matches(className);
     }
     
     public boolean isWoven(Class<?> clazz)
@@ -170,14 +168,33 @@ public ProxyWeavingHook(BundleContext context) {
 
     public boolean isSuperClassWoven(WovenClass wovenClass)
     {
-      ClassReader cReader = new ClassReader(wovenClass.getBytes());
-      try {
-          Class<?> superClass = Class.forName(cReader.getSuperName().replace('/', '.'), false,
-                  wovenClass.getBundleWiring().getClassLoader());
-          return WovenProxy.class.isAssignableFrom(superClass);
-      } catch (ClassNotFoundException e) {
-          throw weavingException(wovenClass, e);
+      String superName = new ClassReader(wovenClass.getBytes()).getSuperName();
+      if (superName == null || "java/lang/Object".equals(superName)) {
+          return false;
+      }
+      BundleWiring wiring = wovenClass.getBundleWiring();
+      ConcurrentMap<String, Boolean> cache = getWiringState(wiring).wovenSuperClasses;
+      Boolean woven = cache.get(superName);
+      if (woven == null) {
+          try {
+              Class<?> superClass = Class.forName(superName.replace('/', '.'), false, wiring.getClassLoader());
+              woven = WovenProxy.class.isAssignableFrom(superClass);
+          } catch (ClassNotFoundException e) {
+              throw weavingException(wovenClass, e);
+          }
+          cache.put(superName, woven);
+      }
+      return woven;
+    }
+
+    private WiringState getWiringState(BundleWiring wiring) {
+      WiringState state = wirings.get(wiring);
+      if (state == null) {
+          Dictionary<String, String> headers = wiring.getBundle().getHeaders("");
+          state = wirings.putIfAbsent(wiring, new WiringState(headers.get(STATICALLY_WOVEN_HEADER) != null,
+                  headers.get(STATICALLY_SKIPPED_HEADER)));
       }
+      return state;
     }
     
   private boolean shouldWeave(WovenClass wovenClass)
@@ -209,4 +226,29 @@ public ProxyWeavingHook(BundleContext context) {
     LOGGER.error(msg, e);
     return new WeavingException(msg, e);
   }
+
+  private static final class WiringState {
+    /** Whether the classes of the bundle were woven by the {@link StaticProxyWeaver} */
+    private final boolean staticallyWoven;
+    /** The classes of the bundle the {@link StaticProxyWeaver} could not weave */
+    private final Set<String> skipped;
+    /** The woven status of the super classes loaded by the wiring, by internal class name */
+    final ConcurrentMap<String, Boolean> wovenSuperClasses = new ConcurrentHashMap<String, Boolean>();
+
+    WiringState(boolean staticallyWoven, String skipped) {
+      this.staticallyWoven = staticallyWoven;
+      if (skipped == null) {
+        this.skipped = Collections.emptySet();
+      } else {
+        this.skipped = new HashSet<String>();
+        for (String className : skipped.split(",")) {
+          this.skipped.add(className.trim());
+        }
+      }
+    }
+
+    boolean isStaticallyWoven(String className) {
+      return staticallyWoven && !skipped.contains(className);
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.proxy.impl.weaving;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.aries.proxy.UnableToProxyException;
+
+/**
+ * Weaves the classes of a bundle at build time, as the {@link ProxyWeavingHook} would
+ * weave them when the bundle loads them, and marks the bundle with the
+ * {@link ProxyWeavingHook#STATICALLY_WOVEN_HEADER} header so that the hook skips it.
+ * <p>
+ * The classes are loaded by a class loader which weaves them as they are defined, so
+ * super classes are woven before their sub classes exactly as at runtime.  The classes
+ * selected by the <code>org.apache.aries.proxy.weaving.enabled</code> and
+ * <code>org.apache.aries.proxy.weaving.disabled</code> system properties, with the same
+ * defaults as the hook, are woven.  {@link org.apache.aries.proxy.weavinghook.ProxyWeavingController}
+ * services are not available at build time, so the classes are woven as if none were
+ * registered.  Super classes from other bundles are seen as they are on the class path
+ * given to the tool, so they should be woven the same way at build time and at runtime.
+ * Only the classes at the root of the bundle are woven, not the ones in embedded jars,
+ * and the woven classes take the class file version of the JVM running the tool.
+ * <p>
+ * The classes which cannot be loaded, for example because a dependency is missing from
+ * the class path, are left as they are and listed in the
+ * {@link ProxyWeavingHook#STATICALLY_SKIPPED_HEADER} header, so that the hook weaves
+ * them at runtime.
+ * <p>
+ * Usage:
+ * <pre>
+ * java org.apache.aries.proxy.impl.weaving.StaticProxyWeaver [-classpath &lt;path&gt;] bundle.jar [woven.jar]
+ * </pre>
+ * The class path holds the dependencies of the bundle needed to load its classes, the
+ * proxy bundle, ASM and slf4j must be on the class path of the tool itself.  The woven
+ * bundle replaces the original bundle when no output is given.  In a Maven build the
+ * tool can be run by the <code>java</code> goal of the exec-maven-plugin in the
+ * <code>package</code> phase, with the project jar as argument.
+ */
+public final class StaticProxyWeaver {
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String DYNAMIC_IMPORT_PACKAGE = "DynamicImport-Package";
+    private static final String WOVEN_IMPORTS = "org.apache.aries.proxy.weaving,org.apache.aries.proxy";
+
+    private final ClassNameMatcher enabled;
+    private final ClassNameMatcher disabled;
+    private final ClassLoader parent;
+
+    /**
+     * @param enabled the comma separated globs of the classes to weave
+     * @param disabled the comma separated globs of the classes not to weave
+     * @param parent the class loader of the dependencies of the bundles
+     */
+    public StaticProxyWeaver(String enabled, String disabled, ClassLoader parent) {
+        this.enabled = new ClassNameMatcher(enabled);
+        this.disabled = new ClassNameMatcher(disabled);
+        this.parent = parent;
+    }
+
+    public static void main(String... args) throws Exception {
+        List<URL> classpath = new ArrayList<URL>();
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (("-classpath".equals(args[i]) || "-cp".equals(args[i])) && i + 1 < args.length) {
+                for (String entry : args[++i].split(File.pathSeparator)) {
+                    if (entry.length() != 0) {
+                        classpath.add(new File(entry).toURI().toURL());
+                    }
+                }
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.isEmpty() || files.size() > 2) {
+            System.err.println("Usage: java " + StaticProxyWeaver.class.getName() + " [-classpath <path>] bundle.jar [woven.jar]");
+            System.exit(-1);
+        }
+
+        URLClassLoader loader = new URLClassLoader(classpath.toArray(new URL[classpath.size()]),
+                StaticProxyWeaver.class.getClassLoader());
+        StaticProxyWeaver weaver = new StaticProxyWeaver(
+                System.getProperty(ProxyWeavingHook.WEAVING_ENABLED_CLASSES, ProxyWeavingHook.WEAVING_ENABLED_CLASSES_DEFAULT),
+                System.getProperty(ProxyWeavingHook.WEAVING_DISABLED_CLASSES, ProxyWeavingHook.WEAVING_DISABLED_CLASSES_DEFAULT),
+                loader);
+        File in = new File(files.get(0));
+        File out = files.size() > 1 ? new File(files.get(1)) : in;
+        List<String> skipped = new ArrayList<String>();
+        int woven = weaver.weave(in, out, skipped);
+        System.out.println("[Aries Proxy Static Weaver] Woven " + woven + " classes of " + in);
+        if (!skipped.isEmpty()) {
+            System.err.println("[Aries Proxy Static Weaver] Could not load, and left to be woven at runtime, the classes " + skipped);
+        }
+    }
+
+    /**
+     * Weaves the classes of a bundle.  The output may be the input bundle.
+     *
+     * @return the number of woven classes
+     */
+    public int weave(File in, File out) throws IOException {
+        return weave(in, out, new ArrayList<String>());
+    }
+
+    /**
+     * Weaves the classes of a bundle.  The output may be the input bundle.
+     *
+     * @param skipped receives the names of the classes which could not be loaded
+     * @return the number of woven classes
+     */
+    public int weave(File in, File out, List<String> skipped) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        Manifest manifest = read(in, entries);
+        if (manifest == null) {
+            throw new IOException(in + " is not a bundle, it has no manifest");
+        }
+        Attributes attributes = manifest.getMainAttributes();
+        String symbolicName = attributes.getValue("Bundle-SymbolicName");
+        if (attributes.getValue(ProxyWeavingHook.STATICALLY_WOVEN_HEADER) != null
+                || symbolicName == null
+                || symbolicName.startsWith("org.apache.aries.proxy")
+                || symbolicName.startsWith("org.apache.aries.util")) {
+            // already woven or never woven by the hook
+            if (!in.equals(out)) {
+                write(out, manifest, entries);
+            }
+            return 0;
+        }
+
+        WeavingClassLoader loader = new WeavingClassLoader(entries, enabled, disabled, parent);
+        for (String name : entries.keySet()) {
+            if (isClass(name)) {
+                String className = name.substring(0, name.length() - CLASS_SUFFIX.length()).replace('/', '.');
+                try {
+                    loader.loadClass(className);
+                } catch (ClassNotFoundException e) {
+                    // a dependency is missing, the class is left to the hook
+                    skipped.add(className);
+                } catch (LinkageError e) {
+                    // the class cannot be defined, the class is left to the hook
+                    skipped.add(className);
+                }
+            }
+        }
+
+        Map<String, byte[]> woven = loader.getWovenClasses();
+        for (Map.Entry<String, byte[]> entry : woven.entrySet()) {
+            entries.put(entry.getKey().replace('.', '/') + CLASS_SUFFIX, entry.getValue());
+        }
+        if (!woven.isEmpty()) {
+            String imports = attributes.getValue(DYNAMIC_IMPORT_PACKAGE);
+            attributes.putValue(DYNAMIC_IMPORT_PACKAGE, imports != null ? imports + "," + WOVEN_IMPORTS : WOVEN_IMPORTS);
+        }
+        attributes.putValue(ProxyWeavingHook.STATICALLY_WOVEN_HEADER, "true");
+        if (!skipped.isEmpty()) {
+            StringBuilder value = new StringBuilder();
+            for (String className : skipped) {
+                if (value.length() != 0) {
+                    value.append(',');
+                }
+                value.append(className);
+            }
+            attributes.putValue(ProxyWeavingHook.STATICALLY_SKIPPED_HEADER, value.toString());
+        }
+        write(out, manifest, entries);
+        return woven.size();
+    }
+
+    private static boolean isClass(String name) {
+        return name.endsWith(CLASS_SUFFIX) && !name.startsWith("META-INF/") && !name.endsWith("module-info.class");
+    }
+
+    private static Manifest read(File file, Map<String, byte[]> entries) throws IOException {
+        JarInputStream jis = new JarInputStream(new FileInputStream(file));
+        try {
+            JarEntry entry;
+            while ((entry = jis.getNextJarEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    entries.put(entry.getName(), readFully(jis));
+                }
+            }
+            return jis.getManifest();
+        } finally {
+            jis.close();
+        }
+    }
+
+    private static void write(File file, Manifest manifest, Map<String, byte[]> entries) throws IOException {
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(file), manifest);
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                jos.putNextEntry(new JarEntry(entry.getKey()));
+                jos.write(entry.getValue());
+                jos.closeEntry();
+            }
+        } finally {
+            jos.close();
+        }
+    }
+
+    static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, read);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Loads the classes of a bundle from their original bytes, weaving them as they are
+     * defined.  The resources of the bundle, including the class files read by the
+     * weaving, are the original ones, as they are for a bundle class loader.
+     */
+    static final class WeavingClassLoader extends ClassLoader {
+
+        private final Map<String, byte[]> entries;
+        private final ClassNameMatcher enabled;
+        private final ClassNameMatcher disabled;
+        private final Map<String, byte[]> woven = new LinkedHashMap<String, byte[]>();
+
+        WeavingClassLoader(Map<String, byte[]> entries, ClassNameMatcher enabled, ClassNameMatcher disabled, ClassLoader parent) {
+            super(parent);
+            this.entries = entries;
+            this.enabled = enabled;
+            this.disabled = disabled;
+        }
+
+        /**
+         * @return the woven bytes of the loaded classes, by class name
+         */
+        synchronized Map<String, byte[]> getWovenClasses() {
+            return new LinkedHashMap<String, byte[]>(woven);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!entries.containsKey(name.replace('.', '/') + CLASS_SUFFIX)) {
+                return super.loadClass(name, resolve);
+            }
+            // the classes of the bundle are loaded first, as a bundle class loader would
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                clazz = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = entries.get(name.replace('.', '/') + CLASS_SUFFIX);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            if (enabled.matches(name) && !disabled.matches(name)) {
+                byte[] wovenBytes = weave(name, bytes);
+                if (wovenBytes != null && wovenBytes.length != 0) {
+                    woven.put(name, wovenBytes);
+                    bytes = wovenBytes;
+                }
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+
+        private byte[] weave(String name, byte[] bytes) {
+            try {
+                return WovenProxyGenerator.getWovenProxy(bytes, this);
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof UnableToProxyException) {
+                    // the class cannot be woven, as for the hook it is loaded as it is
+                    return null;
+                }
+                throw new IllegalStateException("There was a serious error trying to weave the class " + name, e);
+            }
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            byte[] bytes = entries.get(name);
+            return bytes != null ? new ByteArrayInputStream(bytes) : super.getResourceAsStream(name);
+        }
+    }
+
+}
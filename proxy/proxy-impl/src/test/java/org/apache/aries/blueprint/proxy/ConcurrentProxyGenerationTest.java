@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.aries.proxy.impl.gen.ProxySubclassGenerator;
+import org.apache.aries.proxy.impl.interfaces.InterfaceProxyGenerator;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleWiring;
+
+public class ConcurrentProxyGenerationTest {
+
+  private static final int THREADS = 16;
+
+  // benchmark settings
+  private static final int TRIALS = 5;
+  private static final int BUNDLES = 64;
+  private static final int PROXIES_PER_THREAD = 2000;
+
+  @SuppressWarnings("unchecked")
+  private static final List<Collection<Class<?>>> INTERFACE_SETS = Arrays.<Collection<Class<?>>>asList(
+      Arrays.<Class<?>>asList(Closeable.class),
+      Arrays.<Class<?>>asList(Runnable.class),
+      Arrays.<Class<?>>asList(Closeable.class, Runnable.class),
+      Arrays.<Class<?>>asList(Callable.class, Map.class));
+
+  @Test
+  public void testInterfaceProxyClassIsGeneratedOnce() throws Exception {
+    final Bundle bundle = createBundle(getClass().getClassLoader());
+    Set<Class<?>> classes = runConcurrently(new Callable<Class<?>>() {
+      public Class<?> call() throws Exception {
+        return InterfaceProxyGenerator.getProxyInstance(bundle, null, INTERFACE_SETS.get(2),
+            constantly(null), null).getClass();
+      }
+    });
+    assertEquals(1, classes.size());
+  }
+
+  @Test
+  public void testProxySubclassIsGeneratedOnce() throws Exception {
+    final ClassLoader loader = new IsolatingClassLoader();
+    final Class<?> clazz = loader.loadClass(ProxyTestClassGeneral.class.getName());
+    Set<Class<?>> classes = runConcurrently(new Callable<Class<?>>() {
+      public Class<?> call() throws Exception {
+        return ProxySubclassGenerator.getProxySubclass(clazz);
+      }
+    });
+    assertEquals(1, classes.size());
+    Class<?> proxyClass = classes.iterator().next();
+    assertSame(loader, proxyClass.getClassLoader());
+    assertSame(clazz, proxyClass.getSuperclass());
+    assertEquals(true, ProxySubclassGenerator.isProxySubclass(proxyClass));
+    assertEquals(false, ProxySubclassGenerator.isProxySubclass(clazz));
+  }
+
+  @Test
+  @Ignore
+  public void testConcurrentProxyCreation() throws Exception {
+    final Bundle[] bundles = new Bundle[BUNDLES];
+    final Class<?>[] classes = new Class<?>[BUNDLES];
+    for (int i = 0; i < BUNDLES; i++) {
+      ClassLoader loader = new IsolatingClassLoader();
+      bundles[i] = createBundle(loader);
+      classes[i] = loader.loadClass(ProxyTestClassGeneral.class.getName());
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      for (int trial = 0; trial < TRIALS; trial++) {
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int t = 0; t < THREADS; t++) {
+          final int offset = t;
+          tasks.add(new Callable<Object>() {
+            public Object call() throws Exception {
+              for (int i = 0; i < PROXIES_PER_THREAD; i++) {
+                int b = (offset + i) % BUNDLES;
+                InterfaceProxyGenerator.getProxyInstance(bundles[b], null,
+                    INTERFACE_SETS.get(i % INTERFACE_SETS.size()), constantly(null), null);
+                ProxySubclassGenerator.getProxySubclass(classes[b]);
+              }
+              return null;
+            }
+          });
+        }
+        long t0 = System.nanoTime();
+        for (Future<Object> f : executor.invokeAll(tasks)) {
+          f.get();
+        }
+        long ms = Math.max(1, (System.nanoTime() - t0) / 1000000);
+        System.err.println("Trial " + trial + ": " + (2L * THREADS * PROXIES_PER_THREAD * 1000 / ms)
+            + " proxies/s with " + THREADS + " threads and " + BUNDLES + " bundles");
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static <T> Set<T> runConcurrently(final Callable<T> callable) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      List<Future<T>> futures = new ArrayList<Future<T>>();
+      for (int i = 0; i < THREADS; i++) {
+        futures.add(executor.submit(new Callable<T>() {
+          public T call() throws Exception {
+            start.await();
+            return callable.call();
+          }
+        }));
+      }
+      start.countDown();
+      Set<T> results = new HashSet<T>();
+      for (Future<T> f : futures) {
+        results.add(f.get());
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Callable<Object> constantly(final Object result) {
+    return new Callable<Object>() {
+      public Object call() throws Exception {
+        return result;
+      }
+    };
+  }
+
+  private static Bundle createBundle(final ClassLoader loader) {
+    final BundleWiring wiring = mock(BundleWiring.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("getClassLoader")) {
+          return loader;
+        }
+        return identity(proxy, method, args);
+      }
+    });
+    return mock(Bundle.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("adapt")) {
+          return wiring;
+        } else if (method.getName().equals("getState")) {
+          return Bundle.ACTIVE;
+        }
+        return identity(proxy, method, args);
+      }
+    });
+  }
+
+  private static Object identity(Object proxy, Method method, Object[] args) {
+    if (method.getName().equals("hashCode")) {
+      return System.identityHashCode(proxy);
+    } else if (method.getName().equals("equals")) {
+      return proxy == args[0];
+    }
+    return null;
+  }
+
+  private static <T> T mock(Class<T> type, InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(ConcurrentProxyGenerationTest.class.getClassLoader(),
+        new Class<?>[] { type }, handler));
+  }
+
+  /**
+   * Loads its own copy of the test classes, so that each instance needs its own proxies.
+   */
+  private static final class IsolatingClassLoader extends ClassLoader {
+
+    IsolatingClassLoader() {
+      super(ConcurrentProxyGenerationTest.class.getClassLoader());
+    }
+
+    @Override
+    protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      // the proxy subclasses are defined in this class loader too
+      Class<?> clazz = findLoadedClass(name);
+      if (clazz == null) {
+        if (!name.equals(ProxyTestClassSuper.class.getName()) && !name.equals(ProxyTestClassGeneral.class.getName())) {
+          return super.loadClass(name, resolve);
+        }
+        try {
+          InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+          try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[2048];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+              baos.write(buffer, 0, read);
+            }
+            clazz = defineClass(name, baos.toByteArray(), 0, baos.size());
+          } finally {
+            is.close();
+          }
+        } catch (Exception e) {
+          throw new ClassNotFoundException(name, e);
+        }
+      }
+      return clazz;
+    }
+  }
+
+}
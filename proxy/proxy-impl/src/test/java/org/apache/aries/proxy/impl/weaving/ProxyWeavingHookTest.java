@@ -22,6 +22,7 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 
+import org.junit.Ignore;
 import org.junit.Test;
 import org.osgi.framework.BundleContext;
 
@@ -66,4 +67,56 @@ public class ProxyWeavingHookTest {
         assertFalse(hook.isDisabled("org.apache.fooBar"));
         assertFalse(hook.isDisabled("orgXapache.foo.Bar"));
     }
+
+    @Test
+    public void testGlobs() {
+        ClassNameMatcher matcher = new ClassNameMatcher(" org.apache.foo.Bar, com.acme.*.impl.*,*Test, net.*Impl*Factory ,, ");
+        assertTrue(matcher.matches("org.apache.foo.Bar"));
+        assertFalse(matcher.matches("org.apache.foo.Bar2"));
+        assertFalse(matcher.matches("org.apache.foo.Ba"));
+        assertTrue(matcher.matches("com.acme.a.b.impl.Service"));
+        assertFalse(matcher.matches("com.acme.impl.Service"));
+        assertTrue(matcher.matches("FooTest"));
+        assertTrue(matcher.matches("org.TestTest"));
+        assertFalse(matcher.matches("org.TestTest2"));
+        assertTrue(matcher.matches("net.FooImplBarFactory"));
+        assertTrue(matcher.matches("net.ImplFactory"));
+        assertFalse(matcher.matches("net.FooImplFactoryBean"));
+        assertFalse(new ClassNameMatcher("").matches("org.apache.foo.Bar"));
+        assertTrue(new ClassNameMatcher("*").matches(""));
+        assertTrue(new ClassNameMatcher("org.Outer$Inner").matches("org.Outer$Inner"));
+    }
+
+    @Test
+    @Ignore
+    public void testMatcherThroughput() {
+        ProxyWeavingHook hook = new ProxyWeavingHook(createContext());
+        String[] classNames = {
+            "org.apache.aries.blueprint.container.BlueprintContainerImpl", "javax.transaction.Transaction",
+            "org.slf4j.LoggerFactory", "com.acme.service.impl.OrderServiceImpl", "ch.qos.logback.core.Appender",
+            "org.objectweb.asm.ClassReader", "org.apache.log4j.Logger", "com.acme.model.Order$Line"
+        };
+        int loops = 2000000;
+        for (int trial = 0; trial < 5; trial++) {
+            int woven = 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < loops; i++) {
+                String className = classNames[i % classNames.length];
+                if (hook.isEnabled(className) && !hook.isDisabled(className)) {
+                    woven++;
+                }
+            }
+            long t1 = System.nanoTime();
+            System.err.println("Trial " + trial + ": " + loops * 1000000000L / (t1 - t0) + " classes/s (" + woven + " to weave)");
+        }
+    }
+
+    private BundleContext createContext() {
+        return (BundleContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { BundleContext.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        return null;
+                    }
+                });
+    }
 }
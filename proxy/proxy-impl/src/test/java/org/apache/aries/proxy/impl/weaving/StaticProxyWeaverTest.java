@@ -0,0 +1,381 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.proxy.impl.weaving;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.aries.blueprint.proxy.ProxyTestClassAbstract;
+import org.apache.aries.blueprint.proxy.ProxyTestClassChildOfAbstract;
+import org.apache.aries.blueprint.proxy.ProxyTestClassCovariant;
+import org.apache.aries.blueprint.proxy.ProxyTestClassCovariantOverride;
+import org.apache.aries.blueprint.proxy.ProxyTestClassFinal;
+import org.apache.aries.blueprint.proxy.ProxyTestClassFinalMethod;
+import org.apache.aries.blueprint.proxy.ProxyTestClassGeneral;
+import org.apache.aries.blueprint.proxy.ProxyTestClassGeneric;
+import org.apache.aries.blueprint.proxy.ProxyTestClassGenericSuper;
+import org.apache.aries.blueprint.proxy.ProxyTestClassSerializable;
+import org.apache.aries.blueprint.proxy.ProxyTestClassSuper;
+import org.apache.aries.blueprint.proxy.ProxyTestClassUnweavableChild;
+import org.apache.aries.blueprint.proxy.ProxyTestClassUnweavableGrandParent;
+import org.apache.aries.blueprint.proxy.ProxyTestClassUnweavableSibling;
+import org.apache.aries.blueprint.proxy.ProxyTestClassUnweavableSuper;
+import org.apache.aries.proxy.weaving.WovenProxy;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.hooks.weaving.WovenClass;
+import org.osgi.framework.wiring.BundleWiring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StaticProxyWeaverTest {
+
+    private static final File BASE = new File(System.getProperty("user.dir"), "target/static-weaving");
+
+    private static final Class<?>[] CLASSES = {
+        ProxyTestClassGeneral.class, ProxyTestClassSuper.class, ProxyTestClassFinalMethod.class,
+        ProxyTestClassFinal.class, ProxyTestClassGeneric.class, ProxyTestClassGenericSuper.class,
+        ProxyTestClassCovariant.class, ProxyTestClassCovariantOverride.class, ProxyTestClassUnweavableChild.class,
+        ProxyTestClassUnweavableSibling.class, ProxyTestClassUnweavableSuper.class,
+        ProxyTestClassUnweavableGrandParent.class, ProxyTestClassSerializable.class,
+        ProxyTestClassAbstract.class, ProxyTestClassChildOfAbstract.class
+    };
+
+    // benchmark settings
+    private static final int TRIALS = 5;
+
+    @Test
+    public void testWovenLikeAtRuntime() throws Exception {
+        File bundle = createBundle("testWovenLikeAtRuntime.jar", "org.apache.aries.test.bundle", CLASSES);
+        File woven = new File(BASE, "testWovenLikeAtRuntime_woven.jar");
+        StaticProxyWeaver weaver = createWeaver();
+        assertTrue(weaver.weave(bundle, woven) > 0);
+
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        Manifest manifest = read(woven, entries);
+        assertEquals("true", manifest.getMainAttributes().getValue(ProxyWeavingHook.STATICALLY_WOVEN_HEADER));
+        assertEquals("org.apache.aries.proxy.weaving,org.apache.aries.proxy",
+                manifest.getMainAttributes().getValue("DynamicImport-Package"));
+        assertTrue(entries.containsKey("readme.txt"));
+
+        // the same classes woven by a runtime weaving class loader
+        ClassLoader runtime = createRuntimeLoader(entries(bundle));
+        ClassLoader preWoven = new PreWovenClassLoader(entries);
+        for (Class<?> clazz : CLASSES) {
+            Class<?> expected = runtime.loadClass(clazz.getName());
+            Class<?> actual = preWoven.loadClass(clazz.getName());
+            assertEquals(clazz.getName(), WovenProxy.class.isAssignableFrom(expected), WovenProxy.class.isAssignableFrom(actual));
+            assertEquals(clazz.getName(), Arrays.asList(expected.getInterfaces()).toString(), Arrays.asList(actual.getInterfaces()).toString());
+            assertEquals(clazz.getName(), getMethods(expected), getMethods(actual));
+        }
+        assertTrue(WovenProxy.class.isAssignableFrom(preWoven.loadClass(ProxyTestClassGeneral.class.getName())));
+
+        // the pre woven classes dispatch like the runtime woven ones
+        final Object target = preWoven.loadClass(ProxyTestClassGeneral.class.getName()).newInstance();
+        WovenProxy proxy = ((WovenProxy) target).org_apache_aries_proxy_weaving_WovenProxy_createNewProxyInstance(
+                new Callable<Object>() {
+                    public Object call() {
+                        return target;
+                    }
+                }, null);
+        Method m = proxy.getClass().getMethod("testMethod", String.class, int.class, Object.class);
+        assertEquals("hello", m.invoke(proxy, "hello", 1, null));
+    }
+
+    @Test
+    public void testMarkedBundleIsNotWovenAgain() throws Exception {
+        File bundle = createBundle("testMarkedBundleIsNotWovenAgain.jar", "org.apache.aries.test.bundle", ProxyTestClassSuper.class);
+        StaticProxyWeaver weaver = createWeaver();
+        assertEquals(1, weaver.weave(bundle, bundle));
+        byte[] woven = entries(bundle).get(entryName(ProxyTestClassSuper.class));
+        assertEquals(0, weaver.weave(bundle, bundle));
+        assertTrue(Arrays.equals(woven, entries(bundle).get(entryName(ProxyTestClassSuper.class))));
+
+        File proxyBundle = createBundle("testProxyBundle.jar", "org.apache.aries.proxy.impl", ProxyTestClassSuper.class);
+        assertEquals(0, weaver.weave(proxyBundle, proxyBundle));
+    }
+
+    @Test
+    public void testSkippedClassesAreListed() throws Exception {
+        File bundle = createBundle("testSkippedClassesAreListed.jar", "org.apache.aries.test.bundle",
+                ProxyTestClassGeneral.class, ProxyTestClassAbstract.class, ProxyTestClassChildOfAbstract.class);
+        File woven = new File(BASE, "testSkippedClassesAreListed_woven.jar");
+        // the super class of ProxyTestClassGeneral is missing from the class path
+        ClassLoader parent = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (name.equals(ProxyTestClassSuper.class.getName())) {
+                    throw new ClassNotFoundException(name);
+                }
+                return super.loadClass(name, resolve);
+            }
+        };
+        StaticProxyWeaver weaver = new StaticProxyWeaver(ProxyWeavingHook.WEAVING_ENABLED_CLASSES_DEFAULT,
+                ProxyWeavingHook.WEAVING_DISABLED_CLASSES_DEFAULT, parent);
+        List<String> skipped = new ArrayList<String>();
+        assertEquals(2, weaver.weave(bundle, woven, skipped));
+        assertEquals(Arrays.asList(ProxyTestClassGeneral.class.getName()), skipped);
+
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        Manifest manifest = read(woven, entries);
+        assertEquals("true", manifest.getMainAttributes().getValue(ProxyWeavingHook.STATICALLY_WOVEN_HEADER));
+        assertEquals(ProxyTestClassGeneral.class.getName(),
+                manifest.getMainAttributes().getValue(ProxyWeavingHook.STATICALLY_SKIPPED_HEADER));
+        // the skipped class is left as it is
+        assertTrue(Arrays.equals(entries(bundle).get(entryName(ProxyTestClassGeneral.class)),
+                entries.get(entryName(ProxyTestClassGeneral.class))));
+    }
+
+    @Test
+    public void testHookSkipsStaticallyWovenBundles() throws Exception {
+        Hashtable<String, String> headers = new Hashtable<String, String>();
+        headers.put(ProxyWeavingHook.STATICALLY_WOVEN_HEADER, "true");
+        headers.put(ProxyWeavingHook.STATICALLY_SKIPPED_HEADER, ProxyTestClassGeneral.class.getName() + ", "
+                + ProxyTestClassSuper.class.getName());
+        List<String> calls = new ArrayList<String>();
+        List<String> imports = new ArrayList<String>();
+        ProxyWeavingHook hook = new ProxyWeavingHook(mock(BundleContext.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return null;
+            }
+        }));
+        BundleWiring wiring = createWiring(headers);
+
+        WovenClass wovenClass = createWovenClass(ProxyTestClassFinalMethod.class, wiring, calls, imports);
+        hook.weave(wovenClass);
+        hook.weave(wovenClass);
+        assertFalse(calls.toString(), calls.contains("getBytes"));
+        assertFalse(calls.toString(), calls.contains("setBytes"));
+
+        // the classes the static weaver could not load are woven at runtime
+        wovenClass = createWovenClass(ProxyTestClassSuper.class, wiring, calls, imports);
+        hook.weave(wovenClass);
+        assertTrue(calls.toString(), calls.contains("setBytes"));
+        assertEquals(Arrays.asList("org.apache.aries.proxy.weaving", "org.apache.aries.proxy"), imports);
+    }
+
+    private BundleWiring createWiring(final Hashtable<String, String> headers) {
+        final Bundle bundle = mock(Bundle.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getBundleId")) {
+                    return 1L;
+                } else if (method.getName().equals("getSymbolicName")) {
+                    return "org.apache.aries.test.bundle";
+                } else if (method.getName().equals("getHeaders")) {
+                    return headers;
+                }
+                return null;
+            }
+        });
+        final ClassLoader loader = getClass().getClassLoader();
+        return mock(BundleWiring.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getBundle")) {
+                    return bundle;
+                } else if (method.getName().equals("getClassLoader")) {
+                    return loader;
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+    }
+
+    private static WovenClass createWovenClass(final Class<?> clazz, final BundleWiring wiring,
+            final List<String> calls, final List<String> imports) throws Exception {
+        InputStream is = clazz.getClassLoader().getResourceAsStream(entryName(clazz));
+        final byte[] bytes;
+        try {
+            bytes = StaticProxyWeaver.readFully(is);
+        } finally {
+            is.close();
+        }
+        return mock(WovenClass.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                calls.add(method.getName());
+                if (method.getName().equals("getBundleWiring")) {
+                    return wiring;
+                } else if (method.getName().equals("getClassName")) {
+                    return clazz.getName();
+                } else if (method.getName().equals("getBytes")) {
+                    return bytes;
+                } else if (method.getName().equals("getDynamicImports")) {
+                    return imports;
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    @Ignore
+    public void testClassLoadingTime() throws Exception {
+        File bundle = createBundle("benchmark.jar", "org.apache.aries.test.bundle", CLASSES);
+        File woven = new File(BASE, "benchmark_woven.jar");
+        createWeaver().weave(bundle, woven);
+        Map<String, byte[]> original = entries(bundle);
+        Map<String, byte[]> preWoven = entries(woven);
+
+        for (int trial = 0; trial < TRIALS; trial++) {
+            long runtime = 0;
+            long buildTime = 0;
+            for (int i = 0; i < 200; i++) {
+                long t0 = System.nanoTime();
+                loadAll(createRuntimeLoader(original));
+                long t1 = System.nanoTime();
+                loadAll(new PreWovenClassLoader(preWoven));
+                long t2 = System.nanoTime();
+                runtime += t1 - t0;
+                buildTime += t2 - t1;
+            }
+            System.err.println("Trial " + trial + ": runtime weaving " + runtime / 200000 + " us, build time weaving "
+                    + buildTime / 200000 + " us to load " + CLASSES.length + " classes");
+        }
+    }
+
+    private static void loadAll(ClassLoader loader) throws Exception {
+        for (Class<?> clazz : CLASSES) {
+            loader.loadClass(clazz.getName());
+        }
+    }
+
+    private StaticProxyWeaver createWeaver() {
+        return new StaticProxyWeaver(ProxyWeavingHook.WEAVING_ENABLED_CLASSES_DEFAULT,
+                ProxyWeavingHook.WEAVING_DISABLED_CLASSES_DEFAULT, getClass().getClassLoader());
+    }
+
+    private ClassLoader createRuntimeLoader(Map<String, byte[]> entries) {
+        return new StaticProxyWeaver.WeavingClassLoader(entries,
+                new ClassNameMatcher(ProxyWeavingHook.WEAVING_ENABLED_CLASSES_DEFAULT),
+                new ClassNameMatcher(ProxyWeavingHook.WEAVING_DISABLED_CLASSES_DEFAULT), getClass().getClassLoader());
+    }
+
+    private static TreeSet<String> getMethods(Class<?> clazz) {
+        TreeSet<String> methods = new TreeSet<String>();
+        for (Method m : clazz.getDeclaredMethods()) {
+            // the names of the generated static fields and methods contain random UUIDs
+            methods.add(m.getName().replaceAll("[0-9a-f]{8}_[0-9a-f]{4}_[0-9a-f]{4}_[0-9a-f]{4}_[0-9a-f]{12}\\d*", "UUID")
+                    + Arrays.asList(m.getParameterTypes()));
+        }
+        return methods;
+    }
+
+    private static String entryName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+
+    private static File createBundle(String name, String symbolicName, Class<?>... classes) throws Exception {
+        BASE.mkdirs();
+        File file = new File(BASE, name);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+        manifest.getMainAttributes().putValue("Bundle-SymbolicName", symbolicName);
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(file), manifest);
+        try {
+            for (Class<?> clazz : classes) {
+                jos.putNextEntry(new JarEntry(entryName(clazz)));
+                InputStream is = clazz.getClassLoader().getResourceAsStream(entryName(clazz));
+                try {
+                    jos.write(StaticProxyWeaver.readFully(is));
+                } finally {
+                    is.close();
+                }
+                jos.closeEntry();
+            }
+            jos.putNextEntry(new JarEntry("readme.txt"));
+            jos.write("not a class".getBytes("UTF-8"));
+            jos.closeEntry();
+        } finally {
+            jos.close();
+        }
+        return file;
+    }
+
+    private static Manifest read(File file, Map<String, byte[]> entries) throws Exception {
+        JarInputStream jis = new JarInputStream(new FileInputStream(file));
+        try {
+            JarEntry entry;
+            while ((entry = jis.getNextJarEntry()) != null) {
+                entries.put(entry.getName(), StaticProxyWeaver.readFully(jis));
+            }
+            return jis.getManifest();
+        } finally {
+            jis.close();
+        }
+    }
+
+    private static Map<String, byte[]> entries(File file) throws Exception {
+        Map<String, byte[]> entries = new HashMap<String, byte[]>();
+        read(file, entries);
+        return entries;
+    }
+
+    private static <T> T mock(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(StaticProxyWeaverTest.class.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    /**
+     * Loads the classes of a bundle as they are, the bundle classes first.
+     */
+    private static final class PreWovenClassLoader extends ClassLoader {
+
+        private final Map<String, byte[]> entries;
+
+        PreWovenClassLoader(Map<String, byte[]> entries) {
+            super(StaticProxyWeaverTest.class.getClassLoader());
+            this.entries = entries;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            byte[] bytes = entries.get(name.replace('.', '/') + ".class");
+            if (bytes == null) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> clazz = findLoadedClass(name);
+            return clazz != null ? clazz : defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+}
@@ -38,6 +38,10 @@ public class SubsystemTypeHeader extends AbstractClauseBasedHeader<SubsystemType
 			return (ProvisionPolicyDirective)getDirective(DIRECTIVE_PROVISION_POLICY);
 		}
 		
+		public Directive getParallelProvisioningDirective() {
+			return getDirective(DIRECTIVE_PARALLEL_PROVISIONING);
+		}
+		
 		public String getType() {
 			return path;
 		}
@@ -45,6 +49,12 @@ public class SubsystemTypeHeader extends AbstractClauseBasedHeader<SubsystemType
 	
 	public static final String DIRECTIVE_PROVISION_DEPENDENCIES = AriesProvisionDependenciesDirective.NAME;
     public static final String DIRECTIVE_PROVISION_POLICY = ProvisionPolicyDirective.NAME;
+	/**
+	 * Installs and starts the bundles of the subsystem concurrently when true.
+	 * The bundles are then not installed in Deployed-Content order. See
+	 * ParallelProvisioning.
+	 */
+	public static final String DIRECTIVE_PARALLEL_PROVISIONING = "apache-aries-parallel-provisioning";
 	public static final String NAME = SubsystemConstants.SUBSYSTEM_TYPE;
 	public static final String ARIES_PROVISION_DEPENDENCIES_INSTALL = AriesProvisionDependenciesDirective.VALUE_INSTALL;
 	public static final String ARIES_PROVISION_DEPENDENCIES_RESOLVE = AriesProvisionDependenciesDirective.VALUE_RESOLVE;
@@ -88,6 +98,15 @@ public class SubsystemTypeHeader extends AbstractClauseBasedHeader<SubsystemType
 		return clauses.iterator().next().getProvisionPolicyDirective();
 	}
 	
+	/**
+	 * Returns the value of the apache-aries-parallel-provisioning directive,
+	 * or null if it is not specified.
+	 */
+	public String getParallelProvisioning() {
+		Directive directive = clauses.iterator().next().getParallelProvisioningDirective();
+		return directive == null ? null : directive.getValue();
+	}
+	
 	public String getType() {
 		return clauses.iterator().next().getType();
 	}
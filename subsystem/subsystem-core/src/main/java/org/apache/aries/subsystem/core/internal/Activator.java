@@ -70,6 +70,8 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer<Obje
 	private volatile ServiceModeller serviceModeller;
 	private volatile Subsystems subsystems;
 	private volatile SystemRepositoryManager systemRepositoryManager;
+	private volatile RepositoryServiceTracker repositoryServiceTracker;
+	private volatile ParallelProvisioning parallelProvisioning;
 	
 	private BundleEventHook bundleEventHook;
 	private ServiceTracker<?,?> serviceTracker;
@@ -116,6 +118,14 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer<Obje
 		return result;
 	}
 
+	public RepositoryServiceTracker getRepositoryServiceTracker() {
+		return repositoryServiceTracker;
+	}
+
+	public ParallelProvisioning getParallelProvisioning() {
+		return parallelProvisioning;
+	}
+
 	public SystemRepository getSystemRepository() {
 		return systemRepositoryManager.getSystemRepository();
 	}
@@ -155,6 +165,12 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer<Obje
 		registrar = new SubsystemServiceRegistrar(bundleContext);
 		systemRepositoryManager = new SystemRepositoryManager(bundleContext.getBundle(0).getBundleContext());
         systemRepositoryManager.open();
+		repositoryServiceTracker = new RepositoryServiceTracker(bundleContext);
+		repositoryServiceTracker.open();
+		parallelProvisioning = new ParallelProvisioning(
+				bundleContext.getProperty(ParallelProvisioning.PROPERTY),
+				bundleContext.getProperty(ParallelProvisioning.PROPERTY_THREADS),
+				lockingStrategy);
 		BasicSubsystem root = subsystems.getRootSubsystem();
 		bundleEventHook.activate();
 		root.start();
@@ -166,6 +182,7 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer<Obje
 			return;
 		bundleEventHook.deactivate();
 		systemRepositoryManager.close();
+		repositoryServiceTracker.close();
 		new StopAction(subsystems.getRootSubsystem(), subsystems.getRootSubsystem(), true).run();
 		for (ServiceRegistration<?> registration : registrations) {
 			try {
@@ -176,6 +193,7 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer<Obje
 			}
 		}
         configAdminHandler.shutDown();
+		parallelProvisioning.shutdown();
 		bundleEventHook.processPendingEvents();
 		synchronized (Activator.class) {
 			instance = null;
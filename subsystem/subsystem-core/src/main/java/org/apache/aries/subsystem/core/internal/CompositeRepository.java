@@ -52,7 +52,15 @@ public class CompositeRepository implements org.apache.aries.subsystem.core.repo
 			Collection<? extends Requirement> requirements) {
 		Map<Requirement, Collection<Capability>> result = new HashMap<Requirement, Collection<Capability>>();
 		for (Requirement requirement : requirements)
-			result.put(requirement, findProviders(requirement));
+			result.put(requirement, new HashSet<Capability>());
+		for (org.apache.aries.subsystem.core.repository.Repository repository : repositories) {
+			Map<Requirement, Collection<Capability>> map = repository.findProviders(requirements);
+			for (Map.Entry<Requirement, Collection<Capability>> entry : result.entrySet()) {
+				Collection<Capability> capabilities = map.get(entry.getKey());
+				if (capabilities != null)
+					entry.getValue().addAll(capabilities);
+			}
+		}
 		return result;
 	}
 }
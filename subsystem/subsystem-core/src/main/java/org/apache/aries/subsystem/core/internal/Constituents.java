@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.subsystem.core.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.aries.subsystem.core.internal.BundleResourceInstaller.BundleConstituent;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.resource.Resource;
+
+/**
+ * The constituents of each subsystem, indexed both ways and by bundle.
+ * <p>
+ * Updates are serialized, lookups do not lock. A lookup concurrent with an
+ * update sees the index either before or after the update.
+ */
+public class Constituents {
+	private final ConcurrentMap<BasicSubsystem, Set<Resource>> subsystemToConstituents = new ConcurrentHashMap<BasicSubsystem, Set<Resource>>();
+	private final ConcurrentMap<Resource, Set<BasicSubsystem>> constituentToSubsystems = new ConcurrentHashMap<Resource, Set<BasicSubsystem>>();
+	private final ConcurrentMap<Bundle, Set<BundleConstituent>> bundleToConstituents = new ConcurrentHashMap<Bundle, Set<BundleConstituent>>();
+
+	public synchronized void addConstituent(BasicSubsystem subsystem, Resource constituent) {
+		add(subsystemToConstituents, subsystem, constituent);
+		add(constituentToSubsystems, constituent, subsystem);
+		if (constituent instanceof BundleConstituent) {
+			Bundle bundle = ((BundleConstituent)constituent).getBundle();
+			if (bundle != null)
+				add(bundleToConstituents, bundle, (BundleConstituent)constituent);
+		}
+	}
+
+	public Collection<Resource> getConstituents(BasicSubsystem subsystem) {
+		Collection<Resource> result = subsystemToConstituents.get(subsystem);
+		if (result == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableCollection(new ArrayList<Resource>(result));
+	}
+
+	/**
+	 * Returns the subsystems having a constituent for a revision of the bundle
+	 * along with one of those revisions, or null if the bundle is not a
+	 * constituent of any subsystem.
+	 */
+	public Object[] getSubsystemsByBundle(Bundle bundle) {
+		Set<BundleConstituent> constituents = bundleToConstituents.get(bundle);
+		if (constituents == null)
+			return null;
+		BundleRevision revision = null;
+		ArrayList<BasicSubsystem> result = new ArrayList<BasicSubsystem>();
+		for (BundleConstituent constituent : constituents) {
+			Set<BasicSubsystem> subsystems = constituentToSubsystems.get(constituent);
+			if (subsystems == null || subsystems.isEmpty())
+				continue;
+			result.addAll(subsystems);
+			revision = constituent.getRevision();
+		}
+		if (revision == null)
+			return null;
+		result.trimToSize();
+		return new Object[]{revision, result};
+	}
+
+	public Collection<BasicSubsystem> getSubsystemsByConstituent(Resource constituent) {
+		Collection<BasicSubsystem> result = constituentToSubsystems.get(constituent);
+		if (result == null)
+			return new ArrayList<BasicSubsystem>(0);
+		return new ArrayList<BasicSubsystem>(result);
+	}
+
+	public synchronized void removeConstituent(BasicSubsystem subsystem, Resource constituent) {
+		remove(subsystemToConstituents, subsystem, constituent);
+		if (remove(constituentToSubsystems, constituent, subsystem) && constituent instanceof BundleConstituent) {
+			// The constituent no longer belongs to any subsystem.
+			Bundle bundle = ((BundleConstituent)constituent).getBundle();
+			if (bundle != null)
+				remove(bundleToConstituents, bundle, (BundleConstituent)constituent);
+		}
+	}
+
+	private static <K, V> void add(ConcurrentMap<K, Set<V>> map, K key, V value) {
+		Set<V> values = map.get(key);
+		if (values == null) {
+			values = Collections.newSetFromMap(new ConcurrentHashMap<V, Boolean>());
+			map.put(key, values);
+		}
+		values.add(value);
+	}
+
+	/**
+	 * @return true if no value is left for the key.
+	 */
+	private static <K, V> boolean remove(ConcurrentMap<K, Set<V>> map, K key, V value) {
+		Set<V> values = map.get(key);
+		if (values == null)
+			return true;
+		values.remove(value);
+		if (!values.isEmpty())
+			return false;
+		map.remove(key);
+		return true;
+	}
+}
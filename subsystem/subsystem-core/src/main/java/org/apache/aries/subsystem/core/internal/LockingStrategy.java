@@ -66,6 +66,92 @@ public class LockingStrategy {
 		}
 	};
 	
+	/*
+	 * The state change locks acquired by the thread and how many times each
+	 * one was acquired.
+	 */
+	private final ThreadLocal<Map<BasicSubsystem, Integer>> held = new ThreadLocal<Map<BasicSubsystem, Integer>>() {
+		@Override
+		protected Map<BasicSubsystem, Integer> initialValue() {
+			return new HashMap<BasicSubsystem, Integer>();
+		}
+	};
+	
+	/*
+	 * The context of the thread a provisioning thread is working for, if any.
+	 */
+	private final ThreadLocal<Context> inherited = new ThreadLocal<Context>();
+	
+	/**
+	 * The states and locks of a thread, handed to the threads provisioning
+	 * resources on its behalf while it waits for them. A provisioning thread
+	 * re-enters them as the thread itself would, so that a bundle activator
+	 * calling back into the subsystem API does not block on them.
+	 */
+	public static class Context {
+		private final Map<Subsystem.State, Set<BasicSubsystem>> states;
+		private final Set<BasicSubsystem> subsystems;
+		private final boolean readLock;
+		private final boolean writeLock;
+		
+		Context(Map<Subsystem.State, Set<BasicSubsystem>> states, Set<BasicSubsystem> subsystems,
+				boolean readLock, boolean writeLock) {
+			this.states = states;
+			this.subsystems = subsystems;
+			this.readLock = readLock;
+			this.writeLock = writeLock;
+		}
+		
+		boolean contains(Subsystem.State state, BasicSubsystem subsystem) {
+			Set<BasicSubsystem> set = states.get(state);
+			return set != null && set.contains(subsystem);
+		}
+	}
+	
+	/**
+	 * Returns the states and locks of the calling thread, including those it
+	 * inherited itself.
+	 */
+	public Context getContext() {
+		Context parent = inherited.get();
+		Map<Subsystem.State, Set<BasicSubsystem>> states = new HashMap<Subsystem.State, Set<BasicSubsystem>>();
+		Set<BasicSubsystem> subsystems = new HashSet<BasicSubsystem>(held.get().keySet());
+		boolean writeLock = rwlock.isWriteLockedByCurrentThread();
+		boolean readLock = writeLock || rwlock.getReadHoldCount() > 0;
+		if (parent != null) {
+			for (Map.Entry<Subsystem.State, Set<BasicSubsystem>> entry : parent.states.entrySet()) {
+				states.put(entry.getKey(), new HashSet<BasicSubsystem>(entry.getValue()));
+			}
+			subsystems.addAll(parent.subsystems);
+			writeLock |= parent.writeLock;
+			readLock |= parent.readLock;
+		}
+		for (Map.Entry<Subsystem.State, Set<BasicSubsystem>> entry : local.get().entrySet()) {
+			Set<BasicSubsystem> set = states.get(entry.getKey());
+			if (set == null) {
+				states.put(entry.getKey(), new HashSet<BasicSubsystem>(entry.getValue()));
+			}
+			else {
+				set.addAll(entry.getValue());
+			}
+		}
+		return new Context(states, subsystems, readLock, writeLock);
+	}
+	
+	/**
+	 * Makes the calling thread work on behalf of the thread whose context is
+	 * given until it is set to null. The thread the context belongs to must
+	 * keep its locks until then.
+	 */
+	public void setContext(Context context) {
+		if (context == null) {
+			inherited.remove();
+		}
+		else {
+			inherited.set(context);
+		}
+	}
+	
 	public void lock() {
 		try {
 			if (!lock.tryLock(TRY_LOCK_TIME, TRY_LOCK_TIME_UNIT)) {
@@ -82,12 +168,14 @@ public class LockingStrategy {
 	}
 	
 	public void lock(Collection<BasicSubsystem> subsystems) {
+		// The inherited locks are held by the thread this one works for.
+		subsystems = notInherited(subsystems);
 		Collection<BasicSubsystem> locked = new ArrayList<BasicSubsystem>(subsystems.size());
 		try {
 			while (locked.size() < subsystems.size()) {
 				for (BasicSubsystem subsystem : subsystems) {
 					if (!subsystem.stateChangeLock().tryLock()) {
-						unlock(locked);
+						release(locked);
 						locked.clear();
 						if (!condition.await(TRY_LOCK_TIME, TimeUnit.SECONDS)) {
 							throw new SubsystemException("Unable to acquire the state change lock in time: " + subsystem);
@@ -99,18 +187,53 @@ public class LockingStrategy {
 			}
 		}
 		catch (InterruptedException e) {
-			unlock(locked);
+			release(locked);
 			throw new SubsystemException(e);
 		}
+		hold(subsystems, 1);
 	}
 	
 	public void unlock(Collection<BasicSubsystem> subsystems) {
+		subsystems = notInherited(subsystems);
+		hold(subsystems, -1);
+		release(subsystems);
+	}
+	
+	private void release(Collection<BasicSubsystem> subsystems) {
 		for (BasicSubsystem subsystem : subsystems) {
 			subsystem.stateChangeLock().unlock();
 		}
 		signalAll();
 	}
 	
+	private void hold(Collection<BasicSubsystem> subsystems, int delta) {
+		Map<BasicSubsystem, Integer> map = held.get();
+		for (BasicSubsystem subsystem : subsystems) {
+			Integer count = map.get(subsystem);
+			int value = (count == null ? 0 : count) + delta;
+			if (value > 0) {
+				map.put(subsystem, value);
+			}
+			else {
+				map.remove(subsystem);
+			}
+		}
+	}
+	
+	private Collection<BasicSubsystem> notInherited(Collection<BasicSubsystem> subsystems) {
+		Context context = inherited.get();
+		if (context == null) {
+			return subsystems;
+		}
+		Collection<BasicSubsystem> result = new ArrayList<BasicSubsystem>(subsystems.size());
+		for (BasicSubsystem subsystem : subsystems) {
+			if (!context.subsystems.contains(subsystem)) {
+				result.add(subsystem);
+			}
+		}
+		return result;
+	}
+	
 	private void signalAll() {
 		lock();
 		try {
@@ -122,6 +245,10 @@ public class LockingStrategy {
 	}
 	
 	public boolean set(Subsystem.State state, BasicSubsystem subsystem) {
+		Context context = inherited.get();
+		if (context != null && context.contains(state, subsystem)) {
+			return false;
+		}
 		Map<Subsystem.State, Set<BasicSubsystem>> map = local.get();
 		Set<BasicSubsystem> subsystems = map.get(state);
 		if (subsystems == null) {
@@ -145,6 +272,9 @@ public class LockingStrategy {
 	}
 	
 	public void readLock() {
+		if (isInherited(false)) {
+			return;
+		}
 		try {
 			if (!rwlock.readLock().tryLock(TRY_LOCK_TIME, TRY_LOCK_TIME_UNIT)) {
 				throw new SubsystemException("Unable to acquire the global read lock in time.");
@@ -156,10 +286,16 @@ public class LockingStrategy {
 	}
 	
 	public void readUnlock() {
+		if (isInherited(false)) {
+			return;
+		}
 		rwlock.readLock().unlock();
 	}
 	
 	public void writeLock() {
+		if (isInherited(true)) {
+			return;
+		}
 		try {
 			if (!rwlock.writeLock().tryLock(TRY_LOCK_TIME, TRY_LOCK_TIME_UNIT)) {
 				throw new SubsystemException("Unable to acquire the global write lock in time.");
@@ -171,6 +307,18 @@ public class LockingStrategy {
 	}
 	
 	public void writeUnlock() {
+		if (isInherited(true)) {
+			return;
+		}
 		rwlock.writeLock().unlock();
 	}
+	
+	/*
+	 * Whether the thread this one works for holds the global write lock or,
+	 * if not writing, either global lock.
+	 */
+	private boolean isInherited(boolean write) {
+		Context context = inherited.get();
+		return context != null && (write ? context.writeLock : context.readLock);
+	}
 }
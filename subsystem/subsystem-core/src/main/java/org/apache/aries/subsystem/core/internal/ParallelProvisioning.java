@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.subsystem.core.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.aries.subsystem.core.archive.SubsystemTypeHeader;
+
+/**
+ * Installs or starts independent bundles of a subsystem concurrently on a
+ * bounded pool of threads.
+ * <p>
+ * Parallel provisioning is disabled by default. It is enabled for all
+ * subsystems with the org.apache.aries.subsystem.parallel.provisioning
+ * property, and for a single subsystem with the
+ * apache-aries-parallel-provisioning directive of its Subsystem-Type header,
+ * which takes precedence over the property. Only bundles are provisioned
+ * concurrently.
+ * <p>
+ * The tasks run with the {@link LockingStrategy.Context} of the thread
+ * invoking them, which waits for them while holding its locks. A bundle
+ * activator calling back into the subsystem API for the subsystem being
+ * provisioned or one of its parents therefore re-enters its locks as it would
+ * when provisioned serially.
+ * <p>
+ * The bundles are no longer installed in Deployed-Content order, so their
+ * bundle ids and the order of their installed events are not deterministic.
+ * Start order is still honored when starting.
+ */
+public class ParallelProvisioning {
+	public static final String PROPERTY = "org.apache.aries.subsystem.parallel.provisioning";
+	public static final String PROPERTY_THREADS = "org.apache.aries.subsystem.parallel.provisioning.threads";
+
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private final boolean enabled;
+	private final ThreadPoolExecutor executor;
+	private final LockingStrategy lockingStrategy;
+
+	public ParallelProvisioning(String enabled, String threads, LockingStrategy lockingStrategy) {
+		this.lockingStrategy = lockingStrategy;
+		this.enabled = Boolean.parseBoolean(enabled);
+		int value = Runtime.getRuntime().availableProcessors();
+		if (threads != null) {
+			try {
+				value = Math.max(1, Integer.parseInt(threads));
+			} catch (NumberFormatException e) {
+				// ignore, the default will be used
+			}
+		}
+		executor = new ThreadPoolExecutor(
+				value,
+				value,
+				KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ProvisioningThreadFactory());
+		// Do not keep threads around when nothing is being provisioned.
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public boolean isEnabled(SubsystemTypeHeader header) {
+		String value = header == null ? null : header.getParallelProvisioning();
+		if (value == null)
+			return enabled;
+		return Boolean.parseBoolean(value);
+	}
+
+	/**
+	 * Runs the tasks concurrently and waits for all of them to complete, even
+	 * when some fail, so that the caller can undo the work of the successful
+	 * ones. The results are in the order of the tasks.
+	 */
+	public <T> List<Result<T>> invokeAll(List<? extends Callable<T>> tasks) throws InterruptedException {
+		final LockingStrategy.Context context = lockingStrategy.getContext();
+		List<Callable<T>> inheriting = new ArrayList<Callable<T>>(tasks.size());
+		for (final Callable<T> task : tasks) {
+			inheriting.add(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					lockingStrategy.setContext(context);
+					try {
+						return task.call();
+					}
+					finally {
+						lockingStrategy.setContext(null);
+					}
+				}
+			});
+		}
+		List<Future<T>> futures = executor.invokeAll(inheriting);
+		List<Result<T>> results = new ArrayList<Result<T>>(futures.size());
+		for (Future<T> future : futures) {
+			try {
+				results.add(new Result<T>(future.get(), null));
+			}
+			catch (ExecutionException e) {
+				results.add(new Result<T>(null, e.getCause()));
+			}
+		}
+		return results;
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	public static class Result<T> {
+		private final T value;
+		private final Throwable failure;
+
+		Result(T value, Throwable failure) {
+			this.value = value;
+			this.failure = failure;
+		}
+
+		public Throwable getFailure() {
+			return failure;
+		}
+
+		public T getValue() {
+			return value;
+		}
+	}
+
+	/**
+	 * Rethrows the first failure, if any, unwrapped.
+	 */
+	public static void rethrowFirstFailure(List<? extends Result<?>> results) throws Exception {
+		for (Result<?> result : results) {
+			Throwable failure = result.getFailure();
+			if (failure == null)
+				continue;
+			if (failure instanceof Exception)
+				throw (Exception)failure;
+			if (failure instanceof Error)
+				throw (Error)failure;
+			throw new RuntimeException(failure);
+		}
+	}
+
+	private static class ProvisioningThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Aries Subsystem Provisioning-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
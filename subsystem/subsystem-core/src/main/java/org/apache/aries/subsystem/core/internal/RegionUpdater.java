@@ -17,6 +17,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.equinox.region.Region;
 import org.eclipse.equinox.region.RegionDigraph;
@@ -32,6 +33,24 @@ import org.osgi.resource.Requirement;
 public class RegionUpdater {
 	public static final int MAX_ATTEMPTS_DEFAULT = 10;
 	
+	private static final AtomicLong updateCount = new AtomicLong();
+	
+	/**
+	 * Returns the number of times the region digraph was changed, so that
+	 * decisions based on its sharing policies may be invalidated.
+	 */
+	public static long getUpdateCount() {
+		return updateCount.get();
+	}
+	
+	/**
+	 * Records a change of the region digraph made outside of this class, such
+	 * as a region being created, connected or removed.
+	 */
+	public static void digraphChanged() {
+		updateCount.incrementAndGet();
+	}
+	
 	private final RegionDigraph digraph;
 	private final Region head;
 	private final Region tail;
@@ -86,6 +105,7 @@ public class RegionUpdater {
 				// Number of attempts has been exhausted.
 				throw e;
 			}
+			digraphChanged();
 			// Success! No need to continue looping.
 			break;
 		}
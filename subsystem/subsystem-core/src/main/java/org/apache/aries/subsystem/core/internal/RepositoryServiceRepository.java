@@ -13,97 +13,88 @@
  */
 package org.apache.aries.subsystem.core.internal;
 
-import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
-import org.osgi.framework.BundleContext;
-import org.osgi.framework.InvalidSyntaxException;
-import org.osgi.framework.ServiceReference;
+import org.apache.aries.subsystem.core.internal.RepositoryServiceTracker.RepositoryService;
 import org.osgi.resource.Capability;
 import org.osgi.resource.Requirement;
-import org.osgi.service.repository.Repository;
-import org.osgi.service.subsystem.SubsystemException;
+import org.osgi.resource.Resource;
 
+/**
+ * Finds providers in the repository services, with one call per repository
+ * service for all the requirements.
+ * <p>
+ * In batch mode, the providers of a requirement are found along with those of
+ * the other requirements of its resource, which the resolver is about to ask
+ * for, and are remembered for the lifetime of this repository. Resolving a
+ * resource then costs one call per repository service rather than one per
+ * requirement.
+ */
 public class RepositoryServiceRepository implements org.apache.aries.subsystem.core.repository.Repository {
-    final BundleContext context;
+	private final RepositoryServiceTracker tracker;
+	private final Map<Requirement, Collection<Capability>> providers;
 
 	public RepositoryServiceRepository() {
-		this(Activator.getInstance().getBundleContext());
+		this(false);
 	}
 
-	RepositoryServiceRepository(BundleContext ctx) {
-	    context = ctx;
+	public RepositoryServiceRepository(boolean batch) {
+		this(Activator.getInstance().getRepositoryServiceTracker(), batch);
 	}
 
-	@SuppressWarnings("unchecked")
-	public Collection<Capability> findProviders(Requirement requirement) {
-		Set<Capability> result = new HashSet<Capability>();
-		ServiceReference<?>[] references;
-		try {
-			references = context.getAllServiceReferences("org.osgi.service.repository.Repository", null);
-			if (references == null)
-				return result;
-		}
-		catch (InvalidSyntaxException e) {
-			throw new IllegalStateException(e);
-		}
-		for (ServiceReference<?> reference : references) {
-			Object repository = context.getService(reference);
-			if (repository == null)
-				continue;
-			try {
-			    // Reflection is used here to allow the service to work with a mixture of
-			    // Repository services implementing different versions of the API.
-
-				Class<?> clazz = repository.getClass();
-				Class<?> repoInterface = null;
-
-				while (clazz != null && repoInterface == null) {
-				    for (Class<?> intf : clazz.getInterfaces()) {
-				        if (Repository.class.getName().equals(intf.getName())) {
-				            // Compare interfaces by name so that we can work with different versions of the
-				            // interface.
-				            repoInterface = intf;
-				            break;
-				        }
-				    }
-                    clazz = clazz.getSuperclass();
-				}
+	RepositoryServiceRepository(RepositoryServiceTracker tracker, boolean batch) {
+		this.tracker = tracker;
+		providers = batch ? new HashMap<Requirement, Collection<Capability>>() : null;
+	}
 
-				if (repoInterface == null) {
-				    continue;
-				}
+	public Collection<Capability> findProviders(Requirement requirement) {
+		return findProviders(Collections.singleton(requirement)).get(requirement);
+	}
 
-				Map<Requirement, Collection<Capability>> map;
-				try {
-					Method method = repoInterface.getMethod("findProviders", Collection.class);
-					map = (Map<Requirement, Collection<Capability>>)method.invoke(repository, Collections.singleton(requirement));
-				}
-				catch (Exception e) {
-					throw new SubsystemException(e);
-				}
-				Collection<Capability> capabilities = map.get(requirement);
-				if (capabilities == null)
+	@Override
+	public Map<Requirement, Collection<Capability>> findProviders(Collection<? extends Requirement> requirements) {
+		if (providers == null)
+			return findProvidersInServices(requirements);
+		synchronized (providers) {
+			Set<Requirement> missing = new LinkedHashSet<Requirement>();
+			Set<Resource> resources = new HashSet<Resource>();
+			for (Requirement requirement : requirements) {
+				if (providers.containsKey(requirement))
 					continue;
-				result.addAll(capabilities);
-			}
-			finally {
-				context.ungetService(reference);
+				missing.add(requirement);
+				Resource resource = requirement.getResource();
+				if (resource != null && resources.add(resource))
+					for (Requirement r : resource.getRequirements(null))
+						if (!providers.containsKey(r))
+							missing.add(r);
 			}
+			if (!missing.isEmpty())
+				providers.putAll(findProvidersInServices(missing));
+			Map<Requirement, Collection<Capability>> result = new HashMap<Requirement, Collection<Capability>>();
+			for (Requirement requirement : requirements)
+				result.put(requirement, providers.get(requirement));
+			return result;
 		}
-		return result;
 	}
 
-	@Override
-	public Map<Requirement, Collection<Capability>> findProviders(Collection<? extends Requirement> requirements) {
+	private Map<Requirement, Collection<Capability>> findProvidersInServices(Collection<? extends Requirement> requirements) {
 		Map<Requirement, Collection<Capability>> result = new HashMap<Requirement, Collection<Capability>>();
 		for (Requirement requirement : requirements)
-			result.put(requirement, findProviders(requirement));
+			result.put(requirement, new HashSet<Capability>());
+		for (RepositoryService repository : tracker.getRepositoryServices()) {
+			Map<Requirement, Collection<Capability>> map = repository.findProviders(requirements);
+			for (Map.Entry<Requirement, Collection<Capability>> entry : result.entrySet()) {
+				Collection<Capability> capabilities = map.get(entry.getKey());
+				if (capabilities != null)
+					entry.getValue().addAll(capabilities);
+			}
+		}
 		return result;
 	}
 }
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.subsystem.core.internal;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
+import org.osgi.service.subsystem.SubsystemException;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * Tracks the repository services of all versions of the API, along with the
+ * findProviders method of each, so that they are not looked up again for each
+ * requirement. A repository service is forgotten when it is unregistered.
+ */
+public class RepositoryServiceTracker extends ServiceTracker<Object, RepositoryServiceTracker.RepositoryService> {
+	public RepositoryServiceTracker(BundleContext context) {
+		super(context, Repository.class.getName(), null);
+	}
+
+	@Override
+	public void open() {
+		// Track the services of all versions of the API.
+		super.open(true);
+	}
+
+	@Override
+	public RepositoryService addingService(ServiceReference<Object> reference) {
+		Object repository = context.getService(reference);
+		if (repository == null)
+			return null;
+		Method method = findProvidersMethod(repository);
+		if (method == null) {
+			context.ungetService(reference);
+			return null;
+		}
+		return new RepositoryService(repository, method);
+	}
+
+	@Override
+	public void removedService(ServiceReference<Object> reference, RepositoryService service) {
+		context.ungetService(reference);
+	}
+
+	public Collection<RepositoryService> getRepositoryServices() {
+		RepositoryService[] services = getServices(new RepositoryService[0]);
+		if (services == null)
+			return Collections.emptyList();
+		return Arrays.asList(services);
+	}
+
+	private static Method findProvidersMethod(Object repository) {
+		// Reflection is used here to allow the service to work with a mixture of
+		// Repository services implementing different versions of the API.
+		Class<?> clazz = repository.getClass();
+		while (clazz != null) {
+			for (Class<?> intf : clazz.getInterfaces()) {
+				if (Repository.class.getName().equals(intf.getName())) {
+					// Compare interfaces by name so that we can work with different versions of the
+					// interface.
+					try {
+						return intf.getMethod("findProviders", Collection.class);
+					}
+					catch (NoSuchMethodException e) {
+						throw new SubsystemException(e);
+					}
+				}
+			}
+			clazz = clazz.getSuperclass();
+		}
+		return null;
+	}
+
+	public static class RepositoryService {
+		private final Object repository;
+		private final Method findProviders;
+
+		RepositoryService(Object repository, Method findProviders) {
+			this.repository = repository;
+			this.findProviders = findProviders;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Map<Requirement, Collection<Capability>> findProviders(Collection<? extends Requirement> requirements) {
+			try {
+				return (Map<Requirement, Collection<Capability>>)findProviders.invoke(repository, requirements);
+			}
+			catch (Exception e) {
+				throw new SubsystemException(e);
+			}
+		}
+	}
+}
@@ -56,6 +56,7 @@ public class ResolveContext extends org.osgi.service.resolver.ResolveContext {
 	private final Repository preferredProviderRepository;
 	private final Repository repositoryServiceRepository;
 	private final SubsystemResource resource;
+	private final SharingPolicyCache sharingPolicyCache = new SharingPolicyCache();
 	private final Repository systemRepository;
 	private final Map<Resource, Wiring> wirings = computeWirings();
 
@@ -64,7 +65,7 @@ public class ResolveContext extends org.osgi.service.resolver.ResolveContext {
 		contentRepository = new ContentRepository(resource.getInstallableContent(), resource.getSharedContent());
 		localRepository = resource.getLocalRepository();
 		preferredProviderRepository = new PreferredProviderRepository(resource);
-		repositoryServiceRepository = new RepositoryServiceRepository();
+		repositoryServiceRepository = new RepositoryServiceRepository(true);
 		systemRepository = Activator.getInstance().getSystemRepository();
 	}
 	
@@ -375,7 +376,7 @@ public class ResolveContext extends org.osgi.service.resolver.ResolveContext {
 		}
 		Region from = findRegionForCapabilityValidation(provider);
 		Region to = findRegionForCapabilityValidation(requirer);
-		return new SharingPolicyValidator(from, to).isValid(capability);
+		return sharingPolicyCache.isValid(from, to, capability);
 	}
 	
 	private boolean isAcceptDependencies() {
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.subsystem.core.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.equinox.region.Region;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.resource.Capability;
+
+/**
+ * Remembers the sharing policy decisions made while resolving, so that the
+ * region digraph is walked once per region pair and distinct capability
+ * rather than once per candidate capability.
+ * <p>
+ * A decision depends on the regions, the namespace and attributes of the
+ * capability and, for bundle capabilities, on the providing revision. The
+ * decisions are forgotten whenever the region digraph changes, as counted by
+ * {@link RegionUpdater#getUpdateCount()}.
+ */
+public class SharingPolicyCache {
+	private static class Key {
+		private final Region from;
+		private final Region to;
+		private final String namespace;
+		private final Map<String, Object> attributes;
+		private final BundleRevision revision;
+		private final int hashCode;
+
+		public Key(Region from, Region to, Capability capability) {
+			this.from = from;
+			this.to = to;
+			namespace = capability.getNamespace();
+			attributes = capability.getAttributes();
+			revision = capability instanceof BundleCapability ? ((BundleCapability)capability).getRevision() : null;
+			int result = 17;
+			result = 31 * result + from.hashCode();
+			result = 31 * result + to.hashCode();
+			result = 31 * result + namespace.hashCode();
+			result = 31 * result + attributes.hashCode();
+			result = 31 * result + (revision == null ? 0 : revision.hashCode());
+			hashCode = result;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			Key that = (Key)o;
+			return hashCode == that.hashCode
+					&& from.equals(that.from)
+					&& to.equals(that.to)
+					&& namespace.equals(that.namespace)
+					&& (revision == null ? that.revision == null : revision.equals(that.revision))
+					&& attributes.equals(that.attributes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	private final ConcurrentMap<Key, Boolean> decisions = new ConcurrentHashMap<Key, Boolean>();
+	private volatile long updateCount = RegionUpdater.getUpdateCount();
+
+	public boolean isValid(Region from, Region to, Capability capability) {
+		long count = RegionUpdater.getUpdateCount();
+		if (count != updateCount) {
+			decisions.clear();
+			updateCount = count;
+		}
+		Key key = new Key(from, to, capability);
+		Boolean result = decisions.get(key);
+		if (result == null) {
+			result = new SharingPolicyValidator(from, to).isValid(capability);
+			if (count == RegionUpdater.getUpdateCount())
+				decisions.put(key, result);
+		}
+		return result;
+	}
+}
@@ -23,6 +23,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.aries.subsystem.ContentHandler;
 import org.apache.aries.subsystem.core.archive.ExportPackageCapability;
@@ -302,8 +303,12 @@ public class StartAction extends AbstractAction {
 					SubsystemContentHeader header = target.getSubsystemManifest().getSubsystemContentHeader();
 					if (header != null)
 						Collections.sort(affectedResources.resources(), new StartResourceComparator(header));
-					for (Resource resource : affectedResources.resources())
-						startResource(resource, coordination);
+					ParallelProvisioning parallelProvisioning = Activator.getInstance().getParallelProvisioning();
+					if (parallelProvisioning.isEnabled(target.getSubsystemManifest().getSubsystemTypeHeader()))
+						startResourcesInParallel(affectedResources.resources(), header, parallelProvisioning, coordination);
+					else
+						for (Resource resource : affectedResources.resources())
+							startResource(resource, coordination);
 					target.setState(State.ACTIVE);
 					
 				}
@@ -445,6 +450,7 @@ public class StartAction extends AbstractAction {
 					+ ", to=" + to + ", filter=" + regionFilter);
 		try {
 			from.connectRegion(to, regionFilter);
+			RegionUpdater.digraphChanged();
 		}
 		catch (BundleException e) {
 			// TODO Assume this means that the export sharing policy has already
@@ -540,17 +546,26 @@ public class StartAction extends AbstractAction {
 	}
 
 	private void startBundleResource(Resource resource, Coordination coordination) throws BundleException {
+		Bundle bundle = startBundle(resource);
+		if (bundle != null)
+			addStopBundleParticipant(bundle, coordination);
+	}
+
+	/**
+	 * @return the bundle if it was started by this call, null otherwise.
+	 */
+	private Bundle startBundle(Resource resource) throws BundleException {
 		if (target.isRoot())
 			// Starting the root subsystem should not affect bundles within the
 			// root region.
-			return;
+			return null;
 		if (Utils.isRegionContextBundle(resource))
 			// The region context bundle was persistently started elsewhere.
-			return;
-		final Bundle bundle = ((BundleRevision)resource).getBundle();
+			return null;
+		Bundle bundle = ((BundleRevision)resource).getBundle();
 
 		if ((bundle.getState() & (Bundle.STARTING | Bundle.ACTIVE)) != 0)
-			return;
+			return null;
 
 		if (logger.isDebugEnabled()) {
 			int bundleStartLevel = bundle.adapt(BundleStartLevel.class).getStartLevel();
@@ -569,7 +584,10 @@ public class StartAction extends AbstractAction {
 				+ " " + bundle.getVersion().toString()
 				+ " started correctly");
 		}
+		return bundle;
+	}
 
+	private void addStopBundleParticipant(final Bundle bundle, Coordination coordination) {
 		if (coordination == null)
 			return;
 		coordination.addParticipant(new Participant() {
@@ -583,6 +601,60 @@ public class StartAction extends AbstractAction {
 		});
 	}
 
+	/*
+	 * Resources are started one start order at a time so that a resource is
+	 * never started before one with a lower start order. Within a start order,
+	 * the bundles are started concurrently and the other resources serially
+	 * afterwards. Subsystem resources are not started concurrently because
+	 * the start actions of siblings may acquire the same state change locks.
+	 * The provisioning threads only start the bundles; participants are added
+	 * to the coordination from this thread, as when installing.
+	 */
+	private void startResourcesInParallel(List<Resource> resources, SubsystemContentHeader header,
+			ParallelProvisioning parallelProvisioning, Coordination coordination) throws Exception {
+		StartResourceComparator comparator = header == null ? null : new StartResourceComparator(header);
+		int from = 0;
+		while (from < resources.size()) {
+			int to = from + 1;
+			while (to < resources.size()
+					&& (comparator == null || comparator.compare(resources.get(from), resources.get(to)) == 0))
+				to++;
+			startResourcesInParallel(resources.subList(from, to), parallelProvisioning, coordination);
+			from = to;
+		}
+	}
+
+	private void startResourcesInParallel(List<Resource> resources, ParallelProvisioning parallelProvisioning,
+			Coordination coordination) throws Exception {
+		List<Callable<Bundle>> tasks = new ArrayList<Callable<Bundle>>();
+		List<Resource> others = new ArrayList<Resource>();
+		for (final Resource resource : resources) {
+			if (IdentityNamespace.TYPE_BUNDLE.equals(ResourceHelper.getTypeAttribute(resource)))
+				tasks.add(new Callable<Bundle>() {
+					@Override
+					public Bundle call() throws Exception {
+						return startBundle(resource);
+					}
+				});
+			else
+				others.add(resource);
+		}
+		if (tasks.size() < 2) {
+			for (Resource resource : resources)
+				startResource(resource, coordination);
+			return;
+		}
+		List<ParallelProvisioning.Result<Bundle>> results = parallelProvisioning.invokeAll(tasks);
+		// Participants are added from this thread only. The bundles that did
+		// start must be stopped should another one fail.
+		for (ParallelProvisioning.Result<Bundle> result : results)
+			if (result.getValue() != null)
+				addStopBundleParticipant(result.getValue(), coordination);
+		ParallelProvisioning.rethrowFirstFailure(results);
+		for (Resource resource : others)
+			startResource(resource, coordination);
+	}
+
 	private void startResource(Resource resource, Coordination coordination) throws BundleException, IOException {
 		String type = ResourceHelper.getTypeAttribute(resource);
 		if (SubsystemConstants.SUBSYSTEM_TYPE_APPLICATION.equals(type)
@@ -233,8 +233,10 @@ public class SubsystemResource implements Resource {
 
 				@Override
 				public void failed(Coordination arg0) throws Exception {
-					if (isScoped())
+					if (isScoped()) {
 						region.getRegionDigraph().removeRegion(region);
+						RegionUpdater.digraphChanged();
+					}
 				}
 			});
 			if (!isApplication()) {
@@ -322,6 +324,7 @@ public class SubsystemResource implements Resource {
 			addSubsystemServiceImportToSharingPolicy(builder);
 			RegionFilter regionFilter = builder.build();
 			getRegion().connectRegion(to, regionFilter);
+			RegionUpdater.digraphChanged();
 		}
 	}
 
@@ -466,8 +469,10 @@ public class SubsystemResource implements Resource {
 		Region region = digraph.getRegion(name);
 		// TODO New regions need to be cleaned up if this subsystem fails to
 		// install, but there's no access to the coordination here.
-		if (region == null)
-			return digraph.createRegion(name);
+		if (region == null) {
+			region = digraph.createRegion(name);
+			RegionUpdater.digraphChanged();
+		}
 		return region;
 	}
 
@@ -690,6 +695,7 @@ public class SubsystemResource implements Resource {
 		// Now set the sharing policy, if the regions are different.
 		RegionFilter regionFilter = builder.build();
 		from.connectRegion(to, regionFilter);
+		RegionUpdater.digraphChanged();
 	}
 
 	private void setImportIsolationPolicy() throws BundleException, IOException, InvalidSyntaxException, URISyntaxException {
@@ -721,6 +727,7 @@ public class SubsystemResource implements Resource {
 		}
 		RegionFilter regionFilter = builder.build();
 		from.connectRegion(to, regionFilter);
+		RegionUpdater.digraphChanged();
 	}
 
 	private void setImportIsolationPolicy(RegionFilterBuilder builder, ImportPackageHeader header) throws InvalidSyntaxException {
@@ -19,8 +19,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.aries.util.filesystem.FileSystem;
+import org.osgi.framework.namespace.IdentityNamespace;
 import org.osgi.resource.Resource;
 import org.osgi.service.coordinator.Coordination;
 import org.osgi.service.coordinator.Participant;
@@ -58,6 +60,41 @@ public class SubsystemResourceInstaller extends ResourceInstaller {
 		Activator.getInstance().getSubsystems().addSubsystem(subsystem);
 	}
 
+	/*
+	 * Bundles and fragments are installed concurrently, followed by the other
+	 * resources in order. Subsystem resources are not installed concurrently
+	 * because siblings may acquire the same state change locks. The bundle
+	 * installers add no participants to the coordination, so that, as when
+	 * starting, participants are only added from this thread. Bundles that
+	 * were installed before a failure are uninstalled along with the subsystem
+	 * by its participant when the coordination fails.
+	 */
+	private void installInParallel(List<Resource> resources, final BasicSubsystem subsystem,
+			ParallelProvisioning parallelProvisioning) throws Exception {
+		List<Callable<Resource>> tasks = new ArrayList<Callable<Resource>>();
+		List<Resource> others = new ArrayList<Resource>();
+		for (final Resource resource : resources) {
+			String type = ResourceHelper.getTypeAttribute(resource);
+			if (IdentityNamespace.TYPE_BUNDLE.equals(type) || IdentityNamespace.TYPE_FRAGMENT.equals(type))
+				tasks.add(new Callable<Resource>() {
+					@Override
+					public Resource call() throws Exception {
+						return new BundleResourceInstaller(coordination, resource, subsystem).install();
+					}
+				});
+			else
+				others.add(resource);
+		}
+		if (tasks.size() < 2) {
+			for (Resource resource : resources)
+				ResourceInstaller.newInstance(coordination, resource, subsystem).install();
+			return;
+		}
+		ParallelProvisioning.rethrowFirstFailure(parallelProvisioning.invokeAll(tasks));
+		for (Resource resource : others)
+			ResourceInstaller.newInstance(coordination, resource, subsystem).install();
+	}
+
 	private BasicSubsystem installAriesSubsystem(final BasicSubsystem subsystem) throws Exception {
 		addChild(subsystem);
 		addReference(subsystem);
@@ -95,8 +132,12 @@ public class SubsystemResourceInstaller extends ResourceInstaller {
 		if (State.INSTALLING.equals(subsystem.getState())) {
 			List<Resource> installableContent = new ArrayList<Resource>(subsystem.getResource().getInstallableContent());
 			Collections.sort(installableContent, comparator);
-			for (Resource content : installableContent)
-				ResourceInstaller.newInstance(coordination, content, subsystem).install();
+			ParallelProvisioning parallelProvisioning = Activator.getInstance().getParallelProvisioning();
+			if (parallelProvisioning.isEnabled(subsystem.getSubsystemManifest().getSubsystemTypeHeader()))
+				installInParallel(installableContent, subsystem, parallelProvisioning);
+			else
+				for (Resource content : installableContent)
+					ResourceInstaller.newInstance(coordination, content, subsystem).install();
 		}
 		// Only brand new subsystems should have acquired the INSTALLING state,
 		// in which case an INSTALLED event must be propagated.
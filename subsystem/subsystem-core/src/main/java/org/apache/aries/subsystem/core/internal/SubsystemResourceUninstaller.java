@@ -110,6 +110,7 @@ public class SubsystemResourceUninstaller extends ResourceUninstaller {
 			if (subsystem.isScoped()) {
 				RegionContextBundleHelper.uninstallRegionContextBundle(subsystem);
 				activator.getRegionDigraph().removeRegion(subsystem.getRegion());
+				RegionUpdater.digraphChanged();
 			}
 			if (firstError != null)
 				throw new SubsystemException(firstError);
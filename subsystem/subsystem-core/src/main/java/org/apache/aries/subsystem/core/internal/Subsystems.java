@@ -20,13 +20,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.apache.aries.subsystem.core.archive.DeploymentManifest;
-import org.apache.aries.subsystem.core.internal.BundleResourceInstaller.BundleConstituent;
 import org.apache.aries.util.io.IOUtils;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -44,7 +41,7 @@ public class Subsystems {
 	private final Map<Long, BasicSubsystem> idToSubsystem = new HashMap<Long, BasicSubsystem>();
 	private final Map<String, BasicSubsystem> locationToSubsystem = new HashMap<String, BasicSubsystem>();
 	private final ResourceReferences resourceReferences = new ResourceReferences();
-	private final Map<BasicSubsystem, Set<Resource>> subsystemToConstituents = new HashMap<BasicSubsystem, Set<Resource>>();
+	private final Constituents constituents = new Constituents();
 	
 	public void addChild(BasicSubsystem parent, BasicSubsystem child, boolean referenceCount) {
 		graph.add(parent, child);
@@ -52,14 +49,7 @@ public class Subsystems {
 	}
 	
 	public void addConstituent(BasicSubsystem subsystem, Resource constituent, boolean referenced) {
-		synchronized (subsystemToConstituents) {
-			Set<Resource> constituents = subsystemToConstituents.get(subsystem);
-			if (constituents == null) {
-				constituents = new HashSet<Resource>();
-				subsystemToConstituents.put(subsystem, constituents);
-			}
-			constituents.add(constituent);
-		}
+		constituents.addConstituent(subsystem, constituent);
 		subsystem.addedConstituent(constituent, referenced);
 	}
 	
@@ -81,12 +71,7 @@ public class Subsystems {
 	}
 	
 	public Collection<Resource> getConstituents(BasicSubsystem subsystem) {
-		synchronized (subsystemToConstituents) {
-			Collection<Resource> result = subsystemToConstituents.get(subsystem);
-			if (result == null)
-				return Collections.emptyList();
-			return Collections.unmodifiableCollection(new ArrayList<Resource>(result));
-		}
+		return constituents.getConstituents(subsystem);
 	}
 	
 	public Collection<Subsystem> getParents(BasicSubsystem child) {
@@ -208,34 +193,11 @@ public class Subsystems {
 	
 	// TODO Not very pretty. A quick fix.
 	public Object[] getSubsystemsByBundle(Bundle bundle) {
-		BundleRevision revision = null;
-		ArrayList<BasicSubsystem> result = new ArrayList<BasicSubsystem>();
-		synchronized (subsystemToConstituents) {
-			for (BasicSubsystem subsystem : subsystemToConstituents.keySet()) {
-				for (Resource constituent : getConstituents(subsystem)) {
-					if (constituent instanceof BundleConstituent &&
-							((BundleConstituent)constituent).getBundle() == bundle) {
-						result.add(subsystem);
-						revision = ((BundleConstituent)constituent).getRevision();
-					}
-				}	
-			}
-		}
-		result.trimToSize();
-		if (revision == null)
-			return null;
-		return new Object[]{revision, result};
+		return constituents.getSubsystemsByBundle(bundle);
 	}
 	
 	public Collection<BasicSubsystem> getSubsystemsByConstituent(Resource constituent) {
-		ArrayList<BasicSubsystem> result = new ArrayList<BasicSubsystem>();
-		synchronized (subsystemToConstituents) {
-			for (BasicSubsystem subsystem : subsystemToConstituents.keySet())
-				if (getConstituents(subsystem).contains(constituent))
-					result.add(subsystem);
-		}
-		result.trimToSize();
-		return result;
+		return constituents.getSubsystemsByConstituent(constituent);
 	}
 	
 	public Collection<BasicSubsystem> getSubsystemsReferencing(Resource resource) {
@@ -251,14 +213,7 @@ public class Subsystems {
 	}
 	
 	public void removeConstituent(BasicSubsystem subsystem, Resource constituent) {
-		synchronized (subsystemToConstituents) {
-			Set<Resource> constituents = subsystemToConstituents.get(subsystem);
-			if (constituents != null) {
-				constituents.remove(constituent);
-				if (constituents.isEmpty())
-					subsystemToConstituents.remove(subsystem);
-			}
-		}
+		constituents.removeConstituent(subsystem, constituent);
 		subsystem.removedContent(constituent);
 	}
 	
@@ -0,0 +1,159 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.subsystem.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+import org.apache.aries.subsystem.core.internal.BundleResourceInstaller.BundleConstituent;
+import org.easymock.EasyMock;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.resource.Resource;
+
+public class ConstituentsTest {
+	private static final int BUNDLES = 1000;
+	private static final int SUBSYSTEMS = 30;
+
+	// benchmark settings
+	private static final int BENCHMARK_BUNDLES = 10000;
+	private static final int BENCHMARK_SUBSYSTEMS = 300;
+	private static final int TRIALS = 5;
+
+	@Test
+	public void testLookups() {
+		Constituents constituents = new Constituents();
+		BasicSubsystem s1 = createSubsystem();
+		BasicSubsystem s2 = createSubsystem();
+		Bundle bundle = createBundle();
+		BundleConstituent c = createConstituent(bundle);
+		Resource other = EasyMock.createNiceMock(Resource.class);
+
+		constituents.addConstituent(s1, c);
+		constituents.addConstituent(s2, c);
+		constituents.addConstituent(s1, other);
+
+		assertEquals(new HashSet<Resource>(Arrays.asList(c, other)), new HashSet<Resource>(constituents.getConstituents(s1)));
+		assertEquals(new HashSet<BasicSubsystem>(Arrays.asList(s1, s2)), new HashSet<BasicSubsystem>(constituents.getSubsystemsByConstituent(c)));
+		// Constituents are equal when their revisions are.
+		assertEquals(2, constituents.getSubsystemsByConstituent(new BundleConstituent(null, c.getRevision())).size());
+		Object[] o = constituents.getSubsystemsByBundle(bundle);
+		assertSame(c.getRevision(), o[0]);
+		assertEquals(new HashSet<BasicSubsystem>(Arrays.asList(s1, s2)), new HashSet<Object>((Collection<?>)o[1]));
+
+		constituents.removeConstituent(s1, c);
+		assertEquals(Arrays.asList(s2), constituents.getSubsystemsByConstituent(c));
+		assertEquals(Arrays.asList(s2), constituents.getSubsystemsByBundle(bundle)[1]);
+		assertEquals(Arrays.asList(other), new ArrayList<Resource>(constituents.getConstituents(s1)));
+
+		constituents.removeConstituent(s2, c);
+		assertTrue(constituents.getSubsystemsByConstituent(c).isEmpty());
+		assertNull(constituents.getSubsystemsByBundle(bundle));
+		assertTrue(constituents.getConstituents(s2).isEmpty());
+		assertNull(constituents.getSubsystemsByBundle(createBundle()));
+	}
+
+	@Test
+	public void testScale() {
+		Constituents constituents = new Constituents();
+		BasicSubsystem[] subsystems = createSubsystems(SUBSYSTEMS);
+		Bundle[] bundles = createBundles(BUNDLES);
+		BundleConstituent[] bundleConstituents = addConstituents(constituents, subsystems, bundles);
+
+		for (int i = 0; i < BUNDLES; i++) {
+			Object[] o = constituents.getSubsystemsByBundle(bundles[i]);
+			assertSame(bundleConstituents[i].getRevision(), o[0]);
+			assertEquals(Arrays.asList(subsystems[i % SUBSYSTEMS]), o[1]);
+			assertEquals(Arrays.asList(subsystems[i % SUBSYSTEMS]), constituents.getSubsystemsByConstituent(bundleConstituents[i]));
+		}
+
+		for (int i = 0; i < BUNDLES; i++)
+			constituents.removeConstituent(subsystems[i % SUBSYSTEMS], bundleConstituents[i]);
+		for (int i = 0; i < SUBSYSTEMS; i++)
+			assertTrue(constituents.getConstituents(subsystems[i]).isEmpty());
+		assertNull(constituents.getSubsystemsByBundle(bundles[0]));
+	}
+
+	@Test
+	@Ignore
+	public void testLookupTime() {
+		Constituents constituents = new Constituents();
+		BasicSubsystem[] subsystems = createSubsystems(BENCHMARK_SUBSYSTEMS);
+		Bundle[] bundles = createBundles(BENCHMARK_BUNDLES);
+		BundleConstituent[] bundleConstituents = addConstituents(constituents, subsystems, bundles);
+
+		for (int trial = 0; trial < TRIALS; trial++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < BENCHMARK_BUNDLES; i++) {
+				constituents.getSubsystemsByBundle(bundles[i]);
+				constituents.getSubsystemsByConstituent(bundleConstituents[i]);
+			}
+			long elapsed = (System.nanoTime() - start) / 1000000;
+			System.err.println("Trial " + trial + ": looked up " + BENCHMARK_BUNDLES + " bundles in "
+					+ BENCHMARK_SUBSYSTEMS + " subsystems in " + elapsed + " ms");
+		}
+	}
+
+	private static BasicSubsystem[] createSubsystems(int count) {
+		BasicSubsystem[] subsystems = new BasicSubsystem[count];
+		for (int i = 0; i < count; i++)
+			subsystems[i] = createSubsystem();
+		return subsystems;
+	}
+
+	private static Bundle[] createBundles(int count) {
+		Bundle[] bundles = new Bundle[count];
+		for (int i = 0; i < count; i++)
+			bundles[i] = createBundle();
+		return bundles;
+	}
+
+	/**
+	 * Adds the bundles to the subsystems round robin.
+	 */
+	private static BundleConstituent[] addConstituents(Constituents constituents, BasicSubsystem[] subsystems, Bundle[] bundles) {
+		BundleConstituent[] bundleConstituents = new BundleConstituent[bundles.length];
+		for (int i = 0; i < bundles.length; i++) {
+			bundleConstituents[i] = createConstituent(bundles[i]);
+			constituents.addConstituent(subsystems[i % subsystems.length], bundleConstituents[i]);
+		}
+		return bundleConstituents;
+	}
+
+	private static BasicSubsystem createSubsystem() {
+		return EasyMock.createMock(BasicSubsystem.class);
+	}
+
+	private static Bundle createBundle() {
+		Bundle bundle = EasyMock.createNiceMock(Bundle.class);
+		EasyMock.replay(bundle);
+		return bundle;
+	}
+
+	private static BundleConstituent createConstituent(Bundle bundle) {
+		BundleRevision revision = EasyMock.createNiceMock(BundleRevision.class);
+		EasyMock.expect(revision.getBundle()).andReturn(bundle).anyTimes();
+		EasyMock.replay(revision);
+		return new BundleConstituent(null, revision);
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.subsystem.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.aries.subsystem.core.archive.SubsystemTypeHeader;
+import org.easymock.EasyMock;
+import org.junit.Test;
+import org.osgi.service.subsystem.Subsystem.State;
+
+public class ParallelProvisioningTest {
+	private static final int TASKS = 4;
+
+	@Test
+	public void testEnabled() {
+		ParallelProvisioning disabled = new ParallelProvisioning(null, null, new LockingStrategy(null));
+		ParallelProvisioning enabled = new ParallelProvisioning("true", "2", new LockingStrategy(null));
+		try {
+			SubsystemTypeHeader none = new SubsystemTypeHeader(SubsystemTypeHeader.TYPE_APPLICATION);
+			SubsystemTypeHeader on = new SubsystemTypeHeader(SubsystemTypeHeader.TYPE_APPLICATION + ';'
+					+ SubsystemTypeHeader.DIRECTIVE_PARALLEL_PROVISIONING + ":=true");
+			SubsystemTypeHeader off = new SubsystemTypeHeader(SubsystemTypeHeader.TYPE_FEATURE + ';'
+					+ SubsystemTypeHeader.DIRECTIVE_PARALLEL_PROVISIONING + ":=false");
+			assertNull(none.getParallelProvisioning());
+			assertFalse(disabled.isEnabled(none));
+			assertFalse(disabled.isEnabled(null));
+			assertTrue(disabled.isEnabled(on));
+			assertTrue(enabled.isEnabled(none));
+			// The directive takes precedence over the property.
+			assertFalse(enabled.isEnabled(off));
+		}
+		finally {
+			disabled.shutdown();
+			enabled.shutdown();
+		}
+	}
+
+	@Test
+	public void testInvokeAll() throws Exception {
+		ParallelProvisioning provisioning = new ParallelProvisioning("true", String.valueOf(TASKS), new LockingStrategy(null));
+		try {
+			// None of the tasks can complete unless all of them run concurrently.
+			final CountDownLatch latch = new CountDownLatch(TASKS);
+			final IllegalStateException failure = new IllegalStateException();
+			List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+			for (int i = 0; i < TASKS; i++) {
+				final int value = i;
+				tasks.add(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						latch.countDown();
+						if (!latch.await(10, TimeUnit.SECONDS))
+							throw new AssertionError("Tasks did not run concurrently");
+						if (value == 1)
+							throw failure;
+						return value;
+					}
+				});
+			}
+			List<ParallelProvisioning.Result<Integer>> results = provisioning.invokeAll(tasks);
+			assertEquals(TASKS, results.size());
+			for (int i = 0; i < TASKS; i++) {
+				if (i == 1) {
+					assertSame(failure, results.get(i).getFailure());
+					continue;
+				}
+				assertNull(results.get(i).getFailure());
+				assertEquals(Integer.valueOf(i), results.get(i).getValue());
+			}
+			try {
+				ParallelProvisioning.rethrowFirstFailure(results);
+				fail("The failure was not rethrown");
+			}
+			catch (IllegalStateException e) {
+				assertSame(failure, e);
+			}
+		}
+		finally {
+			provisioning.shutdown();
+		}
+	}
+
+	@Test
+	public void testActivatorCallback() throws Exception {
+		final LockingStrategy strategy = new LockingStrategy("1");
+		final BasicSubsystem subsystem = createSubsystem();
+		final BasicSubsystem child = createSubsystem();
+		final Collection<BasicSubsystem> subsystems = Collections.singleton(subsystem);
+		ParallelProvisioning provisioning = new ParallelProvisioning("true", "2", strategy);
+		// The provisioning thread holds the locks of the subsystem being started.
+		assertTrue(strategy.set(State.STARTING, subsystem));
+		strategy.readLock();
+		strategy.lock();
+		try {
+			strategy.lock(subsystems);
+		}
+		finally {
+			strategy.unlock();
+		}
+		try {
+			List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+			tasks.add(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					// An activator calling back into the subsystem API from a
+					// provisioning thread sees the start in progress...
+					if (strategy.set(State.STARTING, subsystem))
+						return Boolean.FALSE;
+					// ...and re-enters the locks held by the provisioning
+					// thread rather than blocking on them until the timeout.
+					Collection<BasicSubsystem> both = Arrays.asList(subsystem, child);
+					strategy.readLock();
+					try {
+						strategy.lock();
+						try {
+							strategy.lock(both);
+						}
+						finally {
+							strategy.unlock();
+						}
+						try {
+							assertFalse(subsystem.stateChangeLock().isHeldByCurrentThread());
+							assertTrue(child.stateChangeLock().isHeldByCurrentThread());
+						}
+						finally {
+							strategy.unlock(both);
+						}
+						assertFalse(child.stateChangeLock().isLocked());
+					}
+					finally {
+						strategy.readUnlock();
+					}
+					return Boolean.TRUE;
+				}
+			});
+			List<ParallelProvisioning.Result<Boolean>> results = provisioning.invokeAll(tasks);
+			assertNull(String.valueOf(results.get(0).getFailure()), results.get(0).getFailure());
+			assertEquals(Boolean.TRUE, results.get(0).getValue());
+			// The provisioning thread still holds its locks.
+			assertTrue(subsystem.stateChangeLock().isHeldByCurrentThread());
+			assertFalse(strategy.set(State.STARTING, subsystem));
+		}
+		finally {
+			strategy.unlock(subsystems);
+			strategy.readUnlock();
+			strategy.unset(State.STARTING, subsystem);
+			provisioning.shutdown();
+		}
+	}
+
+	private static BasicSubsystem createSubsystem() {
+		BasicSubsystem subsystem = EasyMock.createNiceMock(BasicSubsystem.class);
+		EasyMock.expect(subsystem.stateChangeLock()).andReturn(new ReentrantLock()).anyTimes();
+		EasyMock.replay(subsystem);
+		return subsystem;
+	}
+}
@@ -15,9 +15,11 @@ package org.apache.aries.subsystem.core.internal;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.aries.subsystem.core.internal.sub.Creator;
@@ -34,7 +36,6 @@ public class RepositoryServiceRepositoryTest {
     @Test
     public void testFindProviders() throws Exception {
         BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
-        RepositoryServiceRepository rsr = new RepositoryServiceRepository(bc);
 
         @SuppressWarnings("unchecked")
         ServiceReference<Object> sr = EasyMock.createMock(ServiceReference.class);
@@ -55,6 +56,10 @@ public class RepositoryServiceRepositoryTest {
         Repository tr3 = Creator.create();
         EasyMock.expect(bc.getService(sr3)).andReturn(tr3).anyTimes();
         EasyMock.replay(bc);
+        // The repository services are tracked from now on.
+        RepositoryServiceTracker tracker = new RepositoryServiceTracker(bc);
+        tracker.open();
+        RepositoryServiceRepository rsr = new RepositoryServiceRepository(tracker, false);
 
         Map<String, String> dirs = Collections.singletonMap("filter", "(org.foo=bar)");
         Requirement req = new TestRequirement("org.foo", dirs);
@@ -82,15 +87,58 @@ public class RepositoryServiceRepositoryTest {
         assertEquals("ns1", cap3.getNamespace());
         assertEquals(1, cap3.getAttributes().size());
         assertEquals("y", cap3.getAttributes().get("x"));
+        tracker.close();
+    }
+
+    @Test
+    public void testBatchMode() throws Exception {
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        @SuppressWarnings("unchecked")
+        ServiceReference<Object> sr = EasyMock.createMock(ServiceReference.class);
+        EasyMock.expect(bc.getAllServiceReferences("org.osgi.service.repository.Repository", null)).
+            andReturn(new ServiceReference[] {sr}).anyTimes();
+        CountingRepository repository = new CountingRepository();
+        // The service is looked up once, not for each requirement.
+        EasyMock.expect(bc.getService(sr)).andReturn(repository).once();
+        EasyMock.replay(bc);
+
+        RepositoryServiceTracker tracker = new RepositoryServiceTracker(bc);
+        tracker.open();
+        RepositoryServiceRepository rsr = new RepositoryServiceRepository(tracker, true);
+
+        List<Requirement> requirements = new ArrayList<Requirement>();
+        TestResource resource = new TestResource(requirements);
+        Map<String, String> dirs = Collections.singletonMap("filter", "(org.foo=bar)");
+        Requirement req = new TestRequirement("org.foo", dirs, resource);
+        requirements.add(req);
+        for (int i = 0; i < 100; i++)
+            requirements.add(new TestRequirement("ns" + i, Collections.singletonMap("filter", "(x=" + i + ")"), resource));
+
+        Collection<Capability> res = rsr.findProviders(req);
+        assertEquals(1, res.size());
+        assertEquals("bar", res.iterator().next().getAttributes().get("org.foo"));
+        for (Requirement r : requirements.subList(1, requirements.size()))
+            assertEquals(0, rsr.findProviders(r).size());
+        // All the requirements of the resource were looked up at once.
+        assertEquals(1, repository.calls);
+        assertEquals(requirements.size(), repository.requirements);
+        EasyMock.verify(bc);
+        tracker.close();
     }
 
     private static class TestRequirement implements Requirement {
         private final String namespace;
         private final Map<String, String> directives;
+        private final Resource resource;
 
         private TestRequirement(String ns, Map<String, String> dirs) {
+            this(ns, dirs, null);
+        }
+
+        private TestRequirement(String ns, Map<String, String> dirs, Resource res) {
             namespace = ns;
             directives = dirs;
+            resource = res;
         }
 
         @Override
@@ -110,7 +158,25 @@ public class RepositoryServiceRepositoryTest {
 
         @Override
         public Resource getResource() {
-            return null;
+            return resource;
+        }
+    }
+
+    private static class TestResource implements Resource {
+        private final List<Requirement> requirements;
+
+        private TestResource(List<Requirement> reqs) {
+            requirements = reqs;
+        }
+
+        @Override
+        public List<Capability> getCapabilities(String namespace) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Requirement> getRequirements(String namespace) {
+            return requirements;
         }
     }
 
@@ -133,6 +199,18 @@ public class RepositoryServiceRepositoryTest {
         }
     }
 
+    private static class CountingRepository extends TestRepository {
+        private int calls;
+        private int requirements;
+
+        @Override
+        public Map<Requirement, Collection<Capability>> findProviders(Collection<? extends Requirement> reqs) {
+            calls++;
+            requirements += reqs.size();
+            return super.findProviders(reqs);
+        }
+    }
+
     private static class ToastRepository extends TestRepository {
         @Override
         public Map<Requirement, Collection<Capability>> findProviders(Collection<? extends Requirement> requirements) {
@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.subsystem.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.eclipse.equinox.region.Region;
+import org.eclipse.equinox.region.RegionDigraphVisitor;
+import org.eclipse.equinox.region.RegionFilter;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.osgi.resource.Capability;
+
+public class SharingPolicyCacheTest {
+	private static final String NAMESPACE = "osgi.wiring.package";
+	private static final int DEPTH = 30;
+	private static final int PACKAGES = 200;
+	private static final int CANDIDATES = 5000;
+	private static final int TRIALS = 3;
+
+	/*
+	 * A chain of scoped regions, each one importing the even packages from
+	 * its parent.
+	 */
+	private final Region[] regions = new Region[DEPTH];
+	private final RegionFilter[] filters = new RegionFilter[DEPTH];
+	private final AtomicInteger walks = new AtomicInteger();
+
+	public SharingPolicyCacheTest() {
+		for (int i = 0; i < DEPTH; i++) {
+			filters[i] = createFilter();
+			regions[i] = createRegion(i);
+		}
+	}
+
+	@Test
+	public void testDecisions() {
+		SharingPolicyCache cache = new SharingPolicyCache();
+		Region root = regions[0];
+		Region leaf = regions[DEPTH - 1];
+		assertTrue(cache.isValid(root, leaf, createCapability(0)));
+		assertFalse(cache.isValid(root, leaf, createCapability(1)));
+		assertTrue(cache.isValid(root, regions[1], createCapability(2)));
+		assertEquals(3, walks.get());
+		// Equal capabilities share decisions.
+		assertTrue(cache.isValid(root, leaf, createCapability(0)));
+		assertFalse(cache.isValid(root, leaf, createCapability(1)));
+		assertEquals(3, walks.get());
+		// The decisions depend on the regions.
+		assertFalse(cache.isValid(leaf, root, createCapability(0)));
+		assertEquals(4, walks.get());
+	}
+
+	@Test
+	public void testDeepHierarchy() {
+		List<Capability> candidates = new ArrayList<Capability>(CANDIDATES);
+		for (int i = 0; i < CANDIDATES; i++)
+			candidates.add(createCapability(i % PACKAGES));
+		Region root = regions[0];
+		Region leaf = regions[DEPTH - 1];
+
+		int expected = 0;
+		for (Capability candidate : candidates)
+			if (new SharingPolicyValidator(root, leaf).isValid(candidate))
+				expected++;
+
+		walks.set(0);
+		SharingPolicyCache cache = new SharingPolicyCache();
+		int actual = 0;
+		for (Capability candidate : candidates)
+			if (cache.isValid(root, leaf, candidate))
+				actual++;
+
+		assertEquals(CANDIDATES / 2, expected);
+		assertEquals(expected, actual);
+		// The digraph is walked once per distinct capability.
+		assertEquals(PACKAGES, walks.get());
+	}
+
+	@Test
+	@Ignore
+	public void testValidationTime() {
+		List<Capability> candidates = new ArrayList<Capability>(CANDIDATES);
+		for (int i = 0; i < CANDIDATES; i++)
+			candidates.add(createCapability(i % PACKAGES));
+		Region root = regions[0];
+		Region leaf = regions[DEPTH - 1];
+
+		for (int trial = 0; trial < TRIALS; trial++) {
+			long start = System.nanoTime();
+			for (Capability candidate : candidates)
+				new SharingPolicyValidator(root, leaf).isValid(candidate);
+			long uncached = (System.nanoTime() - start) / 1000000;
+
+			start = System.nanoTime();
+			SharingPolicyCache cache = new SharingPolicyCache();
+			for (Capability candidate : candidates)
+				cache.isValid(root, leaf, candidate);
+			long cached = (System.nanoTime() - start) / 1000000;
+
+			System.err.println("Trial " + trial + ": validated " + CANDIDATES + " candidates across " + DEPTH
+					+ " regions in " + uncached + " ms, " + cached + " ms with the cache");
+		}
+	}
+
+	@Test
+	public void testDigraphChanged() {
+		SharingPolicyCache cache = new SharingPolicyCache();
+		Region root = regions[0];
+		Region leaf = regions[DEPTH - 1];
+		assertTrue(cache.isValid(root, leaf, createCapability(0)));
+		assertTrue(cache.isValid(root, leaf, createCapability(0)));
+		assertEquals(1, walks.get());
+		// A region created, connected or removed invalidates the decisions.
+		RegionUpdater.digraphChanged();
+		assertTrue(cache.isValid(root, leaf, createCapability(0)));
+		assertEquals(2, walks.get());
+	}
+
+	private Capability createCapability(int i) {
+		return new TestCapability(NAMESPACE, Collections.<String, Object>singletonMap(NAMESPACE, "p" + i));
+	}
+
+	private static RegionFilter createFilter() {
+		RegionFilter filter = EasyMock.createNiceMock(RegionFilter.class);
+		EasyMock.expect(filter.isAllowed(EasyMock.anyObject(String.class), EasyMock.<Map<String, ?>>anyObject()))
+				.andAnswer(new IAnswer<Boolean>() {
+					@Override
+					public Boolean answer() throws Throwable {
+						Object[] args = EasyMock.getCurrentArguments();
+						String pkg = (String)((Map<?, ?>)args[1]).get(NAMESPACE);
+						return NAMESPACE.equals(args[0])
+								&& pkg != null
+								&& Integer.parseInt(pkg.substring(1)) % 2 == 0;
+					}
+				}).anyTimes();
+		EasyMock.replay(filter);
+		return filter;
+	}
+
+	private Region createRegion(final int depth) {
+		Region region = EasyMock.createNiceMock(Region.class);
+		region.visitSubgraph(EasyMock.anyObject(RegionDigraphVisitor.class));
+		EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+			@Override
+			public Object answer() throws Throwable {
+				walks.incrementAndGet();
+				visit(depth, (RegionDigraphVisitor)EasyMock.getCurrentArguments()[0]);
+				return null;
+			}
+		}).anyTimes();
+		EasyMock.replay(region);
+		return region;
+	}
+
+	private void visit(int depth, RegionDigraphVisitor visitor) {
+		if (!visitor.visit(regions[depth]) || depth == 0)
+			return;
+		// Each region is connected to its parent.
+		if (visitor.preEdgeTraverse(filters[depth])) {
+			visit(depth - 1, visitor);
+			visitor.postEdgeTraverse(filters[depth]);
+		}
+	}
+}
@@ -13,23 +13,68 @@
  */
 package org.apache.aries.subsystem.executor;
 
-import java.util.concurrent.Executor;
+import java.util.Hashtable;
 
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class Activator implements BundleActivator {
 
+    private static final Logger logger = LoggerFactory.getLogger(Activator.class);
+
+    public static final String THREADS = "org.apache.aries.subsystem.executor.threads";
+    public static final String QUEUE_CAPACITY = "org.apache.aries.subsystem.executor.queue.capacity";
+    public static final String REJECTION_POLICY = "org.apache.aries.subsystem.executor.rejection.policy";
+    public static final String STATS_OBJECT_NAME = "org.apache.aries.subsystem:type=executor,name=stats";
+
+    private PooledExecutor executor;
     private ServiceRegistration executorSR;
-    
+    private ServiceRegistration statsSR;
+
     public void start(BundleContext context) throws Exception {
-        Executor executor = new SimpleExecutor();
-        executorSR = context.registerService(java.util.concurrent.Executor.class.getName(), executor, null);
+        int threads = getInt(context, THREADS, Math.max(2, Runtime.getRuntime().availableProcessors()));
+        int queueCapacity = getInt(context, QUEUE_CAPACITY, 0);
+        String rejectionPolicy = context.getProperty(REJECTION_POLICY);
+        if (rejectionPolicy == null)
+            rejectionPolicy = PooledExecutor.POLICY_CALLER_RUNS;
+        else if (!PooledExecutor.isRejectionPolicy(rejectionPolicy)) {
+            logger.warn("Unknown rejection policy {} for {}, using {}",
+                    new Object[] { rejectionPolicy, REJECTION_POLICY, PooledExecutor.POLICY_CALLER_RUNS });
+            rejectionPolicy = PooledExecutor.POLICY_CALLER_RUNS;
+        }
+        executor = new PooledExecutor(threads, queueCapacity, rejectionPolicy);
+
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put(THREADS, threads);
+        props.put(QUEUE_CAPACITY, queueCapacity);
+        props.put(REJECTION_POLICY, rejectionPolicy);
+        executorSR = context.registerService(java.util.concurrent.Executor.class.getName(), executor, props);
+
+        // Picked up by the JMX whiteboard, if present.
+        Hashtable<String, Object> statsProps = new Hashtable<String, Object>();
+        statsProps.put("jmx.objectname", STATS_OBJECT_NAME);
+        statsSR = context.registerService(PooledExecutorMBean.class.getName(), executor, statsProps);
     }
 
     public void stop(BundleContext context) throws Exception {
+        statsSR.unregister();
         executorSR.unregister();
+        executor.shutdown();
+    }
+
+    private static int getInt(BundleContext context, String name, int defaultValue) {
+        String value = context.getProperty(name);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                // ignore, the default will be used
+            }
+        }
+        return defaultValue;
     }
 
 }
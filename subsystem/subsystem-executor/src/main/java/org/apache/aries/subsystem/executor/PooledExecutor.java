@@ -0,0 +1,187 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.subsystem.executor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An <code>Executor</code> that runs the submitted jobs on a bounded pool of
+ * named threads. This executor is intended to be registered as a service for
+ * use by the SubsystemAdmin. It can be replaced by a different executor with
+ * different policies (e.g. maybe using a host runtime's thread pool).
+ * <p>
+ * Jobs that cannot be run immediately wait in a queue, which is unbounded
+ * unless a capacity is given. When the queue is full, the job is handled
+ * according to the rejection policy.
+ */
+public class PooledExecutor implements Executor, PooledExecutorMBean {
+
+    public static final String POLICY_ABORT = "abort";
+    public static final String POLICY_CALLER_RUNS = "callerRuns";
+    public static final String POLICY_DISCARD = "discard";
+    public static final String POLICY_DISCARD_OLDEST = "discardOldest";
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final ThreadPoolExecutor executor;
+    private final String rejectionPolicy;
+    private final AtomicLong rejectedTaskCount = new AtomicLong();
+
+    /**
+     * @param threads
+     *            The maximum number of threads running jobs.
+     * @param queueCapacity
+     *            The maximum number of jobs waiting for a thread, or zero or
+     *            less for no maximum.
+     * @param rejectionPolicy
+     *            One of {@link #POLICY_ABORT}, {@link #POLICY_CALLER_RUNS},
+     *            {@link #POLICY_DISCARD} or {@link #POLICY_DISCARD_OLDEST}.
+     */
+    public PooledExecutor(int threads, int queueCapacity, String rejectionPolicy) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads: " + threads);
+        BlockingQueue<Runnable> queue = queueCapacity > 0
+                ? new ArrayBlockingQueue<Runnable>(queueCapacity)
+                : new LinkedBlockingQueue<Runnable>();
+        this.rejectionPolicy = rejectionPolicy;
+        executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                queue,
+                new NamedThreadFactory("Aries Subsystem Executor-"),
+                new CountingRejectedExecutionHandler(createRejectedExecutionHandler(rejectionPolicy)));
+        // Do not keep idle threads around between bulk operations.
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs any submitted job on a thread of the pool.
+     *
+     * @param command
+     *            The <code>Runnable</code> to be executed.
+     */
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /**
+     * Stops accepting jobs. The jobs already submitted still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    public int getLargestPoolSize() {
+        return executor.getLargestPoolSize();
+    }
+
+    public int getMaximumPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueRemainingCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    public long getTaskCount() {
+        return executor.getTaskCount();
+    }
+
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public long getRejectedTaskCount() {
+        return rejectedTaskCount.get();
+    }
+
+    public String getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    /**
+     * @return whether the policy is one of {@link #POLICY_ABORT},
+     *         {@link #POLICY_CALLER_RUNS}, {@link #POLICY_DISCARD} or
+     *         {@link #POLICY_DISCARD_OLDEST}.
+     */
+    public static boolean isRejectionPolicy(String policy) {
+        return POLICY_ABORT.equals(policy)
+                || POLICY_CALLER_RUNS.equals(policy)
+                || POLICY_DISCARD.equals(policy)
+                || POLICY_DISCARD_OLDEST.equals(policy);
+    }
+
+    private static RejectedExecutionHandler createRejectedExecutionHandler(String policy) {
+        if (POLICY_ABORT.equals(policy))
+            return new ThreadPoolExecutor.AbortPolicy();
+        if (POLICY_CALLER_RUNS.equals(policy))
+            return new ThreadPoolExecutor.CallerRunsPolicy();
+        if (POLICY_DISCARD.equals(policy))
+            return new ThreadPoolExecutor.DiscardPolicy();
+        if (POLICY_DISCARD_OLDEST.equals(policy))
+            return new ThreadPoolExecutor.DiscardOldestPolicy();
+        throw new IllegalArgumentException("Unknown rejection policy: " + policy);
+    }
+
+    private class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+
+        private final RejectedExecutionHandler delegate;
+
+        CountingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        public void rejectedExecution(Runnable command, ThreadPoolExecutor executor) {
+            rejectedTaskCount.incrementAndGet();
+            delegate.rejectedExecution(command, executor);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, prefix + count.incrementAndGet());
+        }
+    }
+}
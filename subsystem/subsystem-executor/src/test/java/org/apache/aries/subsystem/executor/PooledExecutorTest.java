@@ -0,0 +1,208 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.subsystem.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PooledExecutorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> ran = new CopyOnWriteArrayList<String>();
+    private PooledExecutor executor;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        executor = new PooledExecutor(2, 0, PooledExecutor.POLICY_ABORT);
+        CountDownLatch started = new CountDownLatch(2);
+        for (int i = 0; i < 5; i++)
+            executor.execute(new Job("job" + i, started));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(2, executor.getMaximumPoolSize());
+        assertEquals(2, executor.getActiveCount());
+        assertEquals(3, executor.getQueueSize());
+        // The queue is unbounded without a capacity.
+        assertEquals(Integer.MAX_VALUE - 3, executor.getQueueRemainingCapacity());
+
+        release.countDown();
+        awaitCompleted(5);
+        assertEquals(2, executor.getLargestPoolSize());
+        assertEquals(5, ran.size());
+        assertEquals(0, executor.getRejectedTaskCount());
+    }
+
+    @Test
+    public void testThreadNames() throws Exception {
+        executor = new PooledExecutor(1, 0, PooledExecutor.POLICY_ABORT);
+        final String[] name = new String[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                name[0] = Thread.currentThread().getName();
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("Aries Subsystem Executor-1", name[0]);
+    }
+
+    @Test
+    public void testAbortPolicy() throws Exception {
+        executor = fill(PooledExecutor.POLICY_ABORT);
+        try {
+            executor.execute(new Job("rejected", null));
+            fail("The job was not rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(1, executor.getRejectedTaskCount());
+        release.countDown();
+        awaitCompleted(2);
+        assertFalse(ran.contains("rejected"));
+    }
+
+    @Test
+    public void testCallerRunsPolicy() throws Exception {
+        executor = fill(PooledExecutor.POLICY_CALLER_RUNS);
+        final Thread[] thread = new Thread[1];
+        executor.execute(new Runnable() {
+            public void run() {
+                thread[0] = Thread.currentThread();
+            }
+        });
+        // The job ran before execute returned, on the calling thread.
+        assertSame(Thread.currentThread(), thread[0]);
+        assertEquals(1, executor.getRejectedTaskCount());
+    }
+
+    @Test
+    public void testDiscardPolicy() throws Exception {
+        executor = fill(PooledExecutor.POLICY_DISCARD);
+        executor.execute(new Job("discarded", null));
+        assertEquals(1, executor.getRejectedTaskCount());
+        release.countDown();
+        awaitCompleted(2);
+        assertEquals(2, ran.size());
+        assertFalse(ran.contains("discarded"));
+    }
+
+    @Test
+    public void testDiscardOldestPolicy() throws Exception {
+        executor = fill(PooledExecutor.POLICY_DISCARD_OLDEST);
+        executor.execute(new Job("newest", null));
+        assertEquals(1, executor.getRejectedTaskCount());
+        release.countDown();
+        awaitCompleted(2);
+        // The queued job gave way to the newest one.
+        assertEquals(2, ran.size());
+        assertFalse(ran.contains("queued"));
+        assertTrue(ran.contains("newest"));
+    }
+
+    @Test
+    public void testUnknownPolicy() {
+        assertTrue(PooledExecutor.isRejectionPolicy(PooledExecutor.POLICY_CALLER_RUNS));
+        assertFalse(PooledExecutor.isRejectionPolicy("callerruns"));
+        assertFalse(PooledExecutor.isRejectionPolicy(null));
+        try {
+            new PooledExecutor(1, 0, "callerruns");
+            fail("The rejection policy was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        executor = new PooledExecutor(1, 0, PooledExecutor.POLICY_CALLER_RUNS);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new Job("running", started));
+        executor.execute(new Job("queued", null));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        // Jobs submitted after the shutdown are rejected, even when the
+        // caller would otherwise run them.
+        executor.execute(new Job("late", null));
+        assertEquals(1, executor.getRejectedTaskCount());
+        // The jobs submitted before the shutdown still run.
+        release.countDown();
+        awaitCompleted(2);
+        assertEquals(2, ran.size());
+        assertFalse(ran.contains("late"));
+    }
+
+    /**
+     * Creates an executor with one thread and a queue of one, both taken.
+     */
+    private PooledExecutor fill(String rejectionPolicy) throws InterruptedException {
+        PooledExecutor result = new PooledExecutor(1, 1, rejectionPolicy);
+        CountDownLatch started = new CountDownLatch(1);
+        result.execute(new Job("running", started));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        result.execute(new Job("queued", null));
+        assertEquals(0, result.getQueueRemainingCapacity());
+        return result;
+    }
+
+    private void awaitCompleted(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getCompletedTaskCount() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(count, executor.getCompletedTaskCount());
+    }
+
+    /**
+     * Records its name once released.
+     */
+    private class Job implements Runnable {
+
+        private final String name;
+        private final CountDownLatch started;
+
+        Job(String name, CountDownLatch started) {
+            this.name = name;
+            this.started = started;
+        }
+
+        public void run() {
+            if (started != null)
+                started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ran.add(name);
+        }
+    }
+}
@@ -35,8 +35,9 @@ public class ComponentTxData {
     }
 
     Optional<TransactionalAnnotationAttributes> getEffectiveType(Method m) {
-        if (txMap.containsKey(m)) {
-            return getTxAttr(m);
+        Optional<TransactionalAnnotationAttributes> known = txMap.get(m);
+        if (known != null) {
+            return known;
         }
         try {
             Method effectiveMethod = beanClass.getDeclaredMethod(m.getName(), m.getParameterTypes());
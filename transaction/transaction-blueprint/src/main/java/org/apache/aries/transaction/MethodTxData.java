@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.transaction;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The transaction data of an intercepted method, resolved once so that the interceptor
+ * does not look up the annotation attributes, the transaction attribute or build the
+ * coordination name on each call.
+ */
+final class MethodTxData {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodTxData.class);
+    private static final Class<?>[] NO_CLASSES = new Class<?>[0];
+
+    /**
+     * The data of methods which are not transactional.
+     */
+    static final MethodTxData NO_TRANSACTION = new MethodTxData(null, null, NO_CLASSES, NO_CLASSES);
+
+    private final TransactionAttribute attribute;
+    private final String coordinationName;
+    private final Class<?>[] dontRollbackOn;
+    private final Class<?>[] rollbackOn;
+
+    private MethodTxData(TransactionAttribute attribute, String coordinationName,
+                         Class<?>[] dontRollbackOn, Class<?>[] rollbackOn) {
+        this.attribute = attribute;
+        this.coordinationName = coordinationName;
+        this.dontRollbackOn = dontRollbackOn;
+        this.rollbackOn = rollbackOn;
+    }
+
+    static MethodTxData create(Method m, Optional<TransactionalAnnotationAttributes> type) {
+        if (!type.isPresent()) {
+            return NO_TRANSACTION;
+        }
+        TransactionalAnnotationAttributes attributes = type.get();
+        String coordinationName = ("txInterceptor." + m.getDeclaringClass().getName() + "." + m.getName()).intern();
+        return new MethodTxData(TransactionAttribute.fromValue(attributes.getTxType()), coordinationName,
+                toArray(attributes.getDontRollbackOn()), toArray(attributes.getRollbackOn()));
+    }
+
+    /**
+     * @return the transaction attribute, or null if the method is not transactional
+     */
+    TransactionAttribute getAttribute() {
+        return attribute;
+    }
+
+    String getCoordinationName() {
+        return coordinationName;
+    }
+
+    boolean isRollbackException(Throwable ex) {
+        //check dontRollbackOn first, since according to spec it has precedence
+        for (Class<?> dontRollbackClass : dontRollbackOn) {
+            if (dontRollbackClass.isInstance(ex)) {
+                LOGGER.debug("Current exception {} found in element dontRollbackOn.", ex.getClass());
+                return false;
+            }
+        }
+        //don't need to check further elements if ex is an unchecked exception
+        if (isUncheckedException(ex)) {
+            return true;
+        }
+        for (Class<?> rollbackExceptionClass : rollbackOn) {
+            if (rollbackExceptionClass.isInstance(ex)) {
+                LOGGER.debug("Current exception {} found in element rollbackOn.", ex.getClass());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isUncheckedException(Throwable ex) {
+        return ex instanceof RuntimeException || ex instanceof Error;
+    }
+
+    private static Class<?>[] toArray(List<Class> classes) {
+        return classes == null || classes.isEmpty() ? NO_CLASSES : classes.toArray(new Class<?>[classes.size()]);
+    }
+}
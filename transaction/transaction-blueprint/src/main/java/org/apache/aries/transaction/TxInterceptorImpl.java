@@ -19,7 +19,12 @@
 package org.apache.aries.transaction;
 
 import java.lang.reflect.Method;
-import java.util.Optional;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.transaction.RollbackException;
 import javax.transaction.Transaction;
@@ -34,15 +39,56 @@ import org.slf4j.LoggerFactory;
 
 public class TxInterceptorImpl implements Interceptor {
     private static final Logger LOGGER = LoggerFactory.getLogger(TxInterceptorImpl.class);
+    private static final int NOT_INTERCEPTED = Modifier.PRIVATE | Modifier.STATIC;
 
     private TransactionManager tm;
     private Coordinator coordinator;
     private ComponentTxData txData;
+    // methods of the bean class and its interfaces, resolved when the interceptor is created
+    private final Map<Method, MethodTxData> dispatchTable;
+    // other methods, resolved on their first call
+    private final ConcurrentMap<Method, MethodTxData> otherMethods = new ConcurrentHashMap<Method, MethodTxData>();
 
     public TxInterceptorImpl(TransactionManager tm, Coordinator coordinator, ComponentTxData txData) {
         this.tm = tm;
         this.coordinator = coordinator;
         this.txData = txData;
+        this.dispatchTable = createDispatchTable(txData);
+    }
+
+    private static Map<Method, MethodTxData> createDispatchTable(ComponentTxData txData) {
+        Map<Method, MethodTxData> table = new HashMap<Method, MethodTxData>();
+        Class<?> current = txData.getBeanClass();
+        addMethods(table, txData, current.getMethods());
+        while (current != null && current != Object.class) {
+            addMethods(table, txData, current.getDeclaredMethods());
+            for (Class<?> iface : current.getInterfaces()) {
+                addMethods(table, txData, iface.getMethods());
+            }
+            current = current.getSuperclass();
+        }
+        return Collections.unmodifiableMap(table);
+    }
+
+    private static void addMethods(Map<Method, MethodTxData> table, ComponentTxData txData, Method[] methods) {
+        for (Method m : methods) {
+            if (m.getDeclaringClass() != Object.class && (m.getModifiers() & NOT_INTERCEPTED) == 0
+                    && !table.containsKey(m)) {
+                table.put(m, MethodTxData.create(m, txData.getEffectiveType(m)));
+            }
+        }
+    }
+
+    private MethodTxData getMethodTxData(Method m) {
+        MethodTxData data = dispatchTable.get(m);
+        if (data == null) {
+            data = otherMethods.get(m);
+            if (data == null) {
+                data = MethodTxData.create(m, txData.getEffectiveType(m));
+                otherMethods.putIfAbsent(m, data);
+            }
+        }
+        return data;
     }
 
     @Override
@@ -52,18 +98,19 @@ public class TxInterceptorImpl implements Interceptor {
 
     @Override
     public Object preCall(ComponentMetadata cm, Method m, Object... parameters) throws Throwable {
-        final Optional<TransactionalAnnotationAttributes> type = txData.getEffectiveType(m);
-        if (!type.isPresent()) {
+        final MethodTxData data = getMethodTxData(m);
+        final TransactionAttribute txAttribute = data.getAttribute();
+        if (txAttribute == null) {
             // No transaction
             return null;
         }
-        TransactionAttribute txAttribute = TransactionAttribute.fromValue(type.get().getTxType());
 
-        LOGGER.debug("PreCall for bean {}, method {} with tx strategy {}.", getCmId(cm), m.getName(), txAttribute);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("PreCall for bean {}, method {} with tx strategy {}.", getCmId(cm), m.getName(), txAttribute);
+        }
         TransactionToken token = txAttribute.begin(tm);
         if (token.requiresNewCoordination()) {
-            String coordName = "txInterceptor." + m.getDeclaringClass().getName() + "." + m.getName();
-            Coordination coord = coordinator.begin(coordName , 0);
+            Coordination coord = coordinator.begin(data.getCoordinationName(), 0);
             // @javax.transaction.Transactional is only part of 1.2 and even if it's about time that all previous
             // JTA versions should be forgotten, we can't rely on it...
             coord.getVariables().put(Transaction.class, txAttribute.name());
@@ -132,37 +179,10 @@ public class TxInterceptorImpl implements Interceptor {
     }
 
     private boolean isRollBackException(Throwable ex, Method m) {
-        if (m != null) {
-            Optional<TransactionalAnnotationAttributes> effectiveType = txData.getEffectiveType(m);
-            if (!effectiveType.isPresent()) {
-                return isUncheckedException(ex);
-            } else {
-                //check dontRollbackOn first, since according to spec it has precedence
-                for (Class dontRollbackClass : effectiveType.get().getDontRollbackOn()) {
-                    if (dontRollbackClass.isInstance(ex)) {
-                        LOGGER.debug("Current exception {} found in element dontRollbackOn.", ex.getClass());
-                        return false;
-                    }
-                }
-                //don't need to check further elements if ex is an unchecked exception
-                if (isUncheckedException(ex)) {
-                    return true;
-                }
-                for (Class rollbackExceptionClass : effectiveType.get().getRollbackOn()) {
-                    if (rollbackExceptionClass.isInstance(ex)) {
-                        LOGGER.debug("Current exception {} found in element rollbackOn.", ex.getClass());
-                        return true;
-                    }
-                }
-            }
-        } else {
-	        return isUncheckedException(ex);
+        if (m == null) {
+            return MethodTxData.isUncheckedException(ex);
         }
-        return false;
-    }
-
-    private static boolean isUncheckedException(Throwable ex) {
-        return ex instanceof RuntimeException || ex instanceof Error;
+        return getMethodTxData(m).isRollbackException(ex);
     }
 
 }
@@ -22,13 +22,24 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.SQLDataException;
+import java.util.HashMap;
+import java.util.Map;
 
+import javax.transaction.Status;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 
 import org.apache.aries.transaction.pojo.AnnotatedPojo;
+import org.apache.aries.transaction.pojo.OnRollbackPojo;
 import org.easymock.EasyMock;
 import org.easymock.IMocksControl;
+import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.osgi.service.coordinator.Coordination;
 import org.osgi.service.coordinator.CoordinationException;
@@ -42,6 +53,83 @@ public class InterceptorTest {
         runPostCall(true);
     }
 
+    @Test
+    public void testRollbackRulesPerMethod() throws Throwable {
+        Method batchUpdate = OnRollbackPojo.class.getMethod("throwBatchUpdateException", String.class);
+        Method sqlData = OnRollbackPojo.class.getMethod("throwSQLDataException", String.class);
+        postCallWithException(batchUpdate, new BatchUpdateException(), true);
+        postCallWithException(batchUpdate, new SQLDataException(), false);
+        postCallWithException(sqlData, new SQLDataException(), true);
+        postCallWithException(sqlData, new BatchUpdateException(), false);
+        postCallWithException(sqlData, new IllegalStateException(), true);
+    }
+
+    @Test
+    public void testPreCallBeginsCoordination() throws Throwable {
+        IMocksControl c = EasyMock.createControl();
+        TransactionManager tm = c.createMock(TransactionManager.class);
+        Coordinator coordinator = c.createMock(Coordinator.class);
+        Transaction tran = c.createMock(Transaction.class);
+        Coordination coordination = c.createMock(Coordination.class);
+        Map<Class<?>, Object> variables = new HashMap<Class<?>, Object>();
+        expect(tm.getStatus()).andReturn(Status.STATUS_NO_TRANSACTION);
+        tm.begin();
+        expect(tm.getTransaction()).andReturn(tran);
+        expect(coordinator.begin("txInterceptor." + AnnotatedPojo.class.getName() + ".increment", 0)).andReturn(coordination);
+        expect(coordination.getVariables()).andReturn(variables);
+        c.replay();
+
+        TxInterceptorImpl sut = new TxInterceptorImpl(tm, coordinator, new ComponentTxData(AnnotatedPojo.class));
+        TransactionToken token = (TransactionToken) sut.preCall(null, AnnotatedPojo.class.getMethod("increment", String.class));
+        Assert.assertSame(coordination, token.getCoordination());
+        Assert.assertSame(tran, token.getActiveTransaction());
+        Assert.assertEquals(TransactionAttribute.REQUIRED.name(), variables.get(Transaction.class));
+        Assert.assertNull(sut.preCall(null, Object.class.getMethod("toString")));
+        c.verify();
+    }
+
+    /**
+     * Measures the overhead of the interceptor for a REQUIRED method called in an active
+     * transaction, which neither begins a transaction nor a coordination.
+     */
+    @Test
+    @Ignore
+    public void testNoOpCallOverhead() throws Throwable {
+        TransactionManager tm = (TransactionManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {TransactionManager.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return "getStatus".equals(method.getName()) ? Status.STATUS_ACTIVE : null;
+                }
+            });
+        TxInterceptorImpl sut = new TxInterceptorImpl(tm, null, new ComponentTxData(AnnotatedPojo.class));
+        Method m = AnnotatedPojo.class.getMethod("increment", String.class);
+        int calls = 10000000;
+        for (int trial = 0; trial < 5; trial++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                Object token = sut.preCall(null, m, "key");
+                sut.postCallWithReturn(null, m, null, token);
+            }
+            long t1 = System.nanoTime();
+            System.err.println("Trial " + trial + ": " + (t1 - t0) / calls + " ns per call");
+        }
+    }
+
+    private void postCallWithException(Method m, Throwable th, boolean expectRollback) throws Throwable {
+        IMocksControl c = EasyMock.createControl();
+        TransactionManager tm = c.createMock(TransactionManager.class);
+        Transaction tran = c.createMock(Transaction.class);
+        if (expectRollback) {
+            tran.setRollbackOnly();
+            EasyMock.expectLastCall();
+        }
+        c.replay();
+        TxInterceptorImpl sut = new TxInterceptorImpl(tm, null, new ComponentTxData(OnRollbackPojo.class));
+        TransactionToken tt = new TransactionToken(tran, null, TransactionAttribute.SUPPORTS);
+        sut.postCallWithException(null, m, th, tt);
+        c.verify();
+    }
+
     private void runPostCall(boolean failCoordination) throws Throwable {
         postCallWithTransaction(new IllegalStateException(), true, failCoordination);
         postCallWithTransaction(new Error(), true, failCoordination);
@@ -62,6 +62,8 @@ public class RecoverableDataSource implements DataSource, RecoverableDataSourceM
     private boolean validateOnMatch = true;
     private boolean backgroundValidation = false;
     private int backgroundValidationMilliseconds = 600000;
+    private int backgroundValidationThreads = 0;
+    private int backgroundValidationTimeoutMilliseconds = 5000;
 
     private ConnectionManagerFactory cm;
     private DataSource delegate;
@@ -180,6 +182,27 @@ public class RecoverableDataSource implements DataSource, RecoverableDataSourceM
         this.backgroundValidationMilliseconds = backgroundValidationMilliseconds;
     }
 
+    /**
+     * Number of threads validating idle connections concurrently (defaults to 0).
+     * When greater than 0, background validation does not keep the pool locked while
+     * validating the idle connections, each connection is taken out of the pool while
+     * it is being validated.
+     * @param backgroundValidationThreads
+     */
+    public void setBackgroundValidationThreads(int backgroundValidationThreads) {
+        this.backgroundValidationThreads = backgroundValidationThreads;
+    }
+
+    /**
+     * Maximum time to wait for the validation of a single connection when validating
+     * concurrently, after which the validation is interrupted and the connection is
+     * destroyed (defaults to 5000)
+     * @param backgroundValidationTimeoutMilliseconds
+     */
+    public void setBackgroundValidationTimeoutMilliseconds(int backgroundValidationTimeoutMilliseconds) {
+        this.backgroundValidationTimeoutMilliseconds = backgroundValidationTimeoutMilliseconds;
+    }
+
     /**
      * Transaction support.
      * Can be none, local or xa (defaults to xa).
@@ -231,6 +254,8 @@ public class RecoverableDataSource implements DataSource, RecoverableDataSourceM
         cm.setValidateOnMatch(validateOnMatch);
         cm.setBackgroundValidation(backgroundValidation);
         cm.setBackgroundValidationMilliseconds(backgroundValidationMilliseconds);
+        cm.setBackgroundValidationThreads(backgroundValidationThreads);
+        cm.setBackgroundValidationTimeoutMilliseconds(backgroundValidationTimeoutMilliseconds);
         cm.setTransaction(transaction);
         cm.setName(name);
         cm.init();
@@ -311,6 +336,14 @@ public class RecoverableDataSource implements DataSource, RecoverableDataSourceM
         return backgroundValidationMilliseconds;
     }
 
+    public int getBackgroundValidationThreads() {
+        return backgroundValidationThreads;
+    }
+
+    public int getBackgroundValidationTimeoutMilliseconds() {
+        return backgroundValidationTimeoutMilliseconds;
+    }
+
     public String getTransaction() {
         return transaction;
     }
@@ -48,6 +48,10 @@ public interface RecoverableDataSourceMBean {
 
     int getBackgroundValidationMilliseconds();
 
+    int getBackgroundValidationThreads();
+
+    int getBackgroundValidationTimeoutMilliseconds();
+
     String getTransaction();
 
     int getConnectionCount();
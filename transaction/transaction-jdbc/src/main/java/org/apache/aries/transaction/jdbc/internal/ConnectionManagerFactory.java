@@ -59,6 +59,8 @@ public class ConnectionManagerFactory {
     private boolean validateOnMatch = true;
     private boolean backgroundValidation = false;
     private int backgroundValidationMilliseconds = 600000;
+    private int backgroundValidationThreads = 0;
+    private int backgroundValidationTimeoutMilliseconds = 5000;
 
     private SubjectSource subjectSource;
 
@@ -162,7 +164,9 @@ public class ConnectionManagerFactory {
                         managedConnectionFactory,
                         name != null ? name : getClass().getName(),
                         getClass().getClassLoader(),
-                        backgroundValidationMilliseconds);
+                        backgroundValidationMilliseconds,
+                        backgroundValidationThreads,
+                        backgroundValidationTimeoutMilliseconds);
             } else {
                 // Instantiate the Geronimo Connection Manager
                 connectionManager = new GenericConnectionManager(
@@ -318,6 +322,22 @@ public class ConnectionManagerFactory {
         this.backgroundValidationMilliseconds = backgroundValidationMilliseconds;
     }
 
+    public int getBackgroundValidationThreads() {
+        return backgroundValidationThreads;
+    }
+
+    public void setBackgroundValidationThreads(int backgroundValidationThreads) {
+        this.backgroundValidationThreads = backgroundValidationThreads;
+    }
+
+    public int getBackgroundValidationTimeoutMilliseconds() {
+        return backgroundValidationTimeoutMilliseconds;
+    }
+
+    public void setBackgroundValidationTimeoutMilliseconds(int backgroundValidationTimeoutMilliseconds) {
+        this.backgroundValidationTimeoutMilliseconds = backgroundValidationTimeoutMilliseconds;
+    }
+
     public SubjectSource getSubjectSource() {
         return subjectSource;
     }
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.transaction.jdbc.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.resource.spi.ManagedConnection;
+import javax.resource.spi.ValidatingManagedConnectionFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validates the idle connections of a pool concurrently.
+ *
+ * Each connection is taken out of the pool before being validated, so that it can not be handed
+ * out while the validation is in progress, and is then either put back into the pool or destroyed.
+ * Connections which have been handed out since the sweep started are skipped.  Connections are
+ * processed in batches no larger than the number of idle validation threads, so that only a few
+ * connections are out of the pool at any time and every validation starts as soon as it is
+ * submitted.  A validation which does not complete within the timeout is interrupted and the
+ * connection is destroyed.
+ *
+ * A validation which throws, rather than reporting the connection as invalid, puts the connection
+ * back into the pool: the factory could not tell whether the connection is valid, and destroying
+ * every connection whenever the validation itself fails would empty the pool.  This is also what
+ * the serial validation does when <code>getInvalidConnections</code> throws.  A connection which is
+ * really broken is still destroyed when it fails while in use.
+ *
+ * @param <T> the pool entry holding a connection
+ */
+abstract class IdleConnectionValidator<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdleConnectionValidator.class);
+
+    private final ValidatingManagedConnectionFactory mcf;
+    private final long timeout;
+    // validations which have not returned yet, including those which timed out
+    private final AtomicInteger running = new AtomicInteger();
+
+    IdleConnectionValidator(ValidatingManagedConnectionFactory mcf, long timeout) {
+        this.mcf = mcf;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return the connections currently idle in the pool, or <code>null</code> if the pool is not supported
+     */
+    protected abstract Collection<ManagedConnection> getIdleConnections();
+
+    /**
+     * Remove the given connection from the pool if it is still idle.
+     *
+     * @return the pool entry of the connection, or <code>null</code> if it has been handed out
+     */
+    protected abstract T checkout(ManagedConnection connection);
+
+    /**
+     * Put a valid connection back into the pool.
+     */
+    protected abstract void checkin(T entry);
+
+    /**
+     * Destroy an invalid connection which has been taken out of the pool.
+     */
+    protected abstract void destroy(T entry);
+
+    public void validate(ThreadPoolExecutor executor) {
+        Collection<ManagedConnection> idle = getIdleConnections();
+        if (idle == null || idle.isEmpty()) {
+            return;
+        }
+        Iterator<ManagedConnection> connections = new ArrayList<ManagedConnection>(idle).iterator();
+        while (connections.hasNext()) {
+            // threads still blocked by a validation which timed out can not take new work
+            int available = executor.getMaximumPoolSize() - running.get();
+            if (available <= 0) {
+                LOGGER.warn("All validation threads are busy, skipping the validation of the remaining idle connections");
+                return;
+            }
+            Map<T, ManagedConnection> batch = new LinkedHashMap<T, ManagedConnection>();
+            while (connections.hasNext() && batch.size() < available) {
+                ManagedConnection connection = connections.next();
+                T entry = checkout(connection);
+                if (entry != null) {
+                    batch.put(entry, connection);
+                }
+            }
+            if (!validate(executor, batch)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the sweep must stop
+     */
+    private boolean validate(ThreadPoolExecutor executor, Map<T, ManagedConnection> batch) {
+        Map<T, Future<Boolean>> validations = new LinkedHashMap<T, Future<Boolean>>();
+        for (Map.Entry<T, ManagedConnection> entry : batch.entrySet()) {
+            final ManagedConnection connection = entry.getValue();
+            try {
+                validations.put(entry.getKey(), executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        running.incrementAndGet();
+                        try {
+                            Set<?> invalids = mcf.getInvalidConnections(Collections.singleton(connection));
+                            return invalids == null || !invalids.contains(connection);
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                // the connection manager is being stopped
+                break;
+            }
+        }
+
+        boolean proceed = validations.size() == batch.size();
+        long deadline = System.currentTimeMillis() + timeout;
+        List<T> valids = new ArrayList<T>();
+        List<T> invalids = new ArrayList<T>();
+        for (Map.Entry<T, ManagedConnection> entry : batch.entrySet()) {
+            Future<Boolean> validation = validations.get(entry.getKey());
+            if (validation == null) {
+                // not validated, it goes back to the pool as it was
+                valids.add(entry.getKey());
+                continue;
+            }
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                if (validation.get(remaining, TimeUnit.MILLISECONDS)) {
+                    valids.add(entry.getKey());
+                } else {
+                    invalids.add(entry.getKey());
+                }
+            } catch (TimeoutException e) {
+                LOGGER.warn("Validation of connection {} timed out after {} ms", entry.getValue(), timeout);
+                validation.cancel(true);
+                invalids.add(entry.getKey());
+            } catch (ExecutionException e) {
+                // the validation failed, not necessarily the connection, see the class comment
+                LOGGER.error(e.getCause().getMessage(), e.getCause());
+                valids.add(entry.getKey());
+            } catch (InterruptedException e) {
+                // the connection manager is being stopped, the validation may still be using the connection
+                Thread.currentThread().interrupt();
+                validation.cancel(true);
+                invalids.add(entry.getKey());
+                proceed = false;
+            }
+        }
+        for (T entry : valids) {
+            checkin(entry);
+        }
+        for (T entry : invalids) {
+            destroy(entry);
+        }
+        return proceed;
+    }
+
+}
@@ -125,6 +125,8 @@ public class ManagedDataSourceFactory {
         ds.setValidateOnMatch(getBool("aries.xa.validateOnMatch", true));
         ds.setBackgroundValidation(getBool("aries.xa.backgroundValidation", false));
         ds.setBackgroundValidationMilliseconds(getInt("aries.xa.backgroundValidationMilliseconds", 600000));
+        ds.setBackgroundValidationThreads(getInt("aries.xa.backgroundValidationThreads", 0));
+        ds.setBackgroundValidationTimeoutMilliseconds(getInt("aries.xa.backgroundValidationTimeoutMilliseconds", 5000));
         ds.setTransaction(getString("aries.xa.transaction", isXaDataSource ? "xa" : "local"));
         ds.setName(getResourceName());
         ds.start();
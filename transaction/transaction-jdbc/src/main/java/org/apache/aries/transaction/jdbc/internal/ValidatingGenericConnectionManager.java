@@ -38,12 +38,21 @@ import javax.resource.spi.ManagedConnection;
 import javax.resource.spi.ManagedConnectionFactory;
 import javax.resource.spi.ValidatingManagedConnectionFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 
 @SuppressWarnings({
@@ -51,17 +60,35 @@ import java.util.concurrent.locks.ReadWriteLock;
 })
 public final class ValidatingGenericConnectionManager extends GenericConnectionManager {
 
-    private static final Timer TIMER = new Timer("ValidatingGenericConnectionManagerTimer", true);
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
 
-    private transient final TimerTask validatingTask;
+    private transient final Runnable validatingTask;
+    private transient ScheduledFuture<?> scheduledValidation;
+    private transient ThreadPoolExecutor validationExecutor;
     private final long validatingInterval;
+    private final int validatingThreads;
+    private final long validatingTimeout;
+    private final String validatingName;
 
     private final ReadWriteLock lock;
     private final Object pool;
 
     public ValidatingGenericConnectionManager(TransactionSupport transactionSupport, PoolingSupport pooling, SubjectSource subjectSource, ConnectionTracker connectionTracker, RecoverableTransactionManager transactionManager, ManagedConnectionFactory mcf, String name, ClassLoader classLoader, long interval) {
+        this(transactionSupport, pooling, subjectSource, connectionTracker, transactionManager, mcf, name, classLoader, interval, 0, 0);
+    }
+
+    /**
+     * @param threads when greater than zero, idle connections are validated concurrently by up to this number
+     *                of threads, each connection being taken out of the pool while it is validated
+     * @param timeout the maximum time in milliseconds to wait for the validation of a single connection when
+     *                validating concurrently, connections that do not answer in time are destroyed
+     */
+    public ValidatingGenericConnectionManager(TransactionSupport transactionSupport, PoolingSupport pooling, SubjectSource subjectSource, ConnectionTracker connectionTracker, RecoverableTransactionManager transactionManager, ManagedConnectionFactory mcf, String name, ClassLoader classLoader, long interval, int threads, long timeout) {
         super(transactionSupport, pooling, subjectSource, connectionTracker, transactionManager, mcf, name, classLoader);
         validatingInterval = interval;
+        validatingThreads = threads;
+        validatingTimeout = timeout;
+        validatingName = name;
 
         ConnectionInterceptor stack = interceptors.getStack();
 
@@ -95,10 +122,12 @@ public final class ValidatingGenericConnectionManager extends GenericConnectionM
         }
         this.pool = foundPool;
 
-        if (pool != null) {
-            validatingTask = new ValidatingTask(current, lock, pool);
-        } else {
+        if (pool == null) {
             validatingTask = null;
+        } else if (validatingThreads > 0) {
+            validatingTask = new ConcurrentValidatingTask(current, lock, pool);
+        } else {
+            validatingTask = new ValidatingTask(current, lock, pool);
         }
     }
 
@@ -106,19 +135,52 @@ public final class ValidatingGenericConnectionManager extends GenericConnectionM
     public void doStart() throws Exception {
         super.doStart();
         if (validatingTask != null) {
-            TIMER.schedule(validatingTask, validatingInterval, validatingInterval);
+            if (validatingThreads > 0) {
+                validationExecutor = new ThreadPoolExecutor(validatingThreads, validatingThreads,
+                        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new NamedThreadFactory("ValidatingGenericConnectionManager-" + validatingName));
+                validationExecutor.allowCoreThreadTimeOut(true);
+            }
+            scheduledValidation = SCHEDULER.scheduleWithFixedDelay(validatingTask, validatingInterval, validatingInterval, TimeUnit.MILLISECONDS);
         }
     }
 
     @Override
     public void doStop() throws Exception {
-        if (validatingTask != null) {
-            validatingTask.cancel();
+        if (scheduledValidation != null) {
+            scheduledValidation.cancel(false);
+            scheduledValidation = null;
+        }
+        if (validationExecutor != null) {
+            validationExecutor.shutdownNow();
+            validationExecutor = null;
         }
         super.doStop();
     }
 
-    private class ValidatingTask extends TimerTask {
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+                Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+                new NamedThreadFactory("ValidatingGenericConnectionManagerTimer"));
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return scheduler;
+    }
+
+    private static Map<ManagedConnection, ManagedConnectionInfo> getConnections(ConnectionInterceptor stack, Object pool) {
+        if (stack instanceof SinglePoolConnectionInterceptor) {
+            Map<ManagedConnection, ManagedConnectionInfo> connections = new HashMap<ManagedConnection, ManagedConnectionInfo>();
+            for (ManagedConnectionInfo info : (List<ManagedConnectionInfo>) pool) {
+                connections.put(info.getManagedConnection(), info);
+            }
+            return connections;
+        } else if (stack instanceof SinglePoolMatchAllConnectionInterceptor) {
+            return (Map<ManagedConnection, ManagedConnectionInfo>) pool;
+        } else {
+            return null;
+        }
+    }
+
+    private class ValidatingTask implements Runnable {
 
         private final ConnectionInterceptor stack;
         private final ReadWriteLock lock;
@@ -137,15 +199,8 @@ public final class ValidatingGenericConnectionManager extends GenericConnectionM
             }
 
             try {
-                final Map<ManagedConnection, ManagedConnectionInfo> connections;
-                if (stack instanceof SinglePoolConnectionInterceptor) {
-                    connections = new HashMap<ManagedConnection, ManagedConnectionInfo>();
-                    for (ManagedConnectionInfo info : (List<ManagedConnectionInfo>) pool) {
-                        connections.put(info.getManagedConnection(), info);
-                    }
-                } else if (stack instanceof SinglePoolMatchAllConnectionInterceptor) {
-                    connections = (Map<ManagedConnection, ManagedConnectionInfo>) pool;
-                } else {
+                final Map<ManagedConnection, ManagedConnectionInfo> connections = getConnections(stack, pool);
+                if (connections == null) {
                     log.warn("stack {} currently not supported", stack);
                     return;
                 }
@@ -168,4 +223,130 @@ public final class ValidatingGenericConnectionManager extends GenericConnectionM
             }
         }
     }
+
+    /**
+     * Validates the idle connections concurrently, without holding the pool lock while the connections
+     * are being validated.  The lock is only taken to move a connection out of the pool and back, or to
+     * destroy it.  A connection is taken out of the pool with a permit, as if it had been handed out, and
+     * goes back or is destroyed through {@link ConnectionInterceptor#returnConnection}, so that the pool
+     * accounts for it as for any other connection.
+     */
+    private class ConcurrentValidatingTask extends IdleConnectionValidator<ManagedConnectionInfo> implements Runnable {
+
+        private final ConnectionInterceptor stack;
+        private final ReadWriteLock lock;
+        private final Object pool;
+
+        public ConcurrentValidatingTask(ConnectionInterceptor stack, ReadWriteLock lock, Object pool) {
+            super(ValidatingManagedConnectionFactory.class.cast(getManagedConnectionFactory()), validatingTimeout);
+            this.stack = stack;
+            this.lock = lock;
+            this.pool = pool;
+        }
+
+        @Override
+        public void run() {
+            ThreadPoolExecutor executor = validationExecutor;
+            if (executor != null) {
+                validate(executor);
+            }
+        }
+
+        @Override
+        protected Collection<ManagedConnection> getIdleConnections() {
+            lock();
+            try {
+                synchronized (pool) {
+                    Map<ManagedConnection, ManagedConnectionInfo> connections = getConnections(stack, pool);
+                    if (connections == null) {
+                        log.warn("stack {} currently not supported", stack);
+                        return null;
+                    }
+                    return new ArrayList<ManagedConnection>(connections.keySet());
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        @Override
+        protected ManagedConnectionInfo checkout(ManagedConnection connection) {
+            lock();
+            try {
+                synchronized (pool) {
+                    ManagedConnectionInfo info = getConnections(stack, pool).get(connection);
+                    // the permit may have been taken by a borrower about to get this connection
+                    if (info == null || !getPermits().tryAcquire()) {
+                        return null;
+                    }
+                    if (pool instanceof Map) {
+                        ((Map<ManagedConnection, ManagedConnectionInfo>) pool).remove(connection);
+                    } else {
+                        ((List<ManagedConnectionInfo>) pool).remove(info);
+                    }
+                    return info;
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        @Override
+        protected void checkin(ManagedConnectionInfo info) {
+            lock();
+            try {
+                // the connection is still as idle as it was before being validated
+                long lastUsed = info.getLastUsed();
+                stack.returnConnection(new ConnectionInfo(info), ConnectionReturnAction.RETURN_HANDLE);
+                info.setLastUsed(lastUsed);
+            } finally {
+                unlock();
+            }
+        }
+
+        @Override
+        protected void destroy(ManagedConnectionInfo info) {
+            lock();
+            try {
+                stack.returnConnection(new ConnectionInfo(info), ConnectionReturnAction.DESTROY);
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * The permits are replaced when the pool is resized, which can not happen while the lock is held.
+         */
+        private Semaphore getPermits() {
+            return (Semaphore) Reflections.get(stack, "permits");
+        }
+
+        private void lock() {
+            if (lock != null) {
+                lock.writeLock().lock();
+            }
+        }
+
+        private void unlock() {
+            if (lock != null) {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        public NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.transaction.jdbc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.resource.ResourceException;
+import javax.resource.spi.ManagedConnection;
+import javax.resource.spi.ValidatingManagedConnectionFactory;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IdleConnectionValidatorTest {
+
+    private static final long TIMEOUT = 200;
+
+    private ThreadPoolExecutor executor;
+    private List<ManagedConnection> connections;
+    private Set<ManagedConnection> invalids;
+    private Set<ManagedConnection> validated;
+    private List<String> errors;
+
+    @Before
+    public void setUp() {
+        executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        connections = new ArrayList<ManagedConnection>();
+        for (int i = 0; i < 5; i++) {
+            ManagedConnection connection = EasyMock.createNiceMock(ManagedConnection.class);
+            EasyMock.replay(connection);
+            connections.add(connection);
+        }
+        invalids = Collections.synchronizedSet(new HashSet<ManagedConnection>());
+        validated = Collections.synchronizedSet(new HashSet<ManagedConnection>());
+        errors = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testInvalidConnectionsAreDestroyed() {
+        invalids.add(connections.get(1));
+        invalids.add(connections.get(3));
+        TestValidator validator = new TestValidator(new TestFactory());
+        validator.validate(executor);
+
+        assertEquals(new HashSet<ManagedConnection>(connections), validated);
+        assertEquals(invalids, new HashSet<ManagedConnection>(validator.destroyed));
+        assertEquals(Arrays.asList(connections.get(0), connections.get(2), connections.get(4)), sorted(validator.pool));
+        assertEquals(Collections.emptyList(), errors);
+    }
+
+    @Test
+    public void testConnectionsAreOutOfThePoolWhileValidated() {
+        final TestValidator[] validator = new TestValidator[1];
+        validator[0] = new TestValidator(new TestFactory() {
+            protected void validating(ManagedConnection connection) {
+                synchronized (validator[0].pool) {
+                    if (validator[0].pool.contains(connection)) {
+                        errors.add("connection in the pool while validated");
+                    }
+                }
+            }
+        });
+        validator[0].validate(executor);
+
+        assertEquals(connections.size(), validated.size());
+        assertEquals(connections.size(), validator[0].pool.size());
+        assertEquals(Collections.emptyList(), errors);
+    }
+
+    @Test
+    public void testHandedOutConnectionsAreSkipped() {
+        final ManagedConnection borrowed = connections.get(2);
+        TestValidator validator = new TestValidator(new TestFactory()) {
+            protected Collection<ManagedConnection> getIdleConnections() {
+                Collection<ManagedConnection> idle = super.getIdleConnections();
+                // handed out after the sweep started
+                synchronized (pool) {
+                    pool.remove(borrowed);
+                }
+                return idle;
+            }
+        };
+        validator.validate(executor);
+
+        assertEquals(connections.size() - 1, validated.size());
+        assertTrue(!validated.contains(borrowed));
+        assertTrue(!validator.pool.contains(borrowed));
+        assertEquals(connections.size() - 1, validator.pool.size());
+    }
+
+    @Test
+    public void testHungValidationIsInterruptedAndDestroyed() throws Exception {
+        final ManagedConnection hung = connections.get(0);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        TestValidator validator = new TestValidator(new TestFactory() {
+            protected void validating(ManagedConnection connection) {
+                if (connection == hung) {
+                    try {
+                        Thread.sleep(60000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                }
+            }
+        });
+        long start = System.currentTimeMillis();
+        validator.validate(executor);
+
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(hung), validator.destroyed);
+        assertEquals(connections.size() - 1, validator.pool.size());
+    }
+
+    @Test
+    public void testSweepIsSkippedWhenAllThreadsAreBusy() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        TestValidator validator = new TestValidator(new TestFactory() {
+            protected void validating(ManagedConnection connection) {
+                // hangs, even when interrupted, until released
+                boolean released = false;
+                while (!released) {
+                    try {
+                        released = release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // ignored
+                    }
+                }
+            }
+        });
+        try {
+            // the first batch times out and keeps both threads busy
+            validator.validate(executor);
+            assertEquals(connections.size() - 2, validator.pool.size());
+
+            validator.validate(executor);
+
+            assertEquals(0, validated.size());
+            assertEquals(connections.size() - 2, validator.pool.size());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private List<ManagedConnection> sorted(List<ManagedConnection> pool) {
+        List<ManagedConnection> result = new ArrayList<ManagedConnection>(connections);
+        result.retainAll(pool);
+        return result;
+    }
+
+    private class TestFactory implements ValidatingManagedConnectionFactory {
+
+        public Set getInvalidConnections(Set connectionSet) throws ResourceException {
+            assertEquals(1, connectionSet.size());
+            ManagedConnection connection = (ManagedConnection) connectionSet.iterator().next();
+            validating(connection);
+            validated.add(connection);
+            return invalids.contains(connection) ? Collections.singleton(connection) : Collections.emptySet();
+        }
+
+        protected void validating(ManagedConnection connection) {
+        }
+    }
+
+    private class TestValidator extends IdleConnectionValidator<ManagedConnection> {
+
+        final List<ManagedConnection> pool = new ArrayList<ManagedConnection>(connections);
+        final List<ManagedConnection> destroyed = Collections.synchronizedList(new ArrayList<ManagedConnection>());
+
+        TestValidator(ValidatingManagedConnectionFactory mcf) {
+            super(mcf, TIMEOUT);
+        }
+
+        protected Collection<ManagedConnection> getIdleConnections() {
+            synchronized (pool) {
+                return new ArrayList<ManagedConnection>(pool);
+            }
+        }
+
+        protected ManagedConnection checkout(ManagedConnection connection) {
+            synchronized (pool) {
+                return pool.remove(connection) ? connection : null;
+            }
+        }
+
+        protected void checkin(ManagedConnection connection) {
+            synchronized (pool) {
+                pool.add(connection);
+            }
+        }
+
+        protected void destroy(ManagedConnection connection) {
+            destroyed.add(connection);
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.transaction.jdbc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import javax.resource.ResourceException;
+import javax.resource.spi.ConnectionManager;
+import javax.resource.spi.ConnectionRequestInfo;
+import javax.resource.spi.ManagedConnection;
+import javax.resource.spi.ManagedConnectionFactory;
+import javax.resource.spi.ValidatingManagedConnectionFactory;
+import javax.security.auth.Subject;
+
+import org.apache.geronimo.connector.outbound.AbstractConnectionManager;
+import org.apache.geronimo.connector.outbound.AbstractSinglePoolConnectionInterceptor;
+import org.apache.geronimo.connector.outbound.ConnectionInfo;
+import org.apache.geronimo.connector.outbound.ConnectionInterceptor;
+import org.apache.geronimo.connector.outbound.ConnectionReturnAction;
+import org.apache.geronimo.connector.outbound.ManagedConnectionInfo;
+import org.apache.geronimo.connector.outbound.connectionmanagerconfig.NoTransactions;
+import org.apache.geronimo.connector.outbound.connectionmanagerconfig.SinglePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValidatingGenericConnectionManagerTest {
+
+    private static final int MAX_SIZE = 5;
+
+    private final TestFactory mcf = new TestFactory();
+    private ValidatingGenericConnectionManager cm;
+    private AbstractSinglePoolConnectionInterceptor pool;
+
+    @Before
+    public void setUp() throws Exception {
+        cm = new ValidatingGenericConnectionManager(NoTransactions.INSTANCE,
+                new SinglePool(MAX_SIZE, 0, 100, 10, false, false, false), null, null, null, mcf,
+                "test", getClass().getClassLoader(), 3600000, 2, 1000);
+        cm.doStart();
+        ConnectionInterceptor stack = ((AbstractConnectionManager.Interceptors) Reflections.get(cm, "interceptors")).getStack();
+        while (!(stack instanceof AbstractSinglePoolConnectionInterceptor)) {
+            stack = (ConnectionInterceptor) Reflections.get(stack, "next");
+        }
+        pool = (AbstractSinglePoolConnectionInterceptor) stack;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cm.doStop();
+    }
+
+    @Test
+    public void testSweepKeepsThePoolAccounting() throws Exception {
+        List<ConnectionInfo> infos = fill();
+        mcf.invalids.add(infos.get(1).getManagedConnectionInfo().getManagedConnection());
+        mcf.invalids.add(infos.get(3).getManagedConnectionInfo().getManagedConnection());
+        long lastUsed = infos.get(0).getManagedConnectionInfo().getLastUsed() - 60000;
+        infos.get(0).getManagedConnectionInfo().setLastUsed(lastUsed);
+
+        ((Runnable) Reflections.get(cm, "validatingTask")).run();
+
+        assertEquals(MAX_SIZE, mcf.validated.size());
+        assertEquals(mcf.invalids, mcf.destroyed);
+        assertEquals(MAX_SIZE - 2, cm.getConnectionCount());
+        assertEquals(MAX_SIZE - 2, cm.getIdleConnectionCount());
+        // none of the connections is handed out
+        assertEquals(MAX_SIZE, getPermits().availablePermits());
+        // the valid connections are not made any younger by the validation
+        assertEquals(lastUsed, infos.get(0).getManagedConnectionInfo().getLastUsed());
+    }
+
+    @Test
+    public void testPoolStaysBoundedAfterSweep() throws Exception {
+        List<ConnectionInfo> infos = fill();
+        for (ConnectionInfo info : infos) {
+            mcf.invalids.add(info.getManagedConnectionInfo().getManagedConnection());
+        }
+
+        ((Runnable) Reflections.get(cm, "validatingTask")).run();
+
+        assertEquals(0, cm.getConnectionCount());
+        assertEquals(MAX_SIZE, getPermits().availablePermits());
+        // no more connections than the maximum can be handed out
+        for (int i = 0; i < MAX_SIZE; i++) {
+            pool.getConnection(newConnectionInfo());
+        }
+        try {
+            pool.getConnection(newConnectionInfo());
+            throw new AssertionError("more connections than the maximum were handed out");
+        } catch (ResourceException e) {
+            // expected
+        }
+        assertEquals(MAX_SIZE, cm.getConnectionCount());
+    }
+
+    /**
+     * Creates the maximum number of connections and returns them to the pool.
+     */
+    private List<ConnectionInfo> fill() throws ResourceException {
+        List<ConnectionInfo> infos = new ArrayList<ConnectionInfo>();
+        for (int i = 0; i < MAX_SIZE; i++) {
+            ConnectionInfo info = newConnectionInfo();
+            pool.getConnection(info);
+            infos.add(info);
+        }
+        for (ConnectionInfo info : infos) {
+            pool.returnConnection(info, ConnectionReturnAction.RETURN_HANDLE);
+        }
+        assertEquals(MAX_SIZE, cm.getIdleConnectionCount());
+        assertTrue(mcf.destroyed.isEmpty());
+        return infos;
+    }
+
+    private ConnectionInfo newConnectionInfo() {
+        return new ConnectionInfo(new ManagedConnectionInfo(mcf, null));
+    }
+
+    private Semaphore getPermits() {
+        return (Semaphore) Reflections.get(pool, "permits");
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static class TestFactory implements ManagedConnectionFactory, ValidatingManagedConnectionFactory {
+
+        final Set<ManagedConnection> invalids = Collections.synchronizedSet(new HashSet<ManagedConnection>());
+        final Set<ManagedConnection> validated = Collections.synchronizedSet(new HashSet<ManagedConnection>());
+        final Set<ManagedConnection> destroyed = Collections.synchronizedSet(new HashSet<ManagedConnection>());
+
+        public Set getInvalidConnections(Set connectionSet) throws ResourceException {
+            Set<ManagedConnection> result = new HashSet<ManagedConnection>();
+            for (Object connection : connectionSet) {
+                validated.add((ManagedConnection) connection);
+                if (invalids.contains(connection)) {
+                    result.add((ManagedConnection) connection);
+                }
+            }
+            return result;
+        }
+
+        public ManagedConnection createManagedConnection(Subject subject, ConnectionRequestInfo cxRequestInfo) {
+            return (ManagedConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { ManagedConnection.class }, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if (method.getName().equals("destroy")) {
+                                destroyed.add((ManagedConnection) proxy);
+                            } else if (method.getName().equals("equals")) {
+                                return proxy == args[0];
+                            } else if (method.getName().equals("hashCode")) {
+                                return System.identityHashCode(proxy);
+                            } else if (method.getName().equals("toString")) {
+                                return "connection@" + Integer.toHexString(System.identityHashCode(proxy));
+                            }
+                            return null;
+                        }
+                    });
+        }
+
+        public Object createConnectionFactory(ConnectionManager cxManager) {
+            return null;
+        }
+
+        public Object createConnectionFactory() {
+            return null;
+        }
+
+        public ManagedConnection matchManagedConnections(Set connectionSet, Subject subject, ConnectionRequestInfo cxRequestInfo) {
+            return null;
+        }
+
+        public void setLogWriter(PrintWriter out) {
+        }
+
+        public PrintWriter getLogWriter() {
+            return null;
+        }
+    }
+
+}
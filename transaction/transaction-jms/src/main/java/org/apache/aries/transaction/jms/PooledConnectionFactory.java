@@ -16,7 +16,11 @@
  */
 package org.apache.aries.transaction.jms;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
@@ -24,6 +28,7 @@ import javax.jms.JMSException;
 import javax.jms.XAConnection;
 import javax.jms.XAConnectionFactory;
 
+import org.apache.aries.transaction.jms.internal.CacheStatistics;
 import org.apache.aries.transaction.jms.internal.ConnectionKey;
 import org.apache.aries.transaction.jms.internal.ConnectionPool;
 import org.apache.aries.transaction.jms.internal.PooledConnection;
@@ -60,6 +65,10 @@ import org.slf4j.LoggerFactory;
  * default the value is -1 which means no eviction thread will be run.  Set to a non-negative value to
  * configure the idle eviction thread to run.
  *
+ * When many threads share the factory, the {@link #setUseConcurrentPool(boolean) concurrent pool} avoids
+ * the locks taken by the default commons-pool based implementation: connections are selected in
+ * round-robin order without locking the factory and sessions are pooled in lock-free queues.
+ *
  * @org.apache.xbean.XBean element="pooledConnectionFactory"
  */
 public class PooledConnectionFactory implements ConnectionFactory {
@@ -77,6 +86,12 @@ public class PooledConnectionFactory implements ConnectionFactory {
     private long expiryTimeout = 0l;
     private boolean createConnectionOnStartup = true;
     private boolean useAnonymousProducers = true;
+    private boolean useConcurrentPool = false;
+    private int producerCacheSize = 0;
+    private int consumerCacheSize = 0;
+    private final CacheStatistics producerCacheStatistics = new CacheStatistics();
+    private final CacheStatistics consumerCacheStatistics = new CacheStatistics();
+    private final ConcurrentMap<ConnectionKey, ConnectionSlots> connectionSlots = new ConcurrentHashMap<ConnectionKey, ConnectionSlots>();
 
     public void initConnectionsPool() {
         if (this.connectionsPool == null) {
@@ -101,23 +116,7 @@ public class PooledConnectionFactory implements ConnectionFactory {
 
                         @Override
                         public ConnectionPool makeObject(ConnectionKey key) throws Exception {
-                            Connection delegate = createConnection(key);
-
-                            ConnectionPool connection = createConnectionPool(delegate);
-                            connection.setIdleTimeout(getIdleTimeout());
-                            connection.setExpiryTimeout(getExpiryTimeout());
-                            connection.setMaximumActiveSessionPerConnection(getMaximumActiveSessionPerConnection());
-                            connection.setBlockIfSessionPoolIsFull(isBlockIfSessionPoolIsFull());
-                            if (isBlockIfSessionPoolIsFull() && getBlockIfSessionPoolIsFullTimeout() > 0) {
-                                connection.setBlockIfSessionPoolIsFullTimeout(getBlockIfSessionPoolIsFullTimeout());
-                            }
-                            connection.setUseAnonymousProducers(isUseAnonymousProducers());
-
-                            if (LOG.isTraceEnabled()) {
-                                LOG.trace("Created new connection: {}", connection);
-                            }
-
-                            return connection;
+                            return newConnectionPool(key);
                         }
 
                         @Override
@@ -178,7 +177,18 @@ public class PooledConnectionFactory implements ConnectionFactory {
     }
 
     @Override
-    public synchronized Connection createConnection(String userName, String password) throws JMSException {
+    public Connection createConnection(String userName, String password) throws JMSException {
+        if (isUseConcurrentPool()) {
+            if (stopped.get()) {
+                LOG.debug("PooledConnectionFactory is stopped, skip create new connection.");
+                return null;
+            }
+            return newPooledConnection(selectConnection(new ConnectionKey(userName, password)));
+        }
+        return createPooledConnection(userName, password);
+    }
+
+    private synchronized Connection createPooledConnection(String userName, String password) throws JMSException {
         if (stopped.get()) {
             LOG.debug("PooledConnectionFactory is stopped, skip create new connection.");
             return null;
@@ -235,6 +245,84 @@ public class PooledConnectionFactory implements ConnectionFactory {
         return newPooledConnection(connection);
     }
 
+    /**
+     * Selects one of the pooled connections for the given key in round-robin order.  The factory
+     * is not locked: only the creation of a connection, for an empty slot or to replace a closed
+     * connection, is serialized.
+     */
+    private ConnectionPool selectConnection(ConnectionKey key) throws JMSException {
+        ConnectionSlots slots = connectionSlots.get(key);
+        if (slots == null) {
+            ConnectionSlots created = new ConnectionSlots(Math.max(1, getMaxConnections()));
+            slots = connectionSlots.putIfAbsent(key, created);
+            if (slots == null) {
+                slots = created;
+            }
+        }
+        int index = (slots.next.getAndIncrement() & Integer.MAX_VALUE) % slots.connections.length();
+        while (true) {
+            ConnectionPool connection = slots.connections.get(index);
+            if (connection != null) {
+                // increment the reference count under the connection lock so that
+                // an expiration check can not close it in the meantime
+                synchronized (connection) {
+                    if (!connection.expiredCheck()) {
+                        connection.incrementReferenceCount();
+                        return connection;
+                    }
+                }
+            }
+            synchronized (slots) {
+                if (stopped.get()) {
+                    throw new JMSException("PooledConnectionFactory is stopped");
+                }
+                if (slots.connections.get(index) == connection) {
+                    slots.connections.set(index, newConnectionPool(key));
+                }
+            }
+        }
+    }
+
+    private ConnectionPool newConnectionPool(ConnectionKey key) throws JMSException {
+        Connection delegate = createConnection(key);
+
+        ConnectionPool connection = createConnectionPool(delegate);
+        connection.setIdleTimeout(getIdleTimeout());
+        connection.setExpiryTimeout(getExpiryTimeout());
+        connection.setMaximumActiveSessionPerConnection(getMaximumActiveSessionPerConnection());
+        connection.setBlockIfSessionPoolIsFull(isBlockIfSessionPoolIsFull());
+        if (isBlockIfSessionPoolIsFull() && getBlockIfSessionPoolIsFullTimeout() > 0) {
+            connection.setBlockIfSessionPoolIsFullTimeout(getBlockIfSessionPoolIsFullTimeout());
+        }
+        connection.setUseAnonymousProducers(isUseAnonymousProducers());
+        connection.setProducerCache(getProducerCacheSize(), producerCacheStatistics);
+        connection.setConsumerCache(getConsumerCacheSize(), consumerCacheStatistics);
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Created new connection: {}", connection);
+        }
+
+        return connection;
+    }
+
+    private void closeConnectionSlots() {
+        for (ConnectionSlots slots : connectionSlots.values()) {
+            synchronized (slots) {
+                for (int i = 0; i < slots.connections.length(); i++) {
+                    ConnectionPool connection = slots.connections.getAndSet(i, null);
+                    if (connection != null) {
+                        try {
+                            connection.close();
+                        } catch (Exception e) {
+                            LOG.warn("Close connection failed for connection: " + connection + ". This exception will be ignored.", e);
+                        }
+                    }
+                }
+            }
+        }
+        connectionSlots.clear();
+    }
+
     protected Connection newPooledConnection(ConnectionPool connection) {
         return new PooledConnection(connection);
     }
@@ -277,6 +365,7 @@ public class PooledConnectionFactory implements ConnectionFactory {
                 }
             } catch (Exception e) {
             }
+            closeConnectionSlots();
         }
     }
 
@@ -293,6 +382,7 @@ public class PooledConnectionFactory implements ConnectionFactory {
         }
 
         getConnectionsPool().clear();
+        closeConnectionSlots();
     }
 
     /**
@@ -454,6 +544,92 @@ public class PooledConnectionFactory implements ConnectionFactory {
         this.useAnonymousProducers = value;
     }
 
+    /**
+     * @return true if connections and sessions are pooled without locking the factory.
+     */
+    public boolean isUseConcurrentPool() {
+        return useConcurrentPool;
+    }
+
+    /**
+     * Sets whether connections and sessions are pooled with the concurrent pool implementation
+     * rather than with commons-pool, default is false.
+     *
+     * The concurrent pool selects the connections in round-robin order without locking the factory,
+     * and pools the sessions of each connection in lock-free queues.  It supports the same settings,
+     * except for the idle connection eviction thread: expired connections are only detected when
+     * they are selected.  This value must be set before any connection is created.
+     *
+     * @param useConcurrentPool
+     *      Boolean value that configures whether the concurrent pool is used.
+     */
+    public void setUseConcurrentPool(boolean useConcurrentPool) {
+        this.useConcurrentPool = useConcurrentPool;
+    }
+
+    /**
+     * @return the maximum number of idle producers cached by each pooled Session.
+     */
+    public int getProducerCacheSize() {
+        return producerCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of idle producers cached by each pooled Session, default is 0
+     * which disables the cache.
+     *
+     * When enabled, a producer closed by the client is kept open by the Session and reused
+     * by the next request to create a producer for the same destination, and the least recently
+     * used producer is closed when the cache is full.  This avoids creating a MessageProducer on
+     * the provider when a producer is created for each message sent.  The cache is only used
+     * when anonymous producers are disabled.  This value must be set before any connection is
+     * created.
+     *
+     * @param producerCacheSize
+     *      the maximum number of idle producers per Session.
+     */
+    public void setProducerCacheSize(int producerCacheSize) {
+        this.producerCacheSize = producerCacheSize;
+    }
+
+    /**
+     * @return the maximum number of idle consumers cached by each pooled Session.
+     */
+    public int getConsumerCacheSize() {
+        return consumerCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of idle consumers cached by each pooled Session, default is 0
+     * which disables the cache.
+     *
+     * When enabled, a consumer created with one of the Session createConsumer methods is kept
+     * open when it is closed, or when the Session is returned to the pool, and is reused by the
+     * next request for the same destination, selector and noLocal flag.  As idle consumers may
+     * still receive messages, this should not be enabled if the provider prefetches messages.
+     * This value must be set before any connection is created.
+     *
+     * @param consumerCacheSize
+     *      the maximum number of idle consumers per Session.
+     */
+    public void setConsumerCacheSize(int consumerCacheSize) {
+        this.consumerCacheSize = consumerCacheSize;
+    }
+
+    /**
+     * @return the hit and miss counters of the producer caches of all the pooled Sessions.
+     */
+    public CacheStatistics getProducerCacheStatistics() {
+        return producerCacheStatistics;
+    }
+
+    /**
+     * @return the hit and miss counters of the consumer caches of all the pooled Sessions.
+     */
+    public CacheStatistics getConsumerCacheStatistics() {
+        return consumerCacheStatistics;
+    }
+
     /**
      * Gets the Pool of ConnectionPool instances which are keyed by different ConnectionKeys.
      *
@@ -490,6 +666,18 @@ public class PooledConnectionFactory implements ConnectionFactory {
      * @return the number of Connections currently in the Pool
      */
     public int getNumConnections() {
+        if (isUseConcurrentPool()) {
+            int count = 0;
+            for (ConnectionSlots slots : connectionSlots.values()) {
+                for (int i = 0; i < slots.connections.length(); i++) {
+                    ConnectionPool connection = slots.connections.get(i);
+                    if (connection != null && connection.getConnection() != null) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
         return getConnectionsPool().getNumIdle();
     }
 
@@ -502,7 +690,7 @@ public class PooledConnectionFactory implements ConnectionFactory {
      * @return instance of a new ConnectionPool.
      */
     protected ConnectionPool createConnectionPool(Connection connection) {
-        return new ConnectionPool(connection);
+        return new ConnectionPool(connection, isUseConcurrentPool());
     }
 
     /**
@@ -533,6 +721,15 @@ public class PooledConnectionFactory implements ConnectionFactory {
         this.blockIfSessionPoolIsFullTimeout = blockIfSessionPoolIsFullTimeout;
     }
 
+    private static class ConnectionSlots {
+        private final AtomicReferenceArray<ConnectionPool> connections;
+        private final AtomicInteger next = new AtomicInteger();
+
+        ConnectionSlots(int size) {
+            connections = new AtomicReferenceArray<ConnectionPool>(size);
+        }
+    }
+
     static class XAConnectionFactoryWrapper implements XAConnectionFactory, ConnectionFactory {
         private final XAConnectionFactory delegate;
 
@@ -54,7 +54,7 @@ public class RecoverablePooledConnectionFactory extends XaPooledConnectionFactor
     }
 
     protected ConnectionPool createConnectionPool(Connection connection) {
-        return new RecoverableConnectionPool(connection, getTransactionManager(), getName());
+        return new RecoverableConnectionPool(connection, getTransactionManager(), getName(), isUseConcurrentPool());
     }
 
     /**
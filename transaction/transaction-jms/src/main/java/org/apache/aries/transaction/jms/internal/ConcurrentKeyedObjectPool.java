@@ -0,0 +1,354 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.jms.internal;
+
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.pool.KeyedObjectPool;
+import org.apache.commons.pool.KeyedPoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+
+/**
+ * A keyed object pool which does not lock when borrowing and returning objects.
+ * <p/>
+ * Idle objects are kept in a lock-free queue per key and the number of active objects
+ * per key is bounded with compare-and-set operations.  Threads only synchronize when the
+ * pool is exhausted and they have to wait for an object to be returned.
+ * <p/>
+ * The configuration mirrors the subset of {@link GenericKeyedObjectPool} used by the
+ * connection pools: maximum active and idle objects per key, and the behavior when
+ * the pool is exhausted.  Idle objects are reused in FIFO order and are neither
+ * validated nor evicted.
+ */
+public class ConcurrentKeyedObjectPool<K, V> implements KeyedObjectPool<K, V> {
+
+    private volatile KeyedPoolableObjectFactory<K, V> factory;
+    private final ConcurrentMap<K, KeyedPool<V>> pools = new ConcurrentHashMap<K, KeyedPool<V>>();
+
+    private volatile int maxActive = GenericKeyedObjectPool.DEFAULT_MAX_ACTIVE;
+    private volatile int maxIdle = GenericKeyedObjectPool.DEFAULT_MAX_IDLE;
+    private volatile byte whenExhaustedAction = GenericKeyedObjectPool.WHEN_EXHAUSTED_BLOCK;
+    private volatile long maxWait = GenericKeyedObjectPool.DEFAULT_MAX_WAIT;
+    private volatile boolean closed;
+
+    public ConcurrentKeyedObjectPool(KeyedPoolableObjectFactory<K, V> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public V borrowObject(K key) throws Exception {
+        assertOpen();
+        KeyedPool<V> pool = getPool(key);
+        acquire(pool);
+        try {
+            V obj;
+            while ((obj = pool.idle.poll()) != null) {
+                pool.idleCount.decrementAndGet();
+                try {
+                    factory.activateObject(key, obj);
+                    return obj;
+                } catch (Exception e) {
+                    destroy(key, obj);
+                }
+            }
+            obj = factory.makeObject(key);
+            try {
+                factory.activateObject(key, obj);
+            } catch (Exception e) {
+                destroy(key, obj);
+                throw e;
+            }
+            return obj;
+        } catch (Exception e) {
+            release(pool);
+            throw e;
+        }
+    }
+
+    @Override
+    public void returnObject(K key, V obj) throws Exception {
+        KeyedPool<V> pool = getPool(key);
+        boolean idle = false;
+        try {
+            factory.passivateObject(key, obj);
+            idle = !closed && offer(pool, obj);
+        } catch (Exception e) {
+            // the object is destroyed
+        } finally {
+            release(pool);
+        }
+        if (!idle) {
+            destroy(key, obj);
+        }
+    }
+
+    @Override
+    public void invalidateObject(K key, V obj) throws Exception {
+        try {
+            factory.destroyObject(key, obj);
+        } finally {
+            release(getPool(key));
+        }
+    }
+
+    @Override
+    public void addObject(K key) throws Exception {
+        assertOpen();
+        KeyedPool<V> pool = getPool(key);
+        V obj = factory.makeObject(key);
+        factory.passivateObject(key, obj);
+        if (!offer(pool, obj)) {
+            destroy(key, obj);
+        }
+    }
+
+    @Override
+    public int getNumIdle(K key) {
+        KeyedPool<V> pool = pools.get(key);
+        return pool != null ? pool.idleCount.get() : 0;
+    }
+
+    @Override
+    public int getNumActive(K key) {
+        KeyedPool<V> pool = pools.get(key);
+        return pool != null ? pool.activeCount.get() : 0;
+    }
+
+    @Override
+    public int getNumIdle() {
+        int count = 0;
+        for (KeyedPool<V> pool : pools.values()) {
+            count += pool.idleCount.get();
+        }
+        return count;
+    }
+
+    @Override
+    public int getNumActive() {
+        int count = 0;
+        for (KeyedPool<V> pool : pools.values()) {
+            count += pool.activeCount.get();
+        }
+        return count;
+    }
+
+    @Override
+    public void clear() {
+        for (K key : pools.keySet()) {
+            clear(key);
+        }
+    }
+
+    @Override
+    public void clear(K key) {
+        KeyedPool<V> pool = pools.get(key);
+        if (pool != null) {
+            V obj;
+            while ((obj = pool.idle.poll()) != null) {
+                pool.idleCount.decrementAndGet();
+                destroy(key, obj);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        clear();
+        // wake up waiting threads so that they fail
+        for (KeyedPool<V> pool : pools.values()) {
+            synchronized (pool) {
+                pool.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Replaces the factory.  The idle objects are destroyed with the previous factory.
+     *
+     * @throws IllegalStateException if the pool is closed or objects are borrowed
+     * @deprecated the factory should be given when the pool is created
+     */
+    @Override
+    @Deprecated
+    public synchronized void setFactory(KeyedPoolableObjectFactory<K, V> factory) {
+        assertOpen();
+        if (getNumActive() > 0) {
+            throw new IllegalStateException("Objects are already active");
+        }
+        clear();
+        this.factory = factory;
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    /**
+     * @param maxActive the maximum number of objects borrowed per key, negative for no limit
+     */
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+        signalAll();
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * @param maxIdle the maximum number of idle objects kept per key, negative for no limit
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public byte getWhenExhaustedAction() {
+        return whenExhaustedAction;
+    }
+
+    /**
+     * @param whenExhaustedAction one of the GenericKeyedObjectPool WHEN_EXHAUSTED constants
+     */
+    public void setWhenExhaustedAction(byte whenExhaustedAction) {
+        this.whenExhaustedAction = whenExhaustedAction;
+        signalAll();
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * @param maxWait the maximum time to wait in milliseconds when the pool is exhausted, negative to wait forever
+     */
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    private KeyedPool<V> getPool(K key) {
+        KeyedPool<V> pool = pools.get(key);
+        if (pool == null) {
+            KeyedPool<V> created = new KeyedPool<V>();
+            pool = pools.putIfAbsent(key, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        return pool;
+    }
+
+    private boolean offer(KeyedPool<V> pool, V obj) {
+        int max = maxIdle;
+        if (pool.idleCount.incrementAndGet() > max && max >= 0) {
+            pool.idleCount.decrementAndGet();
+            return false;
+        }
+        pool.idle.offer(obj);
+        return true;
+    }
+
+    private boolean tryAcquire(KeyedPool<V> pool) {
+        for (;;) {
+            int active = pool.activeCount.get();
+            int max = maxActive;
+            if (max >= 0 && active >= max && whenExhaustedAction != GenericKeyedObjectPool.WHEN_EXHAUSTED_GROW) {
+                return false;
+            }
+            if (pool.activeCount.compareAndSet(active, active + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void acquire(KeyedPool<V> pool) throws InterruptedException {
+        if (tryAcquire(pool)) {
+            return;
+        }
+        if (whenExhaustedAction == GenericKeyedObjectPool.WHEN_EXHAUSTED_FAIL) {
+            throw new NoSuchElementException("Pool exhausted");
+        }
+        long timeout = maxWait;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized (pool) {
+            pool.waiters.incrementAndGet();
+            try {
+                while (!tryAcquire(pool)) {
+                    assertOpen();
+                    if (timeout <= 0) {
+                        pool.wait();
+                    } else {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            throw new NoSuchElementException("Timeout waiting for idle object");
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(pool, remaining);
+                    }
+                }
+            } finally {
+                pool.waiters.decrementAndGet();
+            }
+        }
+    }
+
+    private void release(KeyedPool<V> pool) {
+        pool.activeCount.decrementAndGet();
+        if (pool.waiters.get() > 0) {
+            synchronized (pool) {
+                pool.notifyAll();
+            }
+        }
+    }
+
+    private void signalAll() {
+        for (KeyedPool<V> pool : pools.values()) {
+            if (pool.waiters.get() > 0) {
+                synchronized (pool) {
+                    pool.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void destroy(K key, V obj) {
+        try {
+            factory.destroyObject(key, obj);
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+    private void assertOpen() {
+        if (closed) {
+            throw new IllegalStateException("Pool not open");
+        }
+    }
+
+    private static final class KeyedPool<V> {
+        final Queue<V> idle = new ConcurrentLinkedQueue<V>();
+        final AtomicInteger idleCount = new AtomicInteger();
+        final AtomicInteger activeCount = new AtomicInteger();
+        final AtomicInteger waiters = new AtomicInteger();
+    }
+
+}
@@ -25,6 +25,7 @@ import javax.jms.IllegalStateException;
 import javax.jms.JMSException;
 import javax.jms.Session;
 
+import org.apache.commons.pool.KeyedObjectPool;
 import org.apache.commons.pool.KeyedPoolableObjectFactory;
 import org.apache.commons.pool.impl.GenericKeyedObjectPool;
 import org.apache.commons.pool.impl.GenericObjectPool;
@@ -38,7 +39,7 @@ import org.apache.commons.pool.impl.GenericObjectPool;
  * to this ConnectionPool are released.
  */
 public class ConnectionPool {
-    protected Connection connection;
+    protected volatile Connection connection;
     private int referenceCount;
     private long lastUsed = System.currentTimeMillis();
     private final long firstUsed = lastUsed;
@@ -46,17 +47,33 @@ public class ConnectionPool {
     private int idleTimeout = 30 * 1000;
     private long expiryTimeout = 0l;
     private boolean useAnonymousProducers = true;
+    private int producerCacheSize;
+    private int consumerCacheSize;
+    private CacheStatistics producerCacheStatistics = new CacheStatistics();
+    private CacheStatistics consumerCacheStatistics = new CacheStatistics();
 
     private final AtomicBoolean started = new AtomicBoolean(false);
-    private final GenericKeyedObjectPool<SessionKey, PooledSession> sessionPool;
+    private final KeyedObjectPool<SessionKey, PooledSession> sessionPool;
+    // only one of these is set, depending on the pool implementation
+    private final GenericKeyedObjectPool<SessionKey, PooledSession> genericSessionPool;
+    private final ConcurrentKeyedObjectPool<SessionKey, PooledSession> concurrentSessionPool;
     private final List<PooledSession> loanedSessions = new CopyOnWriteArrayList<PooledSession>();
 
     public ConnectionPool(Connection connection) {
+        this(connection, false);
+    }
+
+    /**
+     * @param connection the JMS connection
+     * @param concurrentSessionPool whether sessions are pooled in a {@link ConcurrentKeyedObjectPool}
+     *                              rather than a commons-pool GenericKeyedObjectPool
+     */
+    public ConnectionPool(Connection connection, boolean concurrentSessionPool) {
 
         this.connection = wrap(connection);
 
         // Create our internal Pool of session instances.
-        this.sessionPool = new GenericKeyedObjectPool<SessionKey, PooledSession>(
+        KeyedPoolableObjectFactory<SessionKey, PooledSession> sessionFactory =
                 new KeyedPoolableObjectFactory<SessionKey, PooledSession>() {
 
                     @Override
@@ -67,13 +84,16 @@ public class ConnectionPool {
                     @Override
                     public void destroyObject(SessionKey key, PooledSession session) throws Exception {
                         ConnectionPool.this.loanedSessions.remove(session);
-                        session.getInternalSession().close();
+                        session.destroy();
                     }
 
                     @Override
                     public PooledSession makeObject(SessionKey key) throws Exception {
                         Session session = makeSession(key);
-                        return new PooledSession(key, session, sessionPool, key.isTransacted(), useAnonymousProducers);
+                        PooledSession pooled = new PooledSession(key, session, sessionPool, key.isTransacted(), useAnonymousProducers);
+                        pooled.setProducerCache(producerCacheSize, producerCacheStatistics);
+                        pooled.setConsumerCache(consumerCacheSize, consumerCacheStatistics);
+                        return pooled;
                     }
 
                     @Override
@@ -85,8 +105,16 @@ public class ConnectionPool {
                     public boolean validateObject(SessionKey key, PooledSession session) {
                         return true;
                     }
-                }
-        );
+                };
+        if (concurrentSessionPool) {
+            this.concurrentSessionPool = new ConcurrentKeyedObjectPool<SessionKey, PooledSession>(sessionFactory);
+            this.genericSessionPool = null;
+            this.sessionPool = this.concurrentSessionPool;
+        } else {
+            this.genericSessionPool = new GenericKeyedObjectPool<SessionKey, PooledSession>(sessionFactory);
+            this.concurrentSessionPool = null;
+            this.sessionPool = this.genericSessionPool;
+        }
     }
 
     // useful when external failure needs to force expiry
@@ -116,7 +144,7 @@ public class ConnectionPool {
         }
     }
 
-    public synchronized Connection getConnection() {
+    public Connection getConnection() {
         return connection;
     }
 
@@ -236,11 +264,18 @@ public class ConnectionPool {
     }
 
     public int getMaximumActiveSessionPerConnection() {
-        return this.sessionPool.getMaxActive();
+        if (concurrentSessionPool != null) {
+            return concurrentSessionPool.getMaxActive();
+        }
+        return this.genericSessionPool.getMaxActive();
     }
 
     public void setMaximumActiveSessionPerConnection(int maximumActiveSessionPerConnection) {
-        this.sessionPool.setMaxActive(maximumActiveSessionPerConnection);
+        if (concurrentSessionPool != null) {
+            concurrentSessionPool.setMaxActive(maximumActiveSessionPerConnection);
+        } else {
+            this.genericSessionPool.setMaxActive(maximumActiveSessionPerConnection);
+        }
     }
 
     public boolean isUseAnonymousProducers() {
@@ -251,6 +286,32 @@ public class ConnectionPool {
         this.useAnonymousProducers = value;
     }
 
+    public int getProducerCacheSize() {
+        return producerCacheSize;
+    }
+
+    /**
+     * @param size the maximum number of idle producers cached per session, zero to disable the cache
+     * @param statistics the counters updated by the caches of all sessions
+     */
+    public void setProducerCache(int size, CacheStatistics statistics) {
+        this.producerCacheSize = size;
+        this.producerCacheStatistics = statistics;
+    }
+
+    public int getConsumerCacheSize() {
+        return consumerCacheSize;
+    }
+
+    /**
+     * @param size the maximum number of idle consumers cached per session, zero to disable the cache
+     * @param statistics the counters updated by the caches of all sessions
+     */
+    public void setConsumerCache(int size, CacheStatistics statistics) {
+        this.consumerCacheSize = size;
+        this.consumerCacheStatistics = statistics;
+    }
+
     /**
      * @return the total number of Pooled session including idle sessions that are not
      *          currently loaned out to any client.
@@ -282,12 +343,19 @@ public class ConnectionPool {
      * 		Indicates whether blocking should be used to wait for more space to create a session.
      */
     public void setBlockIfSessionPoolIsFull(boolean block) {
-        this.sessionPool.setWhenExhaustedAction(
-                (block ? GenericObjectPool.WHEN_EXHAUSTED_BLOCK : GenericObjectPool.WHEN_EXHAUSTED_FAIL));
+        byte action = block ? GenericObjectPool.WHEN_EXHAUSTED_BLOCK : GenericObjectPool.WHEN_EXHAUSTED_FAIL;
+        if (concurrentSessionPool != null) {
+            concurrentSessionPool.setWhenExhaustedAction(action);
+        } else {
+            this.genericSessionPool.setWhenExhaustedAction(action);
+        }
     }
 
     public boolean isBlockIfSessionPoolIsFull() {
-        return this.sessionPool.getWhenExhaustedAction() == GenericObjectPool.WHEN_EXHAUSTED_BLOCK;
+        if (concurrentSessionPool != null) {
+            return concurrentSessionPool.getWhenExhaustedAction() == GenericObjectPool.WHEN_EXHAUSTED_BLOCK;
+        }
+        return this.genericSessionPool.getWhenExhaustedAction() == GenericObjectPool.WHEN_EXHAUSTED_BLOCK;
     }
 
     /**
@@ -297,7 +365,10 @@ public class ConnectionPool {
      * @see #setBlockIfSessionPoolIsFull(boolean)
      */
     public long getBlockIfSessionPoolIsFullTimeout() {
-        return this.sessionPool.getMaxWait();
+        if (concurrentSessionPool != null) {
+            return concurrentSessionPool.getMaxWait();
+        }
+        return this.genericSessionPool.getMaxWait();
     }
 
     /**
@@ -315,7 +386,11 @@ public class ConnectionPool {
      *                                        then use this setting to configure how long to block before retry
      */
     public void setBlockIfSessionPoolIsFullTimeout(long blockIfSessionPoolIsFullTimeout) {
-        this.sessionPool.setMaxWait(blockIfSessionPoolIsFullTimeout);
+        if (concurrentSessionPool != null) {
+            concurrentSessionPool.setMaxWait(blockIfSessionPoolIsFullTimeout);
+        } else {
+            this.genericSessionPool.setMaxWait(blockIfSessionPoolIsFullTimeout);
+        }
     }
 
     @Override
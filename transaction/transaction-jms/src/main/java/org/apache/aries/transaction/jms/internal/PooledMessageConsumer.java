@@ -28,6 +28,9 @@ public class PooledMessageConsumer implements MessageConsumer {
 
     private final PooledSession session;
     private final MessageConsumer delegate;
+    private final SessionResourceCache<MessageConsumer> cache;
+    private final Object cacheKey;
+    private boolean closed;
 
     /**
      * Wraps the message consumer.
@@ -36,14 +39,48 @@ public class PooledMessageConsumer implements MessageConsumer {
      * @param delegate the created consumer to wrap
      */
     public PooledMessageConsumer(PooledSession session, MessageConsumer delegate) {
+        this(session, delegate, null, null);
+    }
+
+    /**
+     * Wraps a message consumer which is offered back to a cache when closed.
+     *
+     * @param session  the pooled session
+     * @param delegate the created or cached consumer to wrap
+     * @param cache    the cache of the session consumers, or null
+     * @param cacheKey the key of the consumer in the cache
+     */
+    public PooledMessageConsumer(PooledSession session, MessageConsumer delegate,
+                                 SessionResourceCache<MessageConsumer> cache, Object cacheKey) {
         this.session = session;
         this.delegate = delegate;
+        this.cache = cache;
+        this.cacheKey = cacheKey;
     }
 
     public void close() throws JMSException {
-        // ensure session removes consumer as its closed now
-        session.onConsumerClose(delegate);
-        delegate.close();
+        if (cache == null) {
+            // ensure session removes consumer as its closed now
+            session.onConsumerClose(delegate);
+            delegate.close();
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        session.onCachedConsumerClose(this);
+        boolean cached = false;
+        try {
+            delegate.setMessageListener(null);
+            cached = cache.offer(cacheKey, delegate);
+        } finally {
+            if (!cached) {
+                delegate.close();
+            }
+        }
     }
 
     public MessageListener getMessageListener() throws JMSException {
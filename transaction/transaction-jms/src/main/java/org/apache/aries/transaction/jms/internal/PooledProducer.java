@@ -36,10 +36,24 @@ public class PooledProducer implements MessageProducer {
     private int priority;
     private long timeToLive;
     private boolean anonymous = true;
+    private final SessionResourceCache<MessageProducer> cache;
+    private final Object cacheKey;
+    private volatile boolean closed;
 
     public PooledProducer(MessageProducer messageProducer, Destination destination) throws JMSException {
+        this(messageProducer, destination, null, null);
+    }
+
+    /**
+     * @param cache the cache the producer is offered back to when closed, or null
+     * @param cacheKey the key of the producer in the cache
+     */
+    public PooledProducer(MessageProducer messageProducer, Destination destination,
+                          SessionResourceCache<MessageProducer> cache, Object cacheKey) throws JMSException {
         this.messageProducer = messageProducer;
         this.destination = destination;
+        this.cache = cache;
+        this.cacheKey = cacheKey;
         this.anonymous = messageProducer.getDestination() == null;
 
         this.deliveryMode = messageProducer.getDeliveryMode();
@@ -51,7 +65,14 @@ public class PooledProducer implements MessageProducer {
 
     @Override
     public void close() throws JMSException {
-        if (!anonymous) {
+        if (cache != null) {
+            if (!closed) {
+                closed = true;
+                if (!resetMessageProducer() || !cache.offer(cacheKey, messageProducer)) {
+                    this.messageProducer.close();
+                }
+            }
+        } else if (!anonymous) {
             this.messageProducer.close();
         }
     }
@@ -153,6 +174,26 @@ public class PooledProducer implements MessageProducer {
 
     // Implementation methods
     // -------------------------------------------------------------------------
+
+    /**
+     * Restore the default settings of the underlying producer before it is checked in, so
+     * that the next client of the cached producer does not inherit the settings of this one.
+     *
+     * @return false if the producer could not be reset and must not be cached
+     */
+    private boolean resetMessageProducer() {
+        try {
+            messageProducer.setDisableMessageID(false);
+            messageProducer.setDisableMessageTimestamp(false);
+            messageProducer.setDeliveryMode(Message.DEFAULT_DELIVERY_MODE);
+            messageProducer.setPriority(Message.DEFAULT_PRIORITY);
+            messageProducer.setTimeToLive(Message.DEFAULT_TIME_TO_LIVE);
+            return true;
+        } catch (JMSException e) {
+            return false;
+        }
+    }
+
     protected MessageProducer getMessageProducer() {
         return messageProducer;
     }
@@ -19,6 +19,7 @@ package org.apache.aries.transaction.jms.internal;
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.MessageProducer;
 import javax.jms.Queue;
 import javax.jms.QueueSender;
 
@@ -31,6 +32,11 @@ public class PooledQueueSender extends PooledProducer implements QueueSender {
         super(messageProducer, destination);
     }
 
+    public PooledQueueSender(QueueSender messageProducer, Destination destination,
+            SessionResourceCache<MessageProducer> cache, Object cacheKey) throws JMSException {
+        super(messageProducer, destination, cache, cacheKey);
+    }
+
     public void send(Queue queue, Message message, int i, int i1, long l) throws JMSException {
         getQueueSender().send(queue, message, i, i1, l);
     }
@@ -35,6 +35,7 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
     private final CopyOnWriteArrayList<MessageConsumer> consumers = new CopyOnWriteArrayList<MessageConsumer>();
     private final CopyOnWriteArrayList<QueueBrowser> browsers = new CopyOnWriteArrayList<QueueBrowser>();
     private final CopyOnWriteArrayList<PooledSessionEventListener> sessionEventListeners = new CopyOnWriteArrayList<PooledSessionEventListener>();
+    private final CopyOnWriteArrayList<PooledMessageConsumer> cachedConsumers = new CopyOnWriteArrayList<PooledMessageConsumer>();
 
     private MessageProducer producer;
     private TopicPublisher publisher;
@@ -45,6 +46,8 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
     private boolean ignoreClose;
     private boolean isXa;
     private boolean useAnonymousProducers = true;
+    private SessionResourceCache<MessageProducer> producerCache;
+    private SessionResourceCache<MessageConsumer> consumerCache;
 
     public PooledSession(SessionKey key, Session session, KeyedObjectPool<SessionKey, PooledSession> sessionPool, boolean transactional, boolean anonymous) {
         this.key = key;
@@ -54,6 +57,55 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
         this.useAnonymousProducers = anonymous;
     }
 
+    /**
+     * Enable the cache of the producers created by this session.  Producers closed by the
+     * client are kept open and reused for the same destination, which avoids creating a
+     * producer on the provider for each message sent.  The delivery settings are held by
+     * each {@link PooledProducer} and given on every send, so they are not part of the key.
+     * <p/>
+     * The cache is only used when the session does not use an anonymous producer.
+     *
+     * @param size the maximum number of idle producers, zero to disable the cache
+     * @param statistics the counters updated by the cache
+     */
+    public void setProducerCache(int size, CacheStatistics statistics) {
+        if (size > 0 && !useAnonymousProducers) {
+            producerCache = new SessionResourceCache<MessageProducer>(size, statistics) {
+                @Override
+                protected void close(MessageProducer producer) throws JMSException {
+                    producer.close();
+                }
+            };
+        } else {
+            producerCache = null;
+        }
+    }
+
+    /**
+     * Enable the cache of the consumers created by this session with one of the
+     * createConsumer methods.  Consumers closed by the client, or still open when the session
+     * is returned to the pool, are kept open and reused for the same destination, selector
+     * and noLocal flag.
+     * <p/>
+     * An idle consumer may still receive messages from the provider before it is reused,
+     * so this should only be enabled when the provider does not prefetch messages.
+     *
+     * @param size the maximum number of idle consumers, zero to disable the cache
+     * @param statistics the counters updated by the cache
+     */
+    public void setConsumerCache(int size, CacheStatistics statistics) {
+        if (size > 0) {
+            consumerCache = new SessionResourceCache<MessageConsumer>(size, statistics) {
+                @Override
+                protected void close(MessageConsumer consumer) throws JMSException {
+                    consumer.close();
+                }
+            };
+        } else {
+            consumerCache = null;
+        }
+    }
+
     public void addSessionEventListener(PooledSessionEventListener listener) {
         // only add if really needed
         if (!sessionEventListeners.contains(listener)) {
@@ -83,6 +135,11 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
                     consumer.close();
                 }
 
+                // Return the cached consumers which are still in use.
+                for (PooledMessageConsumer consumer : cachedConsumers) {
+                    consumer.close();
+                }
+
                 for (Iterator<QueueBrowser> iter = browsers.iterator(); iter.hasNext();) {
                     QueueBrowser browser = iter.next();
                     browser.close();
@@ -101,6 +158,7 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
                 LOG.warn("Caught exception trying close() when putting session back into the pool, will invalidate. " + ex, ex);
             } finally {
                 consumers.clear();
+                cachedConsumers.clear();
                 browsers.clear();
                 for (PooledSessionEventListener listener : this.sessionEventListeners) {
                     listener.onSessionClosed(this);
@@ -111,6 +169,7 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
             if (invalidate) {
                 // lets close the session and not put the session back into the pool
                 // instead invalidate it so the pool can create a new one on demand.
+                closeCaches();
                 if (session != null) {
                     try {
                         session.close();
@@ -278,16 +337,25 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
 
     @Override
     public MessageConsumer createConsumer(Destination destination) throws JMSException {
+        if (consumerCache != null) {
+            return getCachedConsumer(destination, null, false);
+        }
         return addConsumer(getInternalSession().createConsumer(destination));
     }
 
     @Override
     public MessageConsumer createConsumer(Destination destination, String selector) throws JMSException {
+        if (consumerCache != null) {
+            return getCachedConsumer(destination, selector, false);
+        }
         return addConsumer(getInternalSession().createConsumer(destination, selector));
     }
 
     @Override
     public MessageConsumer createConsumer(Destination destination, String selector, boolean noLocal) throws JMSException {
+        if (consumerCache != null) {
+            return getCachedConsumer(destination, selector, noLocal);
+        }
         return addConsumer(getInternalSession().createConsumer(destination, selector, noLocal));
     }
 
@@ -335,19 +403,61 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
     // -------------------------------------------------------------------------
     @Override
     public MessageProducer createProducer(Destination destination) throws JMSException {
+        if (producerCache != null) {
+            CacheKey cacheKey = new CacheKey(CacheKey.PRODUCER, destination, null, false);
+            MessageProducer producer = producerCache.take(cacheKey);
+            if (producer == null) {
+                producer = getInternalSession().createProducer(destination);
+            }
+            return new PooledProducer(producer, destination, producerCache, cacheKey);
+        }
         return new PooledProducer(getMessageProducer(destination), destination);
     }
 
     @Override
     public QueueSender createSender(Queue queue) throws JMSException {
+        if (producerCache != null) {
+            CacheKey cacheKey = new CacheKey(CacheKey.SENDER, queue, null, false);
+            QueueSender sender = (QueueSender) producerCache.take(cacheKey);
+            if (sender == null) {
+                sender = ((QueueSession) getInternalSession()).createSender(queue);
+            }
+            return new PooledQueueSender(sender, queue, producerCache, cacheKey);
+        }
         return new PooledQueueSender(getQueueSender(queue), queue);
     }
 
     @Override
     public TopicPublisher createPublisher(Topic topic) throws JMSException {
+        if (producerCache != null) {
+            CacheKey cacheKey = new CacheKey(CacheKey.PUBLISHER, topic, null, false);
+            TopicPublisher publisher = (TopicPublisher) producerCache.take(cacheKey);
+            if (publisher == null) {
+                publisher = ((TopicSession) getInternalSession()).createPublisher(topic);
+            }
+            return new PooledTopicPublisher(publisher, topic, producerCache, cacheKey);
+        }
         return new PooledTopicPublisher(getTopicPublisher(topic), topic);
     }
 
+    /**
+     * Close the cached producers and consumers and the underlying session, when this
+     * session is removed from the pool.
+     */
+    public void destroy() throws JMSException {
+        closeCaches();
+        getInternalSession().close();
+    }
+
+    private void closeCaches() {
+        if (producerCache != null) {
+            producerCache.close();
+        }
+        if (consumerCache != null) {
+            consumerCache.close();
+        }
+    }
+
     public Session getInternalSession() throws IllegalStateException {
         if (session == null) {
             throw new IllegalStateException("The session has already been closed");
@@ -443,6 +553,17 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
         return new PooledMessageConsumer(this, consumer);
     }
 
+    private MessageConsumer getCachedConsumer(Destination destination, String selector, boolean noLocal) throws JMSException {
+        CacheKey cacheKey = new CacheKey(CacheKey.CONSUMER, destination, selector, noLocal);
+        MessageConsumer consumer = consumerCache.take(cacheKey);
+        if (consumer == null) {
+            consumer = getInternalSession().createConsumer(destination, selector, noLocal);
+        }
+        PooledMessageConsumer pooled = new PooledMessageConsumer(this, consumer, consumerCache, cacheKey);
+        cachedConsumers.add(pooled);
+        return pooled;
+    }
+
     private TopicSubscriber addTopicSubscriber(TopicSubscriber subscriber) {
         consumers.add(subscriber);
         return subscriber;
@@ -475,4 +596,59 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
     protected void onConsumerClose(MessageConsumer consumer) {
         consumers.remove(consumer);
     }
+
+    /**
+     * Callback invoked when a consumer taken from the consumer cache is closed,
+     * before it is offered back to the cache.
+     *
+     * @param consumer
+     *            the wrapper of the cached consumer
+     */
+    protected void onCachedConsumerClose(PooledMessageConsumer consumer) {
+        cachedConsumers.remove(consumer);
+    }
+
+    /**
+     * The key of the producers and consumers in the session caches.
+     */
+    private static final class CacheKey {
+        static final int PRODUCER = 0;
+        static final int SENDER = 1;
+        static final int PUBLISHER = 2;
+        static final int CONSUMER = 3;
+
+        private final int type;
+        private final Destination destination;
+        private final String selector;
+        private final boolean noLocal;
+        private final int hash;
+
+        CacheKey(int type, Destination destination, String selector, boolean noLocal) {
+            this.type = type;
+            this.destination = destination;
+            this.selector = selector;
+            this.noLocal = noLocal;
+            int h = type;
+            h = 31 * h + (destination != null ? destination.hashCode() : 0);
+            h = 31 * h + (selector != null ? selector.hashCode() : 0);
+            hash = 31 * h + (noLocal ? 1 : 0);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return type == that.type && noLocal == that.noLocal
+                    && (destination != null ? destination.equals(that.destination) : that.destination == null)
+                    && (selector != null ? selector.equals(that.selector) : that.selector == null);
+        }
+    }
 }
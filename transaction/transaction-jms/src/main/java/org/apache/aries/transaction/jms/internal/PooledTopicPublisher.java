@@ -19,6 +19,7 @@ package org.apache.aries.transaction.jms.internal;
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.MessageProducer;
 import javax.jms.Topic;
 import javax.jms.TopicPublisher;
 
@@ -31,6 +32,11 @@ public class PooledTopicPublisher extends PooledProducer implements TopicPublish
         super(messageProducer, destination);
     }
 
+    public PooledTopicPublisher(TopicPublisher messageProducer, Destination destination,
+            SessionResourceCache<MessageProducer> cache, Object cacheKey) throws JMSException {
+        super(messageProducer, destination, cache, cacheKey);
+    }
+
     public Topic getTopic() throws JMSException {
         return getTopicPublisher().getTopic();
     }
@@ -29,7 +29,11 @@ public class RecoverableConnectionPool extends XaConnectionPool {
     private String name;
 
     public RecoverableConnectionPool(Connection connection, TransactionManager transactionManager, String name) {
-        super(connection, transactionManager);
+        this(connection, transactionManager, name, false);
+    }
+
+    public RecoverableConnectionPool(Connection connection, TransactionManager transactionManager, String name, boolean concurrentSessionPool) {
+        super(connection, transactionManager, concurrentSessionPool);
         this.name = name;
     }
 
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.jms.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.jms.JMSException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A least recently used cache of the idle producers or consumers of a {@link PooledSession}.
+ * <p/>
+ * An object is taken out of the cache while a client uses it and is offered back when
+ * the client closes it, so cached objects are never shared.  At most one idle object is
+ * kept per key, and the least recently used idle object is closed when the cache is full.
+ */
+public abstract class SessionResourceCache<T> {
+    private static final transient Logger LOG = LoggerFactory.getLogger(SessionResourceCache.class);
+
+    private final int maxSize;
+    private final CacheStatistics statistics;
+    private final LinkedHashMap<Object, T> idle = new LinkedHashMap<Object, T>(16, 0.75f, true);
+    private boolean closed;
+
+    public SessionResourceCache(int maxSize, CacheStatistics statistics) {
+        this.maxSize = maxSize;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Take the idle object cached for the given key.
+     *
+     * @return the cached object, or null if the caller has to create a new one
+     */
+    public T take(Object key) {
+        T resource;
+        synchronized (this) {
+            resource = idle.remove(key);
+        }
+        if (resource != null) {
+            statistics.hit();
+        } else {
+            statistics.miss();
+        }
+        return resource;
+    }
+
+    /**
+     * Offer an object which is no longer used back to the cache.
+     *
+     * @return false if the object has not been cached and must be closed by the caller
+     */
+    public boolean offer(Object key, T resource) {
+        T evicted = null;
+        synchronized (this) {
+            if (closed || idle.containsKey(key)) {
+                return false;
+            }
+            idle.put(key, resource);
+            if (idle.size() > maxSize) {
+                Iterator<T> iterator = idle.values().iterator();
+                evicted = iterator.next();
+                iterator.remove();
+            }
+        }
+        if (evicted != null) {
+            statistics.evicted();
+            closeQuietly(evicted);
+        }
+        return true;
+    }
+
+    /**
+     * Close all the idle objects.  Objects offered afterwards are not cached.
+     */
+    public void close() {
+        List<T> resources;
+        synchronized (this) {
+            closed = true;
+            resources = new ArrayList<T>(idle.values());
+            idle.clear();
+        }
+        for (T resource : resources) {
+            closeQuietly(resource);
+        }
+    }
+
+    public synchronized int size() {
+        return idle.size();
+    }
+
+    protected abstract void close(T resource) throws JMSException;
+
+    private void closeQuietly(T resource) {
+        try {
+            close(resource);
+        } catch (JMSException e) {
+            LOG.trace("Ignoring exception on close of evicted " + resource + ": " + e, e);
+        }
+    }
+}
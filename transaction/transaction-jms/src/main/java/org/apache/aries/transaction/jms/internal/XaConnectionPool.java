@@ -39,7 +39,11 @@ public class XaConnectionPool extends ConnectionPool {
     private final TransactionManager transactionManager;
 
     public XaConnectionPool(Connection connection, TransactionManager transactionManager) {
-        super(connection);
+        this(connection, transactionManager, false);
+    }
+
+    public XaConnectionPool(Connection connection, TransactionManager transactionManager, boolean concurrentSessionPool) {
+        super(connection, concurrentSessionPool);
         this.transactionManager = transactionManager;
     }
 
@@ -69,7 +69,7 @@ public class XaPooledConnectionFactory extends PooledConnectionFactory implement
 
     @Override
     protected ConnectionPool createConnectionPool(Connection connection) {
-        return new XaConnectionPool(connection, getTransactionManager());
+        return new XaConnectionPool(connection, getTransactionManager(), isUseConcurrentPool());
     }
 
     @Override
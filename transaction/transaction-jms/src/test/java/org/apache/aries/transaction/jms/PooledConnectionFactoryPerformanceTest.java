@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.jms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class PooledConnectionFactoryPerformanceTest {
+
+    private static final String BROKER_URL = "vm://localhost?broker.persistent=false&broker.useJmx=false";
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 2000;
+    private static final int MAX_CONNECTIONS = 4;
+    private static final int TRIAL_COUNT = 3;
+
+    /**
+     * Compares the generic and the concurrent pools while many threads borrow
+     * and return connections and sessions from an in-memory broker.
+     */
+    @Test
+    @Ignore
+    public void testContendedBorrowAndReturn() throws Exception {
+        ConnectionFactory delegate = new ActiveMQConnectionFactory(BROKER_URL);
+        // Keeps the embedded broker running between the trials.
+        Connection broker = delegate.createConnection();
+        try {
+            for (int trial = 0; trial < TRIAL_COUNT; trial++) {
+                long genericTime = borrowAndReturn(delegate, false);
+                long concurrentTime = borrowAndReturn(delegate, true);
+                System.err.println("Trial " + trial + ": " + THREADS + " threads borrowing and returning "
+                        + ITERATIONS + " sessions each took " + genericTime + " ms with the generic pool, "
+                        + concurrentTime + " ms with the concurrent pool");
+            }
+        } finally {
+            broker.close();
+        }
+    }
+
+    private long borrowAndReturn(ConnectionFactory delegate, boolean useConcurrentPool) throws Exception {
+        final PooledConnectionFactory factory = new PooledConnectionFactory();
+        factory.setConnectionFactory(delegate);
+        factory.setUseConcurrentPool(useConcurrentPool);
+        factory.setMaxConnections(MAX_CONNECTIONS);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            Connection connection = factory.createConnection();
+                            try {
+                                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                                session.close();
+                            } finally {
+                                connection.close();
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            long begin = System.currentTimeMillis();
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            return System.currentTimeMillis() - begin;
+        } finally {
+            executor.shutdown();
+            factory.stop();
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.jms;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+
+import org.apache.aries.transaction.jms.internal.PooledConnection;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PooledConnectionFactoryTest {
+
+    @Test
+    public void testConcurrentPoolSelectsConnectionsRoundRobin() throws Exception {
+        final List<Connection> created = new ArrayList<Connection>();
+        ConnectionFactory delegate = proxy(ConnectionFactory.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("createConnection")) {
+                    Connection connection = proxy(Connection.class, null);
+                    created.add(connection);
+                    return connection;
+                }
+                return null;
+            }
+        });
+        PooledConnectionFactory factory = new PooledConnectionFactory();
+        factory.setConnectionFactory(delegate);
+        factory.setUseConcurrentPool(true);
+        factory.setMaxConnections(2);
+        try {
+            List<Connection> connections = new ArrayList<Connection>();
+            for (int i = 0; i < 4; i++) {
+                connections.add(((PooledConnection) factory.createConnection()).getConnection());
+            }
+            assertEquals(2, created.size());
+            assertEquals(2, factory.getNumConnections());
+            assertNotSame(connections.get(0), connections.get(1));
+            assertSame(connections.get(0), connections.get(2));
+            assertSame(connections.get(1), connections.get(3));
+        } finally {
+            factory.stop();
+        }
+        assertEquals(0, factory.getNumConnections());
+    }
+
+    private static <T> T proxy(Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (method.getName().equals("toString")) {
+                    return "proxy@" + Integer.toHexString(System.identityHashCode(proxy));
+                }
+                return handler != null ? handler.invoke(proxy, method, args) : null;
+            }
+        }));
+    }
+
+}
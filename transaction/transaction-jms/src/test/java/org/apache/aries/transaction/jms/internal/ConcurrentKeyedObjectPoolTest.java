@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.jms.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.pool.KeyedPoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConcurrentKeyedObjectPoolTest {
+
+    @Test
+    public void testBorrowAndReturn() throws Exception {
+        CountingFactory factory = new CountingFactory("a");
+        ConcurrentKeyedObjectPool<String, String> pool = new ConcurrentKeyedObjectPool<String, String>(factory);
+
+        String first = pool.borrowObject("key");
+        String second = pool.borrowObject("key");
+        assertNotSame(first, second);
+        assertEquals(2, pool.getNumActive("key"));
+        assertEquals(0, pool.getNumIdle("key"));
+
+        pool.returnObject("key", first);
+        assertEquals(1, pool.getNumActive("key"));
+        assertEquals(1, pool.getNumIdle("key"));
+        // idle objects are reused instead of making new ones
+        assertSame(first, pool.borrowObject("key"));
+        assertEquals(2, factory.made.size());
+
+        // keys are pooled separately
+        pool.borrowObject("other");
+        assertEquals(1, pool.getNumActive("other"));
+        assertEquals(3, pool.getNumActive());
+
+        pool.invalidateObject("key", second);
+        assertEquals(2, pool.getNumActive());
+        assertEquals(1, factory.destroyed.size());
+    }
+
+    @Test
+    public void testMaxIdle() throws Exception {
+        CountingFactory factory = new CountingFactory("a");
+        ConcurrentKeyedObjectPool<String, String> pool = new ConcurrentKeyedObjectPool<String, String>(factory);
+        pool.setMaxIdle(1);
+        String first = pool.borrowObject("key");
+        String second = pool.borrowObject("key");
+        pool.returnObject("key", first);
+        pool.returnObject("key", second);
+        assertEquals(1, pool.getNumIdle("key"));
+        assertEquals(0, pool.getNumActive("key"));
+        assertEquals(1, factory.destroyed.size());
+        assertSame(second, factory.destroyed.get(0));
+    }
+
+    @Test
+    public void testExhausted() throws Exception {
+        ConcurrentKeyedObjectPool<String, String> pool = new ConcurrentKeyedObjectPool<String, String>(new CountingFactory("a"));
+        pool.setMaxActive(1);
+        pool.setWhenExhaustedAction(GenericKeyedObjectPool.WHEN_EXHAUSTED_FAIL);
+        String borrowed = pool.borrowObject("key");
+        try {
+            pool.borrowObject("key");
+            fail("The pool is exhausted");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+
+        pool.setWhenExhaustedAction(GenericKeyedObjectPool.WHEN_EXHAUSTED_BLOCK);
+        pool.setMaxWait(10);
+        try {
+            pool.borrowObject("key");
+            fail("The pool is exhausted");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+
+        pool.returnObject("key", borrowed);
+        assertSame(borrowed, pool.borrowObject("key"));
+    }
+
+    @Test
+    public void testSetFactory() throws Exception {
+        CountingFactory first = new CountingFactory("a");
+        CountingFactory second = new CountingFactory("b");
+        ConcurrentKeyedObjectPool<String, String> pool = new ConcurrentKeyedObjectPool<String, String>(first);
+
+        String borrowed = pool.borrowObject("key");
+        try {
+            pool.setFactory(second);
+            fail("Objects are borrowed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        pool.returnObject("key", borrowed);
+        pool.setFactory(second);
+        // the idle objects of the previous factory are destroyed
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(1, first.destroyed.size());
+        assertTrue(pool.borrowObject("key").startsWith("b"));
+        assertEquals(1, second.made.size());
+
+        pool.close();
+        try {
+            pool.setFactory(first);
+            fail("The pool is closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static class CountingFactory implements KeyedPoolableObjectFactory<String, String> {
+
+        private final String prefix;
+        final List<String> made = new ArrayList<String>();
+        final List<String> destroyed = new ArrayList<String>();
+
+        CountingFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public synchronized String makeObject(String key) {
+            String obj = prefix + key + made.size();
+            made.add(obj);
+            return obj;
+        }
+
+        @Override
+        public synchronized void destroyObject(String key, String obj) {
+            destroyed.add(obj);
+        }
+
+        @Override
+        public boolean validateObject(String key, String obj) {
+            return true;
+        }
+
+        @Override
+        public void activateObject(String key, String obj) {
+        }
+
+        @Override
+        public void passivateObject(String key, String obj) {
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.jms.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SessionResourceCacheTest {
+
+    private final CacheStatistics statistics = new CacheStatistics();
+    private final List<String> closed = new ArrayList<String>();
+
+    @Test
+    public void testHitAndMiss() {
+        SessionResourceCache<String> cache = newCache(2);
+        assertNull(cache.take("queue"));
+        assertEquals(1, statistics.getMisses());
+
+        assertTrue(cache.offer("queue", "producer"));
+        // only one idle object is kept per key
+        assertFalse(cache.offer("queue", "other"));
+        assertEquals(1, cache.size());
+
+        assertSame("producer", cache.take("queue"));
+        assertEquals(1, statistics.getHits());
+        // the object is not shared while it is used
+        assertNull(cache.take("queue"));
+        assertEquals(2, statistics.getMisses());
+        assertEquals(0, cache.size());
+        assertTrue(closed.isEmpty());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        SessionResourceCache<String> cache = newCache(2);
+        cache.offer("a", "producer-a");
+        cache.offer("b", "producer-b");
+        cache.offer("c", "producer-c");
+        assertEquals(2, cache.size());
+        assertEquals(1, statistics.getEvictions());
+        assertEquals(1, closed.size());
+        assertEquals("producer-a", closed.get(0));
+        assertNull(cache.take("a"));
+    }
+
+    @Test
+    public void testClose() {
+        SessionResourceCache<String> cache = newCache(2);
+        cache.offer("a", "producer-a");
+        cache.offer("b", "producer-b");
+        cache.close();
+        assertEquals(0, cache.size());
+        assertEquals(2, closed.size());
+        assertTrue(closed.contains("producer-a"));
+        assertTrue(closed.contains("producer-b"));
+        // objects offered after the close must be closed by the caller
+        assertFalse(cache.offer("a", "producer-a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testProducerIsResetOnCheckIn() throws Exception {
+        SessionResourceCache<MessageProducer> cache = newProducerCache();
+        TestProducer delegate = new TestProducer();
+        PooledProducer producer = new PooledProducer(delegate, null, cache, "queue");
+        producer.setDisableMessageID(true);
+        producer.setDisableMessageTimestamp(true);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        producer.setPriority(9);
+        producer.setTimeToLive(1000);
+        delegate.setDisableMessageID(true);
+        delegate.setDisableMessageTimestamp(true);
+        delegate.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        delegate.setPriority(9);
+        delegate.setTimeToLive(1000);
+        producer.close();
+
+        assertSame(delegate, cache.take("queue"));
+        assertFalse(delegate.closed);
+        // the next client starts with the default settings
+        producer = new PooledProducer(delegate, null, cache, "queue");
+        assertFalse(producer.getDisableMessageID());
+        assertFalse(producer.getDisableMessageTimestamp());
+        assertEquals(Message.DEFAULT_DELIVERY_MODE, producer.getDeliveryMode());
+        assertEquals(Message.DEFAULT_PRIORITY, producer.getPriority());
+        assertEquals(Message.DEFAULT_TIME_TO_LIVE, producer.getTimeToLive());
+    }
+
+    @Test
+    public void testProducerIsClosedIfItCannotBeReset() throws Exception {
+        SessionResourceCache<MessageProducer> cache = newProducerCache();
+        TestProducer delegate = new TestProducer();
+        delegate.failReset = true;
+        new PooledProducer(delegate, null, cache, "queue").close();
+        assertTrue(delegate.closed);
+        assertEquals(0, cache.size());
+    }
+
+    private SessionResourceCache<MessageProducer> newProducerCache() {
+        return new SessionResourceCache<MessageProducer>(2, statistics) {
+            @Override
+            protected void close(MessageProducer resource) throws JMSException {
+                resource.close();
+            }
+        };
+    }
+
+    private SessionResourceCache<String> newCache(int size) {
+        return new SessionResourceCache<String>(size, statistics) {
+            @Override
+            protected void close(String resource) {
+                closed.add(resource);
+            }
+        };
+    }
+
+    private static class TestProducer implements MessageProducer {
+
+        private boolean disableMessageID;
+        private boolean disableMessageTimestamp;
+        private int deliveryMode = Message.DEFAULT_DELIVERY_MODE;
+        private int priority = Message.DEFAULT_PRIORITY;
+        private long timeToLive = Message.DEFAULT_TIME_TO_LIVE;
+        private boolean failReset;
+        private boolean closed;
+
+        public void setDisableMessageID(boolean value) throws JMSException {
+            if (failReset) {
+                throw new JMSException("The producer is broken");
+            }
+            disableMessageID = value;
+        }
+
+        public boolean getDisableMessageID() {
+            return disableMessageID;
+        }
+
+        public void setDisableMessageTimestamp(boolean value) {
+            disableMessageTimestamp = value;
+        }
+
+        public boolean getDisableMessageTimestamp() {
+            return disableMessageTimestamp;
+        }
+
+        public void setDeliveryMode(int deliveryMode) {
+            this.deliveryMode = deliveryMode;
+        }
+
+        public int getDeliveryMode() {
+            return deliveryMode;
+        }
+
+        public void setPriority(int defaultPriority) {
+            this.priority = defaultPriority;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public void setTimeToLive(long timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        public long getTimeToLive() {
+            return timeToLive;
+        }
+
+        public Destination getDestination() {
+            return null;
+        }
+
+        public void close() {
+            closed = true;
+        }
+
+        public void send(Message message) {
+        }
+
+        public void send(Message message, int deliveryMode, int priority, long timeToLive) {
+        }
+
+        public void send(Destination destination, Message message) {
+        }
+
+        public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive) {
+        }
+    }
+
+}
@@ -21,10 +21,18 @@ import org.apache.geronimo.transaction.manager.GeronimoTransactionManager;
 import org.apache.geronimo.transaction.manager.TransactionLog;
 import org.apache.geronimo.transaction.manager.XidFactory;
 
+import javax.transaction.HeuristicMixedException;
+import javax.transaction.HeuristicRollbackException;
+import javax.transaction.NotSupportedException;
+import javax.transaction.RollbackException;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
 import javax.transaction.xa.XAException;
 
 public class AriesTransactionManagerImpl extends GeronimoTransactionManager implements AriesTransactionManager {
 
+    private volatile TransactionMetrics metrics;
+
     public AriesTransactionManagerImpl() throws XAException {
     }
 
@@ -40,4 +48,62 @@ public class AriesTransactionManagerImpl extends GeronimoTransactionManager impl
         super(defaultTransactionTimeoutSeconds, xidFactory, transactionLog);
     }
 
+    /**
+     * Collect the metrics of the transactions begun from now on.  The transaction log
+     * given to the constructor should be a {@link MeteredTransactionLog} reporting to
+     * the same metrics to measure the prepare phase and the log writes.
+     */
+    public void setMetrics(TransactionMetrics metrics) {
+        if (metrics != null) {
+            metrics.setTransactionManager(this);
+        }
+        this.metrics = metrics;
+    }
+
+    public TransactionMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void begin() throws NotSupportedException, SystemException {
+        super.begin();
+        // the metrics ignore a transaction already timed by begin(long)
+        TransactionMetrics m = metrics;
+        if (m != null) {
+            Transaction transaction = getTransaction();
+            if (transaction != null) {
+                m.begin(transaction);
+            }
+        }
+    }
+
+    @Override
+    public Transaction begin(long transactionTimeoutMilliseconds) throws NotSupportedException, SystemException {
+        Transaction transaction = super.begin(transactionTimeoutMilliseconds);
+        TransactionMetrics m = metrics;
+        if (m != null && transaction != null) {
+            m.begin(transaction);
+        }
+        return transaction;
+    }
+
+    @Override
+    public void commit() throws HeuristicMixedException, HeuristicRollbackException, IllegalStateException, RollbackException, SecurityException, SystemException {
+        try {
+            super.commit();
+        } catch (HeuristicMixedException e) {
+            TransactionMetrics m = metrics;
+            if (m != null) {
+                m.heuristicMixed();
+            }
+            throw e;
+        } catch (HeuristicRollbackException e) {
+            TransactionMetrics m = metrics;
+            if (m != null) {
+                m.heuristicRollback();
+            }
+            throw e;
+        }
+    }
+
 }
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.internal;
+
+import org.objectweb.howl.log.GroupCommit;
+import org.objectweb.howl.log.Logger;
+
+public class HOWLLogStats implements HOWLLogStatsMBean {
+
+    private final Logger logger;
+    private final GroupCommit groupCommit;
+
+    public HOWLLogStats(Logger logger) {
+        this.logger = logger;
+        this.groupCommit = logger.getGroupCommit();
+    }
+
+    public long getSyncPutCount() {
+        return groupCommit.getSyncPutCount();
+    }
+
+    public long getAsyncPutCount() {
+        return groupCommit.getAsyncPutCount();
+    }
+
+    public long getBufferWaitCount() {
+        return groupCommit.getBufferWaitCount();
+    }
+
+    public long getBatchCount() {
+        return groupCommit.getBatchCount();
+    }
+
+    public double getAverageBatchSize() {
+        return groupCommit.getAverageBatchSize();
+    }
+
+    public int getMaxBatchSize() {
+        return groupCommit.getMaxBatchSize();
+    }
+
+    public boolean isAdaptiveGroupCommit() {
+        return groupCommit.isAdaptive();
+    }
+
+    public long getAdaptiveForceCount() {
+        return groupCommit.getAdaptiveForceCount();
+    }
+
+    public int getTargetBatchSize() {
+        return groupCommit.getTargetBatchSize();
+    }
+
+    public double getAverageForceLatencyMicros() {
+        return groupCommit.getAverageForceLatencyMicros();
+    }
+
+    public double getAverageArrivalIntervalMicros() {
+        return groupCommit.getAverageArrivalIntervalMicros();
+    }
+
+    public long[] getForceWaitBucketsMicros() {
+        return GroupCommit.LATENCY_BUCKETS.clone();
+    }
+
+    public long[] getForceWaitHistogram() {
+        return groupCommit.getForceWaitHistogram();
+    }
+
+    public long[] getBatchSizeBuckets() {
+        return GroupCommit.BATCH_SIZE_BUCKETS.clone();
+    }
+
+    public long[] getBatchSizeHistogram() {
+        return groupCommit.getBatchSizeHistogram();
+    }
+
+    public String getStats() {
+        return logger.getStats();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.internal;
+
+/**
+ * Group commit statistics of the HOWL transaction log.
+ *
+ * Histograms are returned as bucket counts, the bounds of the buckets
+ * being given by {@link #getForceWaitBucketsMicros()} and
+ * {@link #getBatchSizeBuckets()}, the last count being for values above
+ * the last bound.
+ */
+public interface HOWLLogStatsMBean {
+
+    long getSyncPutCount();
+
+    long getAsyncPutCount();
+
+    long getBufferWaitCount();
+
+    long getBatchCount();
+
+    double getAverageBatchSize();
+
+    int getMaxBatchSize();
+
+    boolean isAdaptiveGroupCommit();
+
+    long getAdaptiveForceCount();
+
+    int getTargetBatchSize();
+
+    double getAverageForceLatencyMicros();
+
+    double getAverageArrivalIntervalMicros();
+
+    long[] getForceWaitBucketsMicros();
+
+    long[] getForceWaitHistogram();
+
+    long[] getBatchSizeBuckets();
+
+    long[] getBatchSizeHistogram();
+
+    String getStats();
+}
@@ -0,0 +1,626 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import javax.transaction.xa.Xid;
+
+import org.apache.geronimo.transaction.manager.LogException;
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+
+/**
+ * A transaction log journal made of pre-allocated, memory-mapped segment files.
+ *
+ * <p>Prepare records are appended to the current segment and made durable with a single
+ * force of the mapped segment for all the records appended since the previous force, the
+ * first waiting thread forcing on behalf of the others.  Commit and rollback records are
+ * not forced, as for the HOWL log.</p>
+ *
+ * <p>Segments are recycled oldest first, once they are full and all the transactions they
+ * prepared are completed, since the commit and rollback records of a segment may complete
+ * transactions prepared in older segments.  So that a long running transaction does not keep
+ * all the newer segments, the pending prepare records of the oldest segment are copied to the
+ * current segment when a new segment is started, provided they are few.  Recovery scans all
+ * segments, each record being protected by a checksum which includes the segment id so that
+ * stale records of a recycled segment are ignored.</p>
+ *
+ * <p>Segment layout: magic, version, segment id, followed by records made of the payload
+ * length, the record id, the record type, the payload and the checksum.</p>
+ */
+public class JournalLog implements TransactionLog {
+
+    public static final String EXTENSION = "journal";
+
+    private static final int MAGIC = 0x4a524e4c; // JRNL
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 13;
+    private static final int RECORD_OVERHEAD = RECORD_HEADER_SIZE + 4;
+    private static final int ALLOCATION_CHUNK = 64 * 1024;
+
+    private static final byte PREPARE = 1;
+    private static final byte COMMIT = 2;
+    private static final byte ROLLBACK = 3;
+
+    private final File directory;
+    private final String name;
+    private final int segmentSize;
+    private final int spareSegments;
+    private final Pattern segmentPattern;
+    private final Pattern sparePattern;
+
+    private final Object appendLock = new Object();
+    private final Object forceLock = new Object();
+
+    // guarded by appendLock
+    private Segment current;
+    private long nextSegmentId = 1;
+    private long nextSpareId = 1;
+    private long lastRecordId;
+    private long appendedBytes;
+    private final LinkedList<File> spares = new LinkedList<File>();
+    // full segments not yet recycled, oldest first
+    private final LinkedList<Segment> retained = new LinkedList<Segment>();
+    private final CRC32 crc = new CRC32();
+    private final byte[] scratch = new byte[17];
+
+    // guarded by forceLock
+    private boolean forcing;
+    private long forcedRecordId;
+    private long forcedBytes;
+
+    // prepare record id -> segment holding the record, for all transactions not yet completed,
+    // updated with appendLock held
+    private final ConcurrentMap<Long, Segment> pending = new ConcurrentHashMap<Long, Segment>();
+    // transactions found in the journal at startup and not yet completed
+    private final Map<Long, PreparedRecord> recovered = Collections.synchronizedMap(new LinkedHashMap<Long, PreparedRecord>());
+
+    private final AtomicLong forceCount = new AtomicLong();
+    private final AtomicLong forceTime = new AtomicLong();
+    private final AtomicLong forceBytes = new AtomicLong();
+    private final AtomicLong prepareCount = new AtomicLong();
+    private final AtomicLong segmentCount = new AtomicLong();
+    private final AtomicLong recycledCount = new AtomicLong();
+    private final AtomicLong copiedCount = new AtomicLong();
+
+    private volatile boolean started;
+
+    /**
+     * @param directory directory holding the segment files
+     * @param name prefix of the segment file names
+     * @param segmentSize size of each segment in bytes
+     * @param spareSegments number of free segments kept allocated for reuse
+     */
+    public JournalLog(File directory, String name, int segmentSize, int spareSegments) {
+        if (segmentSize < SEGMENT_HEADER_SIZE + ALLOCATION_CHUNK) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = segmentSize;
+        this.spareSegments = spareSegments;
+        this.segmentPattern = Pattern.compile(Pattern.quote(name) + "_(\\d+)\\." + EXTENSION);
+        this.sparePattern = Pattern.compile(Pattern.quote(name) + "_spare_(\\d+)\\." + EXTENSION);
+    }
+
+    public void doStart() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory);
+        }
+        final Map<Long, File> files = new TreeMap<Long, File>();
+        directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String file) {
+                Matcher matcher = segmentPattern.matcher(file);
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), new File(dir, file));
+                } else {
+                    matcher = sparePattern.matcher(file);
+                    if (matcher.matches()) {
+                        spares.add(new File(dir, file));
+                        nextSpareId = Math.max(nextSpareId, Long.parseLong(matcher.group(1)) + 1);
+                    }
+                }
+                return false;
+            }
+        });
+
+        synchronized (appendLock) {
+            // oldest first, so that later records override earlier ones
+            for (Map.Entry<Long, File> entry : files.entrySet()) {
+                long id = entry.getKey();
+                nextSegmentId = Math.max(nextSegmentId, id + 1);
+                Segment segment = new Segment(id, entry.getValue());
+                if (scan(segment)) {
+                    retained.add(segment);
+                }
+            }
+            releaseSegments();
+            while (spares.size() < spareSegments) {
+                File file = new File(directory, name + "_spare_" + nextSpareId++ + "." + EXTENSION);
+                allocate(file);
+                spares.add(file);
+            }
+            current = createSegment();
+        }
+        forcedRecordId = lastRecordId;
+        started = true;
+    }
+
+    public void doStop() throws IOException {
+        started = false;
+        synchronized (appendLock) {
+            if (current != null) {
+                current.buffer.force();
+                current.close();
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a segment found at startup.
+     *
+     * @return false if the file is not a valid segment and has been added to the spares
+     */
+    private boolean scan(Segment segment) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(segment.file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < SEGMENT_HEADER_SIZE || buffer.getInt() != MAGIC
+                    || buffer.getInt() != VERSION || buffer.getLong() != segment.id) {
+                spares.add(segment.file);
+                return false;
+            }
+            while (buffer.remaining() >= RECORD_OVERHEAD) {
+                int length = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining() - RECORD_HEADER_SIZE) {
+                    break;
+                }
+                long id = buffer.getLong();
+                byte type = buffer.get();
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                if (buffer.getInt() != checksum(segment.id, id, type, payload)) {
+                    break;
+                }
+                lastRecordId = Math.max(lastRecordId, id);
+                if (type == PREPARE) {
+                    // a prepare record copied from an older segment replaces the original one
+                    Segment previous = pending.put(id, segment);
+                    if (previous != null) {
+                        previous.prepared.remove(id);
+                    }
+                    segment.prepared.put(id, payload);
+                    recovered.put(id, PreparedRecord.read(payload));
+                } else if (type == COMMIT || type == ROLLBACK) {
+                    long preparedId = ByteBuffer.wrap(payload).getLong();
+                    Segment prepared = pending.remove(preparedId);
+                    if (prepared != null) {
+                        prepared.prepared.remove(preparedId);
+                    }
+                    recovered.remove(preparedId);
+                }
+            }
+            return true;
+        } finally {
+            raf.close();
+        }
+    }
+
+    public void begin(Xid xid) throws LogException {
+    }
+
+    public Object prepare(Xid xid, List<? extends TransactionBranchInfo> branches) throws LogException {
+        byte[] payload = PreparedRecord.write(xid, branches);
+        long id = append(PREPARE, payload);
+        force(id);
+        prepareCount.incrementAndGet();
+        return id;
+    }
+
+    public void commit(Xid xid, Object logMark) throws LogException {
+        complete(COMMIT, logMark);
+    }
+
+    public void rollback(Xid xid, Object logMark) throws LogException {
+        complete(ROLLBACK, logMark);
+    }
+
+    private void complete(byte type, Object logMark) throws LogException {
+        if (!(logMark instanceof Long)) {
+            return;
+        }
+        Long preparedId = (Long) logMark;
+        // the prepare record must not be copied once the completion record is written
+        synchronized (appendLock) {
+            append(type, ByteBuffer.allocate(8).putLong(preparedId).array());
+            recovered.remove(preparedId);
+            Segment segment = pending.remove(preparedId);
+            if (segment != null) {
+                segment.prepared.remove(preparedId);
+                releaseSegments();
+            }
+        }
+    }
+
+    public Collection<Recovery.XidBranchesPair> recover(XidFactory xidFactory) throws LogException {
+        List<Recovery.XidBranchesPair> result = new ArrayList<Recovery.XidBranchesPair>();
+        synchronized (recovered) {
+            for (Map.Entry<Long, PreparedRecord> entry : recovered.entrySet()) {
+                result.add(entry.getValue().toXidBranchesPair(xidFactory, entry.getKey()));
+            }
+        }
+        return result;
+    }
+
+    private long append(byte type, byte[] payload) throws LogException {
+        int size = RECORD_OVERHEAD + payload.length;
+        if (size > segmentSize - SEGMENT_HEADER_SIZE) {
+            throw new LogException("Record of " + size + " bytes exceeds the journal segment size");
+        }
+        synchronized (appendLock) {
+            if (!started) {
+                throw new LogException("Journal is closed");
+            }
+            try {
+                if (current.buffer.remaining() < size) {
+                    Segment previous = current;
+                    current = createSegment();
+                    // records of the previous segment must be durable before later ones are considered forced
+                    previous.buffer.force();
+                    previous.close();
+                    retained.add(previous);
+                    if (copyPrepared(size)) {
+                        current.buffer.force();
+                    }
+                    releaseSegments();
+                }
+            } catch (IOException e) {
+                throw new LogException("Unable to allocate a new journal segment", e);
+            }
+            long id = ++lastRecordId;
+            write(type, id, payload);
+            appendedBytes += size;
+            return id;
+        }
+    }
+
+    // must be called with appendLock held
+    private void write(byte type, long id, byte[] payload) {
+        MappedByteBuffer buffer = current.buffer;
+        buffer.putInt(payload.length);
+        buffer.putLong(id);
+        buffer.put(type);
+        buffer.put(payload);
+        buffer.putInt(checksum(current.id, id, type, payload));
+        if (type == PREPARE) {
+            current.prepared.put(id, payload);
+            pending.put(id, current);
+        }
+    }
+
+    /**
+     * Copies the pending prepare records of the oldest segment to the new current segment,
+     * provided they take at most a quarter of it, so that the oldest segment can be recycled.
+     * Must be called with appendLock held.
+     *
+     * @param reserved bytes needed in the current segment by the record being appended
+     * @return whether records were copied
+     */
+    private boolean copyPrepared(int reserved) {
+        Segment oldest = retained.getFirst();
+        if (oldest.prepared.isEmpty()) {
+            return false;
+        }
+        int bytes = 0;
+        for (byte[] payload : oldest.prepared.values()) {
+            bytes += RECORD_OVERHEAD + payload.length;
+        }
+        if (bytes > (current.buffer.remaining() - reserved) / 4) {
+            return false;
+        }
+        for (Map.Entry<Long, byte[]> entry : oldest.prepared.entrySet()) {
+            // the record keeps its id, which is the log mark held by the transaction
+            write(PREPARE, entry.getKey(), entry.getValue());
+        }
+        copiedCount.addAndGet(oldest.prepared.size());
+        oldest.prepared.clear();
+        return true;
+    }
+
+    /**
+     * Makes the given record durable.  A single thread forces the current segment
+     * for all the records appended so far while the others wait for it.
+     */
+    private void force(long id) throws LogException {
+        synchronized (forceLock) {
+            while (forcing) {
+                try {
+                    forceLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new LogException("Interrupted while waiting for the journal to be forced", e);
+                }
+            }
+            if (forcedRecordId >= id) {
+                return;
+            }
+            forcing = true;
+        }
+        long upTo = forcedRecordId;
+        long bytes = forcedBytes;
+        try {
+            Segment segment;
+            synchronized (appendLock) {
+                upTo = lastRecordId;
+                bytes = appendedBytes;
+                segment = current;
+            }
+            long start = System.nanoTime();
+            segment.buffer.force();
+            forceTime.addAndGet(System.nanoTime() - start);
+            forceCount.incrementAndGet();
+            forceBytes.addAndGet(bytes - forcedBytes);
+        } finally {
+            synchronized (forceLock) {
+                forcedRecordId = upTo;
+                forcedBytes = bytes;
+                forcing = false;
+                forceLock.notifyAll();
+            }
+        }
+    }
+
+    // must be called with appendLock held
+    private Segment createSegment() throws IOException {
+        long id = nextSegmentId++;
+        File file = new File(directory, name + "_" + id + "." + EXTENSION);
+        File spare = spares.poll();
+        if (spare == null || !spare.renameTo(file)) {
+            allocate(file);
+        } else {
+            recycledCount.incrementAndGet();
+        }
+        Segment segment = new Segment(id, file);
+        segment.open(segmentSize);
+        segment.buffer.putInt(MAGIC);
+        segment.buffer.putInt(VERSION);
+        segment.buffer.putLong(id);
+        segmentCount.incrementAndGet();
+        return segment;
+    }
+
+    /**
+     * Recycles the oldest full segments with no pending transactions, stopping at the first
+     * one which still has some since newer segments may complete its transactions.
+     * Must be called with appendLock held.
+     */
+    private void releaseSegments() {
+        while (!retained.isEmpty() && retained.getFirst().prepared.isEmpty()) {
+            release(retained.removeFirst());
+        }
+    }
+
+    // must be called with appendLock held
+    private void release(Segment segment) {
+        if (spares.size() < spareSegments) {
+            File spare = new File(directory, name + "_spare_" + nextSpareId++ + "." + EXTENSION);
+            if (segment.file.renameTo(spare)) {
+                spares.add(spare);
+                return;
+            }
+        }
+        segment.file.delete();
+    }
+
+    /**
+     * Writes the whole file so that its blocks are allocated before it is mapped.
+     */
+    private void allocate(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer zeros = ByteBuffer.allocateDirect(ALLOCATION_CHUNK);
+            for (long position = 0; position < segmentSize; position += ALLOCATION_CHUNK) {
+                zeros.clear();
+                zeros.limit((int) Math.min(ALLOCATION_CHUNK, segmentSize - position));
+                while (zeros.hasRemaining()) {
+                    channel.write(zeros, position + zeros.position());
+                }
+            }
+            channel.force(true);
+        } finally {
+            raf.close();
+        }
+    }
+
+    // must be called with appendLock held, or from doStart
+    private int checksum(long segmentId, long id, byte type, byte[] payload) {
+        ByteBuffer.wrap(scratch).putLong(segmentId).putLong(id).put(type);
+        crc.reset();
+        crc.update(scratch, 0, scratch.length);
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    public String getXMLStats() {
+        return "<JournalLog>"
+                + "\n  <segments>" + segmentCount.get() + "</segments>"
+                + "\n  <recycledSegments>" + recycledCount.get() + "</recycledSegments>"
+                + "\n  <retainedSegments>" + getRetainedSegments() + "</retainedSegments>"
+                + "\n  <copiedPrepares>" + copiedCount.get() + "</copiedPrepares>"
+                + "\n  <pendingTransactions>" + pending.size() + "</pendingTransactions>"
+                + "\n  <prepares>" + prepareCount.get() + "</prepares>"
+                + "\n  <forces>" + forceCount.get() + "</forces>"
+                + "\n  <averageForceTimeMicros>" + getAverageForceTime() + "</averageForceTimeMicros>"
+                + "\n  <averageBytesPerForce>" + getAverageBytesPerForce() + "</averageBytesPerForce>"
+                + "\n</JournalLog>";
+    }
+
+    /**
+     * @return the average time of a force in microseconds
+     */
+    public int getAverageForceTime() {
+        long count = forceCount.get();
+        return count > 0 ? (int) (forceTime.get() / count / 1000) : 0;
+    }
+
+    public int getAverageBytesPerForce() {
+        long count = forceCount.get();
+        return count > 0 ? (int) (forceBytes.get() / count) : 0;
+    }
+
+    /**
+     * @return the number of full segments which cannot be recycled yet
+     */
+    public int getRetainedSegments() {
+        synchronized (appendLock) {
+            return retained.size();
+        }
+    }
+
+    private static final class Segment {
+
+        final long id;
+        final File file;
+        // payloads of the pending prepare records held by the segment, guarded by appendLock
+        final Map<Long, byte[]> prepared = new LinkedHashMap<Long, byte[]>();
+        RandomAccessFile raf;
+        MappedByteBuffer buffer;
+
+        Segment(long id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        void open(int size) throws IOException {
+            raf = new RandomAccessFile(file, "rw");
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        void close() throws IOException {
+            // the mapping stays valid until the buffer is garbage collected
+            raf.close();
+        }
+    }
+
+    /**
+     * Transaction branches as written by a prepare record.
+     */
+    private static final class PreparedRecord {
+
+        final int formatId;
+        final byte[] globalId;
+        final byte[] branchQualifier;
+        final byte[][] branchQualifiers;
+        final String[] resourceNames;
+
+        PreparedRecord(int formatId, byte[] globalId, byte[] branchQualifier, byte[][] branchQualifiers, String[] resourceNames) {
+            this.formatId = formatId;
+            this.globalId = globalId;
+            this.branchQualifier = branchQualifier;
+            this.branchQualifiers = branchQualifiers;
+            this.resourceNames = resourceNames;
+        }
+
+        static byte[] write(Xid xid, List<? extends TransactionBranchInfo> branches) throws LogException {
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
+                DataOutputStream out = new DataOutputStream(baos);
+                out.writeInt(xid.getFormatId());
+                writeBytes(out, xid.getGlobalTransactionId());
+                writeBytes(out, xid.getBranchQualifier());
+                out.writeInt(branches.size());
+                for (TransactionBranchInfo branch : branches) {
+                    writeBytes(out, branch.getBranchXid().getBranchQualifier());
+                    out.writeUTF(branch.getResourceName());
+                }
+                out.flush();
+                return baos.toByteArray();
+            } catch (IOException e) {
+                throw new LogException(e);
+            }
+        }
+
+        static PreparedRecord read(byte[] payload) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            int formatId = in.readInt();
+            byte[] globalId = readBytes(in);
+            byte[] branchQualifier = readBytes(in);
+            int count = in.readInt();
+            byte[][] branchQualifiers = new byte[count][];
+            String[] resourceNames = new String[count];
+            for (int i = 0; i < count; i++) {
+                branchQualifiers[i] = readBytes(in);
+                resourceNames[i] = in.readUTF();
+            }
+            return new PreparedRecord(formatId, globalId, branchQualifier, branchQualifiers, resourceNames);
+        }
+
+        Recovery.XidBranchesPair toXidBranchesPair(XidFactory xidFactory, long mark) {
+            Xid xid = xidFactory.recover(formatId, globalId, branchQualifier);
+            Recovery.XidBranchesPair pair = new Recovery.XidBranchesPair(xid, mark);
+            for (int i = 0; i < branchQualifiers.length; i++) {
+                Xid branchXid = xidFactory.recover(formatId, globalId, branchQualifiers[i]);
+                pair.addBranch(new TransactionBranchInfoImpl(branchXid, resourceNames[i]));
+            }
+            return pair;
+        }
+
+        private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+
+        private static byte[] readBytes(DataInputStream in) throws IOException {
+            byte[] bytes = new byte[in.readUnsignedShort()];
+            in.readFully(bytes);
+            return bytes;
+        }
+    }
+
+}
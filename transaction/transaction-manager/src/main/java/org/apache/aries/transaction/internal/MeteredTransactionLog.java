@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.internal;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.transaction.xa.Xid;
+
+import org.apache.geronimo.transaction.manager.LogException;
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+
+/**
+ * A transaction log which reports the time spent writing to another log to the
+ * {@link TransactionMetrics}.
+ */
+public class MeteredTransactionLog implements TransactionLog {
+
+    private final TransactionLog delegate;
+    private final TransactionMetrics metrics;
+
+    public MeteredTransactionLog(TransactionLog delegate, TransactionMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    public TransactionLog getDelegate() {
+        return delegate;
+    }
+
+    public void begin(Xid xid) throws LogException {
+        delegate.begin(xid);
+    }
+
+    public Object prepare(Xid xid, List<? extends TransactionBranchInfo> branches) throws LogException {
+        metrics.prepared(branches.size());
+        long start = System.nanoTime();
+        try {
+            return delegate.prepare(xid, branches);
+        } finally {
+            metrics.logWritten(System.nanoTime() - start);
+        }
+    }
+
+    public void commit(Xid xid, Object logMark) throws LogException {
+        long start = System.nanoTime();
+        try {
+            delegate.commit(xid, logMark);
+        } finally {
+            metrics.logWritten(System.nanoTime() - start);
+        }
+    }
+
+    public void rollback(Xid xid, Object logMark) throws LogException {
+        long start = System.nanoTime();
+        try {
+            delegate.rollback(xid, logMark);
+        } finally {
+            metrics.logWritten(System.nanoTime() - start);
+        }
+    }
+
+    public Collection<Recovery.XidBranchesPair> recover(XidFactory xidFactory) throws LogException {
+        return delegate.recover(xidFactory);
+    }
+
+    public String getXMLStats() {
+        return delegate.getXMLStats();
+    }
+
+    public int getAverageForceTime() {
+        return delegate.getAverageForceTime();
+    }
+
+    public int getAverageBytesPerForce() {
+        return delegate.getAverageBytesPerForce();
+    }
+}
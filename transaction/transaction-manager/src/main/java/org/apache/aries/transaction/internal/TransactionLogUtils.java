@@ -57,6 +57,11 @@ public class TransactionLogUtils {
      */
     public static boolean copyActiveTransactions(Dictionary<String, Object> oldConfiguration, Dictionary<String, ?> newConfiguration)
             throws ConfigurationException, IOException {
+        if (!LOG_TYPE_HOWL.equals(getString(newConfiguration, LOG_TYPE, LOG_TYPE_HOWL))
+                || (oldConfiguration != null && !LOG_TYPE_HOWL.equals(getString(oldConfiguration, LOG_TYPE, LOG_TYPE_HOWL)))) {
+            // only HOWL logs can be converted
+            return false;
+        }
         if (oldConfiguration == null) {
             oldConfiguration = new Hashtable<String, Object>();
         }
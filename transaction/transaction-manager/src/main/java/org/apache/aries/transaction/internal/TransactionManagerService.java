@@ -17,8 +17,10 @@
 package org.apache.aries.transaction.internal;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Dictionary;
+import java.util.Hashtable;
 import java.util.List;
 
 import javax.transaction.TransactionManager;
@@ -32,6 +34,9 @@ import org.apache.geronimo.transaction.log.UnrecoverableLog;
 import org.apache.geronimo.transaction.manager.RecoverableTransactionManager;
 import org.apache.geronimo.transaction.manager.TransactionLog;
 import org.apache.geronimo.transaction.manager.XidFactory;
+import org.objectweb.howl.log.LogConfigurationException;
+import org.objectweb.howl.log.Logger;
+import org.objectweb.howl.log.xa.XALogger;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.cm.ConfigurationException;
@@ -44,6 +49,7 @@ public class TransactionManagerService {
     public static final String TRANSACTION_TIMEOUT = "aries.transaction.timeout";
     public static final String RECOVERABLE = "aries.transaction.recoverable";
     public static final String TMID = "aries.transaction.tmid";
+    public static final String LOG_TYPE = "aries.transaction.log.type";
     public static final String HOWL_BUFFER_CLASS_NAME = "aries.transaction.howl.bufferClassName";
     public static final String HOWL_BUFFER_SIZE = "aries.transaction.howl.bufferSize";
     public static final String HOWL_CHECKSUM_ENABLED = "aries.transaction.howl.checksumEnabled";
@@ -58,6 +64,22 @@ public class TransactionManagerService {
     public static final String HOWL_THREADS_WAITING_FORCE_THRESHOLD = "aries.transaction.howl.threadsWaitingForceThreshold";
     public static final String HOWL_LOG_FILE_DIR = "aries.transaction.howl.logFileDir";
     public static final String HOWL_FLUSH_PARTIAL_BUFFERS = "aries.transaction.flushPartialBuffers";
+    public static final String HOWL_ADAPTIVE_GROUP_COMMIT = "aries.transaction.howl.adaptiveGroupCommit";
+    public static final String HOWL_GROUP_COMMIT_MAX_DELAY = "aries.transaction.howl.groupCommitMaxDelayMicros";
+
+    public static final String JOURNAL_LOG_FILE_DIR = "aries.transaction.journal.logFileDir";
+    public static final String JOURNAL_LOG_FILE_NAME = "aries.transaction.journal.logFileName";
+    public static final String JOURNAL_SEGMENT_SIZE = "aries.transaction.journal.segmentSize";
+    public static final String JOURNAL_SPARE_SEGMENTS = "aries.transaction.journal.spareSegments";
+
+    public static final String METRICS_ENABLED = "aries.transaction.metrics";
+    public static final String SLOW_TRANSACTION_THRESHOLD = "aries.transaction.slowThresholdMillis";
+
+    public static final String LOG_TYPE_HOWL = "howl";
+    public static final String LOG_TYPE_JOURNAL = "journal";
+
+    public static final String HOWL_STATS_OBJECT_NAME = "org.apache.aries.transaction:type=log,name=howl";
+    public static final String METRICS_OBJECT_NAME = "org.apache.aries.transaction:type=manager,name=metrics";
 
     public static final int DEFAULT_TRANSACTION_TIMEOUT = 600; // 600 seconds -> 10 minutes
     public static final boolean DEFAULT_RECOVERABLE = false;   // not recoverable by default
@@ -71,7 +93,10 @@ public class TransactionManagerService {
     private boolean useSpring;
     private AriesTransactionManagerImpl transactionManager;
     private TransactionLog transactionLog;
+    private TransactionMetrics metrics;
     private ServiceRegistration<?> serviceRegistration;
+    private ServiceRegistration<?> statsRegistration;
+    private ServiceRegistration<?> metricsRegistration;
 
     public TransactionManagerService(String pid, Dictionary properties, BundleContext bundleContext) throws ConfigurationException {
         this.pid = pid;
@@ -88,17 +113,28 @@ public class TransactionManagerService {
         XidFactory xidFactory = new XidFactoryImpl(tmid.substring(0, Math.min(tmid.length(), 64)).getBytes());
         // Transaction log
         transactionLog = createTransactionLog(this.properties, xidFactory);
+        // Transaction metrics
+        int slowThreshold = getInt(this.properties, SLOW_TRANSACTION_THRESHOLD, 0);
+        if (slowThreshold < 0) {
+            throw new ConfigurationException(SLOW_TRANSACTION_THRESHOLD, "The slow transaction threshold must not be negative.");
+        }
+        TransactionLog managerLog = transactionLog;
+        if (getBool(this.properties, METRICS_ENABLED, false) || slowThreshold > 0) {
+            metrics = new TransactionMetrics(slowThreshold);
+            managerLog = new MeteredTransactionLog(transactionLog, metrics);
+        }
         // Create transaction manager
         try {
             try {
-                transactionManager = new SpringTransactionManagerCreator().create(transactionTimeout, xidFactory, transactionLog);
+                transactionManager = new SpringTransactionManagerCreator().create(transactionTimeout, xidFactory, managerLog);
                 useSpring = true;
             } catch (NoClassDefFoundError e) {
-                transactionManager = new AriesTransactionManagerImpl(transactionTimeout, xidFactory, transactionLog);
+                transactionManager = new AriesTransactionManagerImpl(transactionTimeout, xidFactory, managerLog);
             }
         } catch (XAException e) {
             throw new RuntimeException("An exception occurred during transaction recovery.", e);
         }
+        transactionManager.setMetrics(metrics);
     }
 
     public void start() throws Exception {
@@ -113,6 +149,17 @@ public class TransactionManagerService {
         }
         String[] ifar = clazzes.toArray(new String[clazzes.size()]);
         serviceRegistration = bundleContext.registerService(ifar, transactionManager, null);
+        if (transactionLog instanceof StatisticsHOWLLog) {
+            Logger logger = ((StatisticsHOWLLog) transactionLog).getLogger();
+            Hashtable<String, Object> props = new Hashtable<String, Object>();
+            props.put("jmx.objectname", HOWL_STATS_OBJECT_NAME);
+            statsRegistration = bundleContext.registerService(HOWLLogStatsMBean.class.getName(), new HOWLLogStats(logger), props);
+        }
+        if (metrics != null) {
+            Hashtable<String, Object> props = new Hashtable<String, Object>();
+            props.put("jmx.objectname", METRICS_OBJECT_NAME);
+            metricsRegistration = bundleContext.registerService(TransactionMetricsMBean.class.getName(), metrics, props);
+        }
     }
 
     public void close() throws Exception {
@@ -123,9 +170,25 @@ public class TransactionManagerService {
             //This can be safely ignored
           }
         }
+        if (statsRegistration != null) {
+            try {
+                statsRegistration.unregister();
+            } catch (IllegalStateException e) {
+                // This can be safely ignored
+            }
+        }
+        if (metricsRegistration != null) {
+            try {
+                metricsRegistration.unregister();
+            } catch (IllegalStateException e) {
+                // This can be safely ignored
+            }
+        }
       
         if (transactionLog instanceof HOWLLog) {
             ((HOWLLog) transactionLog).doStop();
+        } else if (transactionLog instanceof JournalLog) {
+            ((JournalLog) transactionLog).doStop();
         }
     }
 
@@ -163,7 +226,14 @@ public class TransactionManagerService {
 
     static TransactionLog createTransactionLog(Dictionary properties, XidFactory xidFactory) throws ConfigurationException {
         TransactionLog result = null;
-        if (getBool(properties, RECOVERABLE, DEFAULT_RECOVERABLE)) {
+        boolean recoverable = getBool(properties, RECOVERABLE, DEFAULT_RECOVERABLE);
+        String logType = getString(properties, LOG_TYPE, LOG_TYPE_HOWL);
+        if (!LOG_TYPE_HOWL.equals(logType) && !LOG_TYPE_JOURNAL.equals(logType)) {
+            throw new ConfigurationException(LOG_TYPE, "The transaction log type must be either " + LOG_TYPE_HOWL + " or " + LOG_TYPE_JOURNAL + ".");
+        }
+        if (recoverable && LOG_TYPE_JOURNAL.equals(logType)) {
+            result = createJournalLog(properties);
+        } else if (recoverable) {
             String bufferClassName = getString(properties, HOWL_BUFFER_CLASS_NAME, "org.objectweb.howl.log.BlockLogBuffer");
             int bufferSizeKBytes = getInt(properties, HOWL_BUFFER_SIZE, 4);
             if (bufferSizeKBytes < 1 || bufferSizeKBytes > 32) {
@@ -186,12 +256,17 @@ public class TransactionManagerService {
             }
             int threadsWaitingForceThreshold = getInt(properties, HOWL_THREADS_WAITING_FORCE_THRESHOLD, -1);
             boolean flushPartialBuffers = getBool(properties, HOWL_FLUSH_PARTIAL_BUFFERS, true);
+            boolean adaptiveGroupCommit = getBool(properties, HOWL_ADAPTIVE_GROUP_COMMIT, false);
+            int groupCommitMaxDelay = getInt(properties, HOWL_GROUP_COMMIT_MAX_DELAY, 1000);
+            if (adaptiveGroupCommit && groupCommitMaxDelay <= 0) {
+                throw new ConfigurationException(HOWL_GROUP_COMMIT_MAX_DELAY, "The group commit maximum delay must be greater than zero.");
+            }
             String logFileDir = getString(properties, HOWL_LOG_FILE_DIR, null);
             if (logFileDir == null || logFileDir.length() == 0 || !new File(logFileDir).isAbsolute()) {
                 throw new ConfigurationException(HOWL_LOG_FILE_DIR, "The log file directory must be set to an absolute directory.");
             }
             try {
-                result = new HOWLLog(bufferClassName,
+                result = new StatisticsHOWLLog(bufferClassName,
                         bufferSizeKBytes,
                         checksumEnabled,
                         adler32Checksum,
@@ -208,6 +283,9 @@ public class TransactionManagerService {
                         xidFactory,
                         null);
                 ((HOWLLog) result).doStart();
+                if (adaptiveGroupCommit) {
+                    ((StatisticsHOWLLog) result).getLogger().setAdaptiveGroupCommit(groupCommitMaxDelay);
+                }
             } catch (Exception e) {
                 // This should not really happen as we've checked properties earlier
                 throw new ConfigurationException(null, e.getMessage(), e);
@@ -219,6 +297,51 @@ public class TransactionManagerService {
         return result;
     }
 
+    static JournalLog createJournalLog(Dictionary properties) throws ConfigurationException {
+        String logFileDir = getString(properties, JOURNAL_LOG_FILE_DIR, getString(properties, HOWL_LOG_FILE_DIR, null));
+        if (logFileDir == null || logFileDir.length() == 0 || !new File(logFileDir).isAbsolute()) {
+            throw new ConfigurationException(JOURNAL_LOG_FILE_DIR, "The journal directory must be set to an absolute directory.");
+        }
+        String logFileName = getString(properties, JOURNAL_LOG_FILE_NAME, "transaction");
+        int segmentSizeKBytes = getInt(properties, JOURNAL_SEGMENT_SIZE, 16384);
+        if (segmentSizeKBytes < 128 || segmentSizeKBytes > 1024 * 1024) {
+            throw new ConfigurationException(JOURNAL_SEGMENT_SIZE, "The segment size must be between 128 KB and 1 GB.");
+        }
+        int spareSegments = getInt(properties, JOURNAL_SPARE_SEGMENTS, 2);
+        if (spareSegments < 0) {
+            throw new ConfigurationException(JOURNAL_SPARE_SEGMENTS, "The number of spare segments must not be negative.");
+        }
+        JournalLog result = new JournalLog(new File(logFileDir), logFileName, segmentSizeKBytes * 1024, spareSegments);
+        try {
+            result.doStart();
+        } catch (Exception e) {
+            throw new ConfigurationException(JOURNAL_LOG_FILE_DIR, e.getMessage(), e);
+        }
+        return result;
+    }
+
+    /**
+     * A HOWLLog giving access to its logger, which collects the group commit statistics.
+     */
+    static class StatisticsHOWLLog extends HOWLLog {
+
+        public StatisticsHOWLLog(String bufferClassName, int bufferSize, boolean checksumEnabled, boolean adler32Checksum,
+                                 int flushSleepTimeMilliseconds, String logFileDir, String logFileExt, String logFileName,
+                                 int maxBlocksPerFile, int maxBuffers, int maxLogFiles, int minBuffers,
+                                 int threadsWaitingForceThreshold, boolean flushPartialBuffers, XidFactory xidFactory,
+                                 File serverBaseDir) throws IOException, LogConfigurationException {
+            super(bufferClassName, bufferSize, checksumEnabled, adler32Checksum, flushSleepTimeMilliseconds,
+                  logFileDir, logFileExt, logFileName, maxBlocksPerFile, maxBuffers, maxLogFiles, minBuffers,
+                  threadsWaitingForceThreshold, flushPartialBuffers, xidFactory, serverBaseDir);
+        }
+
+        @Override
+        public XALogger getLogger() {
+            return super.getLogger();
+        }
+
+    }
+
     /**
      * We use an inner static class to decouple this class from the spring-tx classes
      * in order to not have NoClassDefFoundError if those are not present.
@@ -0,0 +1,376 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the metrics of the transactions begun by the transaction manager.
+ *
+ * <p>Each transaction is timed by a {@link Synchronization} registered when it begins.
+ * The commit starts when its beforeCompletion callback is invoked, the prepare phase ends
+ * when the transaction manager logs the prepare record, and the transaction ends when its
+ * afterCompletion callback is invoked, possibly on another thread.  The transaction log is
+ * timed by a {@link MeteredTransactionLog}, which attributes its writes to the transaction
+ * associated with the current thread by the transaction manager.</p>
+ *
+ * <p>Transactions taking longer than the slow transaction threshold are logged with the
+ * time spent in each phase.</p>
+ */
+public class TransactionMetrics implements TransactionMetricsMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionMetrics.class);
+
+    /**
+     * Upper bounds, in microseconds, of the latency histogram buckets.
+     */
+    public static final long[] LATENCY_BUCKETS = {
+        100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000, 10000000
+    };
+
+    private static final String[] STATUS_NAMES = {
+        "ACTIVE", "MARKED_ROLLBACK", "PREPARED", "COMMITTED", "ROLLEDBACK",
+        "UNKNOWN", "NO_TRANSACTION", "PREPARING", "COMMITTING", "ROLLING_BACK"
+    };
+
+    private final ConcurrentMap<Transaction, TransactionTimer> timers = new ConcurrentHashMap<Transaction, TransactionTimer>();
+    private volatile TransactionManager transactionManager;
+
+    private final AtomicLong begun = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong rolledBack = new AtomicLong();
+    private final AtomicLong unknownOutcome = new AtomicLong();
+    private final AtomicLong heuristicMixed = new AtomicLong();
+    private final AtomicLong heuristicRollback = new AtomicLong();
+    private final AtomicLong slow = new AtomicLong();
+    private final AtomicLong twoPhaseCommits = new AtomicLong();
+    private final AtomicLong enlistedResources = new AtomicLong();
+    private final Histogram durations = new Histogram();
+    private final Histogram prepares = new Histogram();
+    private final Histogram commits = new Histogram();
+    private final Histogram logWrites = new Histogram();
+
+    private volatile long slowThresholdNanos;
+
+    public TransactionMetrics(long slowThresholdMillis) {
+        setSlowTransactionThresholdMillis(slowThresholdMillis);
+    }
+
+    /**
+     * Set the transaction manager which associates the transactions being completed with
+     * the current thread.
+     */
+    void setTransactionManager(TransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Start timing a transaction which has just begun, unless it is already timed.
+     */
+    void begin(Transaction transaction) {
+        TransactionTimer timer = new TransactionTimer(transaction, slowThresholdNanos > 0);
+        if (timers.putIfAbsent(transaction, timer) != null) {
+            return;
+        }
+        begun.incrementAndGet();
+        try {
+            transaction.registerSynchronization(timer);
+        } catch (RollbackException e) {
+            timer.afterCompletion(Status.STATUS_ROLLEDBACK);
+        } catch (SystemException e) {
+            timer.afterCompletion(Status.STATUS_UNKNOWN);
+        }
+    }
+
+    void heuristicMixed() {
+        heuristicMixed.incrementAndGet();
+    }
+
+    void heuristicRollback() {
+        heuristicRollback.incrementAndGet();
+    }
+
+    /**
+     * Called by the transaction log when the prepare record of the transaction associated
+     * with the current thread is written, which ends the prepare phase.
+     */
+    void prepared(int branches) {
+        TransactionTimer timer = current();
+        if (timer != null) {
+            timer.prepared = System.nanoTime();
+            timer.branches = branches;
+        }
+    }
+
+    void logWritten(long nanos) {
+        logWrites.record(nanos);
+        TransactionTimer timer = current();
+        if (timer != null) {
+            timer.logNanos += nanos;
+        }
+    }
+
+    private TransactionTimer current() {
+        TransactionManager tm = transactionManager;
+        if (tm == null) {
+            return null;
+        }
+        try {
+            Transaction transaction = tm.getTransaction();
+            return transaction != null ? timers.get(transaction) : null;
+        } catch (SystemException e) {
+            return null;
+        }
+    }
+
+    private void completed(TransactionTimer timer, int status) {
+        long end = System.nanoTime();
+        timers.remove(timer.transaction, timer);
+        switch (status) {
+        case Status.STATUS_COMMITTED:
+            committed.incrementAndGet();
+            break;
+        case Status.STATUS_ROLLEDBACK:
+            rolledBack.incrementAndGet();
+            break;
+        default:
+            unknownOutcome.incrementAndGet();
+        }
+        long duration = end - timer.begin;
+        durations.record(duration);
+        long prepare = 0;
+        long commit = 0;
+        if (timer.prepared != 0) {
+            prepare = timer.prepared - timer.commit;
+            commit = end - timer.prepared;
+            twoPhaseCommits.incrementAndGet();
+            enlistedResources.addAndGet(timer.branches);
+            prepares.record(prepare);
+            commits.record(commit);
+        }
+        long threshold = slowThresholdNanos;
+        if (threshold > 0 && duration >= threshold) {
+            slow.incrementAndGet();
+            LOG.warn("Slow transaction {} begun by thread {} completed with status {} in {} ms"
+                    + " (prepare: {} ms for {} resources, commit: {} ms, log writes: {} ms)",
+                    new Object[] { timer.transaction, timer.thread, statusName(status), millis(duration),
+                                   millis(prepare), timer.branches, millis(commit), millis(timer.logNanos) });
+        }
+    }
+
+    private static String statusName(int status) {
+        return status >= 0 && status < STATUS_NAMES.length ? STATUS_NAMES[status] : String.valueOf(status);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    public long getBegunCount() {
+        return begun.get();
+    }
+
+    public long getActiveCount() {
+        return begun.get() - committed.get() - rolledBack.get() - unknownOutcome.get();
+    }
+
+    public long getCommittedCount() {
+        return committed.get();
+    }
+
+    public long getRolledBackCount() {
+        return rolledBack.get();
+    }
+
+    public long getTwoPhaseCommitCount() {
+        return twoPhaseCommits.get();
+    }
+
+    public long getHeuristicMixedCount() {
+        return heuristicMixed.get();
+    }
+
+    public long getHeuristicRollbackCount() {
+        return heuristicRollback.get();
+    }
+
+    public long getUnknownOutcomeCount() {
+        return unknownOutcome.get();
+    }
+
+    public long getSlowTransactionCount() {
+        return slow.get();
+    }
+
+    public long getSlowTransactionThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos);
+    }
+
+    public void setSlowTransactionThresholdMillis(long thresholdMillis) {
+        slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, thresholdMillis));
+    }
+
+    public double getAverageDurationMicros() {
+        return durations.getAverageMicros();
+    }
+
+    public long getMaxDurationMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(durations.max.get());
+    }
+
+    public double getAverageEnlistedResources() {
+        long count = twoPhaseCommits.get();
+        return count > 0 ? (double) enlistedResources.get() / count : 0;
+    }
+
+    public double getAveragePrepareMicrosPerResource() {
+        long resources = enlistedResources.get();
+        return resources > 0 ? prepares.total.get() / 1000.0 / resources : 0;
+    }
+
+    public long getLogWriteCount() {
+        return logWrites.count.get();
+    }
+
+    public double getAverageLogWriteMicros() {
+        return logWrites.getAverageMicros();
+    }
+
+    public long[] getLatencyBucketsMicros() {
+        return LATENCY_BUCKETS.clone();
+    }
+
+    public long[] getDurationHistogram() {
+        return durations.getCounts();
+    }
+
+    public long[] getPrepareHistogram() {
+        return prepares.getCounts();
+    }
+
+    public long[] getCommitHistogram() {
+        return commits.getCounts();
+    }
+
+    public long[] getLogWriteHistogram() {
+        return logWrites.getCounts();
+    }
+
+    public void reset() {
+        // active transactions are still counted when they complete
+        begun.set(getActiveCount());
+        committed.set(0);
+        rolledBack.set(0);
+        unknownOutcome.set(0);
+        heuristicMixed.set(0);
+        heuristicRollback.set(0);
+        slow.set(0);
+        twoPhaseCommits.set(0);
+        enlistedResources.set(0);
+        durations.reset();
+        prepares.reset();
+        commits.reset();
+        logWrites.reset();
+    }
+
+    private final class TransactionTimer implements Synchronization {
+
+        private final Transaction transaction;
+        private final String thread;
+        private final long begin = System.nanoTime();
+        private long commit;
+        private long prepared;
+        private int branches;
+        private long logNanos;
+
+        TransactionTimer(Transaction transaction, boolean trace) {
+            this.transaction = transaction;
+            this.thread = trace ? Thread.currentThread().getName() : null;
+        }
+
+        public void beforeCompletion() {
+            commit = System.nanoTime();
+        }
+
+        public void afterCompletion(int status) {
+            if (commit == 0) {
+                // rolled back without a commit attempt
+                commit = System.nanoTime();
+            }
+            completed(this, status);
+        }
+    }
+
+    private static final class Histogram {
+
+        private final AtomicLongArray counts = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS.length && micros > LATENCY_BUCKETS[bucket]) {
+                bucket++;
+            }
+            counts.incrementAndGet(bucket);
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+                // retry
+            }
+        }
+
+        double getAverageMicros() {
+            long n = count.get();
+            return n > 0 ? total.get() / 1000.0 / n : 0;
+        }
+
+        long[] getCounts() {
+            long[] result = new long[counts.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = counts.get(i);
+            }
+            return result;
+        }
+
+        void reset() {
+            for (int i = 0; i < counts.length(); i++) {
+                counts.set(i, 0);
+            }
+            count.set(0);
+            total.set(0);
+            max.set(0);
+        }
+    }
+}
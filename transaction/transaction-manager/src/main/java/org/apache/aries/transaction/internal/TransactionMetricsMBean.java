@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.internal;
+
+/**
+ * Counters and latency histograms of the transactions of the transaction manager.
+ *
+ * Histograms are returned as bucket counts, the bounds of the buckets being given
+ * by {@link #getLatencyBucketsMicros()}, the last count being for values above the
+ * last bound.  The prepare and commit phases and the enlisted resources are only
+ * measured for transactions completed with a two phase commit.
+ */
+public interface TransactionMetricsMBean {
+
+    long getBegunCount();
+
+    long getActiveCount();
+
+    long getCommittedCount();
+
+    long getRolledBackCount();
+
+    long getTwoPhaseCommitCount();
+
+    long getHeuristicMixedCount();
+
+    long getHeuristicRollbackCount();
+
+    long getUnknownOutcomeCount();
+
+    long getSlowTransactionCount();
+
+    long getSlowTransactionThresholdMillis();
+
+    void setSlowTransactionThresholdMillis(long thresholdMillis);
+
+    double getAverageDurationMicros();
+
+    long getMaxDurationMicros();
+
+    double getAverageEnlistedResources();
+
+    double getAveragePrepareMicrosPerResource();
+
+    long getLogWriteCount();
+
+    double getAverageLogWriteMicros();
+
+    long[] getLatencyBucketsMicros();
+
+    long[] getDurationHistogram();
+
+    long[] getPrepareHistogram();
+
+    long[] getCommitHistogram();
+
+    long[] getLogWriteHistogram();
+
+    void reset();
+}
@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.objectweb.howl.log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Group commit statistics and optional adaptive forcing for a {@link Logger}.
+ *
+ * <p>Statistics are collected for every record put to the log:
+ * <ul>
+ * <li>the time synchronous puts wait for their record to be forced to disk,</li>
+ * <li>the number of synchronous records forced together in each log block,</li>
+ * <li>the number of asynchronous puts which had to wait for a free log buffer.</li>
+ * </ul>
+ *
+ * <p>When adaptive group commit is enabled, a dedicated thread forces the current
+ * buffer instead of relying only on the fixed HOWL flush interval.  It estimates how
+ * many commits arrive during one force from the observed arrival rate and force
+ * latency, and waits for that many commits, or at most the configured delay, before
+ * forcing.  Under light load each commit is forced immediately, under heavy load
+ * commits are batched to make the best use of each force.
+ */
+public final class GroupCommit implements Runnable {
+
+    /**
+     * Upper bounds, in microseconds, of the force wait latency histogram buckets.
+     * The last bucket of the histogram counts the waits above the last bound.
+     */
+    public static final long[] LATENCY_BUCKETS = { 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000 };
+
+    /**
+     * Upper bounds of the batch size histogram buckets.
+     * The last bucket of the histogram counts the batches above the last bound.
+     */
+    public static final long[] BATCH_SIZE_BUCKETS = { 1, 2, 4, 8, 16, 32, 64, 128 };
+
+    /**
+     * Asynchronous puts blocking longer than this are waiting for a free buffer.
+     */
+    private static final long BUFFER_WAIT_THRESHOLD = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(100);
+
+    static final int MAX_TARGET = 256;
+
+    private static final double SMOOTHING = 0.2;
+
+    private final LogBufferManager bmgr;
+
+    private final AtomicLong syncPuts = new AtomicLong();
+    private final AtomicLong asyncPuts = new AtomicLong();
+    private final AtomicLong bufferWaits = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedRecords = new AtomicLong();
+    private final AtomicLong adaptiveForces = new AtomicLong();
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+    private final AtomicLongArray batchSizeHistogram = new AtomicLongArray(BATCH_SIZE_BUCKETS.length + 1);
+
+    // records forced in the current block, guarded by this
+    private int currentBsn = -1;
+    private int currentBatch;
+    private int maxBatchSize;
+
+    // adaptive forcing
+    private final AtomicLong arrivals = new AtomicLong();
+    private volatile long forcedArrivals;
+    private volatile long oldestPending;
+    private volatile long lastArrival;
+    private volatile double arrivalInterval;
+    private volatile double forceLatency;
+    private volatile int target = 1;
+    private volatile long maxDelay;
+    private volatile Thread forcer;
+
+    GroupCommit(LogBufferManager bmgr) {
+        this.bmgr = bmgr;
+    }
+
+    /**
+     * Enable adaptive forcing, or disable it if maxDelayMicros is not positive.
+     */
+    synchronized void setAdaptive(long maxDelayMicros, String name) {
+        maxDelay = TimeUnit.MICROSECONDS.toNanos(Math.max(0, maxDelayMicros));
+        if (maxDelay > 0 && forcer == null) {
+            forcedArrivals = arrivals.get();
+            Thread thread = new Thread(this, name);
+            thread.setDaemon(true);
+            forcer = thread;
+            thread.start();
+        } else if (maxDelay == 0 && forcer != null) {
+            stop();
+        }
+    }
+
+    synchronized void stop() {
+        Thread thread = forcer;
+        forcer = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public boolean isAdaptive() {
+        return forcer != null;
+    }
+
+    long putStarted(boolean sync) {
+        long now = System.nanoTime();
+        if (sync && forcer != null) {
+            long last = lastArrival;
+            lastArrival = now;
+            if (last != 0) {
+                arrivalInterval = smooth(arrivalInterval, now - last);
+            }
+            long pending = arrivals.incrementAndGet() - forcedArrivals;
+            if (pending == 1) {
+                oldestPending = now;
+            }
+            if (pending >= target) {
+                Thread thread = forcer;
+                if (thread != null) {
+                    LockSupport.unpark(thread);
+                }
+            }
+        }
+        return now;
+    }
+
+    void putCompleted(boolean sync, long start, long key) {
+        long elapsed = System.nanoTime() - start;
+        if (!sync) {
+            asyncPuts.incrementAndGet();
+            if (elapsed > BUFFER_WAIT_THRESHOLD) {
+                bufferWaits.incrementAndGet();
+            }
+            return;
+        }
+        if (key < 0) {
+            return;
+        }
+        syncPuts.incrementAndGet();
+        latencyHistogram.incrementAndGet(bucket(LATENCY_BUCKETS, TimeUnit.NANOSECONDS.toMicros(elapsed)));
+        int bsn = bmgr.bsnFromMark(key);
+        int completed = 0;
+        synchronized (this) {
+            if (bsn == currentBsn) {
+                currentBatch++;
+            } else if (bsn > currentBsn) {
+                completed = currentBatch;
+                currentBsn = bsn;
+                currentBatch = 1;
+            }
+            // records completing late for an older block were already counted with it
+        }
+        if (completed > 0) {
+            recordBatch(completed);
+        }
+    }
+
+    private void recordBatch(int size) {
+        batches.incrementAndGet();
+        batchedRecords.addAndGet(size);
+        batchSizeHistogram.incrementAndGet(bucket(BATCH_SIZE_BUCKETS, size));
+        synchronized (this) {
+            maxBatchSize = Math.max(maxBatchSize, size);
+        }
+    }
+
+    public void run() {
+        Thread current = Thread.currentThread();
+        while (forcer == current) {
+            long pending = arrivals.get() - forcedArrivals;
+            if (pending == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK);
+                continue;
+            }
+            long delay = delay(maxDelay, target, pending, (long) arrivalInterval);
+            long remaining = oldestPending + delay - System.nanoTime();
+            if (pending < target && remaining > 0) {
+                LockSupport.parkNanos(this, remaining);
+                continue;
+            }
+            force();
+        }
+    }
+
+    private void force() {
+        long upTo = arrivals.get();
+        long start = System.nanoTime();
+        try {
+            bmgr.forceCurrentBuffer();
+        } catch (Exception e) {
+            // the HOWL flush manager will force the buffer on its next cycle
+        }
+        forceLatency = smooth(forceLatency, System.nanoTime() - start);
+        forcedArrivals = upTo;
+        adaptiveForces.incrementAndGet();
+        target = target(forceLatency, arrivalInterval);
+    }
+
+    /**
+     * @return how long, in nanoseconds, the oldest pending commit waits for the
+     * commits expected to complete the batch, never longer than maxDelay
+     */
+    static long delay(long maxDelay, int target, long pending, long interval) {
+        return Math.min(maxDelay, Math.max(0, (target - pending) * interval));
+    }
+
+    /**
+     * @return the number of commits expected to arrive while the next force is in progress
+     */
+    static int target(double forceLatency, double arrivalInterval) {
+        if (arrivalInterval <= 0) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(MAX_TARGET, Math.round(forceLatency / arrivalInterval)));
+    }
+
+    private static double smooth(double average, long sample) {
+        return average == 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    private static int bucket(long[] bounds, long value) {
+        for (int i = 0; i < bounds.length; i++) {
+            if (value <= bounds[i]) {
+                return i;
+            }
+        }
+        return bounds.length;
+    }
+
+    private static long[] toArray(AtomicLongArray array) {
+        long[] result = new long[array.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = array.get(i);
+        }
+        return result;
+    }
+
+    public long getSyncPutCount() {
+        return syncPuts.get();
+    }
+
+    public long getAsyncPutCount() {
+        return asyncPuts.get();
+    }
+
+    public long getBufferWaitCount() {
+        return bufferWaits.get();
+    }
+
+    /**
+     * @return the number of completed log blocks containing synchronous records
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public double getAverageBatchSize() {
+        long count = batches.get();
+        return count > 0 ? (double) batchedRecords.get() / count : 0;
+    }
+
+    public synchronized int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getAdaptiveForceCount() {
+        return adaptiveForces.get();
+    }
+
+    /**
+     * @return the current number of commits the adaptive forcing waits for
+     */
+    public int getTargetBatchSize() {
+        return target;
+    }
+
+    public double getAverageForceLatencyMicros() {
+        return forceLatency / 1000;
+    }
+
+    public double getAverageArrivalIntervalMicros() {
+        return arrivalInterval / 1000;
+    }
+
+    public long[] getForceWaitHistogram() {
+        return toArray(latencyHistogram);
+    }
+
+    public long[] getBatchSizeHistogram() {
+        return toArray(batchSizeHistogram);
+    }
+
+    String getStats() {
+        StringBuilder stats = new StringBuilder("\n<GroupCommit adaptive='" + isAdaptive() + "'>");
+        stats.append("\n  <syncPuts>").append(getSyncPutCount()).append("</syncPuts>");
+        stats.append("\n  <asyncPuts>").append(getAsyncPutCount()).append("</asyncPuts>");
+        stats.append("\n  <bufferWaits>").append(getBufferWaitCount()).append("</bufferWaits>");
+        stats.append("\n  <batches>").append(getBatchCount()).append("</batches>");
+        stats.append("\n  <averageBatchSize>").append(getAverageBatchSize()).append("</averageBatchSize>");
+        stats.append("\n  <maxBatchSize>").append(getMaxBatchSize()).append("</maxBatchSize>");
+        stats.append("\n  <adaptiveForces>").append(getAdaptiveForceCount()).append("</adaptiveForces>");
+        stats.append("\n  <targetBatchSize>").append(getTargetBatchSize()).append("</targetBatchSize>");
+        appendHistogram(stats, "forceWaitMicros", LATENCY_BUCKETS, getForceWaitHistogram());
+        appendHistogram(stats, "batchSize", BATCH_SIZE_BUCKETS, getBatchSizeHistogram());
+        stats.append("\n</GroupCommit>");
+        return stats.toString();
+    }
+
+    private static void appendHistogram(StringBuilder stats, String name, long[] bounds, long[] counts) {
+        stats.append("\n  <").append(name).append(">");
+        for (int i = 0; i < counts.length; i++) {
+            stats.append("\n    <bucket le='").append(i < bounds.length ? String.valueOf(bounds[i]) : "inf")
+                 .append("'>").append(counts[i]).append("</bucket>");
+        }
+        stats.append("\n  </").append(name).append(">");
+    }
+
+}
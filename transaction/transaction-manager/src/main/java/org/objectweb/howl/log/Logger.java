@@ -90,6 +90,12 @@ public class Logger extends LogObject
    */
   LogFileManager lfmgr = null;
   
+  /**
+   * Collects group commit statistics and optionally forces
+   * the current buffer adaptively.
+   */
+  GroupCommit groupCommit = null;
+  
   /**
    * @return activeMark member of the associated LogFileManager.
    */
@@ -122,6 +128,8 @@ public class Logger extends LogObject
     lfmgr = new LogFileManager(config);
     
     bmgr = new LogBufferManager(config);
+    
+    groupCommit = new GroupCommit(bmgr);
   }
   
   /**
@@ -204,7 +212,13 @@ public class Logger extends LogObject
     
     // QUESTION: should we deal with exceptions here?
 
-    long key = bmgr.put(type, data, sync);
+    long start = groupCommit.putStarted(sync);
+    long key = -1;
+    try {
+      key = bmgr.put(type, data, sync);
+    } finally {
+      groupCommit.putCompleted(sync, start, key);
+    }
     lfmgr.setCurrentKey(key);
     
     return key;
@@ -277,6 +291,31 @@ public class Logger extends LogObject
     lfmgr.setAutoMark(autoMark);
   }
   
+  /**
+   * @return the group commit statistics of this Logger.
+   */
+  public GroupCommit getGroupCommit()
+  {
+    return groupCommit;
+  }
+  
+  /**
+   * enable or disable adaptive group commit.
+   * 
+   * <p>When enabled, a dedicated thread forces the current buffer
+   * as soon as enough commits are waiting to amortize a force, or
+   * when the oldest waiting commit has waited <i> maxDelayMicros </i>.
+   * The fixed flush interval of the buffer manager remains in effect.
+   * 
+   * @param maxDelayMicros maximum time in microseconds a commit waits
+   * for other commits to join its force; zero or less disables
+   * adaptive group commit.
+   */
+  public void setAdaptiveGroupCommit(long maxDelayMicros)
+  {
+    groupCommit.setAdaptive(maxDelayMicros, "HOWL group commit " + config.getLogFileName());
+  }
+  
   /**
    * close the Log files and perform necessary cleanup tasks.
    */
@@ -285,6 +324,7 @@ public class Logger extends LogObject
     // prevent new threads from adding to the log
     synchronized(this) { isClosed = true; }
     
+    groupCommit.stop();
     lfmgr.close();
     bmgr.close();
   }
@@ -544,7 +584,7 @@ public class Logger extends LogObject
         "<Logger  class='" + name + "'>" 
     );
     
-    // TODO: append Logger specific stats
+    stats.append(groupCommit.getStats());
     
     stats.append(bmgr.getStats());
     
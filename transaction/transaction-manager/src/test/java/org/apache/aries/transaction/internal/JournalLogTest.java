@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.internal;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.transaction.xa.Xid;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.geronimo.transaction.log.HOWLLog;
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JournalLogTest {
+
+    private static final File BASE = new File(System.getProperty("user.dir"), "txlogs");
+    private static final int SEGMENT_SIZE = 128 * 1024;
+
+    // benchmark settings
+    private static final int THREADS = 16;
+    private static final int TX_PER_THREAD = 2000;
+    private static final int IN_FLIGHT = Integer.getInteger("aries.transaction.benchmark.inFlight", 1000000);
+
+    private XidFactory xidFactory;
+
+    @Before
+    public void setUp() {
+        xidFactory = new XidFactoryImpl("org.apache.aries.transaction.test".getBytes());
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        File dir = directory("testRecovery");
+        JournalLog log = new JournalLog(dir, "transaction", SEGMENT_SIZE, 1);
+        log.doStart();
+        Xid committed = xidFactory.createXid();
+        log.commit(committed, log.prepare(committed, branches(committed, 2)));
+        Xid rolledBack = xidFactory.createXid();
+        log.rollback(rolledBack, log.prepare(rolledBack, branches(rolledBack, 1)));
+        Xid inFlight = xidFactory.createXid();
+        log.prepare(inFlight, branches(inFlight, 3));
+        log.doStop();
+
+        log = new JournalLog(dir, "transaction", SEGMENT_SIZE, 1);
+        log.doStart();
+        Collection<Recovery.XidBranchesPair> pairs = log.recover(xidFactory);
+        assertEquals(1, pairs.size());
+        Recovery.XidBranchesPair pair = pairs.iterator().next();
+        assertArrayEquals(inFlight.getGlobalTransactionId(), pair.getXid().getGlobalTransactionId());
+        // the recovered branches are held in a set
+        Set<String> names = new HashSet<String>();
+        for (TransactionBranchInfo branch : pair.getBranches()) {
+            names.add(branch.getResourceName());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("res-1", "res-2", "res-3")), names);
+
+        // completing a recovered transaction removes it from the journal
+        log.commit(pair.getXid(), pair.getMark());
+        log.doStop();
+        log = new JournalLog(dir, "transaction", SEGMENT_SIZE, 1);
+        log.doStart();
+        assertTrue(log.recover(xidFactory).isEmpty());
+        log.doStop();
+    }
+
+    @Test
+    public void testSegmentsAreRecycled() throws Exception {
+        File dir = directory("testSegmentsAreRecycled");
+        JournalLog log = new JournalLog(dir, "transaction", SEGMENT_SIZE, 2);
+        log.doStart();
+        Xid longRunning = xidFactory.createXid();
+        log.prepare(longRunning, branches(longRunning, 1));
+        for (int i = 0; i < 20000; i++) {
+            Xid xid = xidFactory.createXid();
+            log.commit(xid, log.prepare(xid, branches(xid, 2)));
+        }
+        // the long running transaction is copied forward, so the segments are reused
+        assertTrue(dir.list().length <= 5);
+        log.doStop();
+
+        log = new JournalLog(dir, "transaction", SEGMENT_SIZE, 2);
+        log.doStart();
+        Collection<Recovery.XidBranchesPair> pairs = log.recover(xidFactory);
+        assertEquals(1, pairs.size());
+        assertArrayEquals(longRunning.getGlobalTransactionId(), pairs.iterator().next().getXid().getGlobalTransactionId());
+        log.doStop();
+    }
+
+    @Test
+    public void testCompletionInNewerSegment() throws Exception {
+        File dir = directory("testCompletionInNewerSegment");
+        JournalLog log = new JournalLog(dir, "transaction", SEGMENT_SIZE, 0);
+        log.doStart();
+        // too many pending transactions to be copied forward, spread over several segments
+        List<Xid> xids = new ArrayList<Xid>();
+        List<Object> marks = new ArrayList<Object>();
+        for (int i = 0; i < 3000; i++) {
+            Xid xid = xidFactory.createXid();
+            xids.add(xid);
+            marks.add(log.prepare(xid, branches(xid, 2)));
+        }
+        assertTrue(log.getRetainedSegments() > 1);
+        // all but the first one complete in newer segments
+        for (int i = 1; i < xids.size(); i++) {
+            log.commit(xids.get(i), marks.get(i));
+        }
+        // newer segments fill up with completed transactions and cannot be recycled
+        // before the first one, which holds prepares they complete
+        for (int i = 0; i < 5000; i++) {
+            Xid xid = xidFactory.createXid();
+            log.commit(xid, log.prepare(xid, branches(xid, 2)));
+        }
+        log.doStop();
+
+        log = new JournalLog(dir, "transaction", SEGMENT_SIZE, 0);
+        log.doStart();
+        Collection<Recovery.XidBranchesPair> pairs = log.recover(xidFactory);
+        assertEquals(1, pairs.size());
+        Recovery.XidBranchesPair pair = pairs.iterator().next();
+        assertArrayEquals(xids.get(0).getGlobalTransactionId(), pair.getXid().getGlobalTransactionId());
+        log.commit(pair.getXid(), pair.getMark());
+        log.doStop();
+
+        log = new JournalLog(dir, "transaction", SEGMENT_SIZE, 0);
+        log.doStart();
+        assertTrue(log.recover(xidFactory).isEmpty());
+        assertEquals(0, log.getRetainedSegments());
+        log.doStop();
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws Exception {
+        File dir = directory("testTornRecordIsIgnored");
+        JournalLog log = new JournalLog(dir, "transaction", SEGMENT_SIZE, 0);
+        log.doStart();
+        Xid first = xidFactory.createXid();
+        log.prepare(first, branches(first, 1));
+        Xid second = xidFactory.createXid();
+        log.prepare(second, branches(second, 1));
+        log.doStop();
+
+        // corrupt the last byte of the second record
+        File segment = new File(dir, "transaction_1." + JournalLog.EXTENSION);
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            long position = 16;
+            for (int i = 0; i < 2; i++) {
+                raf.seek(position);
+                position += 17 + raf.readInt();
+            }
+            raf.seek(position - 1);
+            int b = raf.read();
+            raf.seek(position - 1);
+            raf.write(~b);
+        } finally {
+            raf.close();
+        }
+
+        log = new JournalLog(dir, "transaction", SEGMENT_SIZE, 0);
+        log.doStart();
+        Collection<Recovery.XidBranchesPair> pairs = log.recover(xidFactory);
+        assertEquals(1, pairs.size());
+        assertArrayEquals(first.getGlobalTransactionId(), pairs.iterator().next().getXid().getGlobalTransactionId());
+        log.doStop();
+    }
+
+    @Test
+    @Ignore
+    public void testThroughputAndRecoveryTime() throws Exception {
+        HOWLLog howl = createHOWLLog(directory("benchmark-howl"));
+        howl.doStart();
+        System.err.println("HOWL: " + throughput(howl) + " commits/s");
+        howl.doStop();
+
+        JournalLog journal = new JournalLog(directory("benchmark-journal"), "transaction", 64 * 1024 * 1024, 2);
+        journal.doStart();
+        System.err.println("Journal: " + throughput(journal) + " commits/s");
+        journal.doStop();
+
+        File dir = directory("recovery-howl");
+        howl = createHOWLLog(dir);
+        howl.doStart();
+        fill(howl);
+        howl.doStop();
+        howl = createHOWLLog(dir);
+        long t0 = System.currentTimeMillis();
+        howl.doStart();
+        int recovered = howl.recover(xidFactory).size();
+        System.err.println("HOWL: recovered " + recovered + " transactions in " + (System.currentTimeMillis() - t0) + " ms");
+        howl.doStop();
+
+        dir = directory("recovery-journal");
+        journal = new JournalLog(dir, "transaction", 64 * 1024 * 1024, 2);
+        journal.doStart();
+        fill(journal);
+        journal.doStop();
+        journal = new JournalLog(dir, "transaction", 64 * 1024 * 1024, 2);
+        t0 = System.currentTimeMillis();
+        journal.doStart();
+        recovered = journal.recover(xidFactory).size();
+        System.err.println("Journal: recovered " + recovered + " transactions in " + (System.currentTimeMillis() - t0) + " ms");
+        journal.doStop();
+    }
+
+    private HOWLLog createHOWLLog(File dir) throws Exception {
+        return new HOWLLog("org.objectweb.howl.log.BlockLogBuffer", 32, true, true, 50,
+                dir.getAbsolutePath(), "log", "transaction",
+                -1, 0, 2, 4, -1, true, xidFactory, null);
+    }
+
+    private long throughput(final TransactionLog log) throws Exception {
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < TX_PER_THREAD; j++) {
+                            Xid xid = xidFactory.createXid();
+                            log.commit(xid, log.prepare(xid, branches(xid, 2)));
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                        e.printStackTrace();
+                    }
+                }
+            };
+        }
+        long t0 = System.currentTimeMillis();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long ms = Math.max(1, System.currentTimeMillis() - t0);
+        assertEquals(0, failures.get());
+        return THREADS * TX_PER_THREAD * 1000L / ms;
+    }
+
+    private void fill(TransactionLog log) throws Exception {
+        for (int i = 0; i < IN_FLIGHT; i++) {
+            Xid xid = xidFactory.createXid();
+            log.prepare(xid, branches(xid, 2));
+        }
+    }
+
+    private List<TransactionBranchInfo> branches(Xid xid, int count) {
+        List<TransactionBranchInfo> branches = new ArrayList<TransactionBranchInfo>();
+        for (int b = 1; b <= count; b++) {
+            branches.add(new TransactionBranchInfoImpl(xidFactory.createBranch(xid, b), "res-" + b));
+        }
+        return branches;
+    }
+
+    private static File directory(String name) throws Exception {
+        File dir = new File(BASE, name);
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+        return dir;
+    }
+
+}
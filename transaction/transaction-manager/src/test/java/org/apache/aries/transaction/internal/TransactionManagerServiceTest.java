@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.transaction.internal;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import javax.transaction.xa.Xid;
+
+import org.apache.aries.transaction.internal.TransactionManagerService.StatisticsHOWLLog;
+import org.apache.commons.io.FileUtils;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.howl.log.GroupCommit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionManagerServiceTest {
+
+    private static final File BASE = new File(System.getProperty("user.dir"), "txlogs");
+
+    private File logFileDir;
+    private TransactionLog log;
+
+    @Before
+    public void setUp() throws Exception {
+        logFileDir = new File(BASE, "transactionManagerService");
+        FileUtils.deleteDirectory(logFileDir);
+        logFileDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (log instanceof StatisticsHOWLLog) {
+            ((StatisticsHOWLLog) log).doStop();
+        }
+        FileUtils.deleteDirectory(logFileDir);
+    }
+
+    @Test
+    public void testHOWLLogGroupCommit() throws Exception {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(TransactionManagerService.RECOVERABLE, "true");
+        properties.put(TransactionManagerService.HOWL_LOG_FILE_DIR, logFileDir.getAbsolutePath());
+        properties.put(TransactionManagerService.HOWL_ADAPTIVE_GROUP_COMMIT, "true");
+        XidFactory xidFactory = new XidFactoryImpl("org.apache.aries.transaction.test".getBytes());
+        log = TransactionManagerService.createTransactionLog(properties, xidFactory);
+
+        // The statistics are those of the logger writing the transactions
+        GroupCommit groupCommit = ((StatisticsHOWLLog) log).getLogger().getGroupCommit();
+        assertTrue(groupCommit.isAdaptive());
+        long puts = groupCommit.getSyncPutCount();
+        Xid xid = xidFactory.createXid();
+        Object mark = log.prepare(xid, Collections.<TransactionBranchInfo>emptyList());
+        log.commit(xid, mark);
+        assertEquals(puts + 1, groupCommit.getSyncPutCount());
+    }
+
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TransactionMetricsTest {
+
+    private XidFactory xidFactory;
+    private TestTransactionManager tm;
+
+    @Before
+    public void setUp() {
+        xidFactory = new XidFactoryImpl("org.apache.aries.transaction.test".getBytes());
+        tm = new TestTransactionManager();
+    }
+
+    @Test
+    public void testTwoPhaseCommit() throws Exception {
+        TransactionMetrics metrics = new TransactionMetrics(0);
+        metrics.setTransactionManager(tm);
+        TransactionLog log = new MeteredTransactionLog(new NullLog(), metrics);
+        TestTransaction tx = new TestTransaction();
+        metrics.begin(tx);
+        assertEquals(1, metrics.getActiveCount());
+        tm.current = tx;
+
+        Xid xid = xidFactory.createXid();
+        tx.synchronization.beforeCompletion();
+        Object mark = log.prepare(xid, branches(xid, 2));
+        log.commit(xid, mark);
+        tx.synchronization.afterCompletion(Status.STATUS_COMMITTED);
+
+        assertEquals(0, metrics.getActiveCount());
+        assertEquals(1, metrics.getCommittedCount());
+        assertEquals(1, metrics.getTwoPhaseCommitCount());
+        assertEquals(2.0, metrics.getAverageEnlistedResources(), 0.0);
+        assertEquals(2, metrics.getLogWriteCount());
+        assertEquals(1, sum(metrics.getDurationHistogram()));
+        assertEquals(1, sum(metrics.getPrepareHistogram()));
+        assertEquals(1, sum(metrics.getCommitHistogram()));
+        assertEquals(2, sum(metrics.getLogWriteHistogram()));
+        assertEquals(0, metrics.getSlowTransactionCount());
+    }
+
+    @Test
+    public void testRollbackAndSlowTransaction() throws Exception {
+        TransactionMetrics metrics = new TransactionMetrics(1);
+        TestTransaction tx = new TestTransaction();
+        metrics.begin(tx);
+        Thread.sleep(5);
+        tx.synchronization.afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        assertEquals(1, metrics.getRolledBackCount());
+        assertEquals(0, metrics.getTwoPhaseCommitCount());
+        assertEquals(1, metrics.getSlowTransactionCount());
+        assertEquals(0, sum(metrics.getPrepareHistogram()));
+        assertEquals(metrics.getLatencyBucketsMicros().length + 1, metrics.getDurationHistogram().length);
+
+        metrics.reset();
+        assertEquals(0, metrics.getBegunCount());
+        assertEquals(0, metrics.getRolledBackCount());
+        assertEquals(0, sum(metrics.getDurationHistogram()));
+    }
+
+    @Test
+    public void testCompletionOnAnotherThread() throws Exception {
+        TransactionMetrics metrics = new TransactionMetrics(0);
+        metrics.setTransactionManager(tm);
+        TransactionLog log = new MeteredTransactionLog(new NullLog(), metrics);
+        final TestTransaction first = new TestTransaction();
+        metrics.begin(first);
+        tm.current = first;
+        first.synchronization.beforeCompletion();
+        // rolled back by another thread, e.g. on timeout
+        Thread thread = new Thread() {
+            public void run() {
+                first.synchronization.afterCompletion(Status.STATUS_ROLLEDBACK);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertEquals(1, metrics.getRolledBackCount());
+
+        // the next transaction completed by this thread is not mixed up with the first one
+        TestTransaction second = new TestTransaction();
+        metrics.begin(second);
+        tm.current = second;
+        second.synchronization.beforeCompletion();
+        Xid xid = xidFactory.createXid();
+        log.prepare(xid, branches(xid, 3));
+        second.synchronization.afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals(1, metrics.getTwoPhaseCommitCount());
+        assertEquals(3.0, metrics.getAverageEnlistedResources(), 0.0);
+
+        // log writes outside of a timed transaction are not attributed to any transaction
+        tm.current = null;
+        log.prepare(xid, branches(xid, 1));
+        assertEquals(1, metrics.getTwoPhaseCommitCount());
+        assertEquals(0, metrics.getActiveCount());
+    }
+
+    @Test
+    public void testBothBeginMethodsAreTimed() throws Exception {
+        TransactionMetrics metrics = new TransactionMetrics(0);
+        AriesTransactionManagerImpl transactionManager = new AriesTransactionManagerImpl();
+        transactionManager.setMetrics(metrics);
+
+        transactionManager.begin();
+        assertEquals(1, metrics.getActiveCount());
+        transactionManager.commit();
+
+        Transaction transaction = transactionManager.begin(60000L);
+        // a transaction begun once is timed once
+        metrics.begin(transaction);
+        assertEquals(2, metrics.getBegunCount());
+        assertEquals(1, metrics.getActiveCount());
+        transactionManager.rollback();
+
+        assertEquals(0, metrics.getActiveCount());
+        assertEquals(1, metrics.getCommittedCount());
+        assertEquals(1, metrics.getRolledBackCount());
+        assertEquals(2, sum(metrics.getDurationHistogram()));
+    }
+
+    private List<TransactionBranchInfo> branches(Xid xid, int count) {
+        List<TransactionBranchInfo> branches = new ArrayList<TransactionBranchInfo>();
+        for (int b = 1; b <= count; b++) {
+            branches.add(new TransactionBranchInfoImpl(xidFactory.createBranch(xid, b), "res-" + b));
+        }
+        return branches;
+    }
+
+    private static long sum(long[] histogram) {
+        long sum = 0;
+        for (long count : histogram) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private static class TestTransaction implements Transaction {
+
+        Synchronization synchronization;
+
+        public void registerSynchronization(Synchronization synchronization) {
+            this.synchronization = synchronization;
+        }
+
+        public int getStatus() {
+            return Status.STATUS_ACTIVE;
+        }
+
+        public void commit() {
+        }
+
+        public void rollback() {
+        }
+
+        public void setRollbackOnly() {
+        }
+
+        public boolean enlistResource(XAResource xaResource) {
+            return true;
+        }
+
+        public boolean delistResource(XAResource xaResource, int flag) {
+            return true;
+        }
+    }
+
+    private static class TestTransactionManager implements TransactionManager {
+
+        Transaction current;
+
+        public Transaction getTransaction() {
+            return current;
+        }
+
+        public void begin() {
+        }
+
+        public void commit() {
+        }
+
+        public int getStatus() {
+            return current != null ? Status.STATUS_ACTIVE : Status.STATUS_NO_TRANSACTION;
+        }
+
+        public void resume(Transaction transaction) {
+            current = transaction;
+        }
+
+        public void rollback() {
+        }
+
+        public void setRollbackOnly() {
+        }
+
+        public void setTransactionTimeout(int seconds) {
+        }
+
+        public Transaction suspend() {
+            Transaction transaction = current;
+            current = null;
+            return transaction;
+        }
+    }
+
+    private static class NullLog implements TransactionLog {
+
+        public void begin(Xid xid) {
+        }
+
+        public Object prepare(Xid xid, List<? extends TransactionBranchInfo> branches) {
+            return null;
+        }
+
+        public void commit(Xid xid, Object logMark) {
+        }
+
+        public void rollback(Xid xid, Object logMark) {
+        }
+
+        public Collection<Recovery.XidBranchesPair> recover(XidFactory xidFactory) {
+            return Collections.emptyList();
+        }
+
+        public String getXMLStats() {
+            return null;
+        }
+
+        public int getAverageForceTime() {
+            return 0;
+        }
+
+        public int getAverageBytesPerForce() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.objectweb.howl.log;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GroupCommitTest {
+
+    private static final File BASE = new File(System.getProperty("user.dir"), "txlogs");
+    private static final String LOG_FILE_NAME = "groupcommit";
+
+    private File logFileDir;
+    private Logger logger;
+
+    @Before
+    public void setUp() throws Exception {
+        logFileDir = new File(BASE, "groupCommit");
+        FileUtils.deleteDirectory(logFileDir);
+        logFileDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (logger != null) {
+            logger.close();
+        }
+        FileUtils.deleteDirectory(logFileDir);
+    }
+
+    @Test
+    public void testBatchAccounting() throws Exception {
+        LogBufferManager bmgr = new LogBufferManager(new Configuration());
+        GroupCommit groupCommit = new GroupCommit(bmgr);
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            groupCommit.putCompleted(true, start, bmgr.markFromBsn(1, i));
+        }
+        groupCommit.putCompleted(true, start, bmgr.markFromBsn(2, 0));
+        // a record completing late for an older block is not counted again
+        groupCommit.putCompleted(true, start, bmgr.markFromBsn(1, 3));
+        groupCommit.putCompleted(true, start, bmgr.markFromBsn(2, 1));
+        // records which were not written are not counted
+        groupCommit.putCompleted(true, start, -1);
+        groupCommit.putCompleted(false, start, bmgr.markFromBsn(2, 2));
+        // a batch is recorded once a record of the next block completes
+        assertEquals(1, groupCommit.getBatchCount());
+        groupCommit.putCompleted(true, start, bmgr.markFromBsn(3, 0));
+
+        assertEquals(7, groupCommit.getSyncPutCount());
+        assertEquals(1, groupCommit.getAsyncPutCount());
+        assertEquals(2, groupCommit.getBatchCount());
+        assertEquals(2.5, groupCommit.getAverageBatchSize(), 0.001);
+        assertEquals(3, groupCommit.getMaxBatchSize());
+        assertArrayEquals(new long[] { 0, 1, 1, 0, 0, 0, 0, 0, 0 }, groupCommit.getBatchSizeHistogram());
+        long forceWaits = 0;
+        for (long count : groupCommit.getForceWaitHistogram()) {
+            forceWaits += count;
+        }
+        assertEquals(7, forceWaits);
+    }
+
+    @Test
+    public void testDelayIsBoundedByMaxDelay() {
+        long maxDelay = TimeUnit.MILLISECONDS.toNanos(1);
+        long interval = TimeUnit.MICROSECONDS.toNanos(100);
+        // waits for the expected arrival of the missing commits
+        assertEquals(3 * interval, GroupCommit.delay(maxDelay, 4, 1, interval));
+        // but never longer than the maximum delay
+        assertEquals(maxDelay, GroupCommit.delay(maxDelay, 64, 1, interval));
+        assertEquals(maxDelay, GroupCommit.delay(maxDelay, 2, 1, Long.MAX_VALUE / 2));
+        // and not at all once the batch is complete
+        assertEquals(0, GroupCommit.delay(maxDelay, 4, 4, interval));
+        assertEquals(0, GroupCommit.delay(maxDelay, 4, 10, interval));
+    }
+
+    @Test
+    public void testTarget() {
+        // no arrival rate yet, every commit is forced on its own
+        assertEquals(1, GroupCommit.target(1000, 0));
+        // commits arriving slower than a force are forced on their own
+        assertEquals(1, GroupCommit.target(1000, 5000));
+        assertEquals(4, GroupCommit.target(4000, 1000));
+        assertEquals(GroupCommit.MAX_TARGET, GroupCommit.target(1000000, 1));
+    }
+
+    @Test
+    public void testAdaptiveOnAndOff() throws Exception {
+        logger = openLogger();
+        GroupCommit groupCommit = logger.getGroupCommit();
+        assertFalse(groupCommit.isAdaptive());
+
+        logger.setAdaptiveGroupCommit(1000);
+        assertTrue(groupCommit.isAdaptive());
+        Thread forcer = findThread("HOWL group commit " + LOG_FILE_NAME);
+        assertTrue(forcer != null && forcer.isDaemon());
+        logger.put("adaptive".getBytes(), true);
+        assertEquals(1, groupCommit.getSyncPutCount());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (groupCommit.getAdaptiveForceCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(groupCommit.getAdaptiveForceCount() > 0);
+
+        logger.setAdaptiveGroupCommit(0);
+        assertFalse(groupCommit.isAdaptive());
+        forcer.join(10000);
+        assertFalse(forcer.isAlive());
+        long forces = groupCommit.getAdaptiveForceCount();
+        logger.put("fixed".getBytes(), true);
+        assertEquals(2, groupCommit.getSyncPutCount());
+        assertEquals(forces, groupCommit.getAdaptiveForceCount());
+    }
+
+    private Logger openLogger() throws Exception {
+        Configuration config = new Configuration();
+        config.setLogFileDir(logFileDir.getAbsolutePath());
+        config.setLogFileName(LOG_FILE_NAME);
+        Logger result = new Logger(config);
+        result.open();
+        return result;
+    }
+
+    private static Thread findThread(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (name.equals(thread.getName())) {
+                return thread;
+            }
+        }
+        return null;
+    }
+
+}